@@ -0,0 +1,229 @@
+package org.multibit.hd.brit.dto;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.bitcoinj.core.Coin;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>DTO to provide the following to FeeService:</p>
+ * <ul>
+ * <li>The fee classification of each wallet transaction seen so far</li>
+ * <li>The fee address universe the classifications were made against</li>
+ * </ul>
+ *
+ * <p>The ledger allows the fee state to be brought up to date by classifying only the transactions
+ * that are new or have changed confirmation status since the last calculation.</p>
+ *
+ * @since 0.0.5
+ */
+public class FeeLedger {
+
+  /**
+   * A digest of the fee addresses used for the classifications (a change invalidates all entries)
+   */
+  private final String feeAddressesDigest;
+
+  /**
+   * The entries by transaction hash (guarded by this)
+   */
+  private final Map<String, Entry> entries = Maps.newHashMap();
+
+  public FeeLedger(String feeAddressesDigest) {
+
+    Preconditions.checkNotNull(feeAddressesDigest, "'feeAddressesDigest' must be present");
+
+    this.feeAddressesDigest = feeAddressesDigest;
+  }
+
+  public String getFeeAddressesDigest() {
+    return feeAddressesDigest;
+  }
+
+  /**
+   * @param transactionHash The transaction hash
+   *
+   * @return The entry for the transaction if it has been classified
+   */
+  public synchronized Optional<Entry> getEntry(String transactionHash) {
+    return Optional.fromNullable(entries.get(transactionHash));
+  }
+
+  /**
+   * @param entry The entry to add or replace
+   */
+  public synchronized void putEntry(Entry entry) {
+
+    Preconditions.checkNotNull(entry, "'entry' must be present");
+
+    entries.put(entry.getTransactionHash(), entry);
+  }
+
+  /**
+   * <p>Remove the entries for transactions that are no longer in the wallet</p>
+   *
+   * @param transactionHashes The hashes of the transactions in the wallet
+   *
+   * @return True if any entries were removed
+   */
+  public synchronized boolean retainAll(Set<String> transactionHashes) {
+    return entries.keySet().retainAll(transactionHashes);
+  }
+
+  /**
+   * @return A copy of all the entries
+   */
+  public synchronized List<Entry> getEntries() {
+    return Lists.newArrayList(entries.values());
+  }
+
+  /**
+   * @return The entries of the sends made by this wallet ordered by update time
+   */
+  public synchronized List<Entry> getSentBySelfEntries() {
+
+    List<Entry> sentBySelfEntries = Lists.newArrayList();
+    for (Entry entry : entries.values()) {
+      if (entry.isSentBySelf()) {
+        sentBySelfEntries.add(entry);
+      }
+    }
+
+    Collections.sort(sentBySelfEntries, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry e1, Entry e2) {
+        int result = Long.compare(e1.getUpdateTimeMillis(), e2.getUpdateTimeMillis());
+        // Use the hash so that sends made in the same millisecond have a stable order
+        return result != 0 ? result : e1.getTransactionHash().compareTo(e2.getTransactionHash());
+      }
+    });
+
+    return sentBySelfEntries;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "FeeLedger{" +
+      "feeAddressesDigest='" + feeAddressesDigest + '\'' +
+      ", entries=" + entries.size() +
+      '}';
+  }
+
+  /**
+   * <p>The fee classification of a single transaction</p>
+   */
+  public static class Entry {
+
+    private final String transactionHash;
+    private final boolean sentBySelf;
+    private final boolean confirmed;
+    private final long updateTimeMillis;
+    private final Coin feePaid;
+    private final Optional<String> feeAddress;
+
+    /**
+     * @param transactionHash  The transaction hash
+     * @param sentBySelf       True if the transaction was sent by this wallet
+     * @param confirmed        True if the transaction was confirmed when classified
+     * @param updateTimeMillis The transaction update time
+     * @param feePaid          The total value of the outputs to fee addresses
+     * @param feeAddress       The last fee address paid (absent if no fee was paid)
+     */
+    public Entry(String transactionHash, boolean sentBySelf, boolean confirmed, long updateTimeMillis, Coin feePaid, Optional<String> feeAddress) {
+
+      Preconditions.checkNotNull(transactionHash, "'transactionHash' must be present");
+      Preconditions.checkNotNull(feePaid, "'feePaid' must be present");
+      Preconditions.checkNotNull(feeAddress, "'feeAddress' must be present");
+
+      this.transactionHash = transactionHash;
+      this.sentBySelf = sentBySelf;
+      this.confirmed = confirmed;
+      this.updateTimeMillis = updateTimeMillis;
+      this.feePaid = feePaid;
+      this.feeAddress = feeAddress;
+    }
+
+    public String getTransactionHash() {
+      return transactionHash;
+    }
+
+    public boolean isSentBySelf() {
+      return sentBySelf;
+    }
+
+    public boolean isConfirmed() {
+      return confirmed;
+    }
+
+    public long getUpdateTimeMillis() {
+      return updateTimeMillis;
+    }
+
+    public Coin getFeePaid() {
+      return feePaid;
+    }
+
+    public Optional<String> getFeeAddress() {
+      return feeAddress;
+    }
+
+    /**
+     * @return True if this transaction paid a fee
+     */
+    public boolean isFeePaying() {
+      return feeAddress.isPresent();
+    }
+
+    /**
+     * @param updateTimeMillis The new update time
+     *
+     * @return A copy of this entry with the new update time
+     */
+    public Entry withUpdateTimeMillis(long updateTimeMillis) {
+      return new Entry(transactionHash, sentBySelf, confirmed, updateTimeMillis, feePaid, feeAddress);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Entry entry = (Entry) o;
+
+      return sentBySelf == entry.sentBySelf
+        && confirmed == entry.confirmed
+        && updateTimeMillis == entry.updateTimeMillis
+        && transactionHash.equals(entry.transactionHash)
+        && feePaid.equals(entry.feePaid)
+        && feeAddress.equals(entry.feeAddress);
+    }
+
+    @Override
+    public int hashCode() {
+      return transactionHash.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return "Entry{" +
+        "transactionHash='" + transactionHash + '\'' +
+        ", sentBySelf=" + sentBySelf +
+        ", confirmed=" + confirmed +
+        ", updateTimeMillis=" + updateTimeMillis +
+        ", feePaid=" + feePaid +
+        ", feeAddress=" + feeAddress +
+        '}';
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package org.multibit.hd.brit.extensions;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Wallet;
+import org.bitcoinj.core.WalletExtension;
+import org.multibit.hd.brit.dto.FeeLedger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * <p>Wallet Extension to provide the following to Wallet:</p>
+ * <ul>
+ * <li>Persistence of a FeeLedger</li>
+ * </ul>
+ *
+ * <p>The ledger is written as UTF-8 text with a header line followed by one line per transaction.
+ * A ledger that cannot be parsed is discarded and will be rebuilt from the wallet transactions.</p>
+ *
+ * @since 0.0.5
+ */
+public class FeeLedgerWalletExtension implements WalletExtension {
+
+  private static final Logger log = LoggerFactory.getLogger(FeeLedgerWalletExtension.class);
+
+  public static final String FEE_LEDGER_WALLET_EXTENSION_ID = "org.multibit.hd.brit.FeeLedger";
+
+  /**
+   * The format version written in the header
+   */
+  public static final String VERSION = "1";
+
+  public static final String NOT_PRESENT_MARKER = "not-present";
+  public static final char SEPARATOR = ' ';
+  public static final char LINE_SEPARATOR = '\n';
+
+  private FeeLedger feeLedger;
+
+  public FeeLedgerWalletExtension() {
+    this.feeLedger = null;
+  }
+
+  public FeeLedgerWalletExtension(FeeLedger feeLedger) {
+    this.feeLedger = feeLedger;
+  }
+
+  @Override
+  public String getWalletExtensionID() {
+    return FEE_LEDGER_WALLET_EXTENSION_ID;
+  }
+
+  @Override
+  public boolean isWalletExtensionMandatory() {
+    return false;
+  }
+
+  @Override
+  public byte[] serializeWalletExtension() {
+    if (feeLedger != null) {
+
+      StringBuilder builder = new StringBuilder();
+
+      builder.append(VERSION).append(SEPARATOR)
+        .append(feeLedger.getFeeAddressesDigest()).append(LINE_SEPARATOR);
+
+      for (FeeLedger.Entry entry : feeLedger.getEntries()) {
+        builder.append(entry.getTransactionHash()).append(SEPARATOR)
+          .append(entry.isSentBySelf() ? '1' : '0').append(SEPARATOR)
+          .append(entry.isConfirmed() ? '1' : '0').append(SEPARATOR)
+          .append(entry.getUpdateTimeMillis()).append(SEPARATOR)
+          .append(entry.getFeePaid().getValue()).append(SEPARATOR)
+          .append(entry.getFeeAddress().or(NOT_PRESENT_MARKER)).append(LINE_SEPARATOR);
+      }
+
+      return builder.toString().getBytes(Charsets.UTF_8);
+
+    } else {
+      return new byte[0];
+    }
+  }
+
+  @Override
+  public void deserializeWalletExtension(Wallet containingWallet, byte[] data) throws Exception {
+
+    String serialisedString = new String(data, Charsets.UTF_8);
+
+    List<String> lines = Splitter.on(LINE_SEPARATOR).omitEmptyStrings().splitToList(serialisedString);
+    if (lines.isEmpty()) {
+      log.error("Parse failed");
+      return;
+    }
+
+    List<String> header = Splitter.on(SEPARATOR).splitToList(lines.get(0));
+    if (header.size() != 2 || !VERSION.equals(header.get(0))) {
+      log.warn("Unknown fee ledger format '{}'. The ledger will be rebuilt.", lines.get(0));
+      return;
+    }
+
+    FeeLedger parsedFeeLedger = new FeeLedger(header.get(1));
+
+    try {
+      for (String line : lines.subList(1, lines.size())) {
+
+        List<String> tokens = Splitter.on(SEPARATOR).splitToList(line);
+        if (tokens.size() != 6) {
+          log.warn("Malformed fee ledger entry '{}'. The ledger will be rebuilt.", line);
+          return;
+        }
+
+        String rawFeeAddress = tokens.get(5);
+        Optional<String> feeAddress = NOT_PRESENT_MARKER.equals(rawFeeAddress) ? Optional.<String>absent() : Optional.of(rawFeeAddress);
+
+        parsedFeeLedger.putEntry(new FeeLedger.Entry(
+          tokens.get(0),
+          "1".equals(tokens.get(1)),
+          "1".equals(tokens.get(2)),
+          Long.parseLong(tokens.get(3)),
+          Coin.valueOf(Long.parseLong(tokens.get(4))),
+          feeAddress
+        ));
+      }
+    } catch (NumberFormatException nfe) {
+      log.warn("Number format exception. The ledger will be rebuilt.", nfe);
+      return;
+    }
+
+    log.debug("Parsed fee ledger with {} entries", parsedFeeLedger.size());
+
+    feeLedger = parsedFeeLedger;
+  }
+
+  public FeeLedger getFeeLedger() {
+    return feeLedger;
+  }
+
+  @Override
+  public String toString() {
+    return "FeeLedgerWalletExtension{" +
+      "feeLedger=" + feeLedger +
+      '}';
+  }
+}
@@ -1,15 +1,19 @@
 package org.multibit.hd.brit.services;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.AddressFormatException;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.core.ScriptException;
 import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
 import org.bitcoinj.core.TransactionOutput;
 import org.bitcoinj.core.Wallet;
 import org.bitcoinj.core.WalletExtension;
@@ -19,12 +23,14 @@ import org.multibit.hd.brit.crypto.AESUtils;
 import org.multibit.hd.brit.dto.BRITWalletId;
 import org.multibit.hd.brit.dto.EncryptedMatcherResponse;
 import org.multibit.hd.brit.dto.EncryptedPayerRequest;
+import org.multibit.hd.brit.dto.FeeLedger;
 import org.multibit.hd.brit.dto.FeeState;
 import org.multibit.hd.brit.dto.MatcherResponse;
 import org.multibit.hd.brit.dto.PayerRequest;
 import org.multibit.hd.brit.dto.SendFeeDto;
 import org.multibit.hd.brit.exceptions.MatcherResponseException;
 import org.multibit.hd.brit.exceptions.PayerRequestException;
+import org.multibit.hd.brit.extensions.FeeLedgerWalletExtension;
 import org.multibit.hd.brit.extensions.MatcherResponseWalletExtension;
 import org.multibit.hd.brit.extensions.SendFeeDtoWalletExtension;
 import org.multibit.hd.brit.payer.Payer;
@@ -173,14 +179,6 @@ public class FeeService {
 
     //log.debug("Wallet at beginning of calculateFeeState = {}", wallet.toString(false, true, true, null));
 
-    // Get all the send transactions sent by me, ordered by date
-    List<Transaction> sendTransactions = getSentBySelfTransactionList(wallet);
-    int currentNumberOfSends = sendTransactions.size();
-    log.debug("The wallet send count is {}", currentNumberOfSends);
-
-    // Work out the total amount that should be paid by the Payer for this wallet
-    Coin grossFeeToBePaid = FEE_PER_SEND.multiply(currentNumberOfSends);
-
     // Get the previous persisted MatcherResponse from the wallet, if available
     MatcherResponse matcherResponseFromWallet = getMatcherResponseFromWallet(wallet);
 
@@ -190,6 +188,15 @@ public class FeeService {
       feeAddressesUniverse.addAll(matcherResponseFromWallet.getBitcoinAddresses());
     }
 
+    // Bring the fee ledger up to date and get all the sends by me, ordered by date
+    FeeLedger feeLedger = updateFeeLedger(wallet, feeAddressesUniverse);
+    List<FeeLedger.Entry> sendEntries = feeLedger.getSentBySelfEntries();
+    int currentNumberOfSends = sendEntries.size();
+    log.debug("The wallet send count is {}", currentNumberOfSends);
+
+    // Work out the total amount that should be paid by the Payer for this wallet
+    Coin grossFeeToBePaid = FEE_PER_SEND.multiply(currentNumberOfSends);
+
     // Work out which of the sends actually send money to a fee address.
     // Keep track of the amount sent as fees and the count of the last send to fees made
     int lastFeePayingSendCount = 0;
@@ -197,22 +204,12 @@ public class FeeService {
     Optional<Integer> lastFeePayingSendingCountOptional = Optional.absent();
     Coin feePaid = Coin.ZERO;
 
-    for (Transaction sendTransaction : sendTransactions) {
-      List<TransactionOutput> sendTransactionOutputList = sendTransaction.getOutputs();
-      if (sendTransactionOutputList != null) {
-        for (TransactionOutput sendTransactionOutput : sendTransactionOutputList) {
-          try {
-            Address toAddress = sendTransactionOutput.getScriptPubKey().getToAddress(networkParameters);
-            if (feeAddressesUniverse.contains(toAddress)) {
-              // It pays some fee
-              feePaid = feePaid.add(sendTransactionOutput.getValue());
-              lastFeePayingSendAddressOptional = Optional.of(toAddress.toString());
-              lastFeePayingSendingCountOptional = Optional.of(lastFeePayingSendCount);
-            }
-          } catch (ScriptException se) {
-            log.debug("Cannot cast script to Address for transaction: {}", sendTransaction.getHash().toString());
-          }
-        }
+    for (FeeLedger.Entry sendEntry : sendEntries) {
+      if (sendEntry.isFeePaying()) {
+        // It pays some fee
+        feePaid = feePaid.add(sendEntry.getFeePaid());
+        lastFeePayingSendAddressOptional = sendEntry.getFeeAddress();
+        lastFeePayingSendingCountOptional = Optional.of(lastFeePayingSendCount);
       }
       lastFeePayingSendCount++;
     }
@@ -331,32 +328,152 @@ public class FeeService {
   }
 
   /**
-   * Get all the send transactions in the wallet that are sent by self
-   * (Sends that originate from another copy of this HD have no client fee attached)
+   * <p>Bring the fee ledger of the wallet up to date with its transactions</p>
+   *
+   * <p>Only transactions that are new to the ledger, or have changed confirmation status since they were
+   * classified, are checked for being sent by self and have their outputs matched against the fee addresses.
+   * The ledger is rebuilt if the fee addresses change.</p>
    *
-   * @param wallet the wallet to look for sends for
+   * <p>The caller needs to save the wallet after this call to persist the ledger.</p>
    *
-   * @return List of the transactions in this wallet sent by self
+   * @param wallet               The wallet to update the fee ledger for
+   * @param feeAddressesUniverse All the addresses a fee could have been paid to
+   *
+   * @return The up to date fee ledger
    */
-  private List<Transaction> getSentBySelfTransactionList(Wallet wallet) {
+  public FeeLedger updateFeeLedger(Wallet wallet, Set<Address> feeAddressesUniverse) {
 
-    // Get all the wallets transactions and sort by date
-    ArrayList<Transaction> transactions = new ArrayList<>(wallet.getTransactions(false));
-    Collections.sort(transactions, new TransactionUpdateTimeComparator());
+    String feeAddressesDigest = calculateFeeAddressesDigest(feeAddressesUniverse);
+
+    FeeLedger feeLedger = getFeeLedgerFromWallet(wallet);
+    boolean ledgerChanged = false;
+    if (feeLedger == null || !feeAddressesDigest.equals(feeLedger.getFeeAddressesDigest())) {
+      log.debug("Starting a new fee ledger");
+      feeLedger = new FeeLedger(feeAddressesDigest);
+      ledgerChanged = true;
+    }
 
-    // Iterate over all transactions sorted by date, looking for transaction outputs that are sends
-    List<Transaction> sendTransactions = Lists.newArrayList();
+    Set<Transaction> transactions = wallet.getTransactions(false);
+    Set<String> transactionHashes = Sets.newHashSetWithExpectedSize(transactions.size());
+    int classifiedCount = 0;
 
     for (Transaction transaction : transactions) {
-      boolean sentBySelf = transactionSentBySelfProvider.isSentBySelf(wallet, transaction);
 
-      if (sentBySelf) {
-        // This transaction sends from self - this will exclude unconfirmed tx
-        sendTransactions.add(transaction);
+      String transactionHash = transaction.getHashAsString();
+      transactionHashes.add(transactionHash);
+
+      boolean confirmed = isConfirmed(transaction);
+      long updateTimeMillis = transaction.getUpdateTime().getTime();
+
+      Optional<FeeLedger.Entry> entry = feeLedger.getEntry(transactionHash);
+      if (!entry.isPresent() || entry.get().isConfirmed() != confirmed) {
+        // New or changed so classify the transaction
+        feeLedger.putEntry(classifyTransaction(wallet, transaction, transactionHash, confirmed, updateTimeMillis, feeAddressesUniverse));
+        classifiedCount++;
+        ledgerChanged = true;
+      } else if (entry.get().getUpdateTimeMillis() != updateTimeMillis) {
+        feeLedger.putEntry(entry.get().withUpdateTimeMillis(updateTimeMillis));
+        ledgerChanged = true;
+      }
+    }
+
+    // Forget transactions that have been removed from the wallet (e.g. by a reset)
+    if (feeLedger.retainAll(transactionHashes)) {
+      ledgerChanged = true;
+    }
+
+    log.debug("Classified {} of {} transaction(s) for the fee ledger", classifiedCount, transactions.size());
+
+    if (ledgerChanged) {
+      // Add the FeeLedger as a wallet extension so that on the next wallet write it will be persisted
+      wallet.addOrUpdateExtension(new FeeLedgerWalletExtension(feeLedger));
+    }
+
+    return feeLedger;
+  }
+
+  /**
+   * @param wallet               The wallet containing the transaction
+   * @param transaction          The transaction to classify
+   * @param transactionHash      The transaction hash
+   * @param confirmed            True if the transaction is confirmed
+   * @param updateTimeMillis     The transaction update time
+   * @param feeAddressesUniverse All the addresses a fee could have been paid to
+   *
+   * @return The fee ledger entry for the transaction
+   */
+  private FeeLedger.Entry classifyTransaction(
+    Wallet wallet,
+    Transaction transaction,
+    String transactionHash,
+    boolean confirmed,
+    long updateTimeMillis,
+    Set<Address> feeAddressesUniverse
+  ) {
+
+    // Sends that originate from another copy of this HD have no client fee attached
+    boolean sentBySelf = transactionSentBySelfProvider.isSentBySelf(wallet, transaction);
+
+    Coin feePaid = Coin.ZERO;
+    Optional<String> feeAddress = Optional.absent();
+
+    if (sentBySelf) {
+      List<TransactionOutput> sendTransactionOutputList = transaction.getOutputs();
+      if (sendTransactionOutputList != null) {
+        for (TransactionOutput sendTransactionOutput : sendTransactionOutputList) {
+          try {
+            Address toAddress = sendTransactionOutput.getScriptPubKey().getToAddress(networkParameters);
+            if (feeAddressesUniverse.contains(toAddress)) {
+              // It pays some fee
+              feePaid = feePaid.add(sendTransactionOutput.getValue());
+              feeAddress = Optional.of(toAddress.toString());
+            }
+          } catch (ScriptException se) {
+            log.debug("Cannot cast script to Address for transaction: {}", transactionHash);
+          }
+        }
       }
     }
 
-    return sendTransactions;
+    return new FeeLedger.Entry(transactionHash, sentBySelf, confirmed, updateTimeMillis, feePaid, feeAddress);
+  }
+
+  /**
+   * @param transaction The transaction
+   *
+   * @return True if the transaction is in the best chain
+   */
+  private boolean isConfirmed(Transaction transaction) {
+    return transaction.getConfidence() != null
+      && TransactionConfidence.ConfidenceType.BUILDING.equals(transaction.getConfidence().getConfidenceType());
+  }
+
+  /**
+   * @param feeAddresses The fee addresses
+   *
+   * @return A digest that changes if the set of fee addresses changes
+   */
+  private String calculateFeeAddressesDigest(Set<Address> feeAddresses) {
+
+    List<String> rawAddresses = Lists.newArrayListWithCapacity(feeAddresses.size());
+    for (Address feeAddress : feeAddresses) {
+      rawAddresses.add(feeAddress.toString());
+    }
+    Collections.sort(rawAddresses);
+
+    return Hashing.sha256().hashString(Joiner.on(',').join(rawAddresses), Charsets.UTF_8).toString();
+  }
+
+  public static FeeLedger getFeeLedgerFromWallet(Wallet wallet) {
+
+    Map<String, WalletExtension> walletExtensionsMap = wallet.getExtensions();
+
+    if (walletExtensionsMap != null && walletExtensionsMap.get(FeeLedgerWalletExtension.FEE_LEDGER_WALLET_EXTENSION_ID) != null) {
+      return ((FeeLedgerWalletExtension) walletExtensionsMap.get(FeeLedgerWalletExtension.FEE_LEDGER_WALLET_EXTENSION_ID)).getFeeLedger();
+    } else {
+      return null;
+    }
+
   }
 
   public static MatcherResponse getMatcherResponseFromWallet(Wallet wallet) {
@@ -18,6 +18,7 @@ package org.multibit.hd.brit.services;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.bitcoinj.core.*;
 import org.bitcoinj.params.MainNetParams;
@@ -33,7 +34,9 @@ import org.junit.Test;
 import org.multibit.hd.brit.crypto.PGPUtils;
 import org.multibit.hd.brit.crypto.PGPUtilsTest;
 import org.multibit.hd.brit.dto.BRITWalletIdTest;
+import org.multibit.hd.brit.dto.FeeLedger;
 import org.multibit.hd.brit.dto.FeeState;
+import org.multibit.hd.brit.extensions.FeeLedgerWalletExtension;
 import org.multibit.hd.brit.extensions.MatcherResponseWalletExtension;
 import org.multibit.hd.brit.seed_phrase.Bip39SeedPhraseGenerator;
 import org.multibit.hd.brit.seed_phrase.SeedPhraseGenerator;
@@ -46,9 +49,12 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.bitcoinj.core.Coin.parseCoin;
 import static org.fest.assertions.Assertions.assertThat;
@@ -159,6 +165,126 @@ public class FeeServicesTest {
     checkFeeState(feeState, true, NUMBER_OF_NON_FEE_SENDS + 1, Coin.ZERO, FeeService.FEE_PER_SEND, possibleNextFeeAddresses);
   }
 
+  @Test
+  public void testFeeLedgerMatchesFullRecompute() throws Exception {
+
+    FeeService feeService = BRITServices.newFeeService(encryptionKey, new URL(DUMMY_MATCHER_URL));
+    feeService.performExchangeWithMatcher(seed, wallet1);
+
+    // Count the sent by self checks to show that only new transactions are classified
+    final AtomicInteger sentBySelfChecks = new AtomicInteger();
+    final TransactionSentBySelfProvider delegate = new TransactionConfidenceSentBySelfProvider();
+    feeService.setTransactionSentBySelfProvider(new TransactionSentBySelfProvider() {
+      @Override
+      public boolean isSentBySelf(Wallet wallet, Transaction transaction) {
+        sentBySelfChecks.incrementAndGet();
+        return delegate.isSentBySelf(wallet, transaction);
+      }
+    });
+
+    Set<Address> feeAddressesUniverse = feeService.getHardwiredFeeAddresses();
+    Address feeAddress = feeAddressesUniverse.iterator().next();
+
+    receiveATransaction(wallet1, toAddress1);
+
+    for (int i = 0; i < 12; i++) {
+
+      // Pay a fee every few sends
+      if (i % 5 == 4) {
+        sendBitcoin(FeeService.FEE_PER_SEND.multiply(10), feeAddress, null);
+      } else {
+        sendBitcoin(parseCoin("0.01"), nonFeeDestinationAddress, null);
+      }
+
+      sentBySelfChecks.set(0);
+      FeeState feeState = feeService.calculateFeeState(wallet1, false);
+
+      // Only the new send is classified
+      assertThat(sentBySelfChecks.get()).isEqualTo(i == 0 ? 2 : 1);
+
+      FeeLedger feeLedger = FeeService.getFeeLedgerFromWallet(wallet1);
+      assertThat(feeLedger.size()).isEqualTo(wallet1.getTransactions(false).size());
+      assertLedgerMatchesFullRecompute(feeLedger, feeAddressesUniverse, feeState);
+    }
+
+    // A calculation without new transactions classifies nothing
+    sentBySelfChecks.set(0);
+    feeService.calculateFeeState(wallet1, false);
+    assertThat(sentBySelfChecks.get()).isEqualTo(0);
+
+    // The ledger survives a round trip through the wallet extension
+    FeeLedger feeLedger = FeeService.getFeeLedgerFromWallet(wallet1);
+    FeeLedgerWalletExtension restored = new FeeLedgerWalletExtension();
+    restored.deserializeWalletExtension(wallet1, new FeeLedgerWalletExtension(feeLedger).serializeWalletExtension());
+    assertThat(restored.getFeeLedger().getFeeAddressesDigest()).isEqualTo(feeLedger.getFeeAddressesDigest());
+    assertThat(restored.getFeeLedger().getSentBySelfEntries()).isEqualTo(feeLedger.getSentBySelfEntries());
+
+    // A change to the fee addresses rebuilds the ledger
+    Set<Address> changedUniverse = Sets.newHashSet(feeAddressesUniverse);
+    changedUniverse.add(nonFeeDestinationAddress);
+    sentBySelfChecks.set(0);
+    FeeLedger rebuiltLedger = feeService.updateFeeLedger(wallet1, changedUniverse);
+    assertThat(sentBySelfChecks.get()).isEqualTo(wallet1.getTransactions(false).size());
+    assertThat(rebuiltLedger.getFeeAddressesDigest()).isNotEqualTo(feeLedger.getFeeAddressesDigest());
+
+    // Every send now pays a "fee"
+    for (FeeLedger.Entry entry : rebuiltLedger.getSentBySelfEntries()) {
+      assertThat(entry.isFeePaying()).isTrue();
+    }
+
+  }
+
+  /**
+   * <p>Compare the ledger with a recompute from all the wallet transactions</p>
+   */
+  private void assertLedgerMatchesFullRecompute(FeeLedger feeLedger, Set<Address> feeAddressesUniverse, FeeState feeState) throws Exception {
+
+    TransactionSentBySelfProvider provider = new TransactionConfidenceSentBySelfProvider();
+
+    List<Transaction> sendTransactions = Lists.newArrayList();
+    for (Transaction transaction : wallet1.getTransactions(false)) {
+      if (provider.isSentBySelf(wallet1, transaction)) {
+        sendTransactions.add(transaction);
+      }
+    }
+    Collections.sort(sendTransactions, new Comparator<Transaction>() {
+      @Override
+      public int compare(Transaction t1, Transaction t2) {
+        int result = t1.getUpdateTime().compareTo(t2.getUpdateTime());
+        return result != 0 ? result : t1.getHashAsString().compareTo(t2.getHashAsString());
+      }
+    });
+
+    Coin feePaid = Coin.ZERO;
+    int lastFeePayingSendCount = -1;
+    for (int i = 0; i < sendTransactions.size(); i++) {
+      for (TransactionOutput output : sendTransactions.get(i).getOutputs()) {
+        if (feeAddressesUniverse.contains(output.getScriptPubKey().getToAddress(NETWORK_PARAMETERS))) {
+          feePaid = feePaid.add(output.getValue());
+          lastFeePayingSendCount = i;
+        }
+      }
+    }
+
+    List<FeeLedger.Entry> sendEntries = feeLedger.getSentBySelfEntries();
+    assertThat(sendEntries.size()).isEqualTo(sendTransactions.size());
+    assertThat(feeState.getCurrentNumberOfSends()).isEqualTo(sendTransactions.size());
+    assertThat(feeState.getFeeOwed()).isEqualTo(FeeService.FEE_PER_SEND.multiply(sendTransactions.size()).subtract(feePaid));
+
+    Coin ledgerFeePaid = Coin.ZERO;
+    int ledgerLastFeePayingSendCount = -1;
+    for (int i = 0; i < sendEntries.size(); i++) {
+      assertThat(sendEntries.get(i).getTransactionHash()).isEqualTo(sendTransactions.get(i).getHashAsString());
+      if (sendEntries.get(i).isFeePaying()) {
+        ledgerFeePaid = ledgerFeePaid.add(sendEntries.get(i).getFeePaid());
+        ledgerLastFeePayingSendCount = i;
+      }
+    }
+    assertThat(ledgerFeePaid).isEqualTo(feePaid);
+    assertThat(ledgerLastFeePayingSendCount).isEqualTo(lastFeePayingSendCount);
+
+  }
+
   private void checkFeeState(
     FeeState feeState,
     boolean expectedIsUsingHardwiredBRITAddress,
@@ -0,0 +1,213 @@
+package org.multibit.hd.core.coins;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.bitcoinj.core.Transaction;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+
+/**
+ * <p>Enum to provide the following to the UTXO index:</p>
+ * <ul>
+ * <li>The available approaches to choosing the inputs of a send</li>
+ * </ul>
+ *
+ * <p>Each strategy is given the unspent outputs largest first and the value to gather (including fees). If the
+ * target cannot be met every selectable output is returned so the wallet can report the shortfall. Emptying the
+ * wallet asks for more than the wallet holds so all strategies then select every selectable output.</p>
+ *
+ * @since 0.0.5
+ */
+public enum CoinSelectionStrategy {
+
+  /**
+   * Spend the fewest, largest outputs (the default)
+   */
+  LARGEST_FIRST {
+    @Override
+    List<UtxoIndex.Utxo> select(NavigableSet<UtxoIndex.Utxo> utxos, long target, long feePerKb) {
+      return selectLargestFirst(utxos, target);
+    }
+  },
+
+  /**
+   * Search for outputs that meet the target without a change output (falls back to largest first)
+   */
+  BRANCH_AND_BOUND {
+    @Override
+    List<UtxoIndex.Utxo> select(NavigableSet<UtxoIndex.Utxo> utxos, long target, long feePerKb) {
+
+      List<UtxoIndex.Utxo> exactMatch = selectBranchAndBound(utxos, target);
+      if (!exactMatch.isEmpty()) {
+        return exactMatch;
+      }
+
+      return selectLargestFirst(utxos, target);
+    }
+  },
+
+  /**
+   * Spend the largest outputs plus as many small confirmed outputs as are worth spending (use when fees are low)
+   */
+  CONSOLIDATE {
+    @Override
+    List<UtxoIndex.Utxo> select(NavigableSet<UtxoIndex.Utxo> utxos, long target, long feePerKb) {
+
+      List<UtxoIndex.Utxo> selected = selectLargestFirst(utxos, target);
+      Set<UtxoIndex.Utxo> alreadySelected = Sets.newHashSet(selected);
+
+      // An output is only worth spending if it is worth more than the fee for its input
+      long inputFee = feePerKb * INPUT_SIZE / 1000;
+
+      Iterator<UtxoIndex.Utxo> smallestFirst = utxos.descendingIterator();
+      while (selected.size() < MAXIMUM_CONSOLIDATION_INPUTS && smallestFirst.hasNext()) {
+        UtxoIndex.Utxo utxo = smallestFirst.next();
+        if (alreadySelected.contains(utxo)) {
+          // Everything from here on is larger and already selected
+          break;
+        }
+        if (utxo.getValue() > inputFee && utxo.getDepth() > 0 && utxo.isSelectable()) {
+          selected.add(utxo);
+        }
+      }
+
+      return selected;
+    }
+  },
+
+  // End of enum
+  ;
+
+  /**
+   * The approximate size of a signed pay to address input in bytes
+   */
+  static final int INPUT_SIZE = 148;
+
+  /**
+   * The most inputs a consolidation adds (keeps the transaction well inside the standard size limit)
+   */
+  static final int MAXIMUM_CONSOLIDATION_INPUTS = 200;
+
+  /**
+   * The most branches explored before a branch and bound search gives up
+   */
+  static final int MAXIMUM_BRANCH_AND_BOUND_TRIES = 100_000;
+
+  /**
+   * @param utxos    The unspent outputs largest first
+   * @param target   The value to gather in satoshis (including fees)
+   * @param feePerKb The fee per kilobyte in satoshis
+   *
+   * @return The selected outputs
+   */
+  abstract List<UtxoIndex.Utxo> select(NavigableSet<UtxoIndex.Utxo> utxos, long target, long feePerKb);
+
+  private static List<UtxoIndex.Utxo> selectLargestFirst(NavigableSet<UtxoIndex.Utxo> utxos, long target) {
+
+    List<UtxoIndex.Utxo> selected = Lists.newArrayList();
+    long valueGathered = 0;
+
+    for (UtxoIndex.Utxo utxo : utxos) {
+      if (valueGathered >= target) {
+        break;
+      }
+      if (utxo.isSelectable()) {
+        selected.add(utxo);
+        valueGathered += utxo.getValue();
+      }
+    }
+
+    return selected;
+  }
+
+  /**
+   * <p>Depth first search (including the larger outputs first) for a total in the range [target, target + dust).
+   * Any excess below the dust level is added to the mining fee by the wallet so no change output is created.</p>
+   *
+   * @return The first best match found within the search limit (empty if none)
+   */
+  private static List<UtxoIndex.Utxo> selectBranchAndBound(NavigableSet<UtxoIndex.Utxo> utxos, long target) {
+
+    long upperBound = target + Transaction.MIN_NONDUST_OUTPUT.getValue() - 1;
+
+    // Outputs above the upper bound can never be part of a match
+    List<UtxoIndex.Utxo> candidates = Lists.newArrayList();
+    for (UtxoIndex.Utxo utxo : utxos) {
+      if (utxo.getValue() <= upperBound && utxo.isSelectable()) {
+        candidates.add(utxo);
+      }
+    }
+
+    int size = candidates.size();
+    long[] values = new long[size];
+    // The total of the candidates from each position onwards
+    long[] remaining = new long[size + 1];
+    for (int i = size - 1; i >= 0; i--) {
+      values[i] = candidates.get(i).getValue();
+      remaining[i] = remaining[i + 1] + values[i];
+    }
+
+    int[] included = new int[size];
+    int includedCount = 0;
+    long includedValue = 0;
+
+    int[] best = new int[0];
+    long bestExcess = Long.MAX_VALUE;
+
+    int i = 0;
+    for (int tries = 0; tries < MAXIMUM_BRANCH_AND_BOUND_TRIES; tries++) {
+
+      boolean backtrack;
+      if (includedValue + remaining[i] < target) {
+        // Cannot reach the target from here
+        backtrack = true;
+      } else if (includedValue > upperBound) {
+        // Overshot the range
+        backtrack = true;
+      } else if (includedValue >= target) {
+        long excess = includedValue - target;
+        if (excess < bestExcess) {
+          bestExcess = excess;
+          best = Arrays.copyOf(included, includedCount);
+        }
+        if (excess == 0) {
+          break;
+        }
+        backtrack = true;
+      } else {
+        backtrack = false;
+      }
+
+      if (backtrack) {
+        if (includedCount == 0) {
+          // Search is exhausted
+          break;
+        }
+        // Exclude the most recently included output and move on to the next
+        int last = included[--includedCount];
+        includedValue -= values[last];
+        i = last + 1;
+        // Including an output of the same value would repeat the branch just explored
+        while (i < size && values[i] == values[last]) {
+          i++;
+        }
+      } else {
+        included[includedCount++] = i;
+        includedValue += values[i];
+        i++;
+      }
+    }
+
+    List<UtxoIndex.Utxo> selected = Lists.newArrayListWithCapacity(best.length);
+    for (int index : best) {
+      selected.add(candidates.get(index));
+    }
+
+    return selected;
+  }
+
+}
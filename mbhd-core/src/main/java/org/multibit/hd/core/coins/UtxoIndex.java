@@ -0,0 +1,321 @@
+package org.multibit.hd.core.coins;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Wallet;
+import org.bitcoinj.wallet.CoinSelection;
+import org.bitcoinj.wallet.CoinSelector;
+import org.bitcoinj.wallet.DefaultCoinSelector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * <p>Index to provide the following to the Bitcoin network service:</p>
+ * <ul>
+ * <li>The unspent outputs of the current wallet ordered by value (largest first)</li>
+ * <li>Incremental maintenance from wallet events</li>
+ * <li>Coin selectors that answer from the index rather than sorting every spend candidate</li>
+ * </ul>
+ *
+ * <p>Membership is maintained from the transactions reported by the wallet. Depth and selectability are
+ * read from the transaction confidence at selection time so block arrivals require no index updates.</p>
+ *
+ * <p>The wallet remains the authority on what may be spent. A selector rebuilds the index from the wallet
+ * spend candidates whenever the index is stale, disagrees with them in size or offers an output that is not
+ * among them.</p>
+ *
+ * @since 0.0.5
+ */
+public class UtxoIndex {
+
+  private static final Logger log = LoggerFactory.getLogger(UtxoIndex.class);
+
+  /**
+   * Orders by value (largest first) then by outpoint so that equal values remain distinct
+   */
+  private static final Comparator<Utxo> LARGEST_FIRST = new Comparator<Utxo>() {
+    @Override
+    public int compare(Utxo o1, Utxo o2) {
+      int result = Long.compare(o2.getValue(), o1.getValue());
+      if (result == 0) {
+        result = o1.getKey().compareTo(o2.getKey());
+      }
+      return result;
+    }
+  };
+
+  /**
+   * The unspent outputs largest first (guarded by this)
+   */
+  private final NavigableSet<Utxo> utxos = new TreeSet<>(LARGEST_FIRST);
+
+  /**
+   * The unspent outputs by outpoint key (guarded by this)
+   */
+  private final Map<String, Utxo> utxosByKey = Maps.newHashMap();
+
+  private long totalValue = 0;
+
+  private boolean stale = true;
+
+  /**
+   * <p>Replace the contents of the index</p>
+   *
+   * @param spendCandidates The unspent outputs of the wallet
+   */
+  public synchronized void rebuild(Collection<TransactionOutput> spendCandidates) {
+
+    Preconditions.checkNotNull(spendCandidates, "'spendCandidates' must be present");
+
+    utxos.clear();
+    utxosByKey.clear();
+    totalValue = 0;
+
+    for (TransactionOutput output : spendCandidates) {
+      add(new Utxo(output, indexOf(output)));
+    }
+
+    stale = false;
+
+    log.debug("Rebuilt UTXO index with {} outputs", utxos.size());
+
+  }
+
+  /**
+   * <p>Bring the index up to date with a transaction reported by the wallet</p>
+   *
+   * @param wallet The wallet
+   * @param tx     The transaction that has been received or sent
+   */
+  public synchronized void update(Wallet wallet, Transaction tx) {
+
+    Preconditions.checkNotNull(wallet, "'wallet' must be present");
+    Preconditions.checkNotNull(tx, "'tx' must be present");
+
+    if (stale) {
+      // The next selection will rebuild so there is nothing to maintain
+      return;
+    }
+
+    // Outputs spent by this transaction
+    for (TransactionInput input : tx.getInputs()) {
+      Utxo spent = utxosByKey.get(key(input.getOutpoint().getHash(), input.getOutpoint().getIndex()));
+      if (spent != null) {
+        remove(spent);
+      }
+    }
+
+    // Outputs created by this transaction
+    List<TransactionOutput> outputs = tx.getOutputs();
+    for (int i = 0; i < outputs.size(); i++) {
+      TransactionOutput output = outputs.get(i);
+      Utxo existing = utxosByKey.get(key(tx.getHash(), i));
+      if (existing != null) {
+        remove(existing);
+      }
+      if (output.isAvailableForSpending() && output.isMine(wallet)) {
+        add(new Utxo(output, i));
+      }
+    }
+
+  }
+
+  /**
+   * <p>Force a rebuild on the next selection (e.g. after a reorganisation or a wallet change)</p>
+   */
+  public synchronized void markStale() {
+    stale = true;
+  }
+
+  /**
+   * @return True if the index must be rebuilt before it can be used
+   */
+  public synchronized boolean isStale() {
+    return stale;
+  }
+
+  /**
+   * @return The number of unspent outputs in the index
+   */
+  public synchronized int size() {
+    return utxos.size();
+  }
+
+  /**
+   * @return The total value of the unspent outputs in the index (including any not yet selectable)
+   */
+  public synchronized Coin getTotal() {
+    return Coin.valueOf(totalValue);
+  }
+
+  /**
+   * @param strategy The coin selection strategy
+   * @param feePerKb The fee per kilobyte of the transaction (used to judge whether an output is worth spending)
+   *
+   * @return A coin selector for a Bitcoinj send request backed by this index
+   */
+  public CoinSelector newCoinSelector(final CoinSelectionStrategy strategy, final Coin feePerKb) {
+
+    Preconditions.checkNotNull(strategy, "'strategy' must be present");
+    Preconditions.checkNotNull(feePerKb, "'feePerKb' must be present");
+
+    return new CoinSelector() {
+      @Override
+      public CoinSelection select(Coin target, List<TransactionOutput> candidates) {
+        return UtxoIndex.this.select(strategy, target, feePerKb, candidates);
+      }
+    };
+  }
+
+  /**
+   * @param strategy   The coin selection strategy
+   * @param target     The value to gather (including fees)
+   * @param feePerKb   The fee per kilobyte of the transaction
+   * @param candidates The wallet spend candidates
+   *
+   * @return The selected outputs (the value gathered is below the target if the wallet has insufficient funds)
+   */
+  synchronized CoinSelection select(CoinSelectionStrategy strategy, Coin target, Coin feePerKb, List<TransactionOutput> candidates) {
+
+    if (stale || utxos.size() != candidates.size()) {
+      log.debug("UTXO index is out of step with the wallet (stale: {}). Rebuilding.", stale);
+      rebuild(candidates);
+    }
+
+    List<Utxo> selected = strategy.select(utxos, target.getValue(), feePerKb.getValue());
+
+    // Wallet events are delivered after the wallet changes so check the selection is still spendable
+    Set<String> candidateKeys = Sets.newHashSetWithExpectedSize(candidates.size());
+    for (TransactionOutput candidate : candidates) {
+      candidateKeys.add(key(candidate.getParentTransaction().getHash(), indexOf(candidate)));
+    }
+    for (Utxo utxo : selected) {
+      if (!candidateKeys.contains(utxo.getKey()) || !utxo.getOutput().isAvailableForSpending()) {
+        log.debug("UTXO index offered an output that is not a spend candidate. Rebuilding.");
+        rebuild(candidates);
+        selected = strategy.select(utxos, target.getValue(), feePerKb.getValue());
+        break;
+      }
+    }
+
+    long valueGathered = 0;
+    List<TransactionOutput> gathered = Lists.newArrayListWithCapacity(selected.size());
+    for (Utxo utxo : selected) {
+      valueGathered += utxo.getValue();
+      gathered.add(utxo.getOutput());
+    }
+
+    return new CoinSelection(Coin.valueOf(valueGathered), gathered);
+  }
+
+  private void add(Utxo utxo) {
+
+    if (utxosByKey.put(utxo.getKey(), utxo) == null) {
+      utxos.add(utxo);
+      totalValue += utxo.getValue();
+    }
+
+  }
+
+  private void remove(Utxo utxo) {
+
+    if (utxosByKey.remove(utxo.getKey()) != null) {
+      utxos.remove(utxo);
+      totalValue -= utxo.getValue();
+    }
+
+  }
+
+  /**
+   * @param output The output
+   *
+   * @return The index of the output in its parent transaction
+   */
+  private static int indexOf(TransactionOutput output) {
+
+    List<TransactionOutput> outputs = output.getParentTransaction().getOutputs();
+    for (int i = 0; i < outputs.size(); i++) {
+      // Identity since outputs of equal value to the same address are equal
+      if (outputs.get(i) == output) {
+        return i;
+      }
+    }
+
+    throw new IllegalStateException("Output is not in its parent transaction");
+  }
+
+  private static String key(Sha256Hash hash, long index) {
+    return hash.toString() + ':' + index;
+  }
+
+  /**
+   * <p>An unspent output in the index</p>
+   */
+  static class Utxo {
+
+    private final TransactionOutput output;
+    private final String key;
+    private final long value;
+
+    Utxo(TransactionOutput output, int index) {
+
+      Preconditions.checkNotNull(output.getParentTransaction(), "'output' must have a parent transaction");
+
+      this.output = output;
+      this.key = key(output.getParentTransaction().getHash(), index);
+      this.value = output.getValue().getValue();
+    }
+
+    TransactionOutput getOutput() {
+      return output;
+    }
+
+    String getKey() {
+      return key;
+    }
+
+    long getValue() {
+      return value;
+    }
+
+    /**
+     * @return The number of blocks confirming the output (0 if unconfirmed)
+     */
+    int getDepth() {
+      return output.getParentTransaction().getConfidence().getDepthInBlocks();
+    }
+
+    /**
+     * @return True if the output can be spent now (confirmed or a broadcast change output)
+     */
+    boolean isSelectable() {
+
+      Transaction tx = output.getParentTransaction();
+
+      return DefaultCoinSelector.isSelectable(tx) && (!tx.isCoinBase() || tx.isMature());
+    }
+
+    @Override
+    public String toString() {
+      return "Utxo{" +
+        "key='" + key + '\'' +
+        ", value=" + value +
+        '}';
+    }
+  }
+}
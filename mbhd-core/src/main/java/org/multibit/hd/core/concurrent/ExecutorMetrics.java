@@ -0,0 +1,121 @@
+package org.multibit.hd.core.concurrent;
+
+/**
+ * <p>Value object to provide the following to the executor registry:</p>
+ * <ul>
+ * <li>Point in time metrics for a named pool</li>
+ * </ul>
+ *
+ * @since 0.0.5
+ */
+public class ExecutorMetrics {
+
+  private final String poolName;
+  private final int poolSize;
+  private final int activeCount;
+  private final int queuedCount;
+  private final int queueCapacity;
+  private final long completedCount;
+  private final long rejectedCount;
+  private final long maxLatencyMillis;
+
+  /**
+   * @param poolName         The pool name
+   * @param poolSize         The number of threads currently in the pool
+   * @param activeCount      The approximate number of threads executing tasks
+   * @param queuedCount      The number of tasks waiting in the queue
+   * @param queueCapacity    The maximum number of tasks the queue will hold
+   * @param completedCount   The approximate number of completed tasks
+   * @param rejectedCount    The number of tasks that met a full queue
+   * @param maxLatencyMillis The longest time from submission to completion of a task
+   */
+  public ExecutorMetrics(
+    String poolName,
+    int poolSize,
+    int activeCount,
+    int queuedCount,
+    int queueCapacity,
+    long completedCount,
+    long rejectedCount,
+    long maxLatencyMillis
+  ) {
+    this.poolName = poolName;
+    this.poolSize = poolSize;
+    this.activeCount = activeCount;
+    this.queuedCount = queuedCount;
+    this.queueCapacity = queueCapacity;
+    this.completedCount = completedCount;
+    this.rejectedCount = rejectedCount;
+    this.maxLatencyMillis = maxLatencyMillis;
+  }
+
+  /**
+   * @return The pool name
+   */
+  public String getPoolName() {
+    return poolName;
+  }
+
+  /**
+   * @return The number of threads currently in the pool (idle threads time out)
+   */
+  public int getPoolSize() {
+    return poolSize;
+  }
+
+  /**
+   * @return The approximate number of threads executing tasks
+   */
+  public int getActiveCount() {
+    return activeCount;
+  }
+
+  /**
+   * @return The number of tasks waiting in the queue
+   */
+  public int getQueuedCount() {
+    return queuedCount;
+  }
+
+  /**
+   * @return The maximum number of tasks the queue will hold
+   */
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * @return The approximate number of completed tasks
+   */
+  public long getCompletedCount() {
+    return completedCount;
+  }
+
+  /**
+   * @return The number of tasks that met a full queue and were handled by the rejection policy
+   */
+  public long getRejectedCount() {
+    return rejectedCount;
+  }
+
+  /**
+   * @return The longest time from submission to completion of a task in milliseconds
+   */
+  public long getMaxLatencyMillis() {
+    return maxLatencyMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "ExecutorMetrics{" +
+      "poolName='" + poolName + '\'' +
+      ", poolSize=" + poolSize +
+      ", activeCount=" + activeCount +
+      ", queuedCount=" + queuedCount +
+      ", queueCapacity=" + queueCapacity +
+      ", completedCount=" + completedCount +
+      ", rejectedCount=" + rejectedCount +
+      ", maxLatencyMillis=" + maxLatencyMillis +
+      '}';
+  }
+}
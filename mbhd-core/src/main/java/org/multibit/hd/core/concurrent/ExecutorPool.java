@@ -0,0 +1,88 @@
+package org.multibit.hd.core.concurrent;
+
+/**
+ * <p>Enum to provide the following to the executor registry:</p>
+ * <ul>
+ * <li>Definitions of the named pools shared across the application</li>
+ * </ul>
+ *
+ * <p>Pools that the EDT submits to use {@link RejectionPolicy#CALLER_RUNS_OFF_EDT} so that a full queue slows down
+ * the other submitting threads while the EDT hands its overflow to another thread.</p>
+ *
+ * <p>Work that only needs a delay uses the shared scheduler from {@link ExecutorRegistry#getOrCreateScheduler()}.
+ * Components with their own lifecycle (services that shut down their executor), that block a thread indefinitely or
+ * that rely on strictly sequential execution continue to use a dedicated executor from {@link SafeExecutors}.</p>
+ *
+ * @since 0.0.5
+ */
+public enum ExecutorPool {
+
+  /**
+   * Delivers core events away from the EDT (fed by the EDT)
+   */
+  CORE_EVENTS("core-events", 10, 1000, RejectionPolicy.CALLER_RUNS_OFF_EDT),
+
+  /**
+   * Delivers controller events away from the EDT (fed by the EDT)
+   */
+  CONTROLLER_EVENTS("controller-events", 10, 1000, RejectionPolicy.CALLER_RUNS_OFF_EDT),
+
+  /**
+   * Shared by short lived background work such as service start up, wallet operations and time drift checks (fed by
+   * the EDT so nothing may wait on a delay here, use a scheduled executor instead)
+   */
+  BACKGROUND("background", 10, 500, RejectionPolicy.CALLER_RUNS_OFF_EDT),
+
+  /**
+   * Loads wallet summaries in parallel (mostly file I/O so more threads than cores)
+   */
+  WALLET_SUMMARIES("wallet-summaries", Math.max(2, 2 * Runtime.getRuntime().availableProcessors()), 100, RejectionPolicy.CALLER_RUNS_OFF_EDT),
+
+  /**
+   * Downloads Gravatars (the oldest requests are for rows that have most likely scrolled out of view)
+   */
+  GRAVATAR("gravatar", 4, 100, RejectionPolicy.DISCARD_OLDEST)
+
+  // End of enum
+  ;
+
+  private final String poolName;
+  private final int threadCount;
+  private final int queueCapacity;
+  private final RejectionPolicy rejectionPolicy;
+
+  ExecutorPool(String poolName, int threadCount, int queueCapacity, RejectionPolicy rejectionPolicy) {
+    this.poolName = poolName;
+    this.threadCount = threadCount;
+    this.queueCapacity = queueCapacity;
+    this.rejectionPolicy = rejectionPolicy;
+  }
+
+  /**
+   * @return The pool name (lowercase hyphenated)
+   */
+  public String getPoolName() {
+    return poolName;
+  }
+
+  /**
+   * @return The maximum number of threads
+   */
+  public int getThreadCount() {
+    return threadCount;
+  }
+
+  /**
+   * @return The maximum number of queued tasks
+   */
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * @return The policy applied when the queue is full
+   */
+  public RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+}
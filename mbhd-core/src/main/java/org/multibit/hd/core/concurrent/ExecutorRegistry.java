@@ -0,0 +1,179 @@
+package org.multibit.hd.core.concurrent;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Registry to provide the following to application API:</p>
+ * <ul>
+ * <li>Named, bounded thread pools that can be shared between components</li>
+ * <li>Per-pool queue limits and rejection policies</li>
+ * <li>Per-pool metrics (active, queued, completed, rejected and maximum latency)</li>
+ * <li>A shared scheduler for work that only needs a delay</li>
+ * </ul>
+ *
+ * <p>Pools are created on first use and live for the duration of the application so
+ * callers must not shut them down.</p>
+ *
+ * @since 0.0.5
+ */
+public class ExecutorRegistry {
+
+  private static final Logger log = LoggerFactory.getLogger(ExecutorRegistry.class);
+
+  /**
+   * The number of seconds to wait before terminating the threads during a shutdown
+   */
+  private static final long DURATION_BEFORE_QUIT = 1;
+
+  /**
+   * The underlying executors by pool name (guarded by the class lock)
+   */
+  private static final Map<String, MeteredThreadPoolExecutor> executors = Maps.newTreeMap();
+
+  /**
+   * The executor services handed out to callers by pool name (guarded by the class lock)
+   */
+  private static final Map<String, ListeningExecutorService> executorServices = Maps.newHashMap();
+
+  /**
+   * The shared scheduler (guarded by the class lock)
+   */
+  private static ListeningScheduledExecutorService scheduler;
+
+  /**
+   * Utilities have a private constructor
+   */
+  private ExecutorRegistry() {
+  }
+
+  /**
+   * @param pool The pool definition
+   *
+   * @return The shared executor service for the pool
+   */
+  public static ListeningExecutorService getOrCreateExecutor(ExecutorPool pool) {
+
+    Preconditions.checkNotNull(pool, "'pool' must be present");
+
+    return getOrCreateExecutor(pool.getPoolName(), pool.getThreadCount(), pool.getQueueCapacity(), pool.getRejectionPolicy());
+  }
+
+  /**
+   * <p>Provide a named pool, creating it on first use. Later calls with the same name share the pool
+   * created by the first call.</p>
+   *
+   * @param poolName        The pool name (use lowercase hyphenated)
+   * @param threadCount     The maximum number of threads
+   * @param queueCapacity   The maximum number of queued tasks
+   * @param rejectionPolicy The policy to apply when the queue is full
+   *
+   * @return The shared executor service for the pool
+   */
+  public static synchronized ListeningExecutorService getOrCreateExecutor(
+    String poolName,
+    int threadCount,
+    int queueCapacity,
+    RejectionPolicy rejectionPolicy
+  ) {
+
+    Preconditions.checkNotNull(poolName, "'poolName' must be present");
+    Preconditions.checkArgument(threadCount > 0, "'threadCount' must be greater than zero");
+    Preconditions.checkArgument(queueCapacity > 0, "'queueCapacity' must be greater than zero");
+
+    ListeningExecutorService executorService = executorServices.get(poolName);
+    if (executorService != null) {
+      return executorService;
+    }
+
+    log.debug("New bounded thread pool with {} threads and {} queued tasks ({}): '{}'", threadCount, queueCapacity, rejectionPolicy, poolName);
+
+    ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("safe-bounded-" + poolName + "-%d").build();
+
+    MeteredThreadPoolExecutor executor = new MeteredThreadPoolExecutor(
+      poolName,
+      threadCount,
+      queueCapacity,
+      rejectionPolicy,
+      threadFactory
+    );
+
+    executorService = MoreExecutors.listeningDecorator(
+      MoreExecutors.getExitingExecutorService(executor, DURATION_BEFORE_QUIT, TimeUnit.SECONDS)
+    );
+
+    executors.put(poolName, executor);
+    executorServices.put(poolName, executorService);
+
+    return executorService;
+  }
+
+  /**
+   * <p>Provide the shared scheduler, creating it on first use</p>
+   *
+   * <p>It has a single thread so scheduled tasks must be short or hand their work over to a pool.</p>
+   *
+   * @return The shared scheduler
+   */
+  public static synchronized ListeningScheduledExecutorService getOrCreateScheduler() {
+
+    if (scheduler == null) {
+      scheduler = SafeExecutors.newSingleThreadScheduledExecutor("scheduler");
+    }
+
+    return scheduler;
+  }
+
+  /**
+   * @param poolName The pool name
+   *
+   * @return The current metrics for the pool if it has been created
+   */
+  public static synchronized Optional<ExecutorMetrics> getMetrics(String poolName) {
+
+    MeteredThreadPoolExecutor executor = executors.get(poolName);
+    if (executor == null) {
+      return Optional.absent();
+    }
+
+    return Optional.of(executor.getMetrics());
+  }
+
+  /**
+   * @return The current metrics for all created pools ordered by pool name
+   */
+  public static synchronized List<ExecutorMetrics> getMetrics() {
+
+    List<ExecutorMetrics> metrics = Lists.newArrayList();
+    for (MeteredThreadPoolExecutor executor : executors.values()) {
+      metrics.add(executor.getMetrics());
+    }
+
+    return metrics;
+  }
+
+  /**
+   * <p>Write the current metrics for all created pools to the log</p>
+   */
+  public static void logMetrics() {
+
+    for (ExecutorMetrics metrics : getMetrics()) {
+      log.info("{}", metrics);
+    }
+
+  }
+
+}
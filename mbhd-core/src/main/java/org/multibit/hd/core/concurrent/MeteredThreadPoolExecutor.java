@@ -0,0 +1,274 @@
+package org.multibit.hd.core.concurrent;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Thread pool executor to provide the following to the executor registry:</p>
+ * <ul>
+ * <li>A bounded queue with a rejection policy applied when it is full</li>
+ * <li>An overflow thread for tasks the EDT submits to a full queue (caller runs off the EDT only)</li>
+ * <li>Metrics for active, queued, completed and rejected tasks and the maximum latency</li>
+ * </ul>
+ *
+ * <p>Idle threads time out so that a quiet pool does not hold on to its threads.</p>
+ *
+ * @since 0.0.5
+ */
+public class MeteredThreadPoolExecutor extends SafeThreadPoolExecutor {
+
+  /**
+   * The number of seconds an idle thread waits for work before terminating
+   */
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private final String poolName;
+
+  private final int queueCapacity;
+
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+  /**
+   * Runs the tasks handed over by the EDT (created on first use, guarded by this)
+   */
+  private ThreadPoolExecutor overflowExecutor;
+
+  /**
+   * @param poolName        The pool name (use lowercase hyphenated)
+   * @param threadCount     The maximum number of threads
+   * @param queueCapacity   The maximum number of queued tasks
+   * @param rejectionPolicy The policy to apply when the queue is full
+   * @param threadFactory   The thread factory
+   */
+  public MeteredThreadPoolExecutor(
+    String poolName,
+    int threadCount,
+    int queueCapacity,
+    RejectionPolicy rejectionPolicy,
+    ThreadFactory threadFactory
+  ) {
+
+    super(
+      threadCount,
+      threadCount,
+      KEEP_ALIVE_SECONDS,
+      TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>(queueCapacity),
+      threadFactory
+    );
+
+    Preconditions.checkNotNull(rejectionPolicy, "'rejectionPolicy' must be present");
+
+    this.poolName = poolName;
+    this.queueCapacity = queueCapacity;
+
+    setRejectedExecutionHandler(new PolicyHandler(rejectionPolicy));
+    allowCoreThreadTimeOut(true);
+
+  }
+
+  @Override
+  public void execute(Runnable command) {
+
+    Preconditions.checkNotNull(command, "'command' must be present");
+
+    // Note the submission time so the latency includes the time spent queued
+    super.execute(new MeteredTask(command));
+
+  }
+
+  @Override
+  protected void afterExecute(Runnable r, Throwable t) {
+
+    if (r instanceof MeteredTask) {
+      MeteredTask task = (MeteredTask) r;
+      updateMaxLatency(System.nanoTime() - task.submittedNanos);
+      r = task.delegate;
+    }
+
+    super.afterExecute(r, t);
+
+  }
+
+  @Override
+  public void shutdown() {
+
+    super.shutdown();
+
+    synchronized (this) {
+      if (overflowExecutor != null) {
+        overflowExecutor.shutdown();
+      }
+    }
+
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+
+    List<Runnable> pending = Lists.newArrayList(super.shutdownNow());
+
+    synchronized (this) {
+      if (overflowExecutor != null) {
+        pending.addAll(overflowExecutor.shutdownNow());
+      }
+    }
+
+    return pending;
+  }
+
+  /**
+   * @return The current metrics for this pool
+   */
+  public ExecutorMetrics getMetrics() {
+
+    return new ExecutorMetrics(
+      poolName,
+      getPoolSize(),
+      getActiveCount(),
+      getQueue().size(),
+      queueCapacity,
+      getCompletedTaskCount(),
+      rejectedCount.get(),
+      TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get())
+    );
+
+  }
+
+  /**
+   * @return The pool name
+   */
+  public String getPoolName() {
+    return poolName;
+  }
+
+  private void updateMaxLatency(long latencyNanos) {
+
+    long current = maxLatencyNanos.get();
+    while (latencyNanos > current && !maxLatencyNanos.compareAndSet(current, latencyNanos)) {
+      current = maxLatencyNanos.get();
+    }
+
+  }
+
+  /**
+   * <p>Run an already wrapped task on the overflow thread so that the EDT does not run it</p>
+   *
+   * @param task The task
+   */
+  private synchronized void handOff(Runnable task) {
+
+    if (overflowExecutor == null) {
+      overflowExecutor = new SafeThreadPoolExecutor(
+        1,
+        1,
+        KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(queueCapacity),
+        new ThreadFactoryBuilder().setNameFormat("safe-bounded-" + poolName + "-overflow-%d").setDaemon(true).build()
+      );
+      overflowExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    try {
+      overflowExecutor.execute(task);
+    } catch (RejectedExecutionException e) {
+      throw new RejectedExecutionException("Pool '" + poolName + "' has " + queueCapacity + " queued and " + queueCapacity + " overflow tasks");
+    }
+
+  }
+
+  /**
+   * <p>Place an already wrapped task back on the queue</p>
+   *
+   * @param task The task
+   */
+  private void requeue(Runnable task) {
+    super.execute(task);
+  }
+
+  /**
+   * <p>Wrapper to note when a task was submitted</p>
+   */
+  private static class MeteredTask implements Runnable {
+
+    private final Runnable delegate;
+
+    private final long submittedNanos = System.nanoTime();
+
+    private MeteredTask(Runnable delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void run() {
+      delegate.run();
+    }
+  }
+
+  /**
+   * <p>Handler to count rejections and apply the rejection policy</p>
+   */
+  private class PolicyHandler implements RejectedExecutionHandler {
+
+    private final RejectionPolicy rejectionPolicy;
+
+    private PolicyHandler(RejectionPolicy rejectionPolicy) {
+      this.rejectionPolicy = rejectionPolicy;
+    }
+
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+
+      rejectedCount.incrementAndGet();
+
+      if (executor.isShutdown()) {
+        throw new RejectedExecutionException("Pool '" + poolName + "' is shut down");
+      }
+
+      switch (rejectionPolicy) {
+        case CALLER_RUNS:
+          r.run();
+          break;
+        case CALLER_RUNS_OFF_EDT:
+          if (SwingUtilities.isEventDispatchThread()) {
+            handOff(r);
+          } else {
+            r.run();
+          }
+          break;
+        case ABORT:
+          throw new RejectedExecutionException("Pool '" + poolName + "' has " + queueCapacity + " queued tasks");
+        case DISCARD_OLDEST:
+          Runnable oldest = executor.getQueue().poll();
+          if (oldest instanceof MeteredTask) {
+            oldest = ((MeteredTask) oldest).delegate;
+          }
+          if (oldest instanceof Future) {
+            // Complete the discarded future so that nothing waits on it forever
+            ((Future<?>) oldest).cancel(false);
+          }
+          requeue(r);
+          break;
+        default:
+          throw new IllegalStateException("Unsupported rejection policy: " + rejectionPolicy.name());
+      }
+
+    }
+  }
+
+}
@@ -0,0 +1,38 @@
+package org.multibit.hd.core.concurrent;
+
+/**
+ * <p>Enum to provide the following to the executor registry:</p>
+ * <ul>
+ * <li>Behaviour of a bounded pool when its queue is full</li>
+ * </ul>
+ *
+ * @since 0.0.5
+ */
+public enum RejectionPolicy {
+
+  /**
+   * Run the task on the submitting thread to apply back pressure (nothing is lost, so never use for a pool fed by the EDT)
+   */
+  CALLER_RUNS,
+
+  /**
+   * As caller runs, except that a task submitted from the EDT is handed to an overflow thread (the EDT never runs a
+   * pool task and nothing is lost unless the overflow queue is also full, when the task is aborted)
+   */
+  CALLER_RUNS_OFF_EDT,
+
+  /**
+   * Throw a <code>RejectedExecutionException</code> to the submitting thread
+   */
+  ABORT,
+
+  /**
+   * Cancel the oldest queued task to make room (suits work that is superseded by newer requests)
+   */
+  DISCARD_OLDEST
+
+
+  // End of enum
+  ;
+
+}
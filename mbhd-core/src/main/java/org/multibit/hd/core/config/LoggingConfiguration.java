@@ -13,6 +13,7 @@ import java.util.TimeZone;
  * <ul>
  * <li>Configuration of console logger</li>
  * <li>Configuration of file logger</li>
+ * <li>Configuration of the asynchronous appender</li>
  * </ul>
  *
  * @since 0.0.1
@@ -33,6 +34,8 @@ public class LoggingConfiguration {
 
   private SyslogConfiguration syslog = new SyslogConfiguration();
 
+  private AsyncConfiguration async = new AsyncConfiguration();
+
   public LoggingConfiguration() {
 
     loggers.put("org.multibit", Level.DEBUG);
@@ -80,6 +83,14 @@ public class LoggingConfiguration {
     this.syslog = config;
   }
 
+  public AsyncConfiguration getAsyncConfiguration() {
+    return async;
+  }
+
+  public void setAsyncConfiguration(AsyncConfiguration config) {
+    this.async = config;
+  }
+
   /**
    * @return A deep copy of this object
    */
@@ -92,6 +103,10 @@ public class LoggingConfiguration {
     logging.setLoggers(getLoggers());
     logging.getFileConfiguration().setArchivedLogFilenamePattern(getFileConfiguration().getArchivedLogFilenamePattern());
     logging.getFileConfiguration().setCurrentLogFilename(getFileConfiguration().getCurrentLogFilename());
+    logging.getAsyncConfiguration().setQueueCapacity(getAsyncConfiguration().getQueueCapacity());
+    logging.getAsyncConfiguration().setDiscardingThreshold(getAsyncConfiguration().getDiscardingThreshold());
+    logging.getAsyncConfiguration().setMaxFlushTimeMillis(getAsyncConfiguration().getMaxFlushTimeMillis());
+    logging.getAsyncConfiguration().setMaxBlockingTimeMillis(getAsyncConfiguration().getMaxBlockingTimeMillis());
 
     return logging;
   }
@@ -247,6 +262,64 @@ public class LoggingConfiguration {
     }
   }
 
+  /**
+   * <p>Configuration of the asynchronous appender shared by the outputs</p>
+   */
+  public static class AsyncConfiguration {
+
+    /**
+     * Bounds the memory used during bursts such as debug logging while synchronizing
+     */
+    private int queueCapacity = 8192;
+
+    /**
+     * Events below this level are dropped when the queue is full (TRACE and DEBUG by default)
+     */
+    private Level discardingThreshold = Level.INFO;
+
+    /**
+     * The time allowed to write pending events on shutdown
+     */
+    private long maxFlushTimeMillis = 1000;
+
+    /**
+     * The time an event at or above the discarding threshold waits for space before it is dropped
+     */
+    private long maxBlockingTimeMillis = 500;
+
+    public int getQueueCapacity() {
+      return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+      this.queueCapacity = queueCapacity;
+    }
+
+    public Level getDiscardingThreshold() {
+      return discardingThreshold;
+    }
+
+    public void setDiscardingThreshold(Level discardingThreshold) {
+      this.discardingThreshold = discardingThreshold;
+    }
+
+    public long getMaxFlushTimeMillis() {
+      return maxFlushTimeMillis;
+    }
+
+    public void setMaxFlushTimeMillis(long maxFlushTimeMillis) {
+      this.maxFlushTimeMillis = maxFlushTimeMillis;
+    }
+
+    public long getMaxBlockingTimeMillis() {
+      return maxBlockingTimeMillis;
+    }
+
+    public void setMaxBlockingTimeMillis(long maxBlockingTimeMillis) {
+      this.maxBlockingTimeMillis = maxBlockingTimeMillis;
+    }
+  }
+
   public static class SyslogConfiguration {
 
     public enum Facility {
@@ -11,6 +11,11 @@ package org.multibit.hd.core.config;
  */
 public class WalletConfiguration {
 
+  /**
+   * The default time a payments, contacts or history write is deferred to coalesce a burst of edits
+   */
+  public static final long DEFAULT_PERSISTENCE_WRITE_WINDOW_MILLIS = 2000;
+
   private String lastSoftWalletRoot;
 
   /**
@@ -23,6 +28,10 @@ public class WalletConfiguration {
    */
   private String recentWalletLabel;
 
+  /**
+   * The time a payments, contacts or history write is deferred to coalesce a burst of edits (milliseconds)
+   */
+  private long persistenceWriteWindowMillis = DEFAULT_PERSISTENCE_WRITE_WINDOW_MILLIS;
 
   /**
    * @return The last/current soft wallet root (e.g. "mbhd-11111111-22222222-33333333-44444444-55555555")
@@ -56,6 +65,17 @@ public class WalletConfiguration {
     this.recentWalletLabel = recentWalletLabel;
   }
 
+  /**
+   * @return The time a payments, contacts or history write is deferred to coalesce a burst of edits (milliseconds)
+   */
+  public long getPersistenceWriteWindowMillis() {
+    return persistenceWriteWindowMillis;
+  }
+
+  public void setPersistenceWriteWindowMillis(long persistenceWriteWindowMillis) {
+    this.persistenceWriteWindowMillis = persistenceWriteWindowMillis;
+  }
+
   /**
    * @return A deep copy of this object
    */
@@ -66,6 +86,7 @@ public class WalletConfiguration {
     configuration.setLastSoftWalletRoot(getLastSoftWalletRoot());
     configuration.setRecentWalletDataValidity(getRecentWalletDataValidity());
     configuration.setRecentWalletLabel(getRecentWalletLabel());
+    configuration.setPersistenceWriteWindowMillis(getPersistenceWriteWindowMillis());
 
     return configuration;
   }
@@ -0,0 +1,349 @@
+package org.multibit.hd.core.crypto;
+
+import com.google.common.base.Preconditions;
+import org.multibit.hd.brit.crypto.AESUtils;
+import org.spongycastle.crypto.BufferedBlockCipher;
+import org.spongycastle.crypto.InvalidCipherTextException;
+import org.spongycastle.crypto.engines.AESFastEngine;
+import org.spongycastle.crypto.modes.CBCBlockCipher;
+import org.spongycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.spongycastle.crypto.params.KeyParameter;
+import org.spongycastle.crypto.params.ParametersWithIV;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>Utility class to provide the following to Services:</p>
+ * <ul>
+ * <li>Streaming AES-CBC 256 encryption and decryption compatible with <code>AESUtils</code></li>
+ * <li>Verification of encrypted files using a running digest rather than a decrypted copy</li>
+ * </ul>
+ * <p>Data is processed in fixed size chunks so memory use is constant regardless of the file size.</p>
+ *
+ * @since 0.0.5
+ */
+public class AESStreams {
+
+  /**
+   * The size of the chunks read from the underlying streams
+   */
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+
+  /**
+   * Utilities have private constructors
+   */
+  private AESStreams() {
+  }
+
+  /**
+   * <p>Encrypt the plain stream into the encrypted stream (neither stream is closed)</p>
+   *
+   * @param plainInputStream      The unencrypted source
+   * @param encryptedOutputStream The destination for the encrypted bytes
+   * @param aesKey                The AES key to use for encryption
+   * @param initialisationVector  The initialisation vector to use whilst encrypting
+   * @param plainDigest           A digest to update with the unencrypted bytes (may be null)
+   *
+   * @return The number of encrypted bytes written
+   *
+   * @throws IOException If the streams fail
+   */
+  public static long encrypt(
+    InputStream plainInputStream,
+    OutputStream encryptedOutputStream,
+    KeyParameter aesKey,
+    byte[] initialisationVector,
+    MessageDigest plainDigest
+  ) throws IOException {
+
+    Preconditions.checkNotNull(plainInputStream, "'plainInputStream' must be present");
+    Preconditions.checkNotNull(encryptedOutputStream, "'encryptedOutputStream' must be present");
+
+    BufferedBlockCipher cipher = newCipher(true, aesKey, initialisationVector);
+
+    byte[] plainBuffer = new byte[BUFFER_SIZE];
+    byte[] encryptedBuffer = new byte[BUFFER_SIZE + 2 * AESUtils.BLOCK_LENGTH];
+
+    long written = 0;
+    int read;
+    while ((read = plainInputStream.read(plainBuffer)) != -1) {
+      if (plainDigest != null) {
+        plainDigest.update(plainBuffer, 0, read);
+      }
+      int length = cipher.processBytes(plainBuffer, 0, read, encryptedBuffer, 0);
+      encryptedOutputStream.write(encryptedBuffer, 0, length);
+      written += length;
+    }
+
+    try {
+      int length = cipher.doFinal(encryptedBuffer, 0);
+      encryptedOutputStream.write(encryptedBuffer, 0, length);
+      written += length;
+    } catch (InvalidCipherTextException e) {
+      throw new IOException("Could not encrypt bytes.", e);
+    }
+
+    encryptedOutputStream.flush();
+
+    return written;
+  }
+
+  /**
+   * @param encryptedOutputStream The destination for the encrypted bytes (closed when the returned stream is closed)
+   * @param aesKey                The AES key to use for encryption
+   * @param initialisationVector  The initialisation vector to use whilst encrypting
+   *
+   * @return An output stream encrypting the bytes written to it (the final padded block is written on close)
+   */
+  public static OutputStream newEncryptingOutputStream(OutputStream encryptedOutputStream, KeyParameter aesKey, byte[] initialisationVector) {
+
+    Preconditions.checkNotNull(encryptedOutputStream, "'encryptedOutputStream' must be present");
+
+    return new EncryptingOutputStream(encryptedOutputStream, newCipher(true, aesKey, initialisationVector));
+  }
+
+  /**
+   * @param encryptedInputStream The encrypted source (closed when the returned stream is closed)
+   * @param aesKey               The AES key to use for decryption
+   * @param initialisationVector The initialisation vector to use whilst decrypting
+   *
+   * @return An input stream providing the decrypted bytes (an IOException is thrown at the end if the padding is invalid)
+   */
+  public static InputStream newDecryptingInputStream(InputStream encryptedInputStream, KeyParameter aesKey, byte[] initialisationVector) {
+
+    Preconditions.checkNotNull(encryptedInputStream, "'encryptedInputStream' must be present");
+
+    return new DecryptingInputStream(encryptedInputStream, newCipher(false, aesKey, initialisationVector));
+  }
+
+  /**
+   * <p>Decrypt the file chunk by chunk to provide a digest of the plain bytes without holding them in memory</p>
+   *
+   * @param encryptedFile        The encrypted file
+   * @param aesKey               The AES key to use for decryption
+   * @param initialisationVector The initialisation vector to use whilst decrypting
+   *
+   * @return The digest of the decrypted bytes
+   *
+   * @throws IOException If the file cannot be read or decrypted
+   */
+  public static byte[] digestDecrypted(File encryptedFile, KeyParameter aesKey, byte[] initialisationVector) throws IOException {
+
+    MessageDigest digest = newDigest();
+
+    try (InputStream decryptedInputStream = newDecryptingInputStream(new FileInputStream(encryptedFile), aesKey, initialisationVector)) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = decryptedInputStream.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+
+    return digest.digest();
+  }
+
+  /**
+   * @return A new digest for the running verification of plain bytes
+   */
+  public static MessageDigest newDigest() {
+
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", e);
+    }
+  }
+
+  private static BufferedBlockCipher newCipher(boolean forEncryption, KeyParameter aesKey, byte[] initialisationVector) {
+
+    Preconditions.checkNotNull(aesKey, "'aesKey' must be present");
+    Preconditions.checkNotNull(initialisationVector, "'initialisationVector' must be present");
+    Preconditions.checkState(initialisationVector.length == AESUtils.BLOCK_LENGTH, "The initialisationVector must be " + AESUtils.BLOCK_LENGTH + " bytes long.");
+
+    BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESFastEngine()));
+    cipher.init(forEncryption, new ParametersWithIV(aesKey, initialisationVector));
+
+    return cipher;
+  }
+
+  /**
+   * <p>Output stream to encrypt into the underlying stream a chunk at a time</p>
+   */
+  private static class EncryptingOutputStream extends FilterOutputStream {
+
+    private final BufferedBlockCipher cipher;
+
+    private final byte[] encryptedBuffer = new byte[BUFFER_SIZE + 2 * AESUtils.BLOCK_LENGTH];
+
+    private boolean closed = false;
+
+    private EncryptingOutputStream(OutputStream encryptedOutputStream, BufferedBlockCipher cipher) {
+
+      super(encryptedOutputStream);
+
+      this.cipher = cipher;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+      // Keep within the encrypted buffer whatever the size of the write
+      while (len > 0) {
+        int chunk = Math.min(len, BUFFER_SIZE);
+        int length = cipher.processBytes(b, off, chunk, encryptedBuffer, 0);
+        out.write(encryptedBuffer, 0, length);
+        off += chunk;
+        len -= chunk;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      if (closed) {
+        return;
+      }
+      closed = true;
+
+      try {
+        int length = cipher.doFinal(encryptedBuffer, 0);
+        out.write(encryptedBuffer, 0, length);
+      } catch (InvalidCipherTextException e) {
+        throw new IOException("Could not encrypt bytes.", e);
+      } finally {
+        super.close();
+      }
+    }
+  }
+
+  /**
+   * <p>Input stream to decrypt the underlying stream a chunk at a time</p>
+   */
+  private static class DecryptingInputStream extends FilterInputStream {
+
+    private final BufferedBlockCipher cipher;
+
+    private final byte[] encryptedBuffer = new byte[BUFFER_SIZE];
+
+    private final byte[] plainBuffer = new byte[BUFFER_SIZE + 2 * AESUtils.BLOCK_LENGTH];
+
+    private int plainPosition = 0;
+
+    private int plainLength = 0;
+
+    private boolean finished = false;
+
+    private DecryptingInputStream(InputStream encryptedInputStream, BufferedBlockCipher cipher) {
+
+      super(encryptedInputStream);
+
+      this.cipher = cipher;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+      if (!fill()) {
+        return -1;
+      }
+
+      return plainBuffer[plainPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+
+      int length = Math.min(len, plainLength - plainPosition);
+      System.arraycopy(plainBuffer, plainPosition, b, off, length);
+      plainPosition += length;
+
+      return length;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+
+      long skipped = 0;
+      while (skipped < n && fill()) {
+        int length = (int) Math.min(n - skipped, plainLength - plainPosition);
+        plainPosition += length;
+        skipped += length;
+      }
+
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return plainLength - plainPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+      // Not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+      throw new IOException("Mark and reset are not supported");
+    }
+
+    /**
+     * @return True if there are decrypted bytes available, false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+
+      while (plainPosition == plainLength) {
+
+        if (finished) {
+          return false;
+        }
+
+        plainPosition = 0;
+
+        int read = in.read(encryptedBuffer);
+        if (read == -1) {
+          finished = true;
+          try {
+            plainLength = cipher.doFinal(plainBuffer, 0);
+          } catch (InvalidCipherTextException | RuntimeException e) {
+            // Most likely a bad password
+            plainLength = 0;
+            throw new IOException("Could not decrypt: " + e.getMessage(), e);
+          }
+        } else {
+          plainLength = cipher.processBytes(encryptedBuffer, 0, read, plainBuffer, 0);
+        }
+      }
+
+      return true;
+    }
+  }
+}
@@ -3,11 +3,11 @@ package org.multibit.hd.core.crypto;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.io.ByteStreams;
-import com.google.common.io.Files;
+import com.google.common.io.CountingOutputStream;
 import com.google.protobuf.ByteString;
+import org.bitcoinj.core.Utils;
 import org.bitcoinj.crypto.KeyCrypterScrypt;
 import org.bitcoinj.wallet.Protos;
-import org.multibit.hd.brit.crypto.AESUtils;
 import org.multibit.hd.core.exceptions.EncryptedFileReaderWriterException;
 import org.multibit.hd.core.files.SecureFiles;
 import org.multibit.hd.core.managers.WalletManager;
@@ -15,11 +15,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.params.KeyParameter;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * <p>Reader / Writer to provide the following to Services:<br>
@@ -38,6 +52,35 @@ public class EncryptedFileReaderWriter {
 
   private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
 
+  /**
+   * The maximum number of derived keys to hold (current wallet plus one for a password change or wallet switch)
+   */
+  private static final int MAXIMUM_CACHED_KEYS = 2;
+
+  /**
+   * The length in bytes of the secret keying the cache index
+   */
+  private static final int CACHE_SECRET_LENGTH = 32;
+
+  private static final String CACHE_KEY_ALGORITHM = "HmacSHA256";
+
+  /**
+   * <p>The random secret for the HMAC of the salt and password that indexes the cache</p>
+   * <p>Without it a password fingerprint cannot be used to test guesses at the password faster than scrypt allows.</p>
+   */
+  private static final byte[] cacheSecret = newCacheSecret();
+
+  /**
+   * <p>The scrypt derived AES keys for the unlocked wallet session, indexed by a keyed HMAC of the salt and password</p>
+   * <p>The password itself is never held. The cache is cleared on password change, wallet switch and shutdown.</p>
+   */
+  private static final Map<String, KeyParameter> keyParameterCache = new LinkedHashMap<String, KeyParameter>(4, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, KeyParameter> eldest) {
+      return size() > MAXIMUM_CACHED_KEYS;
+    }
+  };
+
   /**
    * Decrypt an AES encrypted file and return it as an inputStream
    */
@@ -45,45 +88,49 @@ public class EncryptedFileReaderWriter {
     Preconditions.checkNotNull(encryptedProtobufFile);
     Preconditions.checkNotNull(password);
     try {
-      // Read the encrypted file in and decrypt it.
-      byte[] encryptedWalletBytes = Files.toByteArray(encryptedProtobufFile);
-      //log.debug("Encrypted wallet bytes after load:\n" + Utils.HEX.encode(encryptedWalletBytes));
-
-      KeyCrypterScrypt keyCrypterScrypt = new KeyCrypterScrypt(makeScryptParameters(salt));
-      KeyParameter keyParameter = keyCrypterScrypt.deriveKey(password);
+      KeyParameter keyParameter = deriveKey(password, salt);
 
-      // Decrypt the wallet bytes
-      byte[] decryptedBytes = AESUtils.decrypt(encryptedWalletBytes, keyParameter, initialisationVector);
-
-      return new ByteArrayInputStream(decryptedBytes);
+      // Decrypt the file as it is read in (the ciphertext is never held in memory)
+      try (InputStream decryptedInputStream = openAndDecrypt(encryptedProtobufFile, keyParameter, initialisationVector)) {
+        return new ByteArrayInputStream(ByteStreams.toByteArray(decryptedInputStream));
+      }
     } catch (Exception e) {
       throw new EncryptedFileReaderWriterException("Cannot read and decrypt the file '" + encryptedProtobufFile.getAbsolutePath() + "'", e);
     }
   }
 
+  /**
+   * Open an AES encrypted file as a stream of decrypted bytes. The caller must close the stream.
+   * An IOException is thrown when the end of the file is reached if the key is incorrect.
+   */
+  public static InputStream openAndDecrypt(File encryptedFile, KeyParameter keyParameter, byte[] initialisationVector) throws IOException {
+    Preconditions.checkNotNull(encryptedFile);
+    Preconditions.checkNotNull(keyParameter);
+
+    return AESStreams.newDecryptingInputStream(
+      new BufferedInputStream(new FileInputStream(encryptedFile), AESStreams.BUFFER_SIZE),
+      keyParameter,
+      initialisationVector
+    );
+  }
+
   /**
    * Encrypt a byte array and output to a file, using an intermediate temporary file
    */
   public static void encryptAndWrite(byte[] unencryptedBytes, CharSequence password, File outputFile) throws EncryptedFileReaderWriterException {
     try {
-      KeyCrypterScrypt keyCrypterScrypt = new KeyCrypterScrypt(makeScryptParameters(WalletManager.scryptSalt()));
-      KeyParameter keyParameter = keyCrypterScrypt.deriveKey(password);
-
-      // Create an AES encoded version of the unencryptedBytes, using the credentials
-      byte[] encryptedBytes = AESUtils.encrypt(unencryptedBytes, keyParameter, WalletManager.aesInitialisationVector());
+      KeyParameter keyParameter = deriveKey(password, WalletManager.scryptSalt());
 
-      //log.debug("Encrypted wallet bytes (original):\n" + Utils.HEX.encode(encryptedBytes));
+      // Stream an AES encoded version of the unencryptedBytes to a temporary file, using the credentials
+      File temporaryFile = new File(outputFile.getAbsolutePath() + TEMPORARY_FILE_EXTENSION);
+      byte[] plainDigest = encryptToFile(new ByteArrayInputStream(unencryptedBytes), temporaryFile, keyParameter, WalletManager.aesInitialisationVector());
 
       // Check that the encryption is reversible
-      byte[] rebornBytes = AESUtils.decrypt(encryptedBytes, keyParameter, WalletManager.aesInitialisationVector());
-
-      if (Arrays.equals(unencryptedBytes, rebornBytes)) {
+      if (isReversible(temporaryFile, plainDigest, keyParameter, WalletManager.aesInitialisationVector())) {
         // Save encrypted bytes
-
-        ByteArrayInputStream encryptedWalletByteArrayInputStream = new ByteArrayInputStream(encryptedBytes);
-        File temporaryFile = new File(outputFile.getAbsolutePath() + TEMPORARY_FILE_EXTENSION);
-        SecureFiles.writeFile(encryptedWalletByteArrayInputStream, temporaryFile, outputFile);
+        SecureFiles.replaceFile(temporaryFile, outputFile);
       } else {
+        SecureFiles.secureDelete(temporaryFile);
         throw new EncryptedFileReaderWriterException("The encryption was not reversible so aborting.");
       }
     } catch (Exception e) {
@@ -102,19 +149,33 @@ public class EncryptedFileReaderWriter {
      Preconditions.checkNotNull(fileToEncrypt);
      Preconditions.checkNotNull(password);
      Preconditions.checkNotNull(encryptedBackupAESKey);
-     try {
-       // Decrypt the backup AES key stored in the wallet summary
-       KeyParameter walletPasswordDerivedAESKey = org.multibit.hd.core.crypto.AESUtils.createAESKey(password.getBytes(Charsets.UTF_8), WalletManager.scryptSalt());
-       byte[] backupAESKeyBytes = org.multibit.hd.brit.crypto.AESUtils.decrypt(encryptedBackupAESKey, walletPasswordDerivedAESKey, WalletManager.aesInitialisationVector());
-       KeyParameter backupAESKey = new KeyParameter(backupAESKeyBytes);
-       File destinationFile =  new File(fileToEncrypt.getAbsoluteFile() + WalletManager.MBHD_AES_SUFFIX);
-
-       return encryptAndDeleteOriginal(fileToEncrypt, destinationFile, backupAESKey, WalletManager.aesInitialisationVector());
-     } catch (Exception e) {
-       throw new EncryptedFileReaderWriterException("Could not decrypt backup AES key", e);
-     }
+     KeyParameter backupAESKey = decryptBackupAESKey(password, encryptedBackupAESKey);
+     File destinationFile =  new File(fileToEncrypt.getAbsoluteFile() + WalletManager.MBHD_AES_SUFFIX);
+
+     return encryptAndDeleteOriginal(fileToEncrypt, destinationFile, backupAESKey, WalletManager.aesInitialisationVector());
    }
 
+  /**
+   * @param password              The wallet password
+   * @param encryptedBackupAESKey The encrypted backup AES key from the wallet summary
+   *
+   * @return The backup AES key used to encrypt zip backups
+   *
+   * @throws EncryptedFileReaderWriterException If the backup AES key cannot be decrypted
+   */
+  public static KeyParameter decryptBackupAESKey(CharSequence password, byte[] encryptedBackupAESKey) throws EncryptedFileReaderWriterException {
+    Preconditions.checkNotNull(password);
+    Preconditions.checkNotNull(encryptedBackupAESKey);
+    try {
+      // Decrypt the backup AES key stored in the wallet summary
+      KeyParameter walletPasswordDerivedAESKey = org.multibit.hd.core.crypto.AESUtils.createAESKey(password.toString().getBytes(Charsets.UTF_8), WalletManager.scryptSalt());
+      byte[] backupAESKeyBytes = org.multibit.hd.brit.crypto.AESUtils.decrypt(encryptedBackupAESKey, walletPasswordDerivedAESKey, WalletManager.aesInitialisationVector());
+      return new KeyParameter(backupAESKeyBytes);
+    } catch (Exception e) {
+      throw new EncryptedFileReaderWriterException("Could not decrypt backup AES key", e);
+    }
+  }
+
   /**
      * Encrypt the file specified using an AES key derived from the supplied credentials
      * @param fileToEncrypt file to encrypt
@@ -143,33 +204,27 @@ public class EncryptedFileReaderWriter {
     Preconditions.checkNotNull(destinationFile);
     Preconditions.checkNotNull(password);
 
-    KeyCrypterScrypt keyCrypterScrypt = new KeyCrypterScrypt(makeScryptParameters(WalletManager.scryptSalt()));
-    KeyParameter keyParameter = keyCrypterScrypt.deriveKey(password);
+    KeyParameter keyParameter = deriveKey(password, WalletManager.scryptSalt());
     return encryptAndDeleteOriginal(fileToEncrypt, destinationFile, keyParameter, WalletManager.aesInitialisationVector());
   }
 
   private static File encryptAndDeleteOriginal(File fileToEncrypt, File encryptedFilename, KeyParameter keyParameter, byte[] initialisationVector) throws EncryptedFileReaderWriterException {
-    FileOutputStream encryptedWalletOutputStream = null;
     try {
-      // Read in the file
-      byte[] unencryptedBytes = Files.toByteArray(fileToEncrypt);
-
-      // Create an AES encoded version of the fileToEncrypt, using the KeyParameter supplied
-      byte[] encryptedBytes = AESUtils.encrypt(unencryptedBytes, keyParameter, initialisationVector);
-
-      //log.debug("Encrypted wallet bytes (original):\n" + Utils.HEX.encode(encryptedBytes));
+      // Stream an AES encoded version of the fileToEncrypt, using the KeyParameter supplied
+      final byte[] plainDigest;
+      final long encryptedLength;
+      try (InputStream unencryptedInputStream = new FileInputStream(fileToEncrypt);
+           CountingOutputStream encryptedOutputStream = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(encryptedFilename), AESStreams.BUFFER_SIZE))) {
+        MessageDigest digest = AESStreams.newDigest();
+        AESStreams.encrypt(unencryptedInputStream, encryptedOutputStream, keyParameter, initialisationVector, digest);
+        plainDigest = digest.digest();
+        encryptedLength = encryptedOutputStream.getCount();
+      }
 
       // Check that the encryption is reversible
-      byte[] rebornBytes = AESUtils.decrypt(encryptedBytes, keyParameter, initialisationVector);
-
-      if (Arrays.equals(unencryptedBytes, rebornBytes)) {
-        // Save encrypted bytes
-        ByteArrayInputStream encryptedWalletByteArrayInputStream = new ByteArrayInputStream(encryptedBytes);
-        encryptedWalletOutputStream = new FileOutputStream(encryptedFilename);
-        ByteStreams.copy(encryptedWalletByteArrayInputStream, encryptedWalletOutputStream);
-        encryptedWalletOutputStream.flush();
+      if (isReversible(encryptedFilename, plainDigest, keyParameter, initialisationVector)) {
 
-        if (encryptedFilename.length() == encryptedBytes.length) {
+        if (encryptedFilename.length() == encryptedLength) {
           SecureFiles.secureDelete(fileToEncrypt);
         } else {
           // The saved file isn't the correct size - do not delete the original
@@ -182,18 +237,128 @@ public class EncryptedFileReaderWriter {
       }
     } catch (Exception e) {
       throw new EncryptedFileReaderWriterException("Cannot make encrypted copy for file '" + fileToEncrypt.getAbsolutePath() + "'", e);
+    }
+  }
+
+  /**
+   * Encrypt the stream to the file
+   *
+   * @return The digest of the unencrypted bytes for the reversible check
+   */
+  private static byte[] encryptToFile(InputStream unencryptedInputStream, File encryptedFile, KeyParameter keyParameter, byte[] initialisationVector) throws IOException {
+    MessageDigest digest = AESStreams.newDigest();
+    try (OutputStream encryptedOutputStream = new BufferedOutputStream(new FileOutputStream(encryptedFile), AESStreams.BUFFER_SIZE)) {
+      AESStreams.encrypt(unencryptedInputStream, encryptedOutputStream, keyParameter, initialisationVector, digest);
+    }
+    return digest.digest();
+  }
+
+  /**
+   * Decrypt the file chunk by chunk and compare the running digest with that of the original unencrypted bytes
+   *
+   * @return True if the file decrypts back to the original bytes
+   */
+  private static boolean isReversible(File encryptedFile, byte[] plainDigest, KeyParameter keyParameter, byte[] initialisationVector) {
+    try {
+      return MessageDigest.isEqual(plainDigest, AESStreams.digestDecrypted(encryptedFile, keyParameter, initialisationVector));
+    } catch (IOException e) {
+      log.error("Could not decrypt '{}' for verification", encryptedFile.getAbsolutePath(), e);
+      return false;
+    }
+  }
+
+  /**
+   * <p>Derive the AES key for the password using scrypt, reusing the key from an earlier call in this wallet session</p>
+   *
+   * @param password The password
+   * @param salt     The scrypt salt
+   *
+   * @return A copy of the AES key (so that clearing the cache does not affect the caller)
+   */
+  public static KeyParameter deriveKey(CharSequence password, byte[] salt) {
+
+    Preconditions.checkNotNull(password, "'password' must be present");
+    Preconditions.checkNotNull(salt, "'salt' must be present");
+
+    String cacheKey = passwordFingerprint(password, salt);
+
+    synchronized (keyParameterCache) {
+      KeyParameter keyParameter = keyParameterCache.get(cacheKey);
+      if (keyParameter != null) {
+        return new KeyParameter(keyParameter.getKey());
+      }
+    }
+
+    // Derive outside the lock since scrypt is deliberately slow
+    KeyCrypterScrypt keyCrypterScrypt = new KeyCrypterScrypt(makeScryptParameters(salt));
+    KeyParameter keyParameter = keyCrypterScrypt.deriveKey(password);
+
+    synchronized (keyParameterCache) {
+      keyParameterCache.put(cacheKey, new KeyParameter(keyParameter.getKey()));
+    }
+
+    return keyParameter;
+  }
+
+  /**
+   * <p>Discard all derived AES keys (password change, wallet switch and shutdown)</p>
+   */
+  public static void clearKeyCache() {
+
+    synchronized (keyParameterCache) {
+      if (!keyParameterCache.isEmpty()) {
+        log.debug("Clearing {} cached AES key(s)", keyParameterCache.size());
+      }
+      // Wipe the key bytes rather than leave them for the garbage collector
+      for (KeyParameter keyParameter : keyParameterCache.values()) {
+        Arrays.fill(keyParameter.getKey(), (byte) 0);
+      }
+      keyParameterCache.clear();
+    }
+  }
+
+  /**
+   * @param password The password
+   * @param salt     The scrypt salt
+   *
+   * @return An HMAC-SHA256 of the salt and password under a per-process secret (safe to hold for the session since it
+   * cannot be used to test guesses at the password)
+   */
+  public static String passwordFingerprint(CharSequence password, byte[] salt) {
+
+    Preconditions.checkNotNull(password, "'password' must be present");
+    Preconditions.checkNotNull(salt, "'salt' must be present");
+
+
+    ByteBuffer passwordBytes = Charsets.UTF_8.encode(CharBuffer.wrap(password));
+    try {
+      Mac mac = Mac.getInstance(CACHE_KEY_ALGORITHM);
+      mac.init(new SecretKeySpec(cacheSecret, CACHE_KEY_ALGORITHM));
+      mac.update(salt);
+      mac.update(passwordBytes);
+      return Utils.HEX.encode(mac.doFinal());
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(CACHE_KEY_ALGORITHM + " is not available", e);
     } finally {
-      if (encryptedWalletOutputStream != null) {
-        try {
-          encryptedWalletOutputStream.close();
-          encryptedWalletOutputStream = null;
-        } catch (IOException e) {
-          log.error("Cannot close wallet outpur stream", e);
-        }
+      // Wipe the encoded password
+      passwordBytes.clear();
+      while (passwordBytes.hasRemaining()) {
+        passwordBytes.put((byte) 0);
       }
     }
   }
 
+  /**
+   * @return A random secret for keying the cache index (held for the life of the process)
+   */
+  private static byte[] newCacheSecret() {
+
+    byte[] secret = new byte[CACHE_SECRET_LENGTH];
+    new SecureRandom().nextBytes(secret);
+
+    return secret;
+  }
+
   public static Protos.ScryptParameters makeScryptParameters(byte[] salt) {
     Protos.ScryptParameters.Builder scryptParametersBuilder = Protos.ScryptParameters.newBuilder().setSalt(ByteString.copyFrom(salt));
     return scryptParametersBuilder.build();
@@ -0,0 +1,103 @@
+package org.multibit.hd.core.dto;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>DTO to provide the following to the backup service:</p>
+ * <ul>
+ * <li>Counts of the backups written and skipped for one type of backup</li>
+ * <li>The number of bytes written and the time spent writing them</li>
+ * </ul>
+ * <p>The counters are updated by the backup thread and may be read from any thread.</p>
+ *
+ * @since 0.0.5
+ */
+public class BackupMetrics {
+
+  private final BackupType backupType;
+
+  private final AtomicLong written = new AtomicLong();
+
+  private final AtomicLong skipped = new AtomicLong();
+
+  private final AtomicLong bytesWritten = new AtomicLong();
+
+  private final AtomicLong durationMillis = new AtomicLong();
+
+  private final AtomicLong lastDurationMillis = new AtomicLong();
+
+  public BackupMetrics(BackupType backupType) {
+    this.backupType = backupType;
+  }
+
+  /**
+   * <p>Record a backup that was skipped because nothing had changed since the last one</p>
+   */
+  public void recordSkipped() {
+    skipped.incrementAndGet();
+  }
+
+  /**
+   * <p>Record a backup that was written</p>
+   *
+   * @param bytes  The size of the backup in bytes
+   * @param millis The time taken to create the backup
+   */
+  public void recordWritten(long bytes, long millis) {
+    written.incrementAndGet();
+    bytesWritten.addAndGet(bytes);
+    durationMillis.addAndGet(millis);
+    lastDurationMillis.set(millis);
+  }
+
+  public BackupType getBackupType() {
+    return backupType;
+  }
+
+  /**
+   * @return The number of backups written
+   */
+  public long getWritten() {
+    return written.get();
+  }
+
+  /**
+   * @return The number of backups skipped because nothing had changed
+   */
+  public long getSkipped() {
+    return skipped.get();
+  }
+
+  /**
+   * @return The total number of bytes written
+   */
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /**
+   * @return The total time spent writing backups in milliseconds
+   */
+  public long getDurationMillis() {
+    return durationMillis.get();
+  }
+
+  /**
+   * @return The time taken by the most recent backup in milliseconds
+   */
+  public long getLastDurationMillis() {
+    return lastDurationMillis.get();
+  }
+
+  @Override
+  public String toString() {
+    return "BackupMetrics{" +
+      "backupType=" + backupType +
+      ", written=" + written +
+      ", skipped=" + skipped +
+      ", bytesWritten=" + bytesWritten +
+      ", durationMillis=" + durationMillis +
+      ", lastDurationMillis=" + lastDurationMillis +
+      '}';
+  }
+}
@@ -0,0 +1,28 @@
+package org.multibit.hd.core.dto;
+
+/**
+ * <p>Enum to provide the following to the backup service:</p>
+ * <ul>
+ * <li>Identification of the kinds of backup that are made on a schedule</li>
+ * </ul>
+ *
+ * @since 0.0.5
+ */
+public enum BackupType {
+
+  /**
+   * A timestamped copy of the wallet in the rolling-backup directory
+   */
+  ROLLING,
+
+  /**
+   * An encrypted zip of the wallet directory in the zip-backup directory
+   */
+  LOCAL_ZIP,
+
+  /**
+   * An encrypted zip of the wallet directory in the cloud backup directory
+   */
+  CLOUD_ZIP
+
+}
@@ -0,0 +1,66 @@
+package org.multibit.hd.core.dto;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import org.bitcoinj.core.Coin;
+
+/**
+ * <p>Value object to provide the following to Bitcoin network service:</p>
+ * <ul>
+ * <li>A single output of a send (recipient, amount and note)</li>
+ * </ul>
+ *
+ * @since 0.0.5
+ */
+public class RecipientPayment {
+
+  private final Recipient recipient;
+  private final Coin amount;
+  private final Optional<String> note;
+
+  /**
+   * @param recipient The recipient (with an optional contact)
+   * @param amount    The amount to send to the recipient
+   * @param note      The note for this output
+   */
+  public RecipientPayment(Recipient recipient, Coin amount, Optional<String> note) {
+
+    Preconditions.checkNotNull(recipient, "'recipient' must be present");
+    Preconditions.checkNotNull(amount, "'amount' must be present");
+    Preconditions.checkNotNull(note, "'note' must be present");
+
+    this.recipient = recipient;
+    this.amount = amount;
+    this.note = note;
+  }
+
+  /**
+   * @return The recipient
+   */
+  public Recipient getRecipient() {
+    return recipient;
+  }
+
+  /**
+   * @return The amount to send to the recipient
+   */
+  public Coin getAmount() {
+    return amount;
+  }
+
+  /**
+   * @return The note for this output
+   */
+  public Optional<String> getNote() {
+    return note;
+  }
+
+  @Override
+  public String toString() {
+    return "RecipientPayment{" +
+      "recipient=" + recipient +
+      ", amount=" + amount +
+      ", note=" + note +
+      '}';
+  }
+}
@@ -4,20 +4,26 @@ import org.bitcoinj.core.Address;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.Wallet;
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import org.multibit.hd.brit.dto.FeeState;
+import org.multibit.hd.core.coins.CoinSelectionStrategy;
 import org.spongycastle.crypto.params.KeyParameter;
 
+import java.util.List;
+
 /**
  * <p>Data object to provide the following to Bitcoin network service:</p>
  * <ul>
  * <li>Contains send bitcoin data</li>
+ * <li>Supports a batch of recipients paid by a single transaction</li>
  * </ul>
  *
  * @since 0.0.1
  */
 public class SendRequestSummary {
 
-  private final Address destinationAddress;
+  private final List<RecipientPayment> recipientPayments;
   private final Coin amount;
   private final Optional<FiatPayment> fiatPayment;
   private final Address changeAddress;
@@ -31,6 +37,7 @@ public class SendRequestSummary {
   private Optional<Wallet.SendRequest> sendRequest = Optional.absent();
   private Optional<String> notes = Optional.absent();
   private String password;
+  private CoinSelectionStrategy coinSelectionStrategy = CoinSelectionStrategy.LARGEST_FIRST;
 
   /**
    * The client fee added to the sendRequest.tx
@@ -60,8 +67,49 @@ public class SendRequestSummary {
     Optional<FeeState> feeState,
     boolean emptyWallet) {
 
-    this.destinationAddress = destinationAddress;
-    this.amount = amount;
+    this(
+      ImmutableList.of(new RecipientPayment(new Recipient(destinationAddress), amount, Optional.<String>absent())),
+      fiatPayment,
+      changeAddress,
+      feePerKB,
+      password,
+      feeState,
+      emptyWallet
+    );
+
+  }
+
+  /**
+   * <p>A batch send paying all the recipients in a single transaction</p>
+   *
+   * @param recipientPayments The recipients and amounts in output order (at least one)
+   * @param fiatPayment       the fiat payment equivalent of the total bitcoin amount
+   * @param changeAddress     The change address
+   * @param feePerKB          The fee per Kb (in coins)
+   * @param password          The wallet credentials
+   * @param feeState          The BRIT fee state
+   * @param emptyWallet       True if the wallet should be fully emptied (single recipient only)
+   */
+  public SendRequestSummary(
+    List<RecipientPayment> recipientPayments,
+    Optional<FiatPayment> fiatPayment,
+    Address changeAddress,
+    Coin feePerKB,
+    String password,
+    Optional<FeeState> feeState,
+    boolean emptyWallet) {
+
+    Preconditions.checkNotNull(recipientPayments, "'recipientPayments' must be present");
+    Preconditions.checkArgument(!recipientPayments.isEmpty(), "'recipientPayments' must not be empty");
+    Preconditions.checkArgument(!emptyWallet || recipientPayments.size() == 1, "An empty wallet send must have a single recipient");
+
+    Coin totalAmount = Coin.ZERO;
+    for (RecipientPayment recipientPayment : recipientPayments) {
+      totalAmount = totalAmount.add(recipientPayment.getAmount());
+    }
+
+    this.recipientPayments = ImmutableList.copyOf(recipientPayments);
+    this.amount = totalAmount;
     this.fiatPayment = fiatPayment;
     this.changeAddress = changeAddress;
     this.feePerKB = feePerKB;
@@ -72,14 +120,28 @@ public class SendRequestSummary {
   }
 
   /**
-   * @return The destination address
+   * @return The destination address (the first recipient of a batch)
    */
   public Address getDestinationAddress() {
-    return destinationAddress;
+    return recipientPayments.get(0).getRecipient().getBitcoinAddress();
+  }
+
+  /**
+   * @return The recipients and amounts in output order
+   */
+  public List<RecipientPayment> getRecipientPayments() {
+    return recipientPayments;
   }
 
   /**
-   * @return The amount sent by the user in coins
+   * @return True if more than one recipient is paid by this send
+   */
+  public boolean isBatch() {
+    return recipientPayments.size() > 1;
+  }
+
+  /**
+   * @return The amount sent by the user in coins (the sum of all recipients)
    * This does NOT include any client fee
    */
   public Coin getAmount() {
@@ -158,6 +220,20 @@ public class SendRequestSummary {
     this.feeAddress = feeAddress;
   }
 
+  /**
+   * @return The strategy used to choose the outputs to spend
+   */
+  public CoinSelectionStrategy getCoinSelectionStrategy() {
+    return coinSelectionStrategy;
+  }
+
+  public void setCoinSelectionStrategy(CoinSelectionStrategy coinSelectionStrategy) {
+
+    Preconditions.checkNotNull(coinSelectionStrategy, "'coinSelectionStrategy' must be present");
+
+    this.coinSelectionStrategy = coinSelectionStrategy;
+  }
+
   /**
    * @return The wallet AES key
    */
@@ -184,8 +260,36 @@ public class SendRequestSummary {
     this.notes = notes;
   }
 
+  /**
+   * @return The notes for the transaction (for a batch this includes a line for each recipient with a note or contact)
+   */
   public Optional<String> getNotes() {
-    return notes;
+
+    if (!isBatch()) {
+      return notes;
+    }
+
+    // The transaction info holds a single note so combine the per-output details
+    StringBuilder builder = new StringBuilder(notes.or(""));
+    for (RecipientPayment recipientPayment : recipientPayments) {
+
+      Recipient recipient = recipientPayment.getRecipient();
+      if (!recipientPayment.getNote().isPresent() && !recipient.getContact().isPresent()) {
+        continue;
+      }
+
+      if (builder.length() > 0) {
+        builder.append('\n');
+      }
+      builder.append(recipient.getSummary())
+        .append(' ')
+        .append(recipientPayment.getAmount().toPlainString());
+      if (recipientPayment.getNote().isPresent()) {
+        builder.append(": ").append(recipientPayment.getNote().get());
+      }
+    }
+
+    return builder.length() > 0 ? Optional.of(builder.toString()) : Optional.<String>absent();
   }
 
 
@@ -200,11 +304,12 @@ public class SendRequestSummary {
   @Override
   public String toString() {
     return "SendRequestSummary{" +
-      "destinationAddress=" + destinationAddress +
+      "recipientPayments=" + recipientPayments +
       ", amount=" + amount +
       ", fiatPayment=" +fiatPayment +
       ", changeAddress=" + changeAddress +
       ", feePerKB=" + feePerKB +
+      ", coinSelectionStrategy=" + coinSelectionStrategy +
       ", credentials=***" +
       ", feeStateOptional=" + feeState +
       ", clientFeeAdded=" + clientFeeAdded +
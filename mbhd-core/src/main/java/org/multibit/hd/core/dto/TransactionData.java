@@ -2,6 +2,8 @@ package org.multibit.hd.core.dto;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.TransactionConfidence;
@@ -45,14 +47,14 @@ public class TransactionData implements PaymentData {
   private String note;
 
   /**
-   * The transaction in its raw form (toStringed)
+   * The transaction in its raw form (toStringed), computed on first use
    */
-  private final String rawTransaction;
+  private final Supplier<String> rawTransaction;
 
   /**
-   * The size (in bytes)of the transaction
+   * The size (in bytes) of the transaction, computed on first use
    */
-  private int size;
+  private final Supplier<Integer> size;
 
   /**
    * The bitcoin addresses in this wallet that the transaction sends bitcoin to
@@ -72,8 +74,8 @@ public class TransactionData implements PaymentData {
    * @param description       The description
    * @param isCoinbase        True if coinbase
    * @param outputAddresses   The output addresses
-   * @param rawTransaction    The raw transaction
-   * @param size              The size in bytes
+   * @param rawTransaction    The raw transaction (evaluated lazily and at most once)
+   * @param size              The size in bytes (evaluated lazily and at most once)
    * @param isMock            True if this is a mock (CSV export header)
    */
   public TransactionData(
@@ -89,8 +91,8 @@ public class TransactionData implements PaymentData {
     String description,
     boolean isCoinbase,
     Collection<Address> outputAddresses,
-    String rawTransaction,
-    int size,
+    @Nullable Supplier<String> rawTransaction,
+    @Nullable Supplier<Integer> size,
     boolean isMock
   ) {
 
@@ -107,6 +109,7 @@ public class TransactionData implements PaymentData {
       Preconditions.checkNotNull(description, "'description' must be present");
       Preconditions.checkNotNull(outputAddresses, "'outputAddress' must be present");
       Preconditions.checkNotNull(rawTransaction, "'rawTransaction' must be present");
+      Preconditions.checkNotNull(size, "'size' must be present");
     }
 
     this.transactionId = transactionId;
@@ -121,8 +124,8 @@ public class TransactionData implements PaymentData {
     this.description = description;
     this.coinBase = isCoinbase;
     this.outputAddresses = outputAddresses;
-    this.rawTransaction = rawTransaction;
-    this.size = size;
+    this.rawTransaction = rawTransaction == null ? Suppliers.<String>ofInstance(null) : Suppliers.memoize(rawTransaction);
+    this.size = size == null ? Suppliers.ofInstance(0) : Suppliers.memoize(size);
   }
 
   @Override
@@ -284,11 +287,17 @@ public class TransactionData implements PaymentData {
     return outputAddresses;
   }
 
+  /**
+   * @return The transaction in its raw form (computed on the first call)
+   */
   public String getRawTransaction() {
-    return rawTransaction;
+    return rawTransaction.get();
   }
 
+  /**
+   * @return The size of the serialized transaction in bytes (computed on the first call)
+   */
   public int getSize() {
-    return size;
+    return size.get();
   }
 }
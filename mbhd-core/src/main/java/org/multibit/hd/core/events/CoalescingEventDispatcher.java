@@ -0,0 +1,163 @@
+package org.multibit.hd.core.events;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Dispatcher to provide the following to Core Event API:</p>
+ * <ul>
+ * <li>Delivery of core events in batches once per frame window away from the posting thread</li>
+ * <li>Coalescing of high frequency events where only the latest value matters (last value wins)</li>
+ * </ul>
+ *
+ * <p>Events sharing a coalescing key replace each other while they wait for the next frame. Events without
+ * a key are always delivered. A batch is delivered in the order of the most recent post for each entry so
+ * that subscribers see the same final state as they would have done without coalescing.</p>
+ *
+ * <p>Delivery is single threaded. Every batch is posted to the event bus from the one thread of the provided
+ * scheduler ("core-events-dispatch" for the Core Event API) and the Guava event bus runs each subscriber on
+ * the posting thread, so all subscribers to coalesced events run one after another on that thread. Batches never
+ * overlap and a frame is never delivered ahead of an earlier one, but a slow subscriber delays the rest of its
+ * batch and the following frames. Subscribers must hand long running work to another executor (or the EDT).</p>
+ *
+ * <p>Subscribers are still found and called by the event bus through reflection. Only the number of posts is
+ * reduced, which is where the cost of high frequency events lies.</p>
+ *
+ * @since 0.0.5
+ */
+public class CoalescingEventDispatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(CoalescingEventDispatcher.class);
+
+  private final EventBus eventBus;
+
+  private final long frameMillis;
+
+  private final ListeningScheduledExecutorService scheduler;
+
+  private final Object lock = new Object();
+
+  /**
+   * The events waiting for the next frame by coalescing key (guarded by lock)
+   */
+  private final Map<Object, CoreEvent> pendingEvents = Maps.newLinkedHashMap();
+
+  /**
+   * True if a delivery has been scheduled for the pending events (guarded by lock)
+   */
+  private boolean deliveryScheduled = false;
+
+  private final AtomicLong postedCount = new AtomicLong();
+
+  private final AtomicLong deliveredCount = new AtomicLong();
+
+  private final Runnable deliveryTask = new Runnable() {
+    @Override
+    public void run() {
+      deliverPendingEvents();
+    }
+  };
+
+  /**
+   * @param eventBus    The event bus for delivery to subscribers
+   * @param frameMillis The frame window in milliseconds
+   * @param scheduler   A single thread scheduler to deliver the batches
+   */
+  public CoalescingEventDispatcher(EventBus eventBus, long frameMillis, ListeningScheduledExecutorService scheduler) {
+
+    Preconditions.checkNotNull(eventBus, "'eventBus' must be present");
+    Preconditions.checkArgument(frameMillis >= 0, "'frameMillis' must not be negative");
+    Preconditions.checkNotNull(scheduler, "'scheduler' must be present");
+
+    this.eventBus = eventBus;
+    this.frameMillis = frameMillis;
+    this.scheduler = scheduler;
+
+  }
+
+  /**
+   * <p>Post an event that must be delivered in the next frame</p>
+   *
+   * @param event The event
+   */
+  public void post(CoreEvent event) {
+
+    // A key that nothing else can share
+    post(event, new Object());
+
+  }
+
+  /**
+   * <p>Post an event that replaces any event with the same key waiting for the next frame</p>
+   *
+   * @param event         The event
+   * @param coalescingKey The coalescing key (must provide equals and hashCode)
+   */
+  public void post(CoreEvent event, Object coalescingKey) {
+
+    Preconditions.checkNotNull(event, "'event' must be present");
+    Preconditions.checkNotNull(coalescingKey, "'coalescingKey' must be present");
+
+    postedCount.incrementAndGet();
+
+    synchronized (lock) {
+
+      // Move the entry to the end so the batch reflects the order of the most recent posts
+      pendingEvents.remove(coalescingKey);
+      pendingEvents.put(coalescingKey, event);
+
+      if (!deliveryScheduled) {
+        deliveryScheduled = true;
+        scheduler.schedule(deliveryTask, frameMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+
+  }
+
+  /**
+   * @return The number of events posted to this dispatcher
+   */
+  public long getPostedCount() {
+    return postedCount.get();
+  }
+
+  /**
+   * @return The number of events delivered to the event bus (fewer than posted if any were coalesced)
+   */
+  public long getDeliveredCount() {
+    return deliveredCount.get();
+  }
+
+  /**
+   * <p>Deliver the current batch to the event bus</p>
+   */
+  private void deliverPendingEvents() {
+
+    List<CoreEvent> batch;
+    synchronized (lock) {
+      batch = Lists.newArrayList(pendingEvents.values());
+      pendingEvents.clear();
+      deliveryScheduled = false;
+    }
+
+    log.trace("Delivering a batch of {} event(s)", batch.size());
+
+    for (CoreEvent event : batch) {
+      eventBus.post(event);
+    }
+
+    deliveredCount.addAndGet(batch.size());
+
+  }
+
+}
@@ -7,6 +7,8 @@ import com.google.common.eventbus.EventBus;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import org.joda.time.DateTime;
+import org.multibit.hd.core.concurrent.ExecutorPool;
+import org.multibit.hd.core.concurrent.ExecutorRegistry;
 import org.multibit.hd.core.concurrent.SafeExecutors;
 import org.multibit.hd.core.dto.BitcoinNetworkSummary;
 import org.multibit.hd.core.dto.ExchangeSummary;
@@ -38,9 +40,10 @@ public class CoreEvents {
   private static final Object lockObject = new Object();
 
   // Provide a CoreEvent thread pool to ensure non-UI events are isolated from the EDT
-  private static ListeningExecutorService eventExecutor = SafeExecutors.newFixedThreadPool(10, "core-events");
+  private static ListeningExecutorService eventExecutor = ExecutorRegistry.getOrCreateExecutor(ExecutorPool.CORE_EVENTS);
 
-  // Provide a slower transaction seen thread that is isolated from the EDT
+  // Provide a slower transaction seen thread that is isolated from the EDT (dedicated so that the events and their
+  // consolidated follow up are delivered in order without waiting behind other work)
   private static ListeningScheduledExecutorService txSeenExecutor = SafeExecutors.newSingleThreadScheduledExecutor("tx-seen");
 
   /**
@@ -48,6 +51,21 @@ public class CoreEvents {
    */
   private static final EventBus coreEventBus = new EventBus(ExceptionHandler.newSubscriberExceptionHandler());
 
+  /**
+   * The frame window for coalescing high frequency events (the UI does not need more than 20 updates a second)
+   */
+  private static final long COALESCING_FRAME_MILLIS = 50;
+
+  /**
+   * Deliver high frequency events in batches, keeping only the latest of each kind, away from the network threads
+   * (dedicated single thread since each frame must be delivered in order)
+   */
+  private static final CoalescingEventDispatcher coalescingDispatcher = new CoalescingEventDispatcher(
+    coreEventBus,
+    COALESCING_FRAME_MILLIS,
+    SafeExecutors.newSingleThreadScheduledExecutor("core-events-dispatch")
+  );
+
   /**
    * Keep track of the Guava event bus subscribers for a clean shutdown
    */
@@ -138,15 +156,11 @@ public class CoreEvents {
     final DateTime expires
   ) {
 
-    eventExecutor.submit(
-      new Runnable() {
-        @Override
-        public void run() {
-          ExchangeRateChangedEvent event = new ExchangeRateChangedEvent(rate, currency, rateProvider, expires);
-          coreEventBus.post(event);
-          log.debug("Firing 'exchange rate changed' event: {}", event);
-        }
-      });
+    ExchangeRateChangedEvent event = new ExchangeRateChangedEvent(rate, currency, rateProvider, expires);
+    log.debug("Firing 'exchange rate changed' event: {}", event);
+
+    // Only the latest rate is of interest
+    coalescingDispatcher.post(event, ExchangeRateChangedEvent.class);
 
   }
 
@@ -293,7 +307,12 @@ public class CoreEvents {
       }
     }
 
-    coreEventBus.post(new BitcoinNetworkChangedEvent(bitcoinNetworkSummary));
+    // Progress and peer count changes arrive on the peer threads at a high rate so keep
+    // only the latest of each status and message (e.g. progress or peer count) per frame
+    coalescingDispatcher.post(
+      new BitcoinNetworkChangedEvent(bitcoinNetworkSummary),
+      bitcoinNetworkSummary.getStatus().name() + ":" + bitcoinNetworkSummary.getMessageKey().orNull()
+    );
 
   }
 
@@ -1,19 +1,31 @@
 package org.multibit.hd.core.files;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Striped;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.bitcoinj.core.Utils;
+import org.multibit.hd.core.concurrent.SafeExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 /**
  * <p>Utilties to provide the following to applications:</p>
@@ -42,6 +54,28 @@ public class SecureFiles {
   static final int BULKING_UP_FACTOR = 16;
   static final byte[] SECURE_DELETE_FILL_BYTES = new byte[NONSENSE_BYTES.length * BULKING_UP_FACTOR];
 
+  /**
+   * The size of the blocks written during a secure delete
+   */
+  static final int OVERWRITE_BLOCK_SIZE = 1024 * 1024;
+
+  /**
+   * The number of files that can be secure deleted asynchronously at the same time
+   */
+  private static final int SECURE_DELETE_THREADS = 2;
+
+  /**
+   * The number of seconds to wait for pending asynchronous secure deletes during a shutdown
+   */
+  private static final int SECURE_DELETE_SHUTDOWN_SECONDS = 5;
+
+  /**
+   * Serialises deletes of the same file without blocking deletes of other files
+   */
+  private static final Striped<Lock> fileLocks = Striped.lock(32);
+
+  private static ListeningExecutorService secureDeleteExecutorService;
+
   static {
     // Make some SECURE_DELETE_FILL_BYTES bytes = x BULKING_UP_FACTOR the
     // NONSENSE just to save write time.
@@ -62,28 +96,72 @@ public class SecureFiles {
   /**
    * Delete a file with an overwrite of all of the data.
    * <p/>
-   * Set bit patterns are used rather than random numbers to avoid a
-   * futex_wait_queue_me error on Linux systems (related to /dev/random usage)
+   * Deletes of different files may run concurrently, deletes of the same file are serialised.
    *
    * @param file The file to secure delete
    * @throws java.io.IOException if the operation fails for any reason
    */
-  public static synchronized void secureDelete(File file) throws IOException {
+  public static void secureDelete(File file) throws IOException {
 
     long start = System.currentTimeMillis();
     log.trace("Start of secureDelete");
 
-    if (Utils.isWindows()) {
-      // Use slow secure delete
-      slowSecureDelete(file);
-    } else {
-      fastSecureDelete(file);
+    Lock lock = fileLocks.get(file.getAbsolutePath());
+    lock.lock();
+    try {
+      if (Utils.isWindows()) {
+        // Use slow secure delete
+        slowSecureDelete(file);
+      } else {
+        fastSecureDelete(file);
+      }
+    } finally {
+      lock.unlock();
     }
     log.trace("End of secureDelete");
     log.debug("Secure delete took {} milliseconds", System.currentTimeMillis() - start);
 
   }
 
+  /**
+   * <p>Secure delete a file on the secure delete executor</p>
+   *
+   * @param file The file to secure delete
+   *
+   * @return A future providing true if the file no longer exists, or failing with the IOException
+   */
+  public static ListenableFuture<Boolean> secureDeleteAsync(final File file) {
+
+    Preconditions.checkNotNull(file, "'file' must be present");
+
+    return getOrCreateSecureDeleteExecutorService().submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        secureDelete(file);
+        return !file.exists();
+      }
+    });
+  }
+
+  /**
+   * <p>Secure delete several files concurrently on the secure delete executor</p>
+   *
+   * @param files The files to secure delete
+   *
+   * @return A future providing the individual results in the same order, or failing with the first IOException
+   */
+  public static ListenableFuture<List<Boolean>> secureDeleteAsync(Collection<File> files) {
+
+    Preconditions.checkNotNull(files, "'files' must be present");
+
+    List<ListenableFuture<Boolean>> futures = Lists.newArrayList();
+    for (File file : files) {
+      futures.add(secureDeleteAsync(file));
+    }
+
+    return Futures.allAsList(futures);
+  }
+
   /**
      * Delete a file with an overwrite of all of the data.
      * <p/>
@@ -95,26 +173,18 @@ public class SecureFiles {
      * @throws java.io.IOException if the operation fails for any reason
      */
     @SuppressFBWarnings({"DM_GC"})
-    public static synchronized void slowSecureDelete(File file) throws IOException {
+    public static void slowSecureDelete(File file) throws IOException {
       if (file != null && file.exists()) {
-        try (RandomAccessFile raf = new RandomAccessFile(file, "rws")) {
-          // Prep for file delete as this can be fiddly on Windows
-          // Make sure it is writable and any references to it are garbage
-          // collected and finalized.
-          if (!file.setWritable(true)) {
-            throw new IOException("Could not write to file " + file.getAbsolutePath());
-          }
-          System.gc();
-
-          long length = file.length();
-          raf.seek(0);
-          raf.getFilePointer();
-          int pos = 0;
-          while (pos < length) {
-            raf.write(SECURE_DELETE_FILL_BYTES);
-            pos += SECURE_DELETE_FILL_BYTES.length;
-          }
+        // Prep for file delete as this can be fiddly on Windows
+        // Make sure it is writable and any references to it are garbage
+        // collected and finalized.
+        if (!file.setWritable(true)) {
+          throw new IOException("Could not write to file " + file.getAbsolutePath());
         }
+        System.gc();
+
+        overwrite(file, false);
+
         boolean deleteSuccess = file.delete();
         log.debug("Result of delete of file '" + file.getAbsolutePath() + "' was " + deleteSuccess);
       }
@@ -122,46 +192,15 @@ public class SecureFiles {
 
   /**
    * An alternative secure delete algorithm from http://www.cafeaulait.org/books/javaio2/ioexamples/14/SecureDelete.java
+   * adapted to overwrite in large blocks through a file channel
    *
    * @param file the file to secure delete
    */
   private static void fastSecureDelete(File file) throws IOException {
     if (file.exists()) {
-      RandomAccessFile raf = null;
-      FileChannel channel = null;
-      MappedByteBuffer buffer;
-      try {
-        raf = new RandomAccessFile(file, "rw");
-        channel = raf.getChannel();
 
-        buffer = channel.map(
-                FileChannel.MapMode.READ_WRITE,
-                0,
-                raf.length()
-        );
-
-        // Overwrite with random data; one byte at a time
-        byte[] data = new byte[1];
-        while (buffer.hasRemaining()) {
-          secureRandom.nextBytes(data);
-          buffer.put(data[0]);
-        }
-
-        // Ensure we push this out to the file system
-        buffer.force();
-        channel.close();
-      } finally {
-        buffer = null;
-
-        if (channel != null) {
-          channel.close();
-          channel = null;
-        }
-        if (raf != null) {
-          raf.close();
-          raf = null;
-        }
-      }
+      // Overwrite with random data
+      overwrite(file, true);
 
       // Delete file
       // Use JDK7 NIO Files to delete the file since it offers the following benefits:
@@ -180,6 +219,91 @@ public class SecureFiles {
     }
   }
 
+  /**
+   * <p>Overwrite the whole of the file in place using a direct buffer and force the result to the storage device</p>
+   * <p>A mapped buffer is deliberately avoided since on Windows the mapping prevents the delete until it is
+   * garbage collected.</p>
+   *
+   * @param file   The file to overwrite
+   * @param random True to use a random block, false to use the nonsense byte pattern
+   *
+   * @throws IOException If the file cannot be written
+   */
+  static void overwrite(File file, boolean random) throws IOException {
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+
+      long length = channel.size();
+      if (length == 0) {
+        return;
+      }
+
+      // A single block is filled and written repeatedly (the content only needs to be unrelated to the original)
+      int blockSize = (int) Math.min(length, OVERWRITE_BLOCK_SIZE);
+      byte[] block = new byte[blockSize];
+      if (random) {
+        secureRandom.nextBytes(block);
+      } else {
+        for (int i = 0; i < blockSize; i += SECURE_DELETE_FILL_BYTES.length) {
+          System.arraycopy(SECURE_DELETE_FILL_BYTES, 0, block, i, Math.min(SECURE_DELETE_FILL_BYTES.length, blockSize - i));
+        }
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocateDirect(blockSize);
+      buffer.put(block);
+
+      long position = 0;
+      while (position < length) {
+        buffer.clear();
+        buffer.limit((int) Math.min(blockSize, length - position));
+        while (buffer.hasRemaining()) {
+          position += channel.write(buffer, position);
+        }
+      }
+
+      // Ensure we push this out to the file system
+      channel.force(true);
+    }
+
+  }
+
+  /**
+   * <p>Complete the pending asynchronous secure deletes (waiting a limited time) and release the executor</p>
+   *
+   * <p>A later asynchronous secure delete creates a new executor.</p>
+   */
+  public static void shutdownSecureDeleteExecutor() {
+
+    ListeningExecutorService executorService;
+    synchronized (SecureFiles.class) {
+      executorService = secureDeleteExecutorService;
+      secureDeleteExecutorService = null;
+    }
+
+    if (executorService == null) {
+      return;
+    }
+
+    executorService.shutdown();
+    try {
+      if (!executorService.awaitTermination(SECURE_DELETE_SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+        log.warn("Secure deletes still pending after {} seconds", SECURE_DELETE_SHUTDOWN_SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+  }
+
+  private static synchronized ListeningExecutorService getOrCreateSecureDeleteExecutorService() {
+
+    if (secureDeleteExecutorService == null) {
+      secureDeleteExecutorService = SafeExecutors.newFixedThreadPool(SECURE_DELETE_THREADS, "secure-delete");
+    }
+
+    return secureDeleteExecutorService;
+  }
+
   /**
    * @param directory The directory to verify or create
    * @return The directory
@@ -314,6 +438,20 @@ public class SecureFiles {
       tempStream.flush();
     }
 
+    replaceFile(tempFile, destFile);
+
+  }
+
+  /**
+   * <p>Move a completely written temporary file over the destination file</p>
+   *
+   * @param tempFile The temporary file
+   * @param destFile The destination file (replaced if present)
+   *
+   * @throws IOException If the move fails
+   */
+  public static void replaceFile(File tempFile, File destFile) throws IOException {
+
     // Use JDK7 NIO Files to move the file since it offers the following benefits:
     // * best chance at an atomic operation
     // * relies on native code
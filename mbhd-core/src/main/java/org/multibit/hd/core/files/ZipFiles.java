@@ -1,5 +1,6 @@
 package org.multibit.hd.core.files;
 
+import com.google.common.collect.Lists;
 import org.multibit.hd.core.managers.BackupManager;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.slf4j.Logger;
@@ -7,6 +8,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -27,6 +29,11 @@ public class ZipFiles {
 
   private static final Logger log = LoggerFactory.getLogger(ZipFiles.class);
 
+  /**
+   * The size of the buffers used when copying file content
+   */
+  static final int BUFFER_SIZE = 64 * 1024;
+
   /**
    * Utilities have private constructor
    */
@@ -45,22 +52,30 @@ public class ZipFiles {
    * @throws java.io.IOException
    */
   public static void zipFolder(String srcFolder, String destZipFile, boolean includeBlockStore) throws IOException {
-    ZipOutputStream zip;
-    FileOutputStream fileWriter;
 
-    fileWriter = new FileOutputStream(destZipFile);
-    zip = new ZipOutputStream(fileWriter);
+    zipFolder(srcFolder, new FileOutputStream(destZipFile), includeBlockStore);
+
+  }
+
+  /**
+   * Copy the files in the specified srcFolder as a zip into the output stream (e.g. an encrypting stream so that
+   * the plain zip never reaches the disk)
+   *
+   * @param srcFolder         The directory holding the files to zip
+   * @param outputStream      The stream to write the zip to (closed on completion)
+   * @param includeBlockStore if true then include the blockstore, if false then don't
+   *
+   * @throws java.io.IOException
+   */
+  public static void zipFolder(String srcFolder, OutputStream outputStream, boolean includeBlockStore) throws IOException {
+
+    // Deflater output arrives in small chunks so buffer it before it reaches the destination
+    ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
 
     try {
       // Add the contents of the srcFolder to the zip - note the top folder (with the wallet id) is not added as it is coded in the name of the zip
-      if (new File(srcFolder).list() != null) {
-        for (String fileName : new File(srcFolder).list()) {
-          if (!includeBlockStore && fileName.endsWith(InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX)) {
-            // Do not include the block chain (to save space)
-            continue;
-          }
-          addFileToZip(srcFolder, fileName, zip, includeBlockStore);
-        }
+      for (String entryName : listFolder(srcFolder, includeBlockStore)) {
+        addFileToZip(srcFolder, entryName, zip);
       }
     } finally {
       zip.flush();
@@ -119,27 +134,53 @@ public class ZipFiles {
     }
   }
 
-  private static void addFileToZip(String path, String srcFile, ZipOutputStream zip, Boolean includeBlockStore)
-    throws IOException {
+  /**
+   * List the files that would be copied into a zip of the specified srcFolder
+   *
+   * @param srcFolder         The directory holding the files to zip
+   * @param includeBlockStore if true then include the blockstore, if false then don't
+   *
+   * @return The zip entry names (paths relative to the srcFolder) in the order they would be zipped
+   */
+  public static List<String> listFolder(String srcFolder, boolean includeBlockStore) {
 
-    File srcFileOnDisk = new File(path + File.separator + srcFile);
-    if (srcFileOnDisk.isDirectory()) {
-      addFolderToZip(path, srcFile, zip, includeBlockStore);
-    } else {
-      byte[] buf = new byte[1024];
-      int len;
-      try (FileInputStream in = new FileInputStream(srcFileOnDisk)) {
-        zip.putNextEntry(new ZipEntry(srcFile));
+    List<String> entryNames = Lists.newArrayList();
 
-        while ((len = in.read(buf)) > 0) {
-          zip.write(buf, 0, len);
+    String[] fileNames = new File(srcFolder).list();
+    if (fileNames != null) {
+      for (String fileName : fileNames) {
+        if (!includeBlockStore && isBlockStoreFile(fileName)) {
+          // Do not include the block chain (to save space)
+          continue;
         }
+        addFileToList(srcFolder, fileName, entryNames, includeBlockStore);
       }
     }
+
+    return entryNames;
   }
 
-  private static void addFolderToZip(String path, String srcFolder, ZipOutputStream zip, Boolean includeBlockStore)
-    throws IOException {
+  /**
+   * @param fileName The file name
+   *
+   * @return True if the file is the block store or its sync state (which only describes the block store it was written with)
+   */
+  private static boolean isBlockStoreFile(String fileName) {
+    return fileName.endsWith(InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX)
+      || fileName.endsWith(InstallationManager.MBHD_PREFIX + InstallationManager.SYNC_STATE_SUFFIX);
+  }
+
+  private static void addFileToList(String path, String srcFile, List<String> entryNames, boolean includeBlockStore) {
+
+    File srcFileOnDisk = new File(path + File.separator + srcFile);
+    if (srcFileOnDisk.isDirectory()) {
+      addFolderToList(path, srcFile, entryNames, includeBlockStore);
+    } else {
+      entryNames.add(srcFile);
+    }
+  }
+
+  private static void addFolderToList(String path, String srcFolder, List<String> entryNames, boolean includeBlockStore) {
 
     File folder = new File(srcFolder);
     File folderOnDisk = new File(path + File.separator + srcFolder);
@@ -149,13 +190,27 @@ public class ZipFiles {
       return;
     }
 
-    if (folderOnDisk.list() != null) {
-      for (String fileName : folderOnDisk.list()) {
-        if (!includeBlockStore && fileName.endsWith(InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX)) {
+    String[] fileNames = folderOnDisk.list();
+    if (fileNames != null) {
+      for (String fileName : fileNames) {
+        if (!includeBlockStore && isBlockStoreFile(fileName)) {
           // Do not include the block writeContacts (to save space)
           continue;
         }
-        addFileToZip(path, srcFolder + File.separator + fileName, zip, includeBlockStore);
+        addFileToList(path, srcFolder + File.separator + fileName, entryNames, includeBlockStore);
+      }
+    }
+  }
+
+  private static void addFileToZip(String path, String entryName, ZipOutputStream zip) throws IOException {
+
+    byte[] buf = new byte[BUFFER_SIZE];
+    int len;
+    try (FileInputStream in = new FileInputStream(new File(path + File.separator + entryName))) {
+      zip.putNextEntry(new ZipEntry(entryName));
+
+      while ((len = in.read(buf)) > 0) {
+        zip.write(buf, 0, len);
       }
     }
   }
@@ -179,7 +234,7 @@ public class ZipFiles {
    */
   private static void writeFile(InputStream in, OutputStream out)
     throws IOException {
-    byte[] buffer = new byte[1024];
+    byte[] buffer = new byte[BUFFER_SIZE];
     int len;
 
     while ((len = in.read(buffer)) >= 0)
@@ -1,30 +1,57 @@
 package org.multibit.hd.core.logging;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.AppenderBase;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Queues;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.multibit.hd.core.config.LoggingConfiguration;
 
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * <p>Appender to provide the following to logging framework:</p>
  * <ul>
- * <li>Asynchronous logging</li>
+ * <li>Asynchronous logging through a bounded ring buffer</li>
+ * <li>Dropping of low level events (TRACE and DEBUG by default) when the buffer is full</li>
+ * <li>Draining of pending events when stopped</li>
+ * <li>Counters for appended and dropped events</li>
  * </ul>
  *
+ * <p>Events at or above the discarding threshold wait a limited time for space before they are dropped. The
+ * dispatcher thread never waits since it is the only thread that can make space.</p>
+ *
+ * <p>The message is formatted on the calling thread so that mutable arguments are logged as they were and
+ * no argument is evaluated on the dispatcher thread (where it could need a lock held by a waiting caller).</p>
+ *
  * @since 0.0.1
- *         
+ *
  */
 public class AsyncAppender extends AppenderBase<ILoggingEvent> implements Runnable {
+
   private static final int BATCH_SIZE = 1000;
 
+  /**
+   * The longest time the dispatcher waits before checking for events without being woken
+   */
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  /**
+   * The time a producer waits between attempts when the buffer is full
+   */
+  private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
   public static Appender<ILoggingEvent> wrap(Appender<ILoggingEvent> delegate) {
-    final AsyncAppender appender = new AsyncAppender(delegate);
+    return wrap(delegate, new LoggingConfiguration.AsyncConfiguration());
+  }
+
+  public static AsyncAppender wrap(Appender<ILoggingEvent> delegate, LoggingConfiguration.AsyncConfiguration async) {
+    final AsyncAppender appender = new AsyncAppender(delegate, async);
     appender.start();
     return appender;
   }
@@ -35,23 +62,65 @@ public class AsyncAppender extends AppenderBase<ILoggingEvent> implements Runnab
       .build();
 
   private final Appender<ILoggingEvent> delegate;
-  private final BlockingQueue<ILoggingEvent> queue;
+  private final MpscRingBuffer<ILoggingEvent> buffer;
   private final List<ILoggingEvent> batch;
   private final Thread dispatcher;
+  private final Level discardingThreshold;
+  private final long maxFlushTimeMillis;
+  private final long maxBlockingTimeNanos;
+
+  private final AtomicLong appendedCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+
   private volatile boolean running;
+  private volatile boolean dispatcherWaiting;
 
-  private AsyncAppender(Appender<ILoggingEvent> delegate) {
+  private AsyncAppender(Appender<ILoggingEvent> delegate, LoggingConfiguration.AsyncConfiguration async) {
     this.delegate = delegate;
-    this.queue = Queues.newLinkedBlockingQueue();
+    this.buffer = new MpscRingBuffer<>(async.getQueueCapacity());
     this.batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
     this.dispatcher = THREAD_FACTORY.newThread(this);
+    this.discardingThreshold = async.getDiscardingThreshold();
+    this.maxFlushTimeMillis = async.getMaxFlushTimeMillis();
+    this.maxBlockingTimeNanos = TimeUnit.MILLISECONDS.toNanos(async.getMaxBlockingTimeMillis());
     setContext(delegate.getContext());
   }
 
   @Override
   protected void append(ILoggingEvent eventObject) {
-    eventObject.prepareForDeferredProcessing();
-    queue.add(eventObject);
+
+    // Capture what belongs to the calling thread
+    eventObject.getFormattedMessage();
+    eventObject.getThreadName();
+    eventObject.getMDCPropertyMap();
+
+    if (buffer.offer(eventObject)) {
+      appendedCount.incrementAndGet();
+      wakeDispatcher();
+      return;
+    }
+
+    if (!eventObject.getLevel().isGreaterOrEqual(discardingThreshold) || Thread.currentThread() == dispatcher) {
+      droppedCount.incrementAndGet();
+      return;
+    }
+
+    // Wait a limited time for the dispatcher to make space
+    long deadlineNanos = System.nanoTime() + maxBlockingTimeNanos;
+    while (!buffer.offer(eventObject)) {
+
+      if (!running || System.nanoTime() - deadlineNanos >= 0) {
+        droppedCount.incrementAndGet();
+        return;
+      }
+
+      wakeDispatcher();
+      LockSupport.parkNanos(FULL_PARK_NANOS);
+    }
+
+    appendedCount.incrementAndGet();
+
+    wakeDispatcher();
   }
 
   @Override
@@ -63,26 +132,86 @@ public class AsyncAppender extends AppenderBase<ILoggingEvent> implements Runnab
 
   @Override
   public void stop() {
+
+    if (!isStarted()) {
+      return;
+    }
+
     this.running = false;
     super.stop();
+
+    // Allow the dispatcher to deliver the pending events
+    LockSupport.unpark(dispatcher);
+    try {
+      dispatcher.join(maxFlushTimeMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (dispatcher.isAlive()) {
+      addWarn("Gave up waiting for " + buffer.size() + " event(s) to be logged after " + maxFlushTimeMillis + "ms");
+    }
+
+    delegate.stop();
   }
 
   @Override
   public void run() {
-    while (running) {
-      try {
-        batch.add(queue.take());
-        queue.drainTo(batch, BATCH_SIZE - 1);
-
-        for (ILoggingEvent event : batch) {
-          delegate.doAppend(event);
-        }
-
-        batch.clear();
-      } catch (InterruptedException ignored) {
-        Thread.currentThread().interrupt();
+
+    while (running || !buffer.isEmpty()) {
+
+      if (buffer.drainTo(batch, BATCH_SIZE) == 0) {
+        awaitEvents();
+        continue;
+      }
+
+      for (ILoggingEvent event : batch) {
+        delegate.doAppend(event);
       }
+
+      batch.clear();
     }
+
+  }
+
+  /**
+   * @return The number of events accepted for logging
+   */
+  public long getAppendedCount() {
+    return appendedCount.get();
+  }
+
+  /**
+   * @return The number of events dropped because the buffer was full (or stayed full for too long)
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
   }
-}
 
+  /**
+   * @return The approximate number of events waiting to be logged
+   */
+  public int getPendingCount() {
+    return buffer.size();
+  }
+
+  private void wakeDispatcher() {
+    if (dispatcherWaiting) {
+      LockSupport.unpark(dispatcher);
+    }
+  }
+
+  private void awaitEvents() {
+
+    dispatcherWaiting = true;
+
+    // Check again now that producers will wake the dispatcher
+    if (running && buffer.isEmpty()) {
+      LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+    }
+
+    dispatcherWaiting = false;
+
+  }
+
+}
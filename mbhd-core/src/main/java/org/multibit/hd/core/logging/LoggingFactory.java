@@ -47,13 +47,16 @@ public class LoggingFactory {
 
     final Logger root = configureLevels();
 
+    final LoggingConfiguration.AsyncConfiguration async = config.getAsyncConfiguration();
+
     final LoggingConfiguration.ConsoleConfiguration console = config.getConsoleConfiguration();
     if (console.isEnabled()) {
       root.addAppender(AsyncAppender.wrap(
         LogbackFactory.buildConsoleAppender(
           console,
           root.getLoggerContext(),
-          console.getLogFormat())));
+          console.getLogFormat()),
+        async));
     }
 
     final LoggingConfiguration.FileConfiguration file = config.getFileConfiguration();
@@ -62,7 +65,8 @@ public class LoggingFactory {
         LogbackFactory.buildFileAppender(
           file,
           root.getLoggerContext(),
-          file.getLogFormat())));
+          file.getLogFormat()),
+        async));
     }
 
     final LoggingConfiguration.SyslogConfiguration syslog = config.getSyslogConfiguration();
@@ -72,10 +76,21 @@ public class LoggingFactory {
           syslog,
           root.getLoggerContext(),
           name,
-          syslog.getLogFormat())));
+          syslog.getLogFormat()),
+        async));
     }
   }
 
+  /**
+   * <p>Stop the logging context so that the asynchronous appenders write any pending events</p>
+   */
+  public static void stop() {
+
+    final Logger root = (Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+    root.getLoggerContext().stop();
+
+  }
+
   private void hijackJDKLogging() {
     SLF4JBridgeHandler.removeHandlersForRootLogger();
     SLF4JBridgeHandler.install();
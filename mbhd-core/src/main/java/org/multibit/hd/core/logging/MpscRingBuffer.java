@@ -0,0 +1,157 @@
+package org.multibit.hd.core.logging;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Ring buffer to provide the following to the asynchronous appender:</p>
+ * <ul>
+ * <li>A bounded, lock-free queue for many producers and a single consumer</li>
+ * </ul>
+ *
+ * <p>Producers claim a slot by advancing the tail and then publish the element into it. The single
+ * consumer takes elements in claim order, waiting for a claimed slot to be published if necessary.
+ * The capacity is rounded up to a power of two.</p>
+ *
+ * @param <E> The element type
+ *
+ * @since 0.0.5
+ */
+public class MpscRingBuffer<E> {
+
+  private final AtomicReferenceArray<E> buffer;
+
+  private final int mask;
+
+  /**
+   * The next slot to be claimed by a producer
+   */
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * The next slot to be read by the consumer (only written by the consumer)
+   */
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * @param capacity The minimum capacity
+   */
+  public MpscRingBuffer(int capacity) {
+
+    Preconditions.checkArgument(capacity > 0 && capacity <= (1 << 30), "'capacity' must be between 1 and 2^30");
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+
+    this.buffer = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+
+  }
+
+  /**
+   * <p>Add an element if there is space (any thread)</p>
+   *
+   * @param element The element
+   *
+   * @return True if the element was added, false if the buffer is full
+   */
+  public boolean offer(E element) {
+
+    Preconditions.checkNotNull(element, "'element' must be present");
+
+    long claimed;
+    do {
+      claimed = tail.get();
+      if (claimed - head.get() >= buffer.length()) {
+        return false;
+      }
+    } while (!tail.compareAndSet(claimed, claimed + 1));
+
+    // A volatile write so that a consumer about to wait is guaranteed to see it
+    buffer.set(index(claimed), element);
+
+    return true;
+  }
+
+  /**
+   * <p>Remove the next element (consumer thread only)</p>
+   *
+   * @return The next element or null if the buffer is empty
+   */
+  public E poll() {
+
+    long current = head.get();
+    int index = index(current);
+
+    E element = buffer.get(index);
+    if (element == null) {
+      if (current == tail.get()) {
+        return null;
+      }
+      // The slot has been claimed but not yet published
+      do {
+        Thread.yield();
+        element = buffer.get(index);
+      } while (element == null);
+    }
+
+    buffer.lazySet(index, null);
+    head.lazySet(current + 1);
+
+    return element;
+  }
+
+  /**
+   * <p>Remove up to the given number of elements (consumer thread only)</p>
+   *
+   * @param collection  The collection to receive the elements
+   * @param maxElements The maximum number of elements to remove
+   *
+   * @return The number of elements removed
+   */
+  public int drainTo(Collection<? super E> collection, int maxElements) {
+
+    int count = 0;
+    while (count < maxElements) {
+      E element = poll();
+      if (element == null) {
+        break;
+      }
+      collection.add(element);
+      count++;
+    }
+
+    return count;
+  }
+
+  /**
+   * @return True if there are no claimed slots waiting for the consumer
+   */
+  public boolean isEmpty() {
+    return head.get() == tail.get();
+  }
+
+  /**
+   * @return The approximate number of elements
+   */
+  public int size() {
+    return (int) Math.max(0, tail.get() - head.get());
+  }
+
+  /**
+   * @return The capacity (a power of two)
+   */
+  public int capacity() {
+    return buffer.length();
+  }
+
+  private int index(long sequence) {
+    return (int) sequence & mask;
+  }
+
+}
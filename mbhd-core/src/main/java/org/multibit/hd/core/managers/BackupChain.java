@@ -0,0 +1,626 @@
+package org.multibit.hd.core.managers;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import org.multibit.hd.core.crypto.AESStreams;
+import org.multibit.hd.core.files.SecureFiles;
+import org.multibit.hd.core.files.ZipFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * <p>Backup chain to provide the following to the BackupManager:</p>
+ * <ul>
+ * <li>Encrypted zip backups holding either every file (a full backup) or only the files that changed since the
+ * previous backup in the same directory (a delta backup)</li>
+ * <li>Restore of any backup by replaying its chain back to the full backup</li>
+ * <li>Merging of a backup into the one that depends on it so that thinning never breaks a chain</li>
+ * </ul>
+ * <p>Every backup starts with a manifest entry listing each file in the wallet directory at the time of the backup
+ * with its digest, whether or not the file content is held in that backup. A delta names the backup it was made
+ * against. Backups made before chains were introduced have no manifest and are treated as full backups.</p>
+ * <p>A delta can only be restored with every earlier backup in its chain in the same directory so deltas are only
+ * made where the chain is kept together (the local backup directory). Backups that may be copied or restored on
+ * their own (cloud backups) are always full.</p>
+ *
+ * @since 0.0.5
+ */
+final class BackupChain {
+
+  private static final Logger log = LoggerFactory.getLogger(BackupChain.class);
+
+  /**
+   * The name of the zip entry holding the manifest (always the first entry)
+   */
+  static final String MANIFEST_ENTRY_NAME = "mbhd-backup.manifest";
+
+  /**
+   * The number of consecutive deltas after which a full backup is made again
+   */
+  static final int MAXIMUM_DELTAS = 10;
+
+  private static final String VERSION_KEY = "version";
+  private static final String BASE_KEY = "base";
+  private static final String DEPTH_KEY = "depth";
+  private static final String FILE_KEY_PREFIX = "file.";
+
+  private static final String VERSION = "1";
+
+  private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+  /**
+   * The prefix of the directory (in the local backup directory) holding the stable copies of the files being backed up
+   */
+  private static final String STAGING_DIRECTORY_PREFIX = "staging-";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Utilities have private constructors
+   */
+  private BackupChain() {
+  }
+
+  /**
+   * <p>Write a backup of the wallet directory, as a delta against the newest existing backup if possible</p>
+   *
+   * @param walletRootDirectory The wallet directory
+   * @param existingBackups     The existing backups of this wallet in the same directory as the new backup (empty for a full backup)
+   * @param encryptedBackupFile The encrypted backup to create
+   * @param backupAESKey        The backup AES key
+   * @param backupManifest      The source of (cached) file digests for the wallet directory
+   *
+   * @return The manifest of the new backup
+   *
+   * @throws IOException If the backup could not be written or verified
+   */
+  static Manifest write(
+    final File walletRootDirectory,
+    List<File> existingBackups,
+    File encryptedBackupFile,
+    KeyParameter backupAESKey,
+    BackupManifest backupManifest
+  ) throws IOException {
+
+    Preconditions.checkNotNull(walletRootDirectory, "'walletRootDirectory' must be present");
+    Preconditions.checkNotNull(existingBackups, "'existingBackups' must be present");
+
+    final Map<String, String> fileDigests = backupManifest.digestFiles(ZipFiles.listFolder(walletRootDirectory.getAbsolutePath(), false));
+
+    // Find the backup to make a delta against
+    Optional<File> baseFile = Optional.absent();
+    Optional<Manifest> baseManifest = Optional.absent();
+    for (File existingBackup : sortedByName(existingBackups)) {
+      if (!existingBackup.getName().equals(encryptedBackupFile.getName())) {
+        baseFile = Optional.of(existingBackup);
+      }
+    }
+    if (baseFile.isPresent()) {
+      try {
+        baseManifest = readManifest(baseFile.get(), backupAESKey);
+      } catch (IOException | RuntimeException e) {
+        log.warn("Could not read the manifest of '{}'. Making a full backup.", baseFile.get().getName());
+      }
+    }
+
+    final Optional<String> base;
+    final int depth;
+    final List<String> entryNames = Lists.newArrayList();
+    if (baseManifest.isPresent() && baseManifest.get().getDepth() < MAXIMUM_DELTAS) {
+      base = Optional.of(baseFile.get().getName());
+      depth = baseManifest.get().getDepth() + 1;
+      for (Map.Entry<String, String> fileDigest : fileDigests.entrySet()) {
+        if (!fileDigest.getValue().equals(baseManifest.get().getFileDigests().get(fileDigest.getKey()))) {
+          entryNames.add(fileDigest.getKey());
+        }
+      }
+      log.debug("Writing delta backup of {} of {} files against '{}'", entryNames.size(), fileDigests.size(), baseFile.get().getName());
+    } else {
+      base = Optional.absent();
+      depth = 0;
+      entryNames.addAll(fileDigests.keySet());
+      log.debug("Writing full backup of {} files", entryNames.size());
+    }
+
+    // The wallet and the payments journal are written continuously so a stable copy of each file is taken first
+    final File stagingDirectory = java.nio.file.Files.createTempDirectory(
+      SecureFiles.verifyOrCreateDirectory(walletRootDirectory, BackupManager.LOCAL_ZIP_BACKUP_DIRECTORY_NAME).toPath(),
+      STAGING_DIRECTORY_PREFIX
+    ).toFile();
+    try {
+
+      // The manifest holds the digest of the copy actually backed up
+      Map<String, String> backedUpDigests = Maps.newTreeMap();
+      backedUpDigests.putAll(fileDigests);
+      for (String entryName : Lists.newArrayList(entryNames)) {
+        Optional<String> stagedDigest = stage(new File(walletRootDirectory, entryName), new File(stagingDirectory, entryName));
+        if (stagedDigest.isPresent()) {
+          backedUpDigests.put(entryName, stagedDigest.get());
+        } else {
+          // Deleted since the wallet directory was listed (e.g. a thinned rolling backup)
+          backedUpDigests.remove(entryName);
+          entryNames.remove(entryName);
+        }
+      }
+      final Manifest manifest = new Manifest(base, depth, backedUpDigests);
+
+      writeEncrypted(
+        encryptedBackupFile, backupAESKey, new ZipWriter() {
+          @Override
+          public void write(ZipOutputStream zip) throws IOException {
+
+            writeManifest(manifest, zip);
+
+            for (String entryName : entryNames) {
+              zip.putNextEntry(new ZipEntry(entryName));
+              java.nio.file.Files.copy(new File(stagingDirectory, entryName).toPath(), zip);
+              zip.closeEntry();
+            }
+          }
+        });
+
+      return manifest;
+
+    } finally {
+      // The staged copies are no more exposed than the wallet directory they were copied from
+      deleteRecursively(stagingDirectory);
+    }
+  }
+
+  /**
+   * <p>Restore a backup into a directory by replaying its chain from the newest backup back to the full backup</p>
+   *
+   * @param backupFile           The backup to restore
+   * @param destinationDirectory The directory to restore the files into
+   * @param backupAESKey         The backup AES key
+   *
+   * @throws IOException If the chain is incomplete or a backup could not be decrypted
+   */
+  static void restore(File backupFile, File destinationDirectory, KeyParameter backupAESKey) throws IOException {
+
+    Optional<Manifest> manifest = readManifest(backupFile, backupAESKey);
+
+    // Resolve the whole chain before anything is extracted
+    List<File> chain = Lists.newArrayList(backupFile);
+    if (manifest.isPresent()) {
+      Manifest current = manifest.get();
+      while (!current.isFull()) {
+        File baseFile = new File(backupFile.getParentFile(), current.getBase().get());
+        if (!baseFile.isFile() || chain.contains(baseFile)) {
+          throw new IOException("The backup chain of '" + backupFile.getName() + "' is incomplete. Copy '"
+            + baseFile.getName() + "' into '" + backupFile.getParent() + "' to restore it");
+        }
+        Optional<Manifest> baseManifest = readManifest(baseFile, backupAESKey);
+        if (!baseManifest.isPresent()) {
+          throw new IOException("The backup '" + baseFile.getName() + "' has no manifest");
+        }
+        chain.add(baseFile);
+        current = baseManifest.get();
+      }
+    }
+
+    SecureFiles.verifyOrCreateDirectory(destinationDirectory);
+
+    Set<String> extracted = Sets.newHashSet();
+    for (File chainFile : chain) {
+      extract(chainFile, backupAESKey, destinationDirectory, manifest, extracted);
+    }
+
+    if (manifest.isPresent() && !extracted.containsAll(manifest.get().getFileDigests().keySet())) {
+      Set<String> missing = Sets.difference(manifest.get().getFileDigests().keySet(), extracted);
+      throw new IOException("The backup chain of '" + backupFile.getName() + "' does not hold " + missing);
+    }
+
+    log.debug("Restored {} files from a chain of {} backups", extracted.size(), chain.size());
+  }
+
+  /**
+   * <p>Merge a backup that is about to be deleted into the backup that was made against it (if any) so that the
+   * later backup remains restorable. The later backup is replaced with one made against the base of the deleted
+   * backup, or with a full backup if the deleted backup was full.</p>
+   *
+   * @param backupToDelete  The backup that will be deleted
+   * @param existingBackups The existing backups in the same directory
+   * @param backupAESKey    The backup AES key
+   *
+   * @throws IOException If the merge failed (the backup must then be kept)
+   */
+  static void mergeIntoDependent(File backupToDelete, List<File> existingBackups, KeyParameter backupAESKey) throws IOException {
+
+    Optional<Manifest> deletedManifest = readManifest(backupToDelete, backupAESKey);
+    if (!deletedManifest.isPresent()) {
+      // A backup without a manifest is never the base of a delta
+      return;
+    }
+
+    for (File existingBackup : existingBackups) {
+
+      if (existingBackup.equals(backupToDelete)) {
+        continue;
+      }
+
+      final Optional<Manifest> dependentManifest = readManifest(existingBackup, backupAESKey);
+      if (!dependentManifest.isPresent()
+        || dependentManifest.get().isFull()
+        || !dependentManifest.get().getBase().get().equals(backupToDelete.getName())) {
+        continue;
+      }
+
+      log.debug("Merging '{}' into '{}'", backupToDelete.getName(), existingBackup.getName());
+
+      final Manifest mergedManifest = new Manifest(
+        deletedManifest.get().getBase(),
+        deletedManifest.get().getDepth(),
+        dependentManifest.get().getFileDigests()
+      );
+      final Manifest baseManifest = deletedManifest.get();
+      final File dependentFile = existingBackup;
+      final File deletedFile = backupToDelete;
+      final KeyParameter aesKey = backupAESKey;
+
+      writeEncrypted(
+        dependentFile, backupAESKey, new ZipWriter() {
+          @Override
+          public void write(ZipOutputStream zip) throws IOException {
+
+            writeManifest(mergedManifest, zip);
+
+            Set<String> written = copyEntries(dependentFile, aesKey, zip, Collections.<String>emptySet(), null, null);
+
+            // Only files unchanged between the two backups are taken from the deleted backup
+            copyEntries(deletedFile, aesKey, zip, written, baseManifest, mergedManifest);
+          }
+        });
+
+      // A chain is linear so there is at most one dependent backup
+      return;
+    }
+  }
+
+  /**
+   * @param backupFile   The encrypted backup
+   * @param backupAESKey The backup AES key
+   *
+   * @return The manifest or absent if the backup was made before chains were introduced
+   *
+   * @throws IOException If the backup could not be decrypted
+   */
+  static Optional<Manifest> readManifest(File backupFile, KeyParameter backupAESKey) throws IOException {
+
+    // Only the start of the backup is decrypted
+    try (ZipInputStream zip = newZipInputStream(backupFile, backupAESKey)) {
+      ZipEntry entry = zip.getNextEntry();
+      if (entry == null) {
+        // Every backup has at least one entry so this is the wrong key or a damaged file
+        throw new IOException("The backup '" + backupFile.getName() + "' could not be decrypted");
+      }
+      if (!MANIFEST_ENTRY_NAME.equals(entry.getName())) {
+        return Optional.absent();
+      }
+
+      Properties properties = new Properties();
+      properties.load(new InputStreamReader(zip, StandardCharsets.UTF_8));
+
+      if (!VERSION.equals(properties.getProperty(VERSION_KEY))) {
+        throw new IOException("Unknown backup manifest version '" + properties.getProperty(VERSION_KEY) + "' in '" + backupFile.getName() + "'");
+      }
+
+      Map<String, String> fileDigests = Maps.newTreeMap();
+      for (String key : properties.stringPropertyNames()) {
+        if (key.startsWith(FILE_KEY_PREFIX)) {
+          fileDigests.put(key.substring(FILE_KEY_PREFIX.length()), properties.getProperty(key));
+        }
+      }
+
+      String base = properties.getProperty(BASE_KEY);
+      int depth = Integer.parseInt(properties.getProperty(DEPTH_KEY, "0"));
+
+      return Optional.of(new Manifest(Optional.fromNullable(base), depth, fileDigests));
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid backup manifest in '" + backupFile.getName() + "'", e);
+    }
+  }
+
+  /**
+   * @return The backups in timestamp order (the timestamp is the only varying part of the name)
+   */
+  static List<File> sortedByName(List<File> backups) {
+
+    List<File> sorted = Lists.newArrayList(backups);
+    Collections.sort(sorted);
+
+    return sorted;
+  }
+
+  /**
+   * <p>Copy a file so that it cannot change while it is written into a backup. Files are either replaced atomically
+   * or appended to (the payments journal) so the copy is always a state the file was in.</p>
+   *
+   * @param file       The file to copy
+   * @param stagedFile The copy
+   *
+   * @return The hex encoded digest of the copy or absent if the file no longer exists
+   */
+  private static Optional<String> stage(File file, File stagedFile) throws IOException {
+
+    SecureFiles.verifyOrCreateDirectory(stagedFile.getParentFile());
+
+    MessageDigest digest = AESStreams.newDigest();
+    try (InputStream inputStream = new DigestInputStream(java.nio.file.Files.newInputStream(file.toPath()), digest)) {
+      java.nio.file.Files.copy(inputStream, stagedFile.toPath());
+    } catch (NoSuchFileException e) {
+      return Optional.absent();
+    }
+
+    return Optional.of(BaseEncoding.base16().lowerCase().encode(digest.digest()));
+  }
+
+  private static void deleteRecursively(File directory) {
+
+    try {
+      java.nio.file.Files.walkFileTree(
+        directory.toPath(), new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            java.nio.file.Files.delete(file);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+            java.nio.file.Files.delete(dir);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    } catch (IOException e) {
+      log.warn("Could not delete the backup staging directory '{}'", directory.getAbsolutePath(), e);
+    }
+  }
+
+  private static void writeManifest(Manifest manifest, ZipOutputStream zip) throws IOException {
+
+    Properties properties = new Properties();
+    properties.setProperty(VERSION_KEY, VERSION);
+    properties.setProperty(DEPTH_KEY, String.valueOf(manifest.getDepth()));
+    if (manifest.getBase().isPresent()) {
+      properties.setProperty(BASE_KEY, manifest.getBase().get());
+    }
+    for (Map.Entry<String, String> fileDigest : manifest.getFileDigests().entrySet()) {
+      properties.setProperty(FILE_KEY_PREFIX + fileDigest.getKey(), fileDigest.getValue());
+    }
+
+    zip.putNextEntry(new ZipEntry(MANIFEST_ENTRY_NAME));
+    Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+    properties.store(writer, null);
+    writer.flush();
+    zip.closeEntry();
+  }
+
+  /**
+   * <p>Copy the file entries of a backup into a zip</p>
+   *
+   * @param backupFile    The encrypted backup to copy from
+   * @param backupAESKey  The backup AES key
+   * @param zip           The zip to copy into
+   * @param exclusions    The entries to leave out
+   * @param fromManifest  The manifest of the backup being copied (null to copy every entry)
+   * @param toManifest    The manifest of the zip being written, only entries with the same digest in both are copied
+   *
+   * @return The names of the entries copied
+   */
+  private static Set<String> copyEntries(
+    File backupFile,
+    KeyParameter backupAESKey,
+    ZipOutputStream zip,
+    Set<String> exclusions,
+    Manifest fromManifest,
+    Manifest toManifest
+  ) throws IOException {
+
+    Set<String> copied = Sets.newHashSet();
+
+    try (ZipInputStream backupZip = newZipInputStream(backupFile, backupAESKey)) {
+      ZipEntry entry;
+      while ((entry = backupZip.getNextEntry()) != null) {
+
+        String name = entry.getName();
+        if (entry.isDirectory() || MANIFEST_ENTRY_NAME.equals(name) || exclusions.contains(name)) {
+          continue;
+        }
+        if (fromManifest != null) {
+          String digest = fromManifest.getFileDigests().get(name);
+          if (digest == null || !digest.equals(toManifest.getFileDigests().get(name))) {
+            continue;
+          }
+        }
+
+        zip.putNextEntry(new ZipEntry(name));
+        ByteStreams.copy(backupZip, zip);
+        zip.closeEntry();
+        copied.add(name);
+      }
+    }
+
+    return copied;
+  }
+
+  /**
+   * <p>Extract the entries of one backup in a chain that have not been extracted from a later backup</p>
+   */
+  private static void extract(
+    File backupFile,
+    KeyParameter backupAESKey,
+    File destinationDirectory,
+    Optional<Manifest> manifest,
+    Set<String> extracted
+  ) throws IOException {
+
+    String destinationPath = destinationDirectory.getCanonicalPath() + File.separator;
+
+    try (ZipInputStream zip = newZipInputStream(backupFile, backupAESKey)) {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+
+        String name = entry.getName();
+        if (entry.isDirectory() || MANIFEST_ENTRY_NAME.equals(name) || name.contains(".DS_Store") || extracted.contains(name)) {
+          continue;
+        }
+        if (manifest.isPresent() && !manifest.get().getFileDigests().containsKey(name)) {
+          // Deleted before the backup being restored was made
+          continue;
+        }
+
+        File file = new File(destinationDirectory, name);
+        if (!file.getCanonicalPath().startsWith(destinationPath)) {
+          throw new IOException("Backup entry '" + name + "' is outside the wallet directory");
+        }
+        SecureFiles.verifyOrCreateDirectory(file.getParentFile());
+
+        MessageDigest digest = AESStreams.newDigest();
+        try (OutputStream outputStream = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(file)), digest)) {
+          ByteStreams.copy(zip, outputStream);
+        }
+        if (manifest.isPresent()
+          && !BaseEncoding.base16().lowerCase().encode(digest.digest()).equals(manifest.get().getFileDigests().get(name))) {
+          throw new IOException("Backup entry '" + name + "' in '" + backupFile.getName() + "' does not match the manifest");
+        }
+
+        log.debug("Extracted file: {}", name);
+        extracted.add(name);
+      }
+    }
+  }
+
+  private static ZipInputStream newZipInputStream(File backupFile, KeyParameter backupAESKey) throws IOException {
+
+    return new ZipInputStream(
+      AESStreams.newDecryptingInputStream(
+        new BufferedInputStream(new FileInputStream(backupFile), BUFFER_SIZE),
+        backupAESKey,
+        WalletManager.aesInitialisationVector()
+      ));
+  }
+
+  /**
+   * <p>Write an encrypted zip to a temporary file, verify it decrypts and then move it into place</p>
+   */
+  private static void writeEncrypted(File encryptedBackupFile, KeyParameter backupAESKey, ZipWriter zipWriter) throws IOException {
+
+    File temporaryFile = new File(encryptedBackupFile.getAbsolutePath() + TEMPORARY_FILE_EXTENSION);
+    MessageDigest plainDigest = AESStreams.newDigest();
+
+    try {
+      OutputStream encryptedOutputStream = AESStreams.newEncryptingOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temporaryFile), BUFFER_SIZE),
+        backupAESKey,
+        WalletManager.aesInitialisationVector()
+      );
+      try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new DigestOutputStream(encryptedOutputStream, plainDigest), BUFFER_SIZE))) {
+        zipWriter.write(zip);
+      }
+
+      // Check the encryption is reversible
+      byte[] decryptedDigest = AESStreams.digestDecrypted(temporaryFile, backupAESKey, WalletManager.aesInitialisationVector());
+      if (!Arrays.equals(plainDigest.digest(), decryptedDigest)) {
+        throw new IOException("The encryption of the backup was not reversible. Aborting backup '" + encryptedBackupFile.getAbsolutePath() + "'");
+      }
+
+      SecureFiles.replaceFile(temporaryFile, encryptedBackupFile);
+    } finally {
+      // Only ciphertext is ever written so a plain delete is sufficient
+      java.nio.file.Files.deleteIfExists(temporaryFile.toPath());
+    }
+  }
+
+  /**
+   * <p>Callback to write the entries of a zip</p>
+   */
+  private interface ZipWriter {
+
+    void write(ZipOutputStream zip) throws IOException;
+
+  }
+
+  /**
+   * <p>The manifest of a backup</p>
+   */
+  static class Manifest {
+
+    private final Optional<String> base;
+
+    private final int depth;
+
+    private final Map<String, String> fileDigests;
+
+    Manifest(Optional<String> base, int depth, Map<String, String> fileDigests) {
+      this.base = base;
+      this.depth = depth;
+      this.fileDigests = Collections.unmodifiableMap(new TreeMap<>(fileDigests));
+    }
+
+    /**
+     * @return True if the backup holds every file
+     */
+    boolean isFull() {
+      return !base.isPresent();
+    }
+
+    /**
+     * @return The name of the backup this delta was made against
+     */
+    Optional<String> getBase() {
+      return base;
+    }
+
+    /**
+     * @return The number of deltas between this backup and the full backup
+     */
+    int getDepth() {
+      return depth;
+    }
+
+    /**
+     * @return The hex encoded digest of every file in the wallet directory at the time of the backup
+     */
+    Map<String, String> getFileDigests() {
+      return fileDigests;
+    }
+  }
+}
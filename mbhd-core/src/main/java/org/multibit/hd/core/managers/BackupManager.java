@@ -4,11 +4,8 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.io.ByteStreams;
-import com.google.common.io.Files;
 import org.bitcoinj.core.Wallet;
 import org.joda.time.DateTime;
-import org.multibit.hd.brit.crypto.AESUtils;
 import org.multibit.hd.brit.seed_phrase.Bip39SeedPhraseGenerator;
 import org.multibit.hd.brit.seed_phrase.SeedPhraseGenerator;
 import org.multibit.hd.core.crypto.EncryptedFileReaderWriter;
@@ -22,23 +19,26 @@ import org.multibit.hd.core.exceptions.EncryptedFileReaderWriterException;
 import org.multibit.hd.core.exceptions.ExceptionHandler;
 import org.multibit.hd.core.exceptions.WalletLoadException;
 import org.multibit.hd.core.files.SecureFiles;
-import org.multibit.hd.core.files.ZipFiles;
 import org.multibit.hd.core.utils.Dates;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.params.KeyParameter;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.multibit.hd.core.dto.WalletId.LENGTH_OF_FORMATTED_WALLET_ID;
 import static org.multibit.hd.core.dto.WalletId.WALLET_ID_SEPARATOR;
@@ -66,6 +66,14 @@ public enum BackupManager {
   public static final int NUMBER_OF_LAST_WALLET_ZIP_BACKUPS_TO_ALWAYS_KEEP = 8; // Must be at least 1.
 
   public static final String BACKUP_TIMESTAMP_SUFFIX_FORMAT = "yyyyMMddHHmmss";
+
+  private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+  /**
+   * Marks a thinned backup that is waiting to be secure deleted (no longer matched as a backup)
+   */
+  private static final String PENDING_DELETE_FILE_EXTENSION = ".deleting";
+
   private DateFormat dateFormat;
 
   private static final Logger log = LoggerFactory.getLogger(BackupManager.class);
@@ -76,6 +84,12 @@ public enum BackupManager {
   // Where the cloud backups are stored (this is typically specified by the user and is a SpiderOak etc sync directory)
   private Optional<File> cloudBackupDirectory;
 
+  // The backup manifests, indexed by wallet id
+  private final ConcurrentMap<WalletId, BackupManifest> backupManifests = new ConcurrentHashMap<>();
+
+  // The most recently autosaved encrypted wallet files, indexed by wallet id
+  private final ConcurrentMap<WalletId, AutoSavedWallet> autoSavedWallets = new ConcurrentHashMap<>();
+
   /**
    * Initialise the backup manager to use the specified cloudBackupDirectory.
    * All the cloud backups will be written and read from this directory.
@@ -95,6 +109,38 @@ public enum BackupManager {
   public void shutdownNow() {
     this.applicationDataDirectory = null;
     this.cloudBackupDirectory = Optional.absent();
+    this.backupManifests.clear();
+    this.autoSavedWallets.clear();
+  }
+
+  /**
+   * @return True if a cloud backup directory is set and exists
+   */
+  public boolean isCloudBackupDirectoryAvailable() {
+    return cloudBackupDirectory != null && cloudBackupDirectory.isPresent() && cloudBackupDirectory.get().exists();
+  }
+
+  /**
+   * @param walletId The wallet id
+   *
+   * @return The backup manifest used to detect changes to the wallet directory between backups
+   */
+  public BackupManifest getOrCreateBackupManifest(WalletId walletId) {
+
+    Preconditions.checkNotNull(walletId, "'walletId' must be present");
+    createApplicationDataDirectoryIfNotSet();
+
+    BackupManifest backupManifest = backupManifests.get(walletId);
+    if (backupManifest == null) {
+      File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId));
+      backupManifest = new BackupManifest(walletRootDirectory);
+      BackupManifest existing = backupManifests.putIfAbsent(walletId, backupManifest);
+      if (existing != null) {
+        backupManifest = existing;
+      }
+    }
+
+    return backupManifest;
   }
 
   /**
@@ -242,6 +288,56 @@ public enum BackupManager {
     return walletBackups;
   }
 
+  /**
+   * <p>Remember the encrypted wallet file written by an autosave so that the next rolling backup can copy it rather
+   * than serialise and encrypt the wallet again</p>
+   *
+   * @param walletId            The wallet id
+   * @param encryptedWalletFile The encrypted wallet file that was written
+   * @param walletFingerprint   The wallet fingerprint taken before the wallet was serialised
+   * @param password            The password used to encrypt the wallet file
+   */
+  public void rememberAutoSavedWallet(WalletId walletId, File encryptedWalletFile, String walletFingerprint, CharSequence password) {
+
+    Preconditions.checkNotNull(walletId, "'walletId' must be present");
+    Preconditions.checkNotNull(encryptedWalletFile, "'encryptedWalletFile' must be present");
+    Preconditions.checkNotNull(walletFingerprint, "'walletFingerprint' must be present");
+    Preconditions.checkNotNull(password, "'password' must be present");
+
+    autoSavedWallets.put(walletId, new AutoSavedWallet(encryptedWalletFile, walletFingerprint, password));
+  }
+
+  /**
+   * <p>Copy the autosaved encrypted wallet into a rolling backup if the wallet has not changed since it was saved</p>
+   *
+   * @param walletSummary The wallet summary of the wallet being backed up
+   * @param password      The password the rolling backup is to be encrypted with
+   * @param destFile      The rolling backup file to create
+   *
+   * @return True if the rolling backup was copied, false if the wallet must be saved again
+   *
+   * @throws IOException If the copy failed
+   */
+  private boolean copyAutoSavedWallet(WalletSummary walletSummary, CharSequence password, File destFile) throws IOException {
+
+    AutoSavedWallet autoSavedWallet = autoSavedWallets.get(walletSummary.getWalletId());
+    if (autoSavedWallet == null || !autoSavedWallet.isCurrent(walletSummary.getWallet(), password)) {
+      return false;
+    }
+
+    // The autosave replaces the encrypted wallet atomically so the copy always sees a complete file
+    // Files.copy leaves the platform to choose the cheapest copy (e.g. a kernel copy rather than through the heap)
+    File temporaryFile = new File(destFile.getAbsolutePath() + TEMPORARY_FILE_EXTENSION);
+    try {
+      Files.copy(autoSavedWallet.encryptedWalletFile.toPath(), temporaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      SecureFiles.replaceFile(temporaryFile, destFile);
+    } finally {
+      Files.deleteIfExists(temporaryFile.toPath());
+    }
+
+    return true;
+  }
+
   /**
    * Create a rolling backup of the wallet, specified by the walletId.
    * <p/>
@@ -250,7 +346,7 @@ public enum BackupManager {
    *
    * @param walletSummary The wallet data with the wallet to backup
    *
-   * @return the File of the created rolling wallet backup
+   * @return the File of the created (encrypted) rolling wallet backup
    *
    * @throws java.io.IOException if the wallet backup could not be created
    */
@@ -281,13 +377,18 @@ public enum BackupManager {
       + Dates.formatBackupDate(Dates.nowUtc())
       + WalletManager.MBHD_WALLET_SUFFIX;
 
-    File walletBackupFile = new File(walletBackupFilename);
-    log.debug("Creating rolling-backup\n'{}'", walletBackupFilename);
-    walletSummary.getWallet().saveToFile(walletBackupFile);
-    log.debug("Created rolling-backup successfully. Size = {}", walletBackupFile.length());
+    File encryptedAESCopy = new File(walletBackupFilename + WalletManager.MBHD_AES_SUFFIX);
+    if (copyAutoSavedWallet(walletSummary, password, encryptedAESCopy)) {
+      log.debug("Created rolling-backup AES copy of the autosaved wallet as file:\n'{}'", encryptedAESCopy.getAbsolutePath());
+    } else {
+      File walletBackupFile = new File(walletBackupFilename);
+      log.debug("Creating rolling-backup\n'{}'", walletBackupFilename);
+      walletSummary.getWallet().saveToFile(walletBackupFile);
+      log.debug("Created rolling-backup successfully. Size = {}", walletBackupFile.length());
 
-    File encryptedAESCopy = EncryptedFileReaderWriter.makeAESEncryptedCopyAndDeleteOriginal(walletBackupFile, password);
-    log.debug("Created rolling-backup AES copy successfully as file:\n'{}'", encryptedAESCopy.getAbsolutePath());
+      encryptedAESCopy = EncryptedFileReaderWriter.makeAESEncryptedCopyAndDeleteOriginal(walletBackupFile, password);
+      log.debug("Created rolling-backup AES copy successfully as file:\n'{}'", encryptedAESCopy.getAbsolutePath());
+    }
 
     List<File> rollingBackups = getRollingBackups(walletSummary.getWalletId());
 
@@ -302,13 +403,14 @@ public enum BackupManager {
       // Delete the second eldest
       SecureFiles.secureDelete(rollingBackups.get(1));
     }
-    return walletBackupFile;
+    return encryptedAESCopy;
   }
 
   /**
    * Create a local zip backup of the specified wallet id.
    * The wallet manager is interrogated to find the physical directory where the wallet is stored.
-   * The whole directory (except the zip-backups) is then copied and zipped into a timestamped backup file
+   * The whole directory (except the zip-backups) is then zipped and encrypted in a single pass into a timestamped backup file.
+   * Only the files that have changed since the previous backup are included unless a full backup is due (see BackupChain).
    * This is then written to the local backup directories
    *
    * @return The created local backup as a file
@@ -324,37 +426,18 @@ public enum BackupManager {
       throw new IOException("Directory " + walletRootDirectory + " does not exist. Cannot backup.");
     }
 
-    WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletRootDirectory, walletId);
-
     File localBackupDirectory = new File(walletRootDirectory.getAbsoluteFile() + File.separator + LOCAL_ZIP_BACKUP_DIRECTORY_NAME);
     SecureFiles.verifyOrCreateDirectory(localBackupDirectory);
 
-    String backupFilename = WalletManager.WALLET_DIRECTORY_PREFIX
-      + WALLET_ID_SEPARATOR
-      + walletId.toFormattedString()
-      + WALLET_ID_SEPARATOR
-      + Dates.formatBackupDate(Dates.nowUtc())
-      + BACKUP_ZIP_FILE_EXTENSION;
-    String localBackupFilename = localBackupDirectory.getAbsolutePath() + File.separator + backupFilename;
-
-    log.debug("Creating local zip-backup\n'{}'", localBackupFilename);
-    ZipFiles.zipFolder(walletRootDirectory.getAbsolutePath(), localBackupFilename, false);
-    File localBackupEncryptedFilename = EncryptedFileReaderWriter.makeBackupAESEncryptedCopyAndDeleteOriginal(
-      new File(localBackupFilename),
-      (String) password,
-      walletSummary.getEncryptedBackupKey());
-    log.debug("Created encrypted local zip-backup successfully. Size = {} bytes", localBackupEncryptedFilename.length());
-
-    // Thin the local backup directory
-    thinBackupDirectory(walletId, localBackupDirectory);
-
-    return localBackupEncryptedFilename;
+    return createZipBackup(walletId, walletRootDirectory, localBackupDirectory, getBackupAESKey(walletRootDirectory, walletId, password), true);
   }
 
   /**
    * Create a cloud backup of the specified wallet id.
    * The wallet manager is interrogated to find the physical directory where the wallet is stored.
-   * The whole directory (except the zip-backups) is then copied and zipped into a timestamped backup file
+   * The whole directory (except the zip-backups) is then zipped and encrypted in a single pass into a timestamped backup file.
+   * A cloud backup is always a full backup since it is often restored on its own (a delta needs every earlier backup
+   * in its chain alongside it).
    * This is then written to the cloud backup directories
    *
    * @return The created cloud backup as a file or null if nothing was generated
@@ -370,35 +453,147 @@ public enum BackupManager {
       throw new IOException("Directory " + walletRootDirectory + " does not exist. Cannot backup.");
     }
 
-    WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletRootDirectory, walletId);
+    if (isCloudBackupDirectoryAvailable()) {
+      return createZipBackup(walletId, walletRootDirectory, cloudBackupDirectory.get(), getBackupAESKey(walletRootDirectory, walletId, password), false);
+    } else {
+      log.debug("No cloud backup made for wallet '" + walletId + "' as no cloudBackupDirectory is set.");
+      return null;
+    }
+  }
+
+  /**
+   * Create a local zip backup of the specified wallet id and a cloud backup (if the cloud backup directory is set).
+   * If the local backup is a full backup the same encrypted file is placed in the cloud backup directory so the wallet
+   * directory is only zipped and encrypted once. A cloud backup is always full (see createCloudBackup) so if the local
+   * backup is a delta a full cloud backup is made separately.
+   *
+   * @return The created local backup as a file
+   */
+  public File createLocalAndCloudBackup(WalletId walletId, CharSequence password) throws IOException {
+    Preconditions.checkNotNull(walletId);
+    createApplicationDataDirectoryIfNotSet();
 
+    File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId));
 
-    String backupFilename = WalletManager.WALLET_DIRECTORY_PREFIX
+    if (!walletRootDirectory.exists()) {
+      throw new IOException("Directory " + walletRootDirectory + " does not exist. Cannot backup.");
+    }
+
+    KeyParameter backupAESKey = getBackupAESKey(walletRootDirectory, walletId, password);
+
+    File localBackupDirectory = new File(walletRootDirectory.getAbsoluteFile() + File.separator + LOCAL_ZIP_BACKUP_DIRECTORY_NAME);
+    SecureFiles.verifyOrCreateDirectory(localBackupDirectory);
+
+    File localBackupEncryptedFile = createZipBackup(walletId, walletRootDirectory, localBackupDirectory, backupAESKey, true);
+
+    if (!isCloudBackupDirectoryAvailable()) {
+      log.debug("No cloud backup made for wallet '" + walletId + "' as no cloudBackupDirectory is set.");
+      return localBackupEncryptedFile;
+    }
+
+    Optional<BackupChain.Manifest> manifest = BackupChain.readManifest(localBackupEncryptedFile, backupAESKey);
+    if (manifest.isPresent() && !manifest.get().isFull()) {
+      createZipBackup(walletId, walletRootDirectory, cloudBackupDirectory.get(), backupAESKey, false);
+      return localBackupEncryptedFile;
+    }
+
+    File cloudBackupEncryptedFile = new File(cloudBackupDirectory.get().getAbsolutePath() + File.separator + localBackupEncryptedFile.getName());
+    log.debug("Copying zip-backup to cloud '" + cloudBackupEncryptedFile.getAbsolutePath() + "'");
+
+    // A copy rather than a hard link since thinning secure deletes (overwrites) the local backup in place
+    File temporaryFile = new File(cloudBackupEncryptedFile.getAbsolutePath() + TEMPORARY_FILE_EXTENSION);
+    try {
+      Files.copy(localBackupEncryptedFile.toPath(), temporaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      SecureFiles.replaceFile(temporaryFile, cloudBackupEncryptedFile);
+    } finally {
+      Files.deleteIfExists(temporaryFile.toPath());
+    }
+
+    // Thin the cloud backup directory
+    thinBackupDirectory(walletId, cloudBackupDirectory.get(), backupAESKey);
+
+    return localBackupEncryptedFile;
+  }
+
+  /**
+   * @param walletId The wallet id
+   *
+   * @return The timestamped name of a new encrypted zip backup
+   */
+  private String createEncryptedBackupFilename(WalletId walletId) {
+
+    return WalletManager.WALLET_DIRECTORY_PREFIX
       + WALLET_ID_SEPARATOR
       + walletId.toFormattedString()
       + WALLET_ID_SEPARATOR
       + Dates.formatBackupDate(Dates.nowUtc())
-      + BACKUP_ZIP_FILE_EXTENSION;
+      + ENCRYPTED_BACKUP_FILE_EXTENSION;
+  }
 
-    if (cloudBackupDirectory.isPresent() && cloudBackupDirectory.get().exists()) {
-      String cloudBackupFilename = cloudBackupDirectory.get().getAbsolutePath() + File.separator + backupFilename;
-      log.debug("Creating cloud zip-backup '" + cloudBackupFilename + "'");
-      ZipFiles.zipFolder(walletRootDirectory.getAbsolutePath(), cloudBackupFilename, false);
-      File cloudBackupEncryptedFilename = EncryptedFileReaderWriter.makeBackupAESEncryptedCopyAndDeleteOriginal(
-        new File(cloudBackupFilename),
-        (String) password,
-        walletSummary.getEncryptedBackupKey());
+  /**
+   * @return The backup AES key held (encrypted) in the wallet summary
+   */
+  private KeyParameter getBackupAESKey(File walletRootDirectory, WalletId walletId, CharSequence password) {
 
-      log.debug("Created encrypted cloud zip-backup successfully. Size = " + (cloudBackupEncryptedFilename).length() + " bytes");
+    WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletRootDirectory, walletId);
 
-      // Thin the local backup directory
-      thinBackupDirectory(walletId, cloudBackupDirectory.get());
+    return EncryptedFileReaderWriter.decryptBackupAESKey(password, walletSummary.getEncryptedBackupKey());
+  }
 
-      return cloudBackupEncryptedFilename;
-    } else {
-      log.debug("No cloud backup made for wallet '" + walletId + "' as no cloudBackupDirectory is set.");
-      return null;
+  /**
+   * <p>Write a zip backup of the wallet directory into the backup directory and then thin the backup directory</p>
+   *
+   * @param walletId            The wallet id
+   * @param walletRootDirectory The wallet directory to zip
+   * @param backupDirectory     The directory to hold the backup (local or cloud)
+   * @param backupAESKey        The backup AES key
+   * @param deltaAllowed        True if the backup can be a delta against an earlier backup in the backup directory
+   *
+   * @return The created backup
+   *
+   * @throws IOException If the backup could not be written or verified
+   */
+  private File createZipBackup(
+    WalletId walletId,
+    File walletRootDirectory,
+    File backupDirectory,
+    KeyParameter backupAESKey,
+    boolean deltaAllowed
+  ) throws IOException {
+
+    File backupEncryptedFile = new File(backupDirectory.getAbsolutePath() + File.separator + createEncryptedBackupFilename(walletId));
+
+    log.debug("Creating zip-backup\n'{}'", backupEncryptedFile.getAbsolutePath());
+    BackupChain.Manifest manifest = BackupChain.write(
+      walletRootDirectory,
+      deltaAllowed ? getWalletBackupFiles(walletId, backupDirectory) : Collections.<File>emptyList(),
+      backupEncryptedFile,
+      backupAESKey,
+      getOrCreateBackupManifest(walletId)
+    );
+    log.debug(
+      "Created encrypted {} zip-backup successfully. Size = {} bytes",
+      manifest.isFull() ? "full" : "delta",
+      backupEncryptedFile.length()
+    );
+
+    // Thin the backup directory
+    thinBackupDirectory(walletId, backupDirectory, backupAESKey);
+
+    return backupEncryptedFile;
+  }
+
+  /**
+   * @return The backup files of the wallet in the directory
+   */
+  private List<File> getWalletBackupFiles(WalletId walletId, File backupDirectory) {
+
+    List<File> backupFiles = Lists.newArrayList();
+    for (BackupSummary backupSummary : getWalletBackups(walletId, backupDirectory)) {
+      backupFiles.add(backupSummary.getFile());
     }
+
+    return backupFiles;
   }
 
   /**
@@ -474,7 +669,6 @@ public enum BackupManager {
    * @param backupAESKey     The AES key to use to decrypt the backup file
    */
   public WalletId loadZipBackup(File backupFileToLoad, KeyParameter backupAESKey) throws IOException {
-    File temporaryFile = null;
     try {
       // Work out the walletId of the backup file being loaded
       String backupFilename = backupFileToLoad.getName();
@@ -493,28 +687,13 @@ public enum BackupManager {
 
       File walletRootDirectory = WalletManager.getOrCreateWalletDirectory(applicationDataDirectory, WalletManager.createWalletRoot(walletId));
 
-      // Read the encrypted file in.
-      byte[] encryptedBytes = Files.toByteArray(new File(backupFileToLoad.getAbsolutePath()));
-
-      // Decrypt the backup bytes
-      byte[] decryptedBytes = AESUtils.decrypt(encryptedBytes, backupAESKey, WalletManager.aesInitialisationVector());
-
-      File tempDirectory = Files.createTempDir();
-      temporaryFile = File.createTempFile("backup", "zip", tempDirectory);
-      try (FileOutputStream outputFileStream = new FileOutputStream(temporaryFile)) {
-        ByteStreams.copy(new ByteArrayInputStream(decryptedBytes), outputFileStream);
-      }
-
-      // Unzip the backup into the wallet root directory - this overwrites files if already present (hence the backup just done)
-      ZipFiles.unzip(temporaryFile.getAbsolutePath(), walletRootDirectory.getAbsolutePath());
+      // Decrypt and unzip the backup (and any earlier backups it depends on) straight into the wallet root directory
+      // This overwrites files if already present (hence the backup just done)
+      BackupChain.restore(backupFileToLoad, walletRootDirectory, backupAESKey);
 
       return walletId;
     } catch (Exception e) {
       throw new EncryptedFileReaderWriterException("Cannot read and decrypt the backup file '" + backupFileToLoad.getAbsolutePath() + "'", e);
-    } finally {
-      if (temporaryFile != null) {
-        SecureFiles.secureDelete(temporaryFile);
-      }
     }
   }
 
@@ -523,10 +702,13 @@ public enum BackupManager {
    * Thinning is done by removing the most quickly replaced backup, except for the first and last few
    * (as they are considered to be more valuable backups).
    *
+   * A backup that a later delta backup depends on is first merged into that delta.
+   *
    * @param walletId        the wallet id of wallet backups to thin
    * @param backupDirectory the directory to thin
+   * @param backupAESKey    the backup AES key (used to merge backups)
    */
-  private void thinBackupDirectory(WalletId walletId, File backupDirectory) {
+  private void thinBackupDirectory(WalletId walletId, File backupDirectory, KeyParameter backupAESKey) {
     if (dateFormat == null) {
       dateFormat = new SimpleDateFormat(BACKUP_TIMESTAMP_SUFFIX_FORMAT);
     }
@@ -535,8 +717,25 @@ public enum BackupManager {
       return;
     }
 
-    // Find out how many wallet backups there are.
+    // Finish any secure deletes that were interrupted by a shutdown
+    File[] pendingDeletes = backupDirectory.listFiles();
+    if (pendingDeletes != null) {
+      for (File pendingDelete : pendingDeletes) {
+        if (pendingDelete.getName().endsWith(PENDING_DELETE_FILE_EXTENSION)) {
+          SecureFiles.secureDeleteAsync(pendingDelete);
+        }
+      }
+    }
+
+    // Find out how many wallet backups there are (oldest first)
     List<BackupSummary> backups = getWalletBackups(walletId, backupDirectory);
+    Collections.sort(
+      backups, new Comparator<BackupSummary>() {
+        @Override
+        public int compare(BackupSummary o1, BackupSummary o2) {
+          return o1.getName().compareTo(o2.getName());
+        }
+      });
 
     if (backups.size() < MAXIMUM_NUMBER_OF_ZIP_BACKUPS) {
       // No thinning required.
@@ -600,8 +799,14 @@ public enum BackupManager {
             .getFile()
             .getAbsolutePath()
         );
-        SecureFiles.secureDelete(backups.get(walletBackupToDeleteIndex).getFile());
-      } catch (IOException ioe) {
+        File backupToDelete = backups.get(walletBackupToDeleteIndex).getFile();
+        BackupChain.mergeIntoDependent(backupToDelete, getWalletBackupFiles(walletId, backupDirectory), backupAESKey);
+
+        // Take the backup out of the chain now and overwrite it in the background
+        File pendingDelete = new File(backupDirectory, backupToDelete.getName() + PENDING_DELETE_FILE_EXTENSION);
+        Files.move(backupToDelete.toPath(), pendingDelete.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        SecureFiles.secureDeleteAsync(pendingDelete);
+      } catch (IOException | RuntimeException ioe) {
         log.error(ioe.getClass().getName() + " " + ioe.getMessage());
       }
     }
@@ -618,4 +823,39 @@ public enum BackupManager {
       log.debug("Setting the application data directory\n'{}'", applicationDataDirectory);
     }
   }
+
+  /**
+   * <p>An encrypted wallet file written by an autosave with the state of the wallet when it was serialised</p>
+   */
+  private static class AutoSavedWallet {
+
+    private final File encryptedWalletFile;
+
+    private final String walletFingerprint;
+
+    private final String passwordFingerprint;
+
+    private final long lastModified;
+
+    private final long length;
+
+    private AutoSavedWallet(File encryptedWalletFile, String walletFingerprint, CharSequence password) {
+      this.encryptedWalletFile = encryptedWalletFile;
+      this.walletFingerprint = walletFingerprint;
+      this.passwordFingerprint = EncryptedFileReaderWriter.passwordFingerprint(password, WalletManager.scryptSalt());
+      this.lastModified = encryptedWalletFile.lastModified();
+      this.length = encryptedWalletFile.length();
+    }
+
+    /**
+     * @return True if the file is unchanged, was encrypted with the password and the wallet has not changed since
+     */
+    private boolean isCurrent(Wallet wallet, CharSequence password) {
+      return walletFingerprint.equals(WalletManager.INSTANCE.getWalletFingerprint(wallet).orNull())
+        && passwordFingerprint.equals(EncryptedFileReaderWriter.passwordFingerprint(password, WalletManager.scryptSalt()))
+        && encryptedWalletFile.isFile()
+        && encryptedWalletFile.lastModified() == lastModified
+        && encryptedWalletFile.length() == length;
+    }
+  }
 }
@@ -0,0 +1,250 @@
+package org.multibit.hd.core.managers;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+import org.multibit.hd.core.dto.BackupType;
+import org.multibit.hd.core.services.ContactService;
+import org.multibit.hd.core.services.HistoryService;
+import org.multibit.hd.core.services.WalletService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Manifest to provide the following to the backup service:</p>
+ * <ul>
+ * <li>A digest of the content of the files in a wallet directory that a backup preserves</li>
+ * <li>The digests of individual files so that a delta backup only holds the files that have changed</li>
+ * <li>The digest at the time of the last backup of each type so that a backup of unchanged content can be skipped</li>
+ * </ul>
+ * <p>File digests are cached against the modification time and length of each file so only the files that have been
+ * written since the last check are read again. A file modified within {@link #MODIFICATION_GRANULARITY_MILLIS} of
+ * being digested is always read again since a second write in the same clock tick would not change its attributes.</p>
+ * <p>The manifest is held in memory so the first backup of each type after startup is always made.</p>
+ *
+ * @since 0.0.5
+ */
+public class BackupManifest {
+
+  private static final Logger log = LoggerFactory.getLogger(BackupManifest.class);
+
+  /**
+   * The coarsest file modification time resolution in common use (FAT)
+   */
+  static final long MODIFICATION_GRANULARITY_MILLIS = 2000;
+
+  /**
+   * The files (relative to the wallet directory) whose content is preserved by a rolling backup
+   */
+  static final List<String> ROLLING_BACKUP_FILES = ImmutableList.of(
+    WalletManager.MBHD_WALLET_NAME + WalletManager.MBHD_AES_SUFFIX
+  );
+
+  /**
+   * The files (relative to the wallet directory) whose content is preserved by a zip backup
+   * The rolling backups are deliberately excluded since they change whenever the wallet does
+   */
+  static final List<String> ZIP_BACKUP_FILES = ImmutableList.of(
+    WalletManager.MBHD_WALLET_NAME + WalletManager.MBHD_AES_SUFFIX,
+    WalletManager.MBHD_SUMMARY_NAME,
+    WalletService.PAYMENTS_DIRECTORY_NAME + File.separator + WalletService.PAYMENTS_DATABASE_NAME,
+    WalletService.PAYMENTS_DIRECTORY_NAME + File.separator + WalletService.PAYMENTS_JOURNAL_NAME,
+    ContactService.CONTACTS_DIRECTORY_NAME + File.separator + ContactService.CONTACTS_DATABASE_NAME,
+    HistoryService.HISTORY_DIRECTORY_NAME + File.separator + HistoryService.HISTORY_DATABASE_NAME
+  );
+
+  private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+
+  private final File walletDirectory;
+
+  /**
+   * The file digests, indexed by the path relative to the wallet directory
+   */
+  private final Map<String, FileDigest> fileDigests = Maps.newHashMap();
+
+  /**
+   * The manifest digest at the time of the last successful backup of each type
+   */
+  private final Map<BackupType, String> backedUpDigests = Maps.newEnumMap(BackupType.class);
+
+  /**
+   * @param walletDirectory The wallet directory
+   */
+  public BackupManifest(File walletDirectory) {
+
+    Preconditions.checkNotNull(walletDirectory, "'walletDirectory' must be present");
+
+    this.walletDirectory = walletDirectory;
+  }
+
+  /**
+   * <p>Only the files that have changed since the last call are read</p>
+   *
+   * @param backupType The backup type
+   *
+   * @return The digest of the current content of the files preserved by the backup type
+   *
+   * @throws IOException If a file could not be read
+   */
+  public synchronized String digest(BackupType backupType) throws IOException {
+
+    Preconditions.checkNotNull(backupType, "'backupType' must be present");
+
+    Hasher hasher = HASH_FUNCTION.newHasher();
+
+    for (String relativePath : filesFor(backupType)) {
+
+      hasher.putString(relativePath, Charsets.UTF_8);
+
+      File file = new File(walletDirectory, relativePath);
+      if (!file.isFile()) {
+        fileDigests.remove(relativePath);
+        hasher.putBoolean(false);
+        continue;
+      }
+
+      hasher.putBoolean(true);
+      hasher.putBytes(getOrCreateFileDigest(relativePath, file));
+    }
+
+    return hasher.hash().toString();
+  }
+
+  /**
+   * <p>Only the files that have changed since they were last digested are read</p>
+   *
+   * @param relativePaths The paths of the files relative to the wallet directory (missing files are omitted)
+   *
+   * @return The hex encoded digest of each file, indexed by relative path
+   *
+   * @throws IOException If a file could not be read
+   */
+  public synchronized Map<String, String> digestFiles(Collection<String> relativePaths) throws IOException {
+
+    Preconditions.checkNotNull(relativePaths, "'relativePaths' must be present");
+
+    Map<String, String> digests = Maps.newTreeMap();
+    for (String relativePath : relativePaths) {
+      File file = new File(walletDirectory, relativePath);
+      if (file.isFile()) {
+        digests.put(relativePath, BaseEncoding.base16().lowerCase().encode(getOrCreateFileDigest(relativePath, file)));
+      }
+    }
+
+    // Forget files that have gone (e.g. thinned rolling backups)
+    for (String relativePath : Lists.newArrayList(fileDigests.keySet())) {
+      if (!digests.containsKey(relativePath) && !ZIP_BACKUP_FILES.contains(relativePath)) {
+        fileDigests.remove(relativePath);
+      }
+    }
+
+    return digests;
+  }
+
+  /**
+   * @param backupType The backup type
+   * @param digest     The digest of the current content
+   *
+   * @return True if the last backup of this type was made of content with the same digest
+   */
+  public synchronized boolean isBackedUp(BackupType backupType, String digest) {
+
+    Preconditions.checkNotNull(digest, "'digest' must be present");
+
+    return digest.equals(backedUpDigests.get(backupType));
+  }
+
+  /**
+   * <p>Record a successful backup</p>
+   *
+   * @param backupType The backup type
+   * @param digest     The digest of the content taken before the backup was made (a change during the backup will
+   *                   cause the next backup to be made)
+   */
+  public synchronized void recordBackup(BackupType backupType, String digest) {
+
+    Preconditions.checkNotNull(backupType, "'backupType' must be present");
+    Preconditions.checkNotNull(digest, "'digest' must be present");
+
+    backedUpDigests.put(backupType, digest);
+  }
+
+  /**
+   * @return The wallet directory
+   */
+  public File getWalletDirectory() {
+    return walletDirectory;
+  }
+
+  private byte[] getOrCreateFileDigest(String relativePath, File file) throws IOException {
+
+    long lastModified = file.lastModified();
+    long length = file.length();
+
+    FileDigest fileDigest = fileDigests.get(relativePath);
+    if (fileDigest != null && fileDigest.isCurrent(lastModified, length)) {
+      return fileDigest.digest;
+    }
+
+    log.trace("Digesting '{}'", relativePath);
+    long digestedAt = System.currentTimeMillis();
+    byte[] digest = Files.hash(file, HASH_FUNCTION).asBytes();
+
+    fileDigests.put(relativePath, new FileDigest(lastModified, length, digestedAt, digest));
+
+    return digest;
+  }
+
+  private static List<String> filesFor(BackupType backupType) {
+
+    switch (backupType) {
+      case ROLLING:
+        return ROLLING_BACKUP_FILES;
+      case LOCAL_ZIP:
+      case CLOUD_ZIP:
+        return ZIP_BACKUP_FILES;
+      default:
+        throw new IllegalStateException("Unknown backup type: " + backupType);
+    }
+  }
+
+  /**
+   * <p>The digest of a file with the attributes it had when it was read</p>
+   */
+  private static class FileDigest {
+
+    private final long lastModified;
+
+    private final long length;
+
+    private final long digestedAt;
+
+    private final byte[] digest;
+
+    private FileDigest(long lastModified, long length, long digestedAt, byte[] digest) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.digestedAt = digestedAt;
+      this.digest = digest;
+    }
+
+    private boolean isCurrent(long lastModified, long length) {
+      return this.lastModified == lastModified
+        && this.length == length
+        && lastModified < digestedAt - MODIFICATION_GRANULARITY_MILLIS;
+    }
+  }
+}
@@ -6,7 +6,10 @@ import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.store.BlockStore;
 import org.bitcoinj.store.BlockStoreException;
 import org.bitcoinj.store.SPVBlockStore;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import org.multibit.hd.core.store.SyncState;
+import org.multibit.hd.core.store.SyncStateBlockStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,6 +22,7 @@ import java.util.Date;
  * <p>Manager to provide the following to BitcoinNetworkService:</p>
  * <ul>
  * <li>Create a blockstore</li>
+ * <li>Read the chain head of a closed blockstore without opening it</li>
  * </ul>
  */
 public class BlockStoreManager {
@@ -43,7 +47,7 @@ public class BlockStoreManager {
    * @param checkpointDate  Date to checkpoint the blockstore from
    * @param createNew       if true then create a new block writeContacts
    *
-   * @return The created blockStore
+   * @return The created blockStore (recording its chain head in the sync state file)
    *
    * @throws BlockStoreException
    * @throws IOException
@@ -53,6 +57,8 @@ public class BlockStoreManager {
 
     boolean blockStoreCreatedNew = !blockStoreFile.exists();
 
+    File syncStateFile = SyncState.getSyncStateFile(blockStoreFile);
+
     // TODO copy checkpoints file from installation directory if does not exist
     // TODO use bigger of managers files if installed version is larger
 
@@ -73,6 +79,11 @@ public class BlockStoreManager {
 
     }
 
+    if (blockStoreCreatedNew) {
+      // Any previous record describes a block store that no longer exists
+      deleteSyncState(syncStateFile);
+    }
+
     log.debug("Get or create SPV block store (pass 1):\n'{}'", blockStoreFile.getAbsolutePath());
     BlockStore blockStore;
     try {
@@ -90,6 +101,7 @@ public class BlockStoreManager {
         log.info("Deleting SPV block store (pass 2) from file:\n'{}'", blockStoreFile.getAbsolutePath());
         log.info("isWritable: '{}' isDeletedOK: '{}'", isWritable, isDeletedOk);
         blockStoreCreatedNew = true;
+        deleteSyncState(syncStateFile);
 
         blockStore = new SPVBlockStore(networkParameters, blockStoreFile);
       } catch (BlockStoreException bse2) {
@@ -101,6 +113,9 @@ public class BlockStoreManager {
 
     log.debug("Block store in place. Created new: {}", blockStoreCreatedNew);
 
+    // Record the chain head on every update (including checkpointing) so the sync decision can avoid opening the store
+    blockStore = new SyncStateBlockStore(blockStore, syncStateFile);
+
     // Load the existing checkpoint file and checkpoint from today.
     if (checkpointsFile.exists()) {
 
@@ -126,4 +141,32 @@ public class BlockStoreManager {
     return blockStore;
 
   }
+
+  /**
+   * @param blockStoreFile The file used for the block store
+   *
+   * @return The sync state recorded when the block store was last closed (absent if the store is missing, open or was not closed cleanly)
+   */
+  public static Optional<SyncState> readClosedSyncState(File blockStoreFile) {
+
+    if (!blockStoreFile.exists() || blockStoreFile.length() == 0) {
+      // The store will be created afresh so no record can describe it
+      return Optional.absent();
+    }
+
+    Optional<SyncState> syncState = SyncState.read(SyncState.getSyncStateFile(blockStoreFile));
+    if (syncState.isPresent() && syncState.get().isClosed()) {
+      return syncState;
+    }
+
+    return Optional.absent();
+  }
+
+  private static void deleteSyncState(File syncStateFile) {
+
+    if (syncStateFile.exists() && !syncStateFile.delete()) {
+      log.warn("Could not delete sync state file '{}'", syncStateFile.getAbsolutePath());
+    }
+
+  }
 }
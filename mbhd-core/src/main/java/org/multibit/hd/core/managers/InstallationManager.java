@@ -49,6 +49,7 @@ public class InstallationManager {
 
   public static final String SPV_BLOCKCHAIN_SUFFIX = ".spvchain";
   public static final String CHECKPOINTS_SUFFIX = ".checkpoints";
+  public static final String SYNC_STATE_SUFFIX = ".syncstate";
   public static final String CA_CERTS_NAME = MBHD_PREFIX + "-cacerts";
 
   /**
@@ -19,6 +19,7 @@ import java.io.IOException;
  * <p>Listener to provide the following to WalletManager:</p>
  * <ul>
  * <li>Saving of rolling wallet backups and zip backups</li>
+ * <li>Recording the encrypted wallet so that an unchanged wallet can be copied into a rolling backup</li>
  * </ul>
  * </p>
  */
@@ -27,11 +28,23 @@ public class WalletAutoSaveListener implements WalletFiles.Listener {
 
   private static final Logger log = LoggerFactory.getLogger(WalletAutoSaveListener.class);
 
+  /**
+   * The wallet fingerprint taken as the save starts (so any later change or save will not match it)
+   */
+  private volatile Optional<String> walletFingerprint = Optional.absent();
+
   @Override
   public void onBeforeAutoSave(File tempFile) {
 
     log.debug("Auto-saving wallet to tempFile:\n'{}'", tempFile.getAbsolutePath());
 
+    Optional<WalletSummary> walletSummary = WalletManager.INSTANCE.getCurrentWalletSummary();
+    if (walletSummary.isPresent() && walletSummary.get().getWallet() != null) {
+      walletFingerprint = WalletManager.INSTANCE.getWalletFingerprintForSave(walletSummary.get().getWallet());
+    } else {
+      walletFingerprint = Optional.absent();
+    }
+
   }
 
   @Override
@@ -65,6 +78,11 @@ public class WalletAutoSaveListener implements WalletFiles.Listener {
         File encryptedWalletFile = EncryptedFileReaderWriter.makeAESEncryptedCopyAndDeleteOriginal(tempWalletToDelete, newlySavedFileWithAES, password);
         if (encryptedWalletFile != null && encryptedWalletFile.exists()) {
           log.debug("Save encrypted copy of wallet (size: {} bytes) as:\n'{}'", encryptedWalletFile.length(), encryptedWalletFile.getAbsolutePath());
+
+          // The next rolling backup can copy this file rather than serialise and encrypt the wallet again
+          if (walletFingerprint.isPresent()) {
+            BackupManager.INSTANCE.rememberAutoSavedWallet(walletId, encryptedWalletFile, walletFingerprint.get(), password);
+          }
         } else {
           log.debug("No encrypted copy of wallet:\n'{}'", newlySavedFile.getAbsolutePath());
         }
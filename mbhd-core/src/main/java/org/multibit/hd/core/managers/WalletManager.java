@@ -6,7 +6,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.common.io.Files;
+import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Bytes;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
@@ -19,17 +19,20 @@ import org.bitcoinj.store.BlockStore;
 import org.bitcoinj.store.BlockStoreException;
 import org.bitcoinj.store.UnreadableWalletException;
 import org.bitcoinj.store.WalletProtobufSerializer;
+import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.DeterministicSeed;
 import org.bitcoinj.wallet.Protos;
 import org.joda.time.DateTime;
 import org.multibit.hd.brit.crypto.AESUtils;
 import org.multibit.hd.brit.dto.FeeState;
+import org.multibit.hd.brit.extensions.FeeLedgerWalletExtension;
 import org.multibit.hd.brit.extensions.MatcherResponseWalletExtension;
 import org.multibit.hd.brit.extensions.SendFeeDtoWalletExtension;
 import org.multibit.hd.brit.seed_phrase.Bip39SeedPhraseGenerator;
 import org.multibit.hd.brit.seed_phrase.SeedPhraseGenerator;
 import org.multibit.hd.brit.services.FeeService;
 import org.multibit.hd.brit.services.TransactionSentBySelfProvider;
+import org.multibit.hd.core.coins.UtxoIndex;
 import org.multibit.hd.core.concurrent.SafeExecutors;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.config.Yaml;
@@ -48,6 +51,8 @@ import org.multibit.hd.core.files.SecureFiles;
 import org.multibit.hd.core.services.BackupService;
 import org.multibit.hd.core.services.BitcoinNetworkService;
 import org.multibit.hd.core.services.CoreServices;
+import org.multibit.hd.core.services.WalletService;
+import org.multibit.hd.core.store.SyncState;
 import org.multibit.hd.core.utils.BitcoinNetwork;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +66,7 @@ import java.security.SignatureException;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import static org.multibit.hd.core.dto.WalletId.*;
@@ -80,6 +86,12 @@ public enum WalletManager implements WalletEventListener {
   INSTANCE {
     @Override
     public void onCoinsReceived(Wallet wallet, Transaction tx, Coin prevBalance, Coin newBalance) {
+      // Keep the spendable outputs up to date
+      utxoIndex.update(wallet, tx);
+
+      // Keep the payment index up to date
+      markTransactionAsChanged(tx);
+
       // Emit an event so that GUI elements can update as required
       Coin value = tx.getValue(wallet);
       CoreEvents.fireTransactionSeenEvent(new TransactionSeenEvent(tx, value));
@@ -87,6 +99,12 @@ public enum WalletManager implements WalletEventListener {
 
     @Override
     public void onCoinsSent(Wallet wallet, Transaction tx, Coin prevBalance, Coin newBalance) {
+      // Keep the spendable outputs up to date
+      utxoIndex.update(wallet, tx);
+
+      // Keep the payment index up to date
+      markTransactionAsChanged(tx);
+
       // Emit an event so that GUI elements can update as required
       Coin value = tx.getValue(wallet);
       CoreEvents.fireTransactionSeenEvent(new TransactionSeenEvent(tx, value));
@@ -94,11 +112,26 @@ public enum WalletManager implements WalletEventListener {
 
     @Override
     public void onReorganize(Wallet wallet) {
+      // Outputs may have been unspent or removed
+      utxoIndex.markStale();
 
+      // Any transaction may have changed so the payment index must be rebuilt
+      Optional<WalletService> walletService = CoreServices.getCurrentWalletService();
+      if (walletService.isPresent()) {
+        walletService.get().markAllTransactionsAsChanged();
+      }
     }
 
     @Override
     public void onTransactionConfidenceChanged(Wallet wallet, Transaction tx) {
+      // A double spend removes outputs and may restore the ones it spent
+      if (tx.getConfidence().getConfidenceType() == TransactionConfidence.ConfidenceType.DEAD) {
+        utxoIndex.markStale();
+      }
+
+      // Keep the payment index up to date (this covers depth changes)
+      markTransactionAsChanged(tx);
+
       // Emit an event so that GUI elements can update as required
       Coin value = tx.getValue(wallet);
       CoreEvents.fireTransactionSeenEvent(new TransactionSeenEvent(tx, value));
@@ -152,6 +185,11 @@ public enum WalletManager implements WalletEventListener {
 
   private static final Pattern walletDirectoryPattern = Pattern.compile(REGEX_FOR_WALLET_DIRECTORY);
 
+  /**
+   * The cached wallet summaries for the wallet selector
+   */
+  private static final WalletSummaryCatalogue walletSummaryCatalogue = new WalletSummaryCatalogue();
+
   /**
    * The wallet version number for protobuf encrypted wallets - compatible with MultiBit Classic
    */
@@ -169,6 +207,28 @@ public enum WalletManager implements WalletEventListener {
 
   private Optional<WalletSummary> currentWalletSummary = Optional.absent();
 
+  /**
+   * Incremented on every change to the current wallet and at the start of every save of it
+   */
+  private static final AtomicLong walletChangeCount = new AtomicLong();
+
+  /**
+   * <p>Counts changes to the current wallet as they are made</p>
+   * <p>Registered to run on the thread making the change (under the wallet lock) so the count is never behind the
+   * wallet. Other listeners are called later on the user thread.</p>
+   */
+  private static final WalletEventListener walletChangeCounter = new AbstractWalletEventListener() {
+    @Override
+    public void onChange() {
+      walletChangeCount.incrementAndGet();
+    }
+  };
+
+  /**
+   * The unspent outputs of the current wallet (maintained from wallet events)
+   */
+  private static final UtxoIndex utxoIndex = new UtxoIndex();
+
   private static final SecureRandom random = new SecureRandom();
 
   /**
@@ -187,6 +247,19 @@ public enum WalletManager implements WalletEventListener {
 
   private ListeningExecutorService walletExecutorService = null;
 
+  /**
+   * <p>Flag a transaction as changed in the payment index of the current wallet service (if present)</p>
+   *
+   * @param tx The transaction whose confidence, depth or balance contribution has changed
+   */
+  private static void markTransactionAsChanged(Transaction tx) {
+
+    Optional<WalletService> walletService = CoreServices.getCurrentWalletService();
+    if (walletService.isPresent()) {
+      walletService.get().markTransactionAsChanged(tx.getHashAsString());
+    }
+  }
+
   /**
    * @return A copy of the AES initialisation vector
    */
@@ -675,7 +748,6 @@ public enum WalletManager implements WalletEventListener {
       } else {
 
         boolean performRegularSync = false;
-        BlockStore blockStore = null;
         try {
           // Get the bitcoin network service
           BitcoinNetworkService bitcoinNetworkService = CoreServices.getOrCreateBitcoinNetworkService();
@@ -690,21 +762,7 @@ public enum WalletManager implements WalletEventListener {
             walletLastSeenBlockTime,
             walletBeingReturned.getEarliestKeyCreationTime());
 
-          // See if the bitcoinNetworkService already has an open blockstore
-          blockStore = bitcoinNetworkService.getBlockStore();
-
-          if (blockStore == null) {
-            // Open the blockstore with no checkpointing (this is to get the chain height)
-            blockStore = bitcoinNetworkService.openBlockStore(InstallationManager.getOrCreateApplicationDataDirectory(), Optional.<Date>absent());
-          }
-          log.debug("blockStore = {}", blockStore);
-
-          int blockStoreBlockHeight = -2;  // -2 is just a dummy value
-          if (blockStore != null) {
-            StoredBlock chainHead = blockStore.getChainHead();
-            blockStoreBlockHeight = chainHead == null ? -2 : chainHead.getHeight();
-
-          }
+          int blockStoreBlockHeight = getBlockStoreHeight(bitcoinNetworkService);
           log.debug("The blockStore is at height {}", blockStoreBlockHeight);
 
           long earliestKeyCreationTimeInSeconds = walletBeingReturned.getEarliestKeyCreationTime();
@@ -720,15 +778,6 @@ public enum WalletManager implements WalletEventListener {
         } catch (BlockStoreException bse) {
           // Carry on - it's just logging
           log.warn("Block store exception", bse);
-        } finally {
-          // Close the blockstore - it will get opened again later but may or may not be checkpointed
-          if (blockStore != null) {
-            try {
-              blockStore.close();
-            } catch (BlockStoreException bse) {
-              log.warn("Failed to close block store", bse);
-            }
-          }
         }
 
         if (performRegularSync) {
@@ -764,6 +813,52 @@ public enum WalletManager implements WalletEventListener {
     }
   }
 
+  /**
+   * <p>Find the chain head height of the block store, opening the block store only as a last resort</p>
+   *
+   * @param bitcoinNetworkService The Bitcoin network service
+   *
+   * @return The height of the chain head (-2 if unknown)
+   *
+   * @throws BlockStoreException If the block store has to be opened and fails
+   */
+  private int getBlockStoreHeight(BitcoinNetworkService bitcoinNetworkService) throws BlockStoreException {
+
+    // See if the bitcoinNetworkService already has an open blockstore (it will be closed by the sync)
+    BlockStore blockStore = bitcoinNetworkService.getBlockStore();
+    if (blockStore != null) {
+      StoredBlock chainHead = blockStore.getChainHead();
+      return chainHead == null ? -2 : chainHead.getHeight();
+    }
+
+    // The record written when the blockstore was closed avoids opening it (and the sync will open it anyway)
+    File applicationDataDirectory = InstallationManager.getOrCreateApplicationDataDirectory();
+    Optional<SyncState> syncState = bitcoinNetworkService.getClosedSyncState(applicationDataDirectory);
+    if (syncState.isPresent()) {
+      log.debug("Using {}", syncState.get());
+      return syncState.get().getChainHeadHeight();
+    }
+
+    // Open the blockstore with no checkpointing (this is to get the chain height)
+    log.debug("No sync state for the blockstore. Opening it to read the chain height.");
+    blockStore = bitcoinNetworkService.openBlockStore(applicationDataDirectory, Optional.<Date>absent());
+    if (blockStore == null) {
+      return -2;
+    }
+
+    try {
+      StoredBlock chainHead = blockStore.getChainHead();
+      return chainHead == null ? -2 : chainHead.getHeight();
+    } finally {
+      // Close the blockstore - it will get opened again later but may or may not be checkpointed
+      try {
+        blockStore.close();
+      } catch (BlockStoreException bse) {
+        log.warn("Failed to close block store", bse);
+      }
+    }
+  }
+
   /**
    * Load a wallet from a file and decrypt it
    * (but don't hook it up to the Bitcoin network or sync it)
@@ -778,27 +873,25 @@ public enum WalletManager implements WalletEventListener {
    */
   public Wallet loadWalletFromFile(File walletFile, CharSequence password) throws IOException, UnreadableWalletException {
 
-    // Read the encrypted file in and decrypt it.
-    byte[] encryptedWalletBytes = Files.toByteArray(walletFile);
-
-    Preconditions.checkNotNull(encryptedWalletBytes, "'encryptedWalletBytes' must be present");
+    Preconditions.checkNotNull(walletFile, "'walletFile' must be present");
 
-    log.trace("Encrypted wallet bytes after load:\n{}", Utils.HEX.encode(encryptedWalletBytes));
-    log.debug("Loaded the encrypted wallet bytes with length: {}", encryptedWalletBytes.length);
+    log.debug("Loading the encrypted wallet bytes with length: {}", walletFile.length());
 
-    KeyCrypterScrypt keyCrypterScrypt = new KeyCrypterScrypt(EncryptedFileReaderWriter.makeScryptParameters(SCRYPT_SALT));
-    KeyParameter keyParameter = keyCrypterScrypt.deriveKey(password);
+    KeyParameter keyParameter = EncryptedFileReaderWriter.deriveKey(password, SCRYPT_SALT);
 
-    // Decrypt the wallet bytes
-    byte[] decryptedBytes = AESUtils.decrypt(encryptedWalletBytes, keyParameter, AES_INITIALISATION_VECTOR);
+    // Decrypt the wallet bytes as they are read in so that neither the encrypted nor decrypted wallet is held in memory
+    final Protos.Wallet walletProto;
+    try (InputStream inputStream = EncryptedFileReaderWriter.openAndDecrypt(walletFile, keyParameter, AES_INITIALISATION_VECTOR)) {
 
-    log.debug("Successfully decrypted wallet bytes, length is now: {}", decryptedBytes.length);
+      walletProto = WalletProtobufSerializer.parseToProto(inputStream);
 
-    InputStream inputStream = new ByteArrayInputStream(decryptedBytes);
+      // Read to the end so that the padding (and therefore the password) is always verified
+      ByteStreams.copy(inputStream, ByteStreams.nullOutputStream());
+    }
 
-    Protos.Wallet walletProto = WalletProtobufSerializer.parseToProto(inputStream);
+    log.debug("Successfully decrypted wallet bytes");
 
-    WalletExtension[] walletExtensions = new WalletExtension[]{new SendFeeDtoWalletExtension(), new MatcherResponseWalletExtension(), new WalletTypeExtension()};
+    WalletExtension[] walletExtensions = new WalletExtension[]{new SendFeeDtoWalletExtension(), new FeeLedgerWalletExtension(), new MatcherResponseWalletExtension(), new WalletTypeExtension()};
     Wallet wallet = new WalletProtobufSerializer().readWallet(BitcoinNetwork.current().get(), walletExtensions, walletProto);
     wallet.setKeychainLookaheadSize(LOOK_AHEAD_SIZE);
 
@@ -1118,7 +1211,7 @@ public enum WalletManager implements WalletEventListener {
       for (File file : files) {
         if (file.isDirectory()) {
           String filename = file.getName();
-          if (filename.matches(REGEX_FOR_WALLET_DIRECTORY)) {
+          if (walletDirectoryPattern.matcher(filename).matches()) {
             // The name matches so add it
             walletDirectories.add(file);
           }
@@ -1141,23 +1234,28 @@ public enum WalletManager implements WalletEventListener {
 
     Preconditions.checkNotNull(walletDirectories, "'walletDirectories' must be present");
 
-    List<WalletSummary> walletList = Lists.newArrayList();
+    List<File> matchingWalletDirectories = Lists.newArrayList();
     for (File walletDirectory : walletDirectories) {
-      if (walletDirectory.isDirectory()) {
-        String directoryName = walletDirectory.getName();
-        if (directoryName.matches(REGEX_FOR_WALLET_DIRECTORY)) {
+      if (walletDirectory.isDirectory() && walletDirectoryPattern.matcher(walletDirectory.getName()).matches()) {
+        // The name matches so process it
+        matchingWalletDirectories.add(walletDirectory);
+      }
+    }
 
-          // The name matches so process it
-          WalletId walletId = new WalletId(directoryName.substring(MBHD_WALLET_PREFIX.length() + 1));
-          WalletSummary walletSummary = getOrCreateWalletSummary(walletDirectory, walletId);
+    // Summaries are served from the catalogue and any missing ones are loaded in parallel
+    List<WalletSummary> walletSummaries = walletSummaryCatalogue.getWalletSummaries(matchingWalletDirectories);
 
-          // Check if the wallet root is present and matches the file name
-          if (walletRoot.isPresent() && directoryName.equals(walletRoot.get())) {
-            walletList.add(0, walletSummary);
-          } else {
-            walletList.add(walletSummary);
-          }
-        }
+    List<WalletSummary> walletList = Lists.newArrayList();
+    for (int i = 0; i < matchingWalletDirectories.size(); i++) {
+
+      String directoryName = matchingWalletDirectories.get(i).getName();
+      WalletSummary walletSummary = walletSummaries.get(i);
+
+      // Check if the wallet root is present and matches the file name
+      if (walletRoot.isPresent() && directoryName.equals(walletRoot.get())) {
+        walletList.add(0, walletSummary);
+      } else {
+        walletList.add(walletSummary);
       }
     }
 
@@ -1226,6 +1324,41 @@ public enum WalletManager implements WalletEventListener {
     return currentWalletSummary;
   }
 
+  /**
+   * <p>The fingerprint changes whenever the wallet changes, sees a new block or starts to be saved so a copy of the
+   * wallet taken under the same fingerprint is still current.</p>
+   *
+   * @param wallet The wallet
+   *
+   * @return The fingerprint, present only for the current wallet (no other wallet is listened to)
+   */
+  public Optional<String> getWalletFingerprint(Wallet wallet) {
+
+    Preconditions.checkNotNull(wallet, "'wallet' must be present");
+
+    Optional<WalletSummary> walletSummary = currentWalletSummary;
+    if (!walletSummary.isPresent() || walletSummary.get().getWallet() != wallet) {
+      return Optional.absent();
+    }
+
+    return Optional.of(walletChangeCount.get() + "/" + wallet.getLastBlockSeenHeight() + "/" + wallet.getLastBlockSeenHash());
+  }
+
+  /**
+   * <p>Start a save of the wallet. Any copy remembered from an earlier save no longer matches the wallet, which covers
+   * changes that raise no event (such as a wallet extension being updated).</p>
+   *
+   * @param wallet The wallet about to be serialised
+   *
+   * @return The fingerprint to remember with the saved copy, present only for the current wallet
+   */
+  public Optional<String> getWalletFingerprintForSave(Wallet wallet) {
+
+    walletChangeCount.incrementAndGet();
+
+    return getWalletFingerprint(wallet);
+  }
+
   /**
    * @param walletSummary The current wallet summary (null if a reset is required)
    */
@@ -1235,13 +1368,25 @@ public enum WalletManager implements WalletEventListener {
 
       // Remove the previous WalletEventListener
       walletSummary.getWallet().removeEventListener(this);
+      walletSummary.getWallet().removeEventListener(walletChangeCounter);
 
       // Add the wallet event listener
       walletSummary.getWallet().addEventListener(this);
+      walletSummary.getWallet().addEventListener(walletChangeCounter, Threading.SAME_THREAD);
     }
 
     this.currentWalletSummary = Optional.fromNullable(walletSummary);
 
+    // The index is rebuilt from the new wallet when first used
+    utxoIndex.markStale();
+
+  }
+
+  /**
+   * @return The index of the unspent outputs of the current wallet
+   */
+  public UtxoIndex getUtxoIndex() {
+    return utxoIndex;
   }
 
   /**
@@ -1323,6 +1468,9 @@ public enum WalletManager implements WalletEventListener {
 
     } catch (IOException e) {
       ExceptionHandler.handleThrowable(e);
+    } finally {
+      // Do not wait for the file watcher to report our own change
+      walletSummaryCatalogue.invalidate(walletSummaryFile.getParentFile());
     }
   }
 
@@ -1643,6 +1791,11 @@ public enum WalletManager implements WalletEventListener {
     log.debug("Received shutdown: {}", shutdownType.name());
     currentWalletSummary = Optional.absent();
 
+    if (!ShutdownEvent.ShutdownType.SWITCH.equals(shutdownType)) {
+      // Release the file watcher since the wallet list is not about to be shown again
+      walletSummaryCatalogue.shutdownNow();
+    }
+
   }
 
   /**
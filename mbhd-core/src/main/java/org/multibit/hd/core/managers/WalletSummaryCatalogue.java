@@ -0,0 +1,353 @@
+package org.multibit.hd.core.managers;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import org.multibit.hd.core.concurrent.ExecutorPool;
+import org.multibit.hd.core.concurrent.ExecutorRegistry;
+import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.dto.WalletId;
+import org.multibit.hd.core.dto.WalletSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * <p>Catalogue to provide the following to the WalletManager:</p>
+ * <ul>
+ * <li>Cached wallet summaries so that the wallet selector does not read every <code>mbhd.yaml</code> each time it opens</li>
+ * <li>Parallel loading of the summaries that are not cached</li>
+ * <li>Invalidation through a file watcher on each wallet directory</li>
+ * </ul>
+ * <p>Summaries are loaded on the shared wallet summaries pool. The watcher is started on first use and closed by
+ * <code>shutdownNow()</code>. Wallet directories that are removed have their watch cancelled.</p>
+ * <p>A cached summary is only used if the summary file still has the same modification time and length, so a change
+ * made before the file watcher reports it (some platforms poll) is never missed.</p>
+ * <p>Callers receive copies of the cached summaries so they are free to modify them.</p>
+ *
+ * @since 0.0.5
+ */
+class WalletSummaryCatalogue {
+
+  private static final Logger log = LoggerFactory.getLogger(WalletSummaryCatalogue.class);
+
+  /**
+   * The cached summaries, indexed by the absolute path of the wallet directory
+   */
+  private final Map<String, CachedWalletSummary> cachedWalletSummaries = new ConcurrentHashMap<>();
+
+  /**
+   * The wallet directories registered with the watcher, indexed by the absolute path of the wallet directory
+   */
+  private final Map<String, WatchKey> watchKeys = new ConcurrentHashMap<>();
+
+  /**
+   * Blocks waiting for watch events so it cannot share a pool thread
+   */
+  private ListeningExecutorService watcherExecutorService;
+
+  private WatchService watchService;
+
+  /**
+   * True if the platform watcher could not be started (cached entries are then validated by file attributes only)
+   */
+  private boolean watchServiceUnavailable = false;
+
+  /**
+   * @param walletDirectories The wallet directories (already matched against the wallet directory name format)
+   *
+   * @return The wallet summaries in the same order as the directories
+   */
+  List<WalletSummary> getWalletSummaries(List<File> walletDirectories) {
+
+    Preconditions.checkNotNull(walletDirectories, "'walletDirectories' must be present");
+
+    forgetRemovedWalletDirectories();
+
+    WalletSummary[] walletSummaries = new WalletSummary[walletDirectories.size()];
+    Map<Integer, ListenableFuture<CachedWalletSummary>> misses = Maps.newLinkedHashMap();
+
+    for (int i = 0; i < walletDirectories.size(); i++) {
+
+      final File walletDirectory = walletDirectories.get(i);
+      final File walletSummaryFile = new File(walletDirectory, WalletManager.MBHD_SUMMARY_NAME);
+
+      CachedWalletSummary cachedWalletSummary = cachedWalletSummaries.get(walletDirectory.getAbsolutePath());
+      if (cachedWalletSummary != null && cachedWalletSummary.isCurrent(walletSummaryFile)) {
+        walletSummaries[i] = copyOf(cachedWalletSummary.walletSummary);
+        continue;
+      }
+
+      misses.put(i, ExecutorRegistry.getOrCreateExecutor(ExecutorPool.WALLET_SUMMARIES).submit(new Callable<CachedWalletSummary>() {
+        @Override
+        public CachedWalletSummary call() throws Exception {
+          return load(walletDirectory, walletSummaryFile);
+        }
+      }));
+    }
+
+    if (!misses.isEmpty()) {
+      log.debug("Loading {} of {} wallet summaries", misses.size(), walletDirectories.size());
+
+      // Wait for them all so that the first failure does not leave the rest running unobserved
+      try {
+        Futures.successfulAsList(misses.values()).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        // Not thrown by successfulAsList
+      }
+
+      for (Map.Entry<Integer, ListenableFuture<CachedWalletSummary>> miss : misses.entrySet()) {
+        File walletDirectory = walletDirectories.get(miss.getKey());
+        CachedWalletSummary cachedWalletSummary;
+        try {
+          cachedWalletSummary = Futures.getUnchecked(miss.getValue());
+        } catch (RuntimeException e) {
+          // Fall back to loading on this thread to surface the same behaviour as before
+          log.warn("Parallel load of wallet summary failed for '{}'. Retrying.", walletDirectory.getAbsolutePath());
+          cachedWalletSummary = load(walletDirectory, new File(walletDirectory, WalletManager.MBHD_SUMMARY_NAME));
+        }
+        walletSummaries[miss.getKey()] = copyOf(cachedWalletSummary.walletSummary);
+      }
+    }
+
+    return Lists.newArrayList(Arrays.asList(walletSummaries));
+  }
+
+  /**
+   * <p>Discard the cached summary for a wallet directory (e.g. after it has been written)</p>
+   *
+   * @param walletDirectory The wallet directory
+   */
+  void invalidate(File walletDirectory) {
+
+    if (walletDirectory != null) {
+      cachedWalletSummaries.remove(walletDirectory.getAbsolutePath());
+    }
+
+  }
+
+  /**
+   * <p>Discard all cached summaries</p>
+   */
+  void invalidateAll() {
+    cachedWalletSummaries.clear();
+  }
+
+  /**
+   * <p>Close the file watcher and discard all cached summaries</p>
+   *
+   * <p>The catalogue can still be used afterwards and will start them again as required.</p>
+   */
+  synchronized void shutdownNow() {
+
+    log.debug("Closing wallet summary catalogue");
+
+    if (watchService != null) {
+      try {
+        // Also ends the watcher thread
+        watchService.close();
+      } catch (IOException e) {
+        log.warn("Could not close wallet summary file watcher: {}", e.getMessage());
+      }
+      watchService = null;
+    }
+    if (watcherExecutorService != null) {
+      watcherExecutorService.shutdownNow();
+      watcherExecutorService = null;
+    }
+
+    watchKeys.clear();
+    watchServiceUnavailable = false;
+    invalidateAll();
+
+  }
+
+  /**
+   * <p>Reduced visibility for testing</p>
+   *
+   * @return The number of cached summaries
+   */
+  int size() {
+    return cachedWalletSummaries.size();
+  }
+
+  /**
+   * <p>Reduced visibility for testing</p>
+   *
+   * @return The number of watched wallet directories
+   */
+  int watchedSize() {
+    return watchKeys.size();
+  }
+
+  private CachedWalletSummary load(File walletDirectory, File walletSummaryFile) {
+
+    // Read the attributes first so that a concurrent write makes the entry look stale rather than current
+    long lastModified = walletSummaryFile.lastModified();
+    long length = walletSummaryFile.length();
+
+    String directoryName = walletDirectory.getName();
+    WalletId walletId = new WalletId(directoryName.substring(WalletManager.MBHD_WALLET_PREFIX.length() + 1));
+    WalletSummary walletSummary = WalletManager.getOrCreateWalletSummary(walletDirectory, walletId);
+
+    CachedWalletSummary cachedWalletSummary = new CachedWalletSummary(walletSummary, lastModified, length);
+    cachedWalletSummaries.put(walletDirectory.getAbsolutePath(), cachedWalletSummary);
+
+    watch(walletDirectory);
+
+    return cachedWalletSummary;
+  }
+
+  /**
+   * @param walletDirectory The wallet directory to register with the watcher
+   */
+  private synchronized void watch(File walletDirectory) {
+
+    String key = walletDirectory.getAbsolutePath();
+    if (watchServiceUnavailable || watchKeys.containsKey(key)) {
+      return;
+    }
+
+    try {
+      if (watchService == null) {
+        final WatchService newWatchService = FileSystems.getDefault().newWatchService();
+        watchService = newWatchService;
+        watcherExecutorService = SafeExecutors.newSingleThreadExecutor("wallet-summary-watcher");
+        watcherExecutorService.submit(new Runnable() {
+          @Override
+          public void run() {
+            processWatchEvents(newWatchService);
+          }
+        });
+      }
+
+      WatchKey watchKey = walletDirectory.toPath().register(
+        watchService,
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY,
+        StandardWatchEventKinds.ENTRY_DELETE
+      );
+      watchKeys.put(key, watchKey);
+
+    } catch (IOException | UnsupportedOperationException e) {
+      log.warn("Wallet summary file watcher is not available: {}", e.getMessage());
+      watchServiceUnavailable = true;
+    }
+
+  }
+
+  private void processWatchEvents(WatchService watchService) {
+
+    while (true) {
+
+      WatchKey watchKey;
+      try {
+        watchKey = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+
+      Path walletDirectory = (Path) watchKey.watchable();
+      String key = walletDirectory.toFile().getAbsolutePath();
+
+      for (WatchEvent<?> event : watchKey.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+          || WalletManager.MBHD_SUMMARY_NAME.equals(String.valueOf(event.context()))) {
+          log.trace("Wallet summary changed in '{}'", key);
+          cachedWalletSummaries.remove(key);
+        }
+      }
+
+      // An invalid key means the wallet directory has gone (ignore keys already replaced after a restart)
+      if (!watchKey.reset() && watchKeys.remove(key, watchKey)) {
+        cachedWalletSummaries.remove(key);
+      }
+    }
+  }
+
+  /**
+   * <p>Cancel the watch on any wallet directory that has been removed (the watcher may not have reported it yet)</p>
+   */
+  private void forgetRemovedWalletDirectories() {
+
+    for (String key : watchKeys.keySet()) {
+      if (!new File(key).isDirectory()) {
+        log.trace("Wallet directory removed '{}'", key);
+        forget(key);
+      }
+    }
+  }
+
+  /**
+   * @param key The absolute path of the wallet directory to stop watching
+   */
+  private void forget(String key) {
+
+    WatchKey watchKey = watchKeys.remove(key);
+    if (watchKey != null) {
+      watchKey.cancel();
+    }
+    cachedWalletSummaries.remove(key);
+
+  }
+
+  /**
+   * @param walletSummary The cached wallet summary
+   *
+   * @return A copy of the fields read from the summary file
+   */
+  private static WalletSummary copyOf(WalletSummary walletSummary) {
+
+    WalletSummary copy = new WalletSummary();
+    copy.setWalletId(walletSummary.getWalletId());
+    copy.setWalletType(walletSummary.getWalletType());
+    copy.setName(walletSummary.getName());
+    copy.setNotes(walletSummary.getNotes());
+    copy.setEncryptedPassword(walletSummary.getEncryptedPassword());
+    copy.setEncryptedBackupKey(walletSummary.getEncryptedBackupKey());
+
+    return copy;
+  }
+
+  /**
+   * <p>A wallet summary with the attributes of the file it was read from</p>
+   */
+  private static class CachedWalletSummary {
+
+    private final WalletSummary walletSummary;
+
+    private final long lastModified;
+
+    private final long length;
+
+    private CachedWalletSummary(WalletSummary walletSummary, long lastModified, long length) {
+      this.walletSummary = walletSummary;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+
+    private boolean isCurrent(File walletSummaryFile) {
+      return walletSummaryFile.lastModified() == lastModified && walletSummaryFile.length() == length;
+    }
+  }
+}
@@ -0,0 +1,397 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Monitor to provide the following to Bitcoin network service:</p>
+ * <ul>
+ * <li>A rolling round trip time and liveness table for the connected peers</li>
+ * <li>A concurrent health probe that completes on the first peer to respond</li>
+ * </ul>
+ *
+ * <p>Peers are identified by their address. The pings themselves are issued by the caller so that
+ * this class remains independent of the peer implementation.</p>
+ *
+ * <p>A ping that never completes (e.g. the peer stopped responding without disconnecting) is recorded as a
+ * failure when the probe waiting on it times out or when pending pings are expired by the next refresh.</p>
+ *
+ * @since 0.0.5
+ */
+public class PeerHealthMonitor {
+
+  private static final Logger log = LoggerFactory.getLogger(PeerHealthMonitor.class);
+
+  /**
+   * The weight given to the latest round trip time in the rolling average
+   */
+  private static final double RTT_SMOOTHING = 0.25;
+
+  private final long livenessWindowMillis;
+
+  private final ConcurrentMap<String, PeerHealth> peerHealthMap = Maps.newConcurrentMap();
+
+  /**
+   * The pings that have not yet completed or expired
+   */
+  private final Set<PendingPing> pendingPings = Sets.newConcurrentHashSet();
+
+  /**
+   * @param livenessWindowMillis The time a successful ping is considered to show the peer is live
+   */
+  public PeerHealthMonitor(long livenessWindowMillis) {
+
+    Preconditions.checkArgument(livenessWindowMillis >= 0, "'livenessWindowMillis' must not be negative");
+
+    this.livenessWindowMillis = livenessWindowMillis;
+
+  }
+
+  /**
+   * <p>Record the outcome of a ping when it completes (or as a failure if it expires first)</p>
+   *
+   * @param peerId The peer identifier
+   * @param ping   The ping future providing the round trip time in milliseconds
+   */
+  public void track(String peerId, ListenableFuture<Long> ping) {
+
+    trackPending(peerId, ping);
+
+  }
+
+  /**
+   * <p>Record a failure for each ping that has been pending for longer than the timeout. Any later
+   * outcome of those pings is ignored.</p>
+   *
+   * @param timeout The longest time a ping may be pending
+   * @param unit    The time unit
+   */
+  public void expirePendingPings(long timeout, TimeUnit unit) {
+
+    long earliestStartMillis = System.currentTimeMillis() - unit.toMillis(timeout);
+
+    for (PendingPing pendingPing : pendingPings) {
+      if (pendingPing.startMillis <= earliestStartMillis) {
+        expire(pendingPing);
+      }
+    }
+
+  }
+
+  /**
+   * <p>Wait for the first of the pings to succeed</p>
+   *
+   * <p>All the pings run at the same time so a single slow or dead peer does not delay the result.
+   * The outcome of every ping is recorded, including those completing after this method returns.</p>
+   *
+   * @param pings   The ping futures by peer identifier
+   * @param timeout The longest time to wait for a response
+   * @param unit    The time unit
+   *
+   * @return True if at least one peer responded within the timeout
+   */
+  public boolean probe(Map<String, ListenableFuture<Long>> pings, long timeout, TimeUnit unit) {
+
+    Preconditions.checkNotNull(pings, "'pings' must be present");
+
+    if (pings.isEmpty()) {
+      log.debug("No peers to probe");
+      return false;
+    }
+
+    final SettableFuture<Boolean> firstResponse = SettableFuture.create();
+    final AtomicInteger remaining = new AtomicInteger(pings.size());
+    List<PendingPing> probePings = Lists.newArrayListWithCapacity(pings.size());
+
+    for (Map.Entry<String, ListenableFuture<Long>> ping : pings.entrySet()) {
+
+      probePings.add(trackPending(ping.getKey(), ping.getValue()));
+
+      Futures.addCallback(
+        ping.getValue(), new FutureCallback<Long>() {
+          @Override
+          public void onSuccess(Long rttMillis) {
+            firstResponse.set(true);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            // Only fail once every peer has failed
+            if (remaining.decrementAndGet() == 0) {
+              firstResponse.set(false);
+            }
+          }
+        });
+    }
+
+    try {
+      return firstResponse.get(timeout, unit);
+    } catch (TimeoutException e) {
+      log.warn("No peer responded to a ping within {} {}", timeout, unit);
+      for (PendingPing pendingPing : probePings) {
+        expire(pendingPing);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.warn("Unexpected failure of the peer probe", e);
+    }
+
+    return false;
+  }
+
+  /**
+   * @param peerIds The identifiers of the peers to consider (usually the connected peers)
+   *
+   * @return True if any of the peers responded to a ping within the liveness window
+   */
+  public boolean isRecentlyLive(Collection<String> peerIds) {
+
+    long earliestMillis = System.currentTimeMillis() - livenessWindowMillis;
+
+    for (String peerId : peerIds) {
+      PeerHealth peerHealth = peerHealthMap.get(peerId);
+      if (peerHealth != null && peerHealth.getLastSuccessMillis() >= earliestMillis && peerHealth.getConsecutiveFailures() == 0) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * <p>Forget the peers that are no longer connected</p>
+   *
+   * @param peerIds The identifiers of the peers to keep
+   */
+  public void retainAll(Collection<String> peerIds) {
+
+    peerHealthMap.keySet().retainAll(peerIds);
+
+    // The outcome of a ping to a disconnected peer is no longer of interest
+    for (PendingPing pendingPing : pendingPings) {
+      if (!peerIds.contains(pendingPing.peerId) && pendingPing.complete()) {
+        pendingPings.remove(pendingPing);
+      }
+    }
+
+  }
+
+  /**
+   * @param peerId The peer identifier
+   *
+   * @return The health of the peer if it has been pinged
+   */
+  public Optional<PeerHealth> getPeerHealth(String peerId) {
+    return Optional.fromNullable(peerHealthMap.get(peerId));
+  }
+
+  /**
+   * @return A snapshot of the health of all the tracked peers
+   */
+  public List<PeerHealth> getPeerHealth() {
+    return Lists.newArrayList(peerHealthMap.values());
+  }
+
+  /**
+   * @return The pending ping (its outcome is recorded once, on completion or expiry)
+   */
+  private PendingPing trackPending(final String peerId, ListenableFuture<Long> ping) {
+
+    Preconditions.checkNotNull(peerId, "'peerId' must be present");
+    Preconditions.checkNotNull(ping, "'ping' must be present");
+
+    final PendingPing pendingPing = new PendingPing(peerId);
+    pendingPings.add(pendingPing);
+
+    Futures.addCallback(
+      ping, new FutureCallback<Long>() {
+        @Override
+        public void onSuccess(Long rttMillis) {
+          if (pendingPing.complete()) {
+            pendingPings.remove(pendingPing);
+            recordSuccess(peerId, rttMillis == null ? 0 : rttMillis);
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          if (pendingPing.complete()) {
+            pendingPings.remove(pendingPing);
+            recordFailure(peerId);
+          }
+        }
+      });
+
+    return pendingPing;
+  }
+
+  private void expire(PendingPing pendingPing) {
+
+    if (pendingPing.complete()) {
+      pendingPings.remove(pendingPing);
+      log.debug("Peer '{}' did not respond to a ping", pendingPing.peerId);
+      recordFailure(pendingPing.peerId);
+    }
+
+  }
+
+  private void recordSuccess(String peerId, long rttMillis) {
+
+    long nowMillis = System.currentTimeMillis();
+
+    while (true) {
+      PeerHealth previous = peerHealthMap.get(peerId);
+      if (previous == null) {
+        if (peerHealthMap.putIfAbsent(peerId, new PeerHealth(peerId, rttMillis, rttMillis, nowMillis, 0)) == null) {
+          break;
+        }
+      } else {
+        long averageRttMillis = previous.getLastSuccessMillis() == 0
+          ? rttMillis
+          : Math.round(RTT_SMOOTHING * rttMillis + (1 - RTT_SMOOTHING) * previous.getAverageRttMillis());
+        if (peerHealthMap.replace(peerId, previous, new PeerHealth(peerId, rttMillis, averageRttMillis, nowMillis, 0))) {
+          break;
+        }
+      }
+    }
+
+    log.trace("Peer '{}' responded in {}ms", peerId, rttMillis);
+
+  }
+
+  private void recordFailure(String peerId) {
+
+    while (true) {
+      PeerHealth previous = peerHealthMap.get(peerId);
+      if (previous == null) {
+        if (peerHealthMap.putIfAbsent(peerId, new PeerHealth(peerId, -1, -1, 0, 1)) == null) {
+          break;
+        }
+      } else {
+        PeerHealth next = new PeerHealth(
+          peerId,
+          previous.getLastRttMillis(),
+          previous.getAverageRttMillis(),
+          previous.getLastSuccessMillis(),
+          previous.getConsecutiveFailures() + 1
+        );
+        if (peerHealthMap.replace(peerId, previous, next)) {
+          break;
+        }
+      }
+    }
+
+    log.debug("Peer '{}' failed ping test", peerId);
+
+  }
+
+  /**
+   * <p>A ping that has been issued but whose outcome has not been recorded</p>
+   */
+  private static class PendingPing {
+
+    private final String peerId;
+
+    private final long startMillis = System.currentTimeMillis();
+
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    private PendingPing(String peerId) {
+      this.peerId = peerId;
+    }
+
+    /**
+     * @return True if this call completed the ping (so the caller records the outcome)
+     */
+    private boolean complete() {
+      return completed.compareAndSet(false, true);
+    }
+  }
+
+  /**
+   * <p>Value object to provide the following to peer health monitor:</p>
+   * <ul>
+   * <li>The most recent ping results for a single peer</li>
+   * </ul>
+   */
+  public static class PeerHealth {
+
+    private final String peerId;
+    private final long lastRttMillis;
+    private final long averageRttMillis;
+    private final long lastSuccessMillis;
+    private final int consecutiveFailures;
+
+    public PeerHealth(String peerId, long lastRttMillis, long averageRttMillis, long lastSuccessMillis, int consecutiveFailures) {
+      this.peerId = peerId;
+      this.lastRttMillis = lastRttMillis;
+      this.averageRttMillis = averageRttMillis;
+      this.lastSuccessMillis = lastSuccessMillis;
+      this.consecutiveFailures = consecutiveFailures;
+    }
+
+    public String getPeerId() {
+      return peerId;
+    }
+
+    /**
+     * @return The round trip time of the last successful ping (-1 if never successful)
+     */
+    public long getLastRttMillis() {
+      return lastRttMillis;
+    }
+
+    /**
+     * @return The rolling average round trip time (-1 if never successful)
+     */
+    public long getAverageRttMillis() {
+      return averageRttMillis;
+    }
+
+    /**
+     * @return The time of the last successful ping (0 if never successful)
+     */
+    public long getLastSuccessMillis() {
+      return lastSuccessMillis;
+    }
+
+    /**
+     * @return The number of failed pings since the last successful one
+     */
+    public int getConsecutiveFailures() {
+      return consecutiveFailures;
+    }
+
+    @Override
+    public String toString() {
+      return "PeerHealth{" +
+        "peerId='" + peerId + '\'' +
+        ", lastRttMillis=" + lastRttMillis +
+        ", averageRttMillis=" + averageRttMillis +
+        ", lastSuccessMillis=" + lastSuccessMillis +
+        ", consecutiveFailures=" + consecutiveFailures +
+        '}';
+    }
+  }
+}
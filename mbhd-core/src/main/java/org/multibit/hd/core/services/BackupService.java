@@ -1,15 +1,20 @@
 package org.multibit.hd.core.services;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.multibit.hd.core.dto.*;
 import org.multibit.hd.core.events.CoreEvents;
 import org.multibit.hd.core.events.ShutdownEvent;
 import org.multibit.hd.core.managers.BackupManager;
+import org.multibit.hd.core.managers.BackupManifest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -51,7 +56,9 @@ import java.util.concurrent.TimeUnit;
  * <p/>
  * <p/>
  * Do not bother tracking if the wallet is dirty, this only really affects the rolling backups and
- * is not worth the bother of writing a wallet extension to track it.
+ * is not worth the bother of writing a wallet extension to track it. Instead a digest of the files
+ * preserved by each type of backup is compared with the digest at the last backup of that type
+ * and the backup is skipped if nothing has changed (see BackupManifest).
  *
  * @since 0.0.1
  */
@@ -117,6 +124,11 @@ public class BackupService extends AbstractService {
    */
   private Optional<CharSequence> rememberedPasswordForCloudBackup = Optional.absent();
 
+  /**
+   * The metrics for each type of backup
+   */
+  private final Map<BackupType, BackupMetrics> backupMetrics = Maps.newEnumMap(BackupType.class);
+
   /**
    * Whether backups are enabled or not
    */
@@ -127,6 +139,14 @@ public class BackupService extends AbstractService {
    */
   private boolean backupsAreRunning = false;
 
+  public BackupService() {
+
+    for (BackupType backupType : BackupType.values()) {
+      backupMetrics.put(backupType, new BackupMetrics(backupType));
+    }
+
+  }
+
   @Override
   protected boolean startInternal() {
 
@@ -153,13 +173,17 @@ public class BackupService extends AbstractService {
             }
 
             // Local zip backups are done every LOCAL_ZIP_BACKUP_MODULO number of ticks
-            if (backupsAreEnabled && tickCount % LOCAL_ZIP_BACKUP_MODULO == 0) {
-              performLocalZipBackup();
-            }
+            boolean localZipBackupRequired = backupsAreEnabled && tickCount % LOCAL_ZIP_BACKUP_MODULO == 0;
 
             // Check if a cloud zip backup is required
             // Cloud backups are done every CLOUD_ZIP_BACKUP_MODULO number of ticks
-            if (backupsAreEnabled && tickCount % CLOUD_ZIP_BACKUP_MODULO == 0) {
+            boolean cloudZipBackupRequired = backupsAreEnabled && tickCount % CLOUD_ZIP_BACKUP_MODULO == 0;
+
+            if (localZipBackupRequired && cloudZipBackupRequired) {
+              performLocalAndCloudZipBackup();
+            } else if (localZipBackupRequired) {
+              performLocalZipBackup();
+            } else if (cloudZipBackupRequired) {
               performCloudZipBackup();
             }
 
@@ -200,9 +224,7 @@ public class BackupService extends AbstractService {
 
                 performRollingBackup();
 
-                performLocalZipBackup();
-
-                performCloudZipBackup();
+                performLocalAndCloudZipBackup();
 
               }
 
@@ -232,10 +254,23 @@ public class BackupService extends AbstractService {
    */
   private void performRollingBackup() {
     if (rememberedWalletSummaryForRollingBackup.isPresent() && rememberedPasswordForRollingBackup.isPresent()) {
-      log.debug("Performing a rolling backup");
 
       try {
-        BackupManager.INSTANCE.createRollingBackup(rememberedWalletSummaryForRollingBackup.get(), rememberedPasswordForRollingBackup.get());
+        WalletSummary walletSummary = rememberedWalletSummaryForRollingBackup.get();
+        BackupManifest backupManifest = BackupManager.INSTANCE.getOrCreateBackupManifest(walletSummary.getWalletId());
+        String digest = backupManifest.digest(BackupType.ROLLING);
+
+        if (backupManifest.isBackedUp(BackupType.ROLLING, digest)) {
+          log.debug("Skipping rolling backup as the wallet is unchanged");
+          getBackupMetrics(BackupType.ROLLING).recordSkipped();
+        } else {
+          log.debug("Performing a rolling backup");
+
+          Stopwatch stopwatch = Stopwatch.createStarted();
+          File rollingBackupFile = BackupManager.INSTANCE.createRollingBackup(walletSummary, rememberedPasswordForRollingBackup.get());
+          backupManifest.recordBackup(BackupType.ROLLING, digest);
+          getBackupMetrics(BackupType.ROLLING).recordWritten(rollingBackupFile.length(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        }
 
         // Don't use anything remembered in the past at this point again
         // (This will miss anything newly remembered whilst the backup is taking place
@@ -262,10 +297,22 @@ public class BackupService extends AbstractService {
    */
   private void performLocalZipBackup() {
     if (rememberedWalletIdForLocalBackup.isPresent() && rememberedPasswordForLocalBackup.isPresent()) {
-      log.debug("Performing a local zip backup");
 
       try {
-        BackupManager.INSTANCE.createLocalBackup(rememberedWalletIdForLocalBackup.get(), rememberedPasswordForLocalBackup.get());
+        BackupManifest backupManifest = BackupManager.INSTANCE.getOrCreateBackupManifest(rememberedWalletIdForLocalBackup.get());
+        String digest = backupManifest.digest(BackupType.LOCAL_ZIP);
+
+        if (backupManifest.isBackedUp(BackupType.LOCAL_ZIP, digest)) {
+          log.debug("Skipping local zip backup as the wallet directory is unchanged");
+          getBackupMetrics(BackupType.LOCAL_ZIP).recordSkipped();
+        } else {
+          log.debug("Performing a local zip backup");
+
+          Stopwatch stopwatch = Stopwatch.createStarted();
+          File localBackupFile = BackupManager.INSTANCE.createLocalBackup(rememberedWalletIdForLocalBackup.get(), rememberedPasswordForLocalBackup.get());
+          backupManifest.recordBackup(BackupType.LOCAL_ZIP, digest);
+          getBackupMetrics(BackupType.LOCAL_ZIP).recordWritten(localBackupFile.length(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        }
 
         // Don't use anything remembered in the past at this point again
         // (This will miss anything newly remembered whilst the backup is taking place
@@ -292,10 +339,25 @@ public class BackupService extends AbstractService {
    */
   private void performCloudZipBackup() {
     if (rememberedWalletIdForCloudBackup.isPresent() && rememberedPasswordForCloudBackup.isPresent()) {
-      log.debug("Performing a cloud zip backup");
 
       try {
-        BackupManager.INSTANCE.createCloudBackup(rememberedWalletIdForCloudBackup.get(), rememberedPasswordForCloudBackup.get());
+        BackupManifest backupManifest = BackupManager.INSTANCE.getOrCreateBackupManifest(rememberedWalletIdForCloudBackup.get());
+        String digest = backupManifest.digest(BackupType.CLOUD_ZIP);
+
+        if (backupManifest.isBackedUp(BackupType.CLOUD_ZIP, digest)) {
+          log.debug("Skipping cloud zip backup as the wallet directory is unchanged");
+          getBackupMetrics(BackupType.CLOUD_ZIP).recordSkipped();
+        } else {
+          log.debug("Performing a cloud zip backup");
+
+          Stopwatch stopwatch = Stopwatch.createStarted();
+          File cloudBackupFile = BackupManager.INSTANCE.createCloudBackup(rememberedWalletIdForCloudBackup.get(), rememberedPasswordForCloudBackup.get());
+          if (cloudBackupFile != null) {
+            // Only a backup that was made counts (there may be no cloud backup directory)
+            backupManifest.recordBackup(BackupType.CLOUD_ZIP, digest);
+            getBackupMetrics(BackupType.CLOUD_ZIP).recordWritten(cloudBackupFile.length(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+          }
+        }
 
         // Don't use anything remembered in the past at this point again
         // (This will miss anything newly remembered whilst the backup is taking place
@@ -309,6 +371,72 @@ public class BackupService extends AbstractService {
     }
   }
 
+  /**
+   * Perform a local zip backup and a cloud zip backup, sharing the encrypted backup if both are for the same wallet
+   * and both are required. A shared backup is counted in the metrics of both backup types.
+   */
+  private void performLocalAndCloudZipBackup() {
+
+    boolean sameWallet = rememberedWalletIdForLocalBackup.isPresent()
+      && rememberedPasswordForLocalBackup.isPresent()
+      && rememberedWalletIdForLocalBackup.equals(rememberedWalletIdForCloudBackup)
+      && rememberedPasswordForLocalBackup.equals(rememberedPasswordForCloudBackup);
+
+    if (!sameWallet) {
+      performLocalZipBackup();
+      performCloudZipBackup();
+      return;
+    }
+
+    try {
+      BackupManifest backupManifest = BackupManager.INSTANCE.getOrCreateBackupManifest(rememberedWalletIdForLocalBackup.get());
+      String digest = backupManifest.digest(BackupType.LOCAL_ZIP);
+
+      boolean cloudBackupRequired = BackupManager.INSTANCE.isCloudBackupDirectoryAvailable()
+        && !backupManifest.isBackedUp(BackupType.CLOUD_ZIP, digest);
+
+      if (backupManifest.isBackedUp(BackupType.LOCAL_ZIP, digest) || !cloudBackupRequired) {
+        // Nothing to share so each backup decides for itself
+        performLocalZipBackup();
+        performCloudZipBackup();
+        return;
+      }
+
+      log.debug("Performing a local and cloud zip backup");
+
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      File localBackupFile = BackupManager.INSTANCE.createLocalAndCloudBackup(rememberedWalletIdForLocalBackup.get(), rememberedPasswordForLocalBackup.get());
+      long elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+      backupManifest.recordBackup(BackupType.LOCAL_ZIP, digest);
+      backupManifest.recordBackup(BackupType.CLOUD_ZIP, digest);
+      getBackupMetrics(BackupType.LOCAL_ZIP).recordWritten(localBackupFile.length(), elapsedMillis);
+      getBackupMetrics(BackupType.CLOUD_ZIP).recordWritten(localBackupFile.length(), elapsedMillis);
+
+      // Don't use anything remembered in the past at this point again
+      // (This will miss anything newly remembered whilst the backup is taking place
+      rememberedWalletIdForLocalBackup = Optional.absent();
+      rememberedPasswordForLocalBackup = Optional.absent();
+      rememberedWalletIdForCloudBackup = Optional.absent();
+      rememberedPasswordForCloudBackup = Optional.absent();
+    } catch (IOException ioe) {
+      log.error("Failed to perform local and cloud backup", ioe);
+      CoreServices.logHistory("Failed to perform local and cloud backup. Message: " + ioe.getMessage());
+      CoreEvents.fireSecurityEvent(SecuritySummary.newBackupFailed());
+    }
+  }
+
+  /**
+   * <p>The metrics are kept for the life of the application</p>
+   *
+   * @param backupType The backup type
+   *
+   * @return The metrics (written, skipped, bytes and duration) for the backup type
+   */
+  public BackupMetrics getBackupMetrics(BackupType backupType) {
+    return backupMetrics.get(backupType);
+  }
+
   /**
    * Set whether backups are enabled.
    * Can be called on any thread.
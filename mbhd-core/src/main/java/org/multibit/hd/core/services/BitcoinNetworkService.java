@@ -3,7 +3,9 @@ package org.multibit.hd.core.services;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.subgraph.orchid.TorClient;
 import org.bitcoinj.core.*;
@@ -29,6 +31,8 @@ import org.multibit.hd.core.managers.BlockStoreManager;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
 import org.multibit.hd.core.network.MultiBitPeerEventListener;
+import org.multibit.hd.core.network.PeerHealthMonitor;
+import org.multibit.hd.core.store.SyncState;
 import org.multibit.hd.core.utils.Coins;
 import org.multibit.hd.hardware.core.HardwareWalletService;
 import org.slf4j.Logger;
@@ -42,7 +46,7 @@ import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -72,11 +76,28 @@ public class BitcoinNetworkService extends AbstractService {
    */
   private static final int MINING_FEE_BOUNDARY = 1000;
 
+  /**
+   * The longest time to wait for any peer to respond to a ping before a broadcast
+   */
+  private static final int PING_TIMEOUT_SECONDS = 4;
+
+  /**
+   * The interval between background pings of the connected peers
+   */
+  private static final int PEER_HEALTH_REFRESH_SECONDS = 15;
+
+  /**
+   * The time a successful ping shows a peer to be live (allows one missed refresh)
+   */
+  private static final long PEER_LIVENESS_WINDOW_MILLIS = 2 * PEER_HEALTH_REFRESH_SECONDS * 1_000L;
+
   private BlockStore blockStore;
   private PeerGroup peerGroup;  // May need to add listener as in MultiBitPeerGroup
   private BlockChain blockChain;
   private MultiBitPeerEventListener peerEventListener;
 
+  private final PeerHealthMonitor peerHealthMonitor = new PeerHealthMonitor(PEER_LIVENESS_WINDOW_MILLIS);
+
   private final NetworkParameters networkParameters;
 
   private boolean startedOk = false;
@@ -98,6 +119,7 @@ public class BitcoinNetworkService extends AbstractService {
     this.networkParameters = networkParameters;
 
     requireFixedThreadPoolExecutor(5, "bitcoin-network");
+    requireSingleThreadScheduledExecutor("peer-health");
 
   }
 
@@ -106,6 +128,15 @@ public class BitcoinNetworkService extends AbstractService {
     // Note that the actual connection to the Bitcoin network is performed lazily,
     // only when a wallet needs syncing
 
+    // Keep the peer liveness table fresh so that a broadcast rarely needs to wait for a ping
+    getScheduledExecutorService().scheduleWithFixedDelay(
+      new Runnable() {
+        @Override
+        public void run() {
+          refreshPeerHealth();
+        }
+      }, PEER_HEALTH_REFRESH_SECONDS, PEER_HEALTH_REFRESH_SECONDS, TimeUnit.SECONDS);
+
     return true;
   }
 
@@ -197,6 +228,25 @@ public class BitcoinNetworkService extends AbstractService {
     return blockStoreToReturn;
   }
 
+  /**
+   * <p>Read the chain head of the current wallet block store without opening it</p>
+   *
+   * @param applicationDataDirectory The current application directory
+   *
+   * @return The sync state recorded when the block store was last closed (absent if not known)
+   */
+  public Optional<SyncState> getClosedSyncState(File applicationDataDirectory) {
+
+    Optional<File> currentWalletFile = WalletManager.INSTANCE.getCurrentWalletFile(applicationDataDirectory);
+    if (!currentWalletFile.isPresent()) {
+      return Optional.absent();
+    }
+
+    File blockStoreFile = new File(currentWalletFile.get().getParentFile(), InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX);
+
+    return BlockStoreManager.readClosedSyncState(blockStoreFile);
+  }
+
   /**
    * @return True if the network has started and a peer group is available
    */
@@ -294,10 +344,7 @@ public class BitcoinNetworkService extends AbstractService {
   /**
    * <p>Send bitcoin</p>
    * <p/>
-   * <p>In the future will also need:</p>
-   * <ul>
-   * <li>a CoinSelector - when HD subnodes are supported</li>
-   * </ul>
+   * <p>The outputs to spend are chosen from the wallet UTXO index using the strategy in the summary</p>
    * <p>The result of the operation is sent to the CoreEventBus as a TransactionCreationEvent and, if the tx is sent ok, a BitcoinSentEvent</p>
    *
    * @param sendRequestSummary The information required to send bitcoin
@@ -533,10 +580,8 @@ public class BitcoinNetworkService extends AbstractService {
     log.debug("Appending send request based on: {}", sendRequestSummary);
 
     try {
-      final Wallet.SendRequest sendRequest = Wallet.SendRequest.to(
-        sendRequestSummary.getDestinationAddress(),
-        sendRequestSummary.getAmount()
-      );
+      // A single transaction pays all the recipients
+      final Wallet.SendRequest sendRequest = Wallet.SendRequest.forTx(newRecipientTransaction(sendRequestSummary));
       if (sendRequestSummary.getKeyParameter().isPresent()) {
         sendRequest.aesKey = sendRequestSummary.getKeyParameter().get();
       }
@@ -544,6 +589,12 @@ public class BitcoinNetworkService extends AbstractService {
       sendRequest.feePerKb = sendRequestSummary.getFeePerKB();
       sendRequest.changeAddress = sendRequestSummary.getChangeAddress();
 
+      // Select from the maintained index rather than sorting every spend candidate on each completion
+      sendRequest.coinSelector = WalletManager.INSTANCE.getUtxoIndex().newCoinSelector(
+        sendRequestSummary.getCoinSelectionStrategy(),
+        sendRequestSummary.getFeePerKB()
+      );
+
       // Require empty wallet to ensure that all funds are included
       sendRequest.emptyWallet = sendRequestSummary.isEmptyWallet();
 
@@ -590,23 +641,25 @@ public class BitcoinNetworkService extends AbstractService {
             // or reducing the client fee (tx output 1)
             // If neither of these is possible (due to dust limits) then give up trying to claim the client fee.
 
-            if (sendRequest.tx.getOutput(0).getValue().compareTo(Transaction.MIN_NONDUST_OUTPUT.add(Transaction.REFERENCE_DEFAULT_MIN_TX_FEE)) > 0) {
+            // Batch recipients are always paid in full
+            int clientFeeOutputIndex = sendRequest.tx.getOutputs().size() - 1;
+            if (!sendRequestSummary.isBatch() && sendRequest.tx.getOutput(0).getValue().compareTo(Transaction.MIN_NONDUST_OUTPUT.add(Transaction.REFERENCE_DEFAULT_MIN_TX_FEE)) > 0) {
               // There is enough bitcoin on the redemption output, decrease that
               sendRequest.tx.getOutput(0).setValue(sendRequest.tx.getOutput(0).getValue().subtract(Transaction.REFERENCE_DEFAULT_MIN_TX_FEE));
               log.debug("Adjusting transaction output 0 to {}", sendRequest.tx.getOutput(0).getValue());
             } else {
               // Try decreasing the client fee
-              if (sendRequest.tx.getOutput(1).getValue().compareTo(Transaction.MIN_NONDUST_OUTPUT.add(Transaction.REFERENCE_DEFAULT_MIN_TX_FEE)) > 0) {
+              if (sendRequest.tx.getOutput(clientFeeOutputIndex).getValue().compareTo(Transaction.MIN_NONDUST_OUTPUT.add(Transaction.REFERENCE_DEFAULT_MIN_TX_FEE)) > 0) {
                 // There is enough bitcoin on the client fee output, decrease that
-                Coin adjustedClientFee = sendRequest.tx.getOutput(1).getValue().subtract(Transaction.REFERENCE_DEFAULT_MIN_TX_FEE);
-                sendRequest.tx.getOutput(1).setValue(adjustedClientFee);
+                Coin adjustedClientFee = sendRequest.tx.getOutput(clientFeeOutputIndex).getValue().subtract(Transaction.REFERENCE_DEFAULT_MIN_TX_FEE);
+                sendRequest.tx.getOutput(clientFeeOutputIndex).setValue(adjustedClientFee);
                 sendRequestSummary.setClientFeeAdded(Optional.of(adjustedClientFee));
-                log.debug("Adjusting transaction output 1 to {}", adjustedClientFee);
+                log.debug("Adjusting transaction output {} to {}", clientFeeOutputIndex, adjustedClientFee);
               } else {
                 // We cannot pay the mining fee for the extra client fee output so remove it.
-                // Put back the original amount on the redemption output
+                // Put back the original amounts on the recipient outputs
                 sendRequest.tx.clearOutputs();
-                sendRequest.tx.addOutput(sendRequestSummary.getAmount(), sendRequestSummary.getDestinationAddress());
+                addRecipientOutputs(sendRequest.tx, sendRequestSummary);
                 sendRequestSummary.setClientFeeAdded(Optional.<Coin>absent());
                 log.debug("Removing client fee as cannot be paid due to dust levels");
               }
@@ -654,6 +707,31 @@ public class BitcoinNetworkService extends AbstractService {
 
   }
 
+  /**
+   * @param sendRequestSummary The information required to send bitcoin
+   *
+   * @return A new transaction with an output for each recipient in order
+   */
+  static Transaction newRecipientTransaction(SendRequestSummary sendRequestSummary) {
+
+    Transaction tx = new Transaction(sendRequestSummary.getDestinationAddress().getParameters());
+    addRecipientOutputs(tx, sendRequestSummary);
+
+    return tx;
+  }
+
+  /**
+   * @param tx                 The transaction to add the outputs to
+   * @param sendRequestSummary The information required to send bitcoin
+   */
+  private static void addRecipientOutputs(Transaction tx, SendRequestSummary sendRequestSummary) {
+
+    for (RecipientPayment recipientPayment : sendRequestSummary.getRecipientPayments()) {
+      tx.addOutput(recipientPayment.getAmount(), recipientPayment.getRecipient().getBitcoinAddress());
+    }
+
+  }
+
   /**
    * @param sendRequestSummary The information required to prepare a transaction for sending (this is everything except the credentials)
    *                           This prepares the transaction but does not sign it.
@@ -733,6 +811,7 @@ public class BitcoinNetworkService extends AbstractService {
         false
       );
       emptyWalletSendRequestSummary.setNotes(sendRequestSummary.getNotes());
+      emptyWalletSendRequestSummary.setCoinSelectionStrategy(sendRequestSummary.getCoinSelectionStrategy());
       if (sendRequestSummary.getKeyParameter().isPresent()) {
         emptyWalletSendRequestSummary.setKeyParameter(sendRequestSummary.getKeyParameter().get());
       }
@@ -895,7 +974,8 @@ public class BitcoinNetworkService extends AbstractService {
 
         Map<Address, ImmutableList<ChildNumber>> changeAddressPathMap = buildChangeAddressPathMap(
           sendRequest.tx,
-          wallet
+          wallet,
+          getRecipientAddresses(sendRequestSummary)
         );
 
         // Sign the transaction using the Trezor device
@@ -1070,8 +1150,8 @@ public class BitcoinNetworkService extends AbstractService {
 
     try {
 
-      // Ping the peers to check the Bitcoin network connection
-      if (!pingPeers()) {
+      // Ping the peers to check the Bitcoin network connection (unless a peer has responded recently)
+      if (!peerHealthMonitor.isRecentlyLive(getConnectedPeerIds()) && !pingPeers()) {
 
         // Declare the send a failure
         CoreEvents.fireBitcoinSentEvent(
@@ -1170,12 +1250,28 @@ public class BitcoinNetworkService extends AbstractService {
   }
 
   /**
-   * @param unsignedTx The unsigned transaction (expect OP_0 in place of signatures)
-   * @param wallet     The wallet
+   * @param sendRequestSummary The information required to send bitcoin
    *
-   * @return The receiving address path map linking the tx input index to a deterministic path
+   * @return The addresses of all the recipients
    */
-  private Map<Address, ImmutableList<ChildNumber>> buildChangeAddressPathMap(Transaction unsignedTx, Wallet wallet) {
+  private Set<Address> getRecipientAddresses(SendRequestSummary sendRequestSummary) {
+
+    Set<Address> recipientAddresses = Sets.newHashSet();
+    for (RecipientPayment recipientPayment : sendRequestSummary.getRecipientPayments()) {
+      recipientAddresses.add(recipientPayment.getRecipient().getBitcoinAddress());
+    }
+
+    return recipientAddresses;
+  }
+
+  /**
+   * @param unsignedTx         The unsigned transaction (expect OP_0 in place of signatures)
+   * @param wallet             The wallet
+   * @param recipientAddresses The addresses being paid (never treated as change even if they belong to the wallet)
+   *
+   * @return The change address path map linking the change address to a deterministic path
+   */
+  private Map<Address, ImmutableList<ChildNumber>> buildChangeAddressPathMap(Transaction unsignedTx, Wallet wallet, Set<Address> recipientAddresses) {
 
     Map<Address, ImmutableList<ChildNumber>> changeAddressPathMap = Maps.newHashMap();
 
@@ -1216,9 +1312,9 @@ public class BitcoinNetworkService extends AbstractService {
         }
       }
 
-      if (key.isPresent() && address.isPresent()) {
+      if (key.isPresent() && address.isPresent() && !recipientAddresses.contains(address.get())) {
 
-        // Found an address we own
+        // Found an address we own that is not being paid
         changeAddressPathMap.put(address.get(), key.get().getPath());
       }
 
@@ -1297,31 +1393,95 @@ public class BitcoinNetworkService extends AbstractService {
   }
 
   /**
-   * Ping all connected peers to see if there is an active network connection
+   * Ping all connected peers at once to see if there is an active network connection
    *
    * @return true is one or more peers respond to the ping
    */
   public boolean pingPeers() {
 
+    if (peerGroup == null) {
+      return false;
+    }
+
+    return peerHealthMonitor.probe(startPings(peerGroup.getConnectedPeers()), PING_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * @return The round trip time and liveness of the connected peers
+   */
+  public List<PeerHealthMonitor.PeerHealth> getPeerHealth() {
+    return peerHealthMonitor.getPeerHealth();
+  }
+
+  /**
+   * <p>Ping the connected peers in the background to keep the liveness table up to date</p>
+   */
+  private void refreshPeerHealth() {
+
+    if (peerGroup == null) {
+      return;
+    }
+
     List<Peer> connectedPeers = peerGroup.getConnectedPeers();
-    boolean atLeastOnePingWorked = false;
-    if (connectedPeers != null) {
-      for (Peer peer : connectedPeers) {
+
+    // Forget the peers that have disconnected
+    peerHealthMonitor.retainAll(getPeerIds(connectedPeers));
+
+    // A peer that has not answered the previous ping by now is not responding
+    peerHealthMonitor.expirePendingPings(PING_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    for (Map.Entry<String, ListenableFuture<Long>> ping : startPings(connectedPeers).entrySet()) {
+      peerHealthMonitor.track(ping.getKey(), ping.getValue());
+    }
+  }
+
+  /**
+   * @param peers The peers to ping
+   *
+   * @return The ping futures by peer address (peers that cannot be pinged are omitted)
+   */
+  private Map<String, ListenableFuture<Long>> startPings(List<Peer> peers) {
+
+    Map<String, ListenableFuture<Long>> pings = Maps.newHashMap();
+
+    if (peers != null) {
+      for (Peer peer : peers) {
 
         log.debug("Ping: {}", peer.getAddress().toString());
 
         try {
-          ListenableFuture<Long> result = peer.ping();
-          result.get(4, TimeUnit.SECONDS);
-          atLeastOnePingWorked = true;
-          break;
-        } catch (ProtocolException | InterruptedException | ExecutionException | TimeoutException e) {
+          pings.put(peer.getAddress().toString(), peer.ping());
+        } catch (ProtocolException e) {
           log.warn("Peer '" + peer.getAddress().toString() + "' failed ping test. Message was " + e.getMessage());
         }
       }
     }
 
-    return atLeastOnePingWorked;
+    return pings;
+  }
+
+  /**
+   * @return The addresses of the connected peers
+   */
+  private List<String> getConnectedPeerIds() {
+
+    if (peerGroup == null) {
+      return Lists.newArrayList();
+    }
+
+    return getPeerIds(peerGroup.getConnectedPeers());
+  }
+
+  private List<String> getPeerIds(List<Peer> peers) {
+
+    List<String> peerIds = Lists.newArrayList();
+    if (peers != null) {
+      for (Peer peer : peers) {
+        peerIds.add(peer.getAddress().toString());
+      }
+    }
+
+    return peerIds;
   }
 
   /**
@@ -97,6 +97,12 @@ public interface ContactService {
    */
   void writeContacts() throws ContactsSaveException;
 
+  /**
+   * <p>Write the contacts to the store after a short delay, coalescing with other requested writes</p>
+   * <p>Any failure is reported through the ExceptionHandler</p>
+   */
+  void scheduleWriteContacts();
+
   /**
    * <p>Create some demonstration contacts for testing purposes</p>
    */
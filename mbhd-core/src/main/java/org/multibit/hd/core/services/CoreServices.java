@@ -10,12 +10,15 @@ import org.multibit.hd.brit.crypto.PGPUtils;
 import org.multibit.hd.brit.seed_phrase.Bip39SeedPhraseGenerator;
 import org.multibit.hd.brit.seed_phrase.SeedPhraseGenerator;
 import org.multibit.hd.brit.services.FeeService;
-import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.concurrent.ExecutorPool;
+import org.multibit.hd.core.concurrent.ExecutorRegistry;
 import org.multibit.hd.core.config.BitcoinConfiguration;
 import org.multibit.hd.core.config.Configuration;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.config.Yaml;
+import org.multibit.hd.core.crypto.EncryptedFileReaderWriter;
 import org.multibit.hd.core.dto.HistoryEntry;
+import org.multibit.hd.core.files.SecureFiles;
 import org.multibit.hd.core.dto.WalletId;
 import org.multibit.hd.core.dto.WalletPassword;
 import org.multibit.hd.core.dto.WalletSummary;
@@ -25,6 +28,7 @@ import org.multibit.hd.core.exceptions.CoreException;
 import org.multibit.hd.core.logging.LoggingFactory;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
+import org.multibit.hd.core.store.PersistenceScheduler;
 import org.multibit.hd.core.utils.BitcoinNetwork;
 import org.multibit.hd.hardware.core.HardwareWalletClient;
 import org.multibit.hd.hardware.core.HardwareWalletService;
@@ -117,10 +121,15 @@ public class CoreServices {
    */
   private static Optional<BackupService> backupService = Optional.absent();
 
+  /**
+   * Coalesces the writes of the payments, contacts and history stores
+   */
+  private static final PersistenceScheduler persistenceScheduler = new PersistenceScheduler();
+
   /**
    * Manages CoreService startup and shutdown operations
    */
-  private static ListeningExecutorService coreServices = SafeExecutors.newFixedThreadPool(10, "core-services");
+  private static ListeningExecutorService coreServices = ExecutorRegistry.getOrCreateExecutor(ExecutorPool.BACKGROUND);
 
   /**
    * Utilities have a private constructor
@@ -194,6 +203,10 @@ public class CoreServices {
         shutdownApplicationSupportServices(shutdownType);
 
         log.info("Issuing system exit");
+
+        // Write any pending log events before the daemon appender threads are halted
+        LoggingFactory.stop();
+
         System.exit(0);
         break;
       case SOFT:
@@ -231,6 +244,9 @@ public class CoreServices {
    */
   private static void shutdownWalletSupportServices(ShutdownEvent.ShutdownType shutdownType) {
 
+    // Complete any deferred store writes while the current wallet is still available
+    persistenceScheduler.flush();
+
     // Allow graceful shutdown of managed services in the correct order
     shutdownService(contactService, shutdownType);
     shutdownService(historyService, shutdownType);
@@ -247,6 +263,9 @@ public class CoreServices {
     historyService = Optional.absent();
     backupService = Optional.absent();
 
+    // The derived AES keys belong to the wallet session
+    EncryptedFileReaderWriter.clearKeyCache();
+
   }
 
   /**
@@ -278,6 +297,12 @@ public class CoreServices {
       applicationEventService.shutdownNow(shutdownType);
     }
 
+    // Allow thinned backups to finish being overwritten
+    SecureFiles.shutdownSecureDeleteExecutor();
+
+    // Provide a record of how the shared thread pools coped
+    ExecutorRegistry.logMetrics();
+
     // Be judicious when clearing references since it leads to complex behaviour during shutdown
 
   }
@@ -395,6 +420,13 @@ public class CoreServices {
     return new Bip39SeedPhraseGenerator();
   }
 
+  /**
+   * @return The persistence scheduler coalescing writes of the payments, contacts and history stores
+   */
+  public static PersistenceScheduler getPersistenceScheduler() {
+    return persistenceScheduler;
+  }
+
   /**
    * @return The application event service singleton
    */
@@ -572,7 +604,7 @@ public class CoreServices {
 
     // Create the history entry and persist it
     HistoryEntry historyEntry = historyService.newHistoryEntry(localisedDescription);
-    historyService.writeHistory();
+    historyService.scheduleWriteHistory();
 
     // OK to let everyone else know
     CoreEvents.fireHistoryChangedEvent(historyEntry);
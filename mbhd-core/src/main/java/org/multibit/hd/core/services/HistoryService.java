@@ -76,4 +76,10 @@ public interface HistoryService {
    */
   void writeHistory() throws HistorySaveException;
 
+  /**
+   * <p>Write the history to the store after a short delay, coalescing with other requested writes</p>
+   * <p>Any failure is reported through the ExceptionHandler</p>
+   */
+  void scheduleWriteHistory();
+
 }
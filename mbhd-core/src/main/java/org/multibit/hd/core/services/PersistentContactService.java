@@ -2,6 +2,7 @@ package org.multibit.hd.core.services;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.bitcoinj.core.Address;
@@ -16,6 +17,7 @@ import org.multibit.hd.core.files.SecureFiles;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
 import org.multibit.hd.core.store.ContactsProtobufSerializer;
+import org.multibit.hd.core.store.ContentIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,10 +43,15 @@ public class PersistentContactService extends AbstractService implements Contact
   private static final Logger log = LoggerFactory.getLogger(PersistentContactService.class);
 
   /**
-   * The in-memory cache of contacts for the current wallet
+   * The in-memory cache of contacts for the current wallet (guarded by itself since writes take place on the persistence scheduler)
    */
   private final Set<Contact> contacts = Sets.newHashSet();
 
+  /**
+   * The full text index over the searchable content of the contacts
+   */
+  private final ContentIndex<Contact> contactIndex = new ContentIndex<>();
+
   /**
    * The location of the backing writeContacts for the contacts
    */
@@ -113,6 +120,11 @@ public class PersistentContactService extends AbstractService implements Contact
   @Override
   protected boolean shutdownNowInternal(ShutdownEvent.ShutdownType shutdownType) {
 
+    // Complete any deferred write before the backing store is released
+    if (backingStoreFile != null) {
+      CoreServices.getPersistenceScheduler().flush(backingStoreFile.getAbsolutePath());
+    }
+
     protobufSerializer = null;
     backingStoreFile = null;
 
@@ -139,7 +151,9 @@ public class PersistentContactService extends AbstractService implements Contact
   @Override
   public List<Contact> allContacts() {
 
-    return Lists.newArrayList(contacts);
+    synchronized (contacts) {
+      return Lists.newArrayList(contacts);
+    }
 
   }
 
@@ -150,7 +164,7 @@ public class PersistentContactService extends AbstractService implements Contact
 
     List<Contact> filteredContacts = Lists.newArrayList();
 
-    for (Contact contact : contacts) {
+    for (Contact contact : allContacts()) {
 
       if (contact.getBitcoinAddress().isPresent() && contact.getBitcoinAddress().get().equals(address)) {
         filteredContacts.add(contact);
@@ -165,59 +179,27 @@ public class PersistentContactService extends AbstractService implements Contact
 
     Preconditions.checkNotNull(query, "'query' must be present. Use * for wildcard.");
 
-    String lowerQuery = query.toLowerCase();
+    // Note: Do not include a Bitcoin address or xpub in this search
+    // because vanity addresses can cause an attack vector
+    // Instead use the dedicated methods for those fields
+    final Collection<Contact> matchedContacts;
+    if ("*".equals(query)) {
+      matchedContacts = allContacts();
+    } else {
+      // The index covers name, email, notes and tags
+      matchedContacts = contactIndex.search(query);
+    }
 
     List<Contact> filteredContacts = Lists.newArrayList();
 
-    for (Contact contact : contacts) {
+    for (Contact contact : matchedContacts) {
 
       // No Bitcoin address and excluding not payable
-      if (excludeNotPayable && !contact.getBitcoinAddress().isPresent() ) {
+      if (excludeNotPayable && !contact.getBitcoinAddress().isPresent()) {
         continue;
       }
 
-      // TODO Add support for xpub in later releases
-      // TODO (GR) Consider regex matching
-
-      // Note: Do not include a Bitcoin address or xpub in this search
-      // because vanity addresses can cause an attack vector
-      // Instead use the dedicated methods for those fields
-      final boolean isNameMatched;
-      final boolean isEmailMatched;
-      final boolean isNoteMatched;
-      if ("*".equals(query)) {
-        // Note: Do not include a Bitcoin address or xpub in this search
-        // because vanity addresses can cause an attack vector
-        // Instead use the dedicated methods for those fields
-        isNameMatched = true;
-        isEmailMatched = true;
-        isNoteMatched = true;
-
-      } else {
-        // Note: Do not include a Bitcoin address or xpub in this search
-        // because vanity addresses can cause an attack vector
-        // Instead use the dedicated methods for those fields
-        isNameMatched = contact.getName().toLowerCase().contains(lowerQuery);
-        isEmailMatched = contact.getEmail().or("").toLowerCase().contains(lowerQuery);
-        isNoteMatched = contact.getNotes().or("").toLowerCase().contains(lowerQuery);
-
-      }
-
-      boolean isTagMatched = false;
-      for (String tag : contact.getTags()) {
-        if (tag.toLowerCase().contains(lowerQuery)) {
-          isTagMatched = true;
-          break;
-        }
-      }
-
-      if (isNameMatched
-        || isEmailMatched
-        || isNoteMatched
-        || isTagMatched
-        ) {
-        filteredContacts.add(contact);
-      }
+      filteredContacts.add(contact);
     }
 
     return filteredContacts;
@@ -232,7 +214,7 @@ public class PersistentContactService extends AbstractService implements Contact
 
     List<Contact> filteredContacts = Lists.newArrayList();
 
-    for (Contact contact : contacts) {
+    for (Contact contact : allContacts()) {
 
       // No Bitcoin address and excluding not payable
       if (excludeNotPayable && !contact.getBitcoinAddress().isPresent()) {
@@ -261,7 +243,13 @@ public class PersistentContactService extends AbstractService implements Contact
   @Override
   public void addAll(Collection<Contact> selectedContacts) {
 
-    contacts.addAll(selectedContacts);
+    synchronized (contacts) {
+      contacts.addAll(selectedContacts);
+
+      for (Contact contact : selectedContacts) {
+        indexContact(contact);
+      }
+    }
 
   }
 
@@ -276,8 +264,12 @@ public class PersistentContactService extends AbstractService implements Contact
         WalletManager.scryptSalt(),
         WalletManager.aesInitialisationVector());
       Set<Contact> loadedContacts = protobufSerializer.readContacts(decryptedInputStream);
-      contacts.clear();
-      contacts.addAll(loadedContacts);
+      synchronized (contacts) {
+        contacts.clear();
+        contacts.addAll(loadedContacts);
+
+        reindexContacts();
+      }
 
     } catch (EncryptedFileReaderWriterException e) {
       throw new ContactsLoadException("Could not loadContacts contacts db '" + backingStoreFile.getAbsolutePath() + "'. Error was '" + e.getMessage() + "'.");
@@ -289,7 +281,10 @@ public class PersistentContactService extends AbstractService implements Contact
    * <p>Reduced visibility for testing</p>
    */
   void clear() {
-    contacts.clear();
+    synchronized (contacts) {
+      contacts.clear();
+      contactIndex.clear();
+    }
   }
 
   @Override
@@ -299,7 +294,13 @@ public class PersistentContactService extends AbstractService implements Contact
 
     log.debug("Removing {} contact(s)", selectedContacts.size());
 
-    contacts.removeAll(selectedContacts);
+    synchronized (contacts) {
+      contacts.removeAll(selectedContacts);
+
+      for (Contact contact : selectedContacts) {
+        contactIndex.remove(contact);
+      }
+    }
 
   }
 
@@ -310,14 +311,19 @@ public class PersistentContactService extends AbstractService implements Contact
 
     log.debug("Updating {} contact(s)", editedContacts.size());
 
-    for (Contact editedContact : editedContacts) {
+    synchronized (contacts) {
+      for (Contact editedContact : editedContacts) {
 
-      if (!contacts.contains(editedContact)) {
+        if (!contacts.contains(editedContact)) {
 
-        contacts.add(editedContact);
+          contacts.add(editedContact);
 
-      }
+        }
+
+        // Edits are made in place so always refresh the index
+        indexContact(editedContact);
 
+      }
     }
 
   }
@@ -325,12 +331,20 @@ public class PersistentContactService extends AbstractService implements Contact
   @Override
   public void writeContacts() throws ContactsSaveException {
 
-    log.debug("Writing {} contact(s)", contacts.size());
+    // Serialise a copy so that the contacts can continue to change while the write takes place
+    final Set<Contact> contactsSnapshot;
+    synchronized (contacts) {
+      // Pick up any edits made directly to the contacts since they were added
+      reindexContacts();
+      contactsSnapshot = ImmutableSet.copyOf(contacts);
+    }
+
+    log.debug("Writing {} contact(s)", contactsSnapshot.size());
 
     try {
       ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(1024);
 
-      protobufSerializer.writeContacts(contacts, byteArrayOutputStream);
+      protobufSerializer.writeContacts(contactsSnapshot, byteArrayOutputStream);
       EncryptedFileReaderWriter.encryptAndWrite(byteArrayOutputStream.toByteArray(), WalletManager.INSTANCE.getCurrentWalletSummary().get().getWalletPassword().getPassword(), backingStoreFile);
 
     } catch (Exception e) {
@@ -338,46 +352,94 @@ public class PersistentContactService extends AbstractService implements Contact
     }
   }
 
+  @Override
+  public void scheduleWriteContacts() {
+
+    Preconditions.checkNotNull(backingStoreFile, "'backingStoreFile' must be present");
+
+    CoreServices.getPersistenceScheduler().requestWrite(
+      backingStoreFile.getAbsolutePath(),
+      new Runnable() {
+        @Override
+        public void run() {
+          writeContacts();
+        }
+      });
+
+  }
+
   @Override
   public void addDemoContacts() {
 
-    // Only add the demo contacts if there are none present
-    if (!contacts.isEmpty()) {
-      return;
+    synchronized (contacts) {
+      // Only add the demo contacts if there are none present
+      if (!contacts.isEmpty()) {
+        return;
+      }
+
+      Contact contact1 = newContact("Alice Capital");
+      contact1.setEmail("g.rowe@froot.co.uk");
+      contact1.getTags().add("VIP");
+      contact1.getTags().add("Family");
+      contact1.setNotes("This is a really long note that should span over several lines when finally rendered to the screen. It began with Alice Capital.");
+      contacts.add(contact1);
+
+      Contact contact2 = newContact("Bob Capital");
+      contact2.setEmail("bob.capital@example.org");
+      contact2.setNotes("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+      contact2.getTags().add("VIP");
+      contact2.getTags().add("Merchandise");
+      contacts.add(contact2);
+
+      Contact contact3 = newContact("Charles Capital");
+      contact2.setNotes("Charles Capital's note 1\n\nCharles Capital's note 2");
+      contact3.setEmail("charles.capital@example.org");
+      contacts.add(contact3);
+
+      // No email for Derek
+      Contact contact4 = newContact("Derek Capital");
+      contact2.setNotes("Derek Capital's note 1\n\nDerek Capital's note 2");
+      contact4.getTags().add("Family");
+      contacts.add(contact4);
+
+      Contact contact5 = newContact("alice Lower");
+      contact5.setEmail("alice.lower@example.org");
+      contacts.add(contact5);
+
+      Contact contact6 = newContact("alicia Lower");
+      contact6.setEmail("alicia.lower@example.org");
+      contacts.add(contact6);
+
+      reindexContacts();
+    }
+
+  }
+
+  /**
+   * <p>Refresh the index entries for all contacts (unchanged content is ignored by the index)</p>
+   * <p>The caller must hold the lock on the contacts</p>
+   */
+  private void reindexContacts() {
+
+    for (Contact contact : contacts) {
+      indexContact(contact);
     }
 
-    Contact contact1 = newContact("Alice Capital");
-    contact1.setEmail("g.rowe@froot.co.uk");
-    contact1.getTags().add("VIP");
-    contact1.getTags().add("Family");
-    contact1.setNotes("This is a really long note that should span over several lines when finally rendered to the screen. It began with Alice Capital.");
-    contacts.add(contact1);
-
-    Contact contact2 = newContact("Bob Capital");
-    contact2.setEmail("bob.capital@example.org");
-    contact2.setNotes("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
-    contact2.getTags().add("VIP");
-    contact2.getTags().add("Merchandise");
-    contacts.add(contact2);
-
-    Contact contact3 = newContact("Charles Capital");
-    contact2.setNotes("Charles Capital's note 1\n\nCharles Capital's note 2");
-    contact3.setEmail("charles.capital@example.org");
-    contacts.add(contact3);
-
-    // No email for Derek
-    Contact contact4 = newContact("Derek Capital");
-    contact2.setNotes("Derek Capital's note 1\n\nDerek Capital's note 2");
-    contact4.getTags().add("Family");
-    contacts.add(contact4);
-
-    Contact contact5 = newContact("alice Lower");
-    contact5.setEmail("alice.lower@example.org");
-    contacts.add(contact5);
-
-    Contact contact6 = newContact("alicia Lower");
-    contact6.setEmail("alicia.lower@example.org");
-    contacts.add(contact6);
+  }
+
+  /**
+   * @param contact The contact to add or refresh in the index
+   */
+  private void indexContact(Contact contact) {
+
+    List<String> fields = Lists.newArrayList(
+      contact.getName(),
+      contact.getEmail().orNull(),
+      contact.getNotes().orNull()
+    );
+    fields.addAll(contact.getTags());
+
+    contactIndex.put(contact, fields.toArray(new String[fields.size()]));
 
   }
 
@@ -1,6 +1,7 @@
 package org.multibit.hd.core.services;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.multibit.hd.core.crypto.EncryptedFileReaderWriter;
@@ -13,6 +14,7 @@ import org.multibit.hd.core.exceptions.HistorySaveException;
 import org.multibit.hd.core.files.SecureFiles;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
+import org.multibit.hd.core.store.ContentIndex;
 import org.multibit.hd.core.store.HistoryProtobufSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,10 +41,15 @@ public class PersistentHistoryService extends AbstractService implements History
   private static final Logger log = LoggerFactory.getLogger(PersistentHistoryService.class);
 
   /**
-   * The in-memory cache of history for the current wallet
+   * The in-memory cache of history for the current wallet (guarded by itself since writes take place on the persistence scheduler)
    */
   private final Set<HistoryEntry> history = Sets.newHashSet();
 
+  /**
+   * The full text index over the searchable content of the history
+   */
+  private final ContentIndex<HistoryEntry> historyIndex = new ContentIndex<>();
+
   /**
    * The location of the backing writeHistory for the history
    */
@@ -112,6 +119,11 @@ public class PersistentHistoryService extends AbstractService implements History
   @Override
   protected boolean shutdownNowInternal(ShutdownEvent.ShutdownType shutdownType) {
 
+    // Complete any deferred write before the backing store is released
+    if (backingStoreFile != null) {
+      CoreServices.getPersistenceScheduler().flush(backingStoreFile.getAbsolutePath());
+    }
+
     protobufSerializer = null;
     backingStoreFile = null;
 
@@ -125,7 +137,10 @@ public class PersistentHistoryService extends AbstractService implements History
 
     HistoryEntry historyEntry = new HistoryEntry(UUID.randomUUID(), description);
 
-    history.add(historyEntry);
+    synchronized (history) {
+      history.add(historyEntry);
+      indexHistoryEntry(historyEntry);
+    }
 
     return historyEntry;
 
@@ -134,34 +149,29 @@ public class PersistentHistoryService extends AbstractService implements History
   @Override
   public List<HistoryEntry> allHistory() {
 
-    return Lists.newArrayList(history);
+    synchronized (history) {
+      return Lists.newArrayList(history);
+    }
 
   }
 
   @Override
   public List<HistoryEntry> filterHistoryByContent(String query) {
 
-    String lowerQuery = query.toLowerCase();
-
-    List<HistoryEntry> filteredHistory = Lists.newArrayList();
-
-    for (HistoryEntry historyEntry : history) {
-
-      boolean isDescriptionMatched = historyEntry.getDescription().toLowerCase().contains(lowerQuery);
-      boolean isNoteMatched = historyEntry.getNotes().or("").toLowerCase().contains(lowerQuery);
-
-      if (isDescriptionMatched || isNoteMatched) {
-        filteredHistory.add(historyEntry);
-      }
-    }
-
-    return filteredHistory;
+    // The index covers description and notes
+    return historyIndex.search(query);
   }
 
   @Override
   public void addAll(Collection<HistoryEntry> selectedHistory) {
 
-    history.addAll(selectedHistory);
+    synchronized (history) {
+      history.addAll(selectedHistory);
+
+      for (HistoryEntry historyEntry : selectedHistory) {
+        indexHistoryEntry(historyEntry);
+      }
+    }
 
   }
 
@@ -175,8 +185,12 @@ public class PersistentHistoryService extends AbstractService implements History
               WalletManager.scryptSalt(),
               WalletManager.aesInitialisationVector());
       Set<HistoryEntry> loadedHistory = protobufSerializer.readHistoryEntries(decryptedInputStream);
-      history.clear();
-      history.addAll(loadedHistory);
+      synchronized (history) {
+        history.clear();
+        history.addAll(loadedHistory);
+
+        reindexHistory();
+      }
 
     } catch (EncryptedFileReaderWriterException e) {
       throw new HistoryLoadException("Could not loadHistory history db '" + backingStoreFile.getAbsolutePath() + "'. Error was '" + e.getMessage() + "'.");
@@ -188,7 +202,10 @@ public class PersistentHistoryService extends AbstractService implements History
    * <p>Reduced visibility for testing</p>
    */
   void clear() {
-    history.clear();
+    synchronized (history) {
+      history.clear();
+      historyIndex.clear();
+    }
   }
 
   @Override
@@ -198,7 +215,13 @@ public class PersistentHistoryService extends AbstractService implements History
 
     log.debug("Removing {} history entries", selectedHistory.size());
 
-    history.removeAll(selectedHistory);
+    synchronized (history) {
+      history.removeAll(selectedHistory);
+
+      for (HistoryEntry historyEntry : selectedHistory) {
+        historyIndex.remove(historyEntry);
+      }
+    }
 
   }
 
@@ -209,14 +232,19 @@ public class PersistentHistoryService extends AbstractService implements History
 
     log.debug("Updating {} history entries", editedHistory.size());
 
-    for (HistoryEntry editedHistoryEntry : editedHistory) {
+    synchronized (history) {
+      for (HistoryEntry editedHistoryEntry : editedHistory) {
 
-      if (!history.contains(editedHistoryEntry)) {
+        if (!history.contains(editedHistoryEntry)) {
 
-        history.add(editedHistoryEntry);
+          history.add(editedHistoryEntry);
 
-      }
+        }
 
+        // Edits are made in place so always refresh the index
+        indexHistoryEntry(editedHistoryEntry);
+
+      }
     }
 
   }
@@ -227,11 +255,19 @@ public class PersistentHistoryService extends AbstractService implements History
     Preconditions.checkState(WalletManager.INSTANCE.getCurrentWalletSummary().isPresent(), "Current wallet summary must be present");
     Preconditions.checkNotNull(protobufSerializer, "'protobufSerializer' must be present");
 
-    log.debug("Writing {} history(s)", history.size());
+    // Serialise a copy so that the history can continue to change while the write takes place
+    final Set<HistoryEntry> historySnapshot;
+    synchronized (history) {
+      // Pick up any edits made directly to the entries since they were added
+      reindexHistory();
+      historySnapshot = ImmutableSet.copyOf(history);
+    }
+
+    log.debug("Writing {} history(s)", historySnapshot.size());
 
     try {
       ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(1024);
-      protobufSerializer.writeHistoryEntries(history, byteArrayOutputStream);
+      protobufSerializer.writeHistoryEntries(historySnapshot, byteArrayOutputStream);
       EncryptedFileReaderWriter.encryptAndWrite(
         byteArrayOutputStream.toByteArray(),
         WalletManager.INSTANCE.getCurrentWalletSummary().get().getWalletPassword().getPassword(),
@@ -243,14 +279,32 @@ public class PersistentHistoryService extends AbstractService implements History
     }
   }
 
+  @Override
+  public void scheduleWriteHistory() {
+
+    Preconditions.checkNotNull(backingStoreFile, "'backingStoreFile' must be present");
+
+    CoreServices.getPersistenceScheduler().requestWrite(
+      backingStoreFile.getAbsolutePath(),
+      new Runnable() {
+        @Override
+        public void run() {
+          writeHistory();
+        }
+      });
+
+  }
+
   /**
    * Provided for test purposes
    */
   /* package */ void addDemoHistory() {
 
     // Only add the demo history if there are none present
-    if (!history.isEmpty()) {
-      return;
+    synchronized (history) {
+      if (!history.isEmpty()) {
+        return;
+      }
     }
 
     // Expect filter inclusion on "1"
@@ -271,6 +325,32 @@ public class PersistentHistoryService extends AbstractService implements History
 
     newHistoryEntry("Something happened 6");
 
+    // Notes were added after the entries were created
+    synchronized (history) {
+      reindexHistory();
+    }
+
+  }
+
+  /**
+   * <p>Refresh the index entries for all history (unchanged content is ignored by the index)</p>
+   * <p>The caller must hold the lock on the history</p>
+   */
+  private void reindexHistory() {
+
+    for (HistoryEntry historyEntry : history) {
+      indexHistoryEntry(historyEntry);
+    }
+
+  }
+
+  /**
+   * @param historyEntry The history entry to add or refresh in the index
+   */
+  private void indexHistoryEntry(HistoryEntry historyEntry) {
+
+    historyIndex.put(historyEntry, historyEntry.getDescription(), historyEntry.getNotes().orNull());
+
   }
 
 }
@@ -4,7 +4,11 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import com.google.common.eventbus.Subscribe;
 import com.googlecode.jcsv.writer.CSVEntryConverter;
@@ -24,7 +28,9 @@ import org.multibit.hd.core.files.SecureFiles;
 import org.multibit.hd.core.managers.ExportManager;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
+import org.multibit.hd.core.store.ContentIndex;
 import org.multibit.hd.core.store.Payments;
+import org.multibit.hd.core.store.PaymentsJournal;
 import org.multibit.hd.core.store.PaymentsProtobufSerializer;
 import org.multibit.hd.core.store.TransactionInfo;
 import org.multibit.hd.core.utils.Coins;
@@ -61,6 +67,16 @@ public class WalletService extends AbstractService {
    */
   public static final String PAYMENTS_DATABASE_NAME = "payments.aes";
 
+  /**
+   * The name of the append-only journal of changes made since the payments database was last written, AES encrypted per record
+   */
+  public static final String PAYMENTS_JOURNAL_NAME = "payments.journal.aes";
+
+  /**
+   * The number of journal records after which the journal is compacted into the payments database
+   */
+  static final int JOURNAL_COMPACTION_THRESHOLD = 500;
+
   /**
    * The text separator used in localising To: and By: prefices
    */
@@ -81,6 +97,21 @@ public class WalletService extends AbstractService {
    */
   private PaymentsProtobufSerializer protobufSerializer;
 
+  /**
+   * The journal of changes since the backing store was last written
+   */
+  private PaymentsJournal paymentsJournal;
+
+  /**
+   * The changes not yet appended to the journal, indexed by record key so later changes supersede earlier ones (guarded by itself)
+   */
+  private final Map<String, PaymentsJournal.Record> pendingJournalRecords = new LinkedHashMap<>();
+
+  /**
+   * Ensures the journal is not appended to whilst it is being compacted
+   */
+  private final Object journalLock = new Object();
+
   /**
    * The payment requests in a map, indexed by the bitcoin address
    */
@@ -102,9 +133,49 @@ public class WalletService extends AbstractService {
   private final Stack<PaymentRequestData> undoDeletePaymentRequestStack = new Stack<>();
 
   /**
-   * The last seen payments data
+   * The adapted transactions, indexed by the transaction hash and maintained incrementally
+   */
+  private final ConcurrentHashMap<String, TransactionData> transactionDataMap = new ConcurrentHashMap<>();
+
+  /**
+   * The transaction hashes whose confidence, depth or transaction info has changed since the last refresh
+   */
+  private final Set<String> changedTransactionHashes = Sets.newConcurrentHashSet();
+
+  /**
+   * True if every transaction must be adapted again (initial load, reorganisation, reload of the backing store)
+   */
+  private volatile boolean rebuildRequired = true;
+
+  /**
+   * True if the payments snapshot must be sorted again (payment requests changed)
+   */
+  private volatile boolean snapshotStale = true;
+
+  /**
+   * Guards the incremental refresh of the payment index
+   */
+  private final Object paymentIndexLock = new Object();
+
+  /**
+   * The last seen payments data as an immutable, sorted snapshot
+   */
+  private volatile List<PaymentData> lastSeenPaymentDataList = ImmutableList.of();
+
+  /**
+   * The last seen payments data indexed by the content index key
    */
-  private List<PaymentData> lastSeenPaymentDataList = Lists.newArrayList();
+  private volatile Map<String, PaymentData> lastSeenPaymentDataMap = Collections.emptyMap();
+
+  /**
+   * The full text index over the searchable content of the payments, keyed by <code>paymentKey()</code>
+   */
+  private final ContentIndex<String> paymentContentIndex = new ContentIndex<>();
+
+  /**
+   * The keys of the payment requests currently held in the content index
+   */
+  private final Set<String> indexedPaymentRequestKeys = Sets.newHashSet();
 
   /**
    * Handles wallet operations
@@ -135,6 +206,10 @@ public class WalletService extends AbstractService {
     if (WalletManager.INSTANCE.getCurrentWalletSummary().isPresent()) {
 
       try {
+        // Any deferred write is superseded by this one
+        if (backingStoreFile != null) {
+          CoreServices.getPersistenceScheduler().flush(backingStoreFile.getAbsolutePath());
+        }
         writePayments();
       } catch (PaymentsSaveException pse) {
         // Cannot do much as shutting down
@@ -169,15 +244,23 @@ public class WalletService extends AbstractService {
     this.backingStoreFile = new File(paymentsDirectory.getAbsolutePath() + File.separator + PAYMENTS_DATABASE_NAME);
 
     protobufSerializer = new PaymentsProtobufSerializer();
+    paymentsJournal = new PaymentsJournal(
+      new File(paymentsDirectory.getAbsolutePath() + File.separator + PAYMENTS_JOURNAL_NAME),
+      backingStoreFile,
+      protobufSerializer
+    );
 
-    if (backingStoreFile.exists()) {
+    // An existing payments database without a journal is simply a complete snapshot
+    if (backingStoreFile.exists() || paymentsJournal.getJournalFile().exists()) {
       readPayments();
     }
   }
 
   /**
    * <p>Get all the payments (payments and payment requests) in the current wallet.</p>
-   * <h3>WARNING: This is moderately expensive so don't call it indiscriminately</h3>
+   * <p>Only the transactions that have changed since the last call are adapted again so repeated calls are cheap.</p>
+   *
+   * @return An immutable snapshot of the payments sorted by date, descending
    */
   public List<PaymentData> getPaymentDataList() {
 
@@ -187,7 +270,7 @@ public class WalletService extends AbstractService {
     Optional<WalletSummary> currentWalletSummary = walletManager.getCurrentWalletSummary();
     if (!currentWalletSummary.isPresent()) {
       // No wallet is present
-      return Lists.newArrayList();
+      return ImmutableList.of();
     }
 
     // Wallet is present
@@ -197,31 +280,158 @@ public class WalletService extends AbstractService {
     // There should be a wallet
     Preconditions.checkNotNull(wallet, "There is no wallet to process");
 
-    // Get all the transactions in the wallet
-    Set<Transaction> transactions = wallet.getTransactions(true);
+    synchronized (paymentIndexLock) {
 
-    // Adapted transaction data to return
-    Set<TransactionData> transactionDataSet = Sets.newHashSet();
+      if (rebuildRequired) {
+
+        // Clear the flags first so that concurrent changes are picked up on the next refresh
+        rebuildRequired = false;
+        changedTransactionHashes.clear();
+        transactionDataMap.clear();
+        paymentContentIndex.clear();
+        indexedPaymentRequestKeys.clear();
+
+        // Get all the transactions in the wallet
+        Set<Transaction> transactions = wallet.getTransactions(true);
+        if (transactions != null) {
+          for (Transaction transaction : transactions) {
+            putTransactionData(adaptTransaction(wallet, transaction));
+          }
+        }
+        log.debug("Rebuilt payment index with {} transactions", transactionDataMap.size());
+
+        snapshotStale = true;
+
+      } else if (!changedTransactionHashes.isEmpty()) {
+
+        // Only adapt the transactions that have changed
+        int adaptedCount = 0;
+        for (String transactionHashAsString : Lists.newArrayList(changedTransactionHashes)) {
+          changedTransactionHashes.remove(transactionHashAsString);
+
+          Transaction transaction = wallet.getTransaction(new Sha256Hash(transactionHashAsString));
+          if (transaction == null) {
+            transactionDataMap.remove(transactionHashAsString);
+            paymentContentIndex.remove(transactionHashAsString);
+          } else {
+            putTransactionData(adaptTransaction(wallet, transaction));
+          }
+          adaptedCount++;
+        }
+        log.trace("Updated payment index with {} changed transactions", adaptedCount);
+
+        snapshotStale = true;
 
-    if (transactions != null) {
-      for (Transaction transaction : transactions) {
-        TransactionData transactionData = adaptTransaction(wallet, transaction);
-        transactionDataSet.add(transactionData);
       }
-    }
 
-    // Determine which paymentRequests have not been fully funded (these will appear as independent entities in the UI)
-    Set<PaymentRequestData> paymentRequestsNotFullyFunded = Sets.newHashSet();
-    for (PaymentRequestData basePaymentRequestData : paymentRequestMap.values()) {
-      if (basePaymentRequestData.getPaidAmountCoin().compareTo(basePaymentRequestData.getAmountCoin()) < 0) {
-        paymentRequestsNotFullyFunded.add(basePaymentRequestData);
+      if (snapshotStale) {
+
+        snapshotStale = false;
+
+        // Determine which paymentRequests have not been fully funded (these will appear as independent entities in the UI)
+        List<PaymentData> paymentDataList = Lists.newArrayListWithCapacity(transactionDataMap.size() + paymentRequestMap.size());
+        paymentDataList.addAll(transactionDataMap.values());
+        Set<String> paymentRequestKeys = Sets.newHashSet();
+        synchronized (paymentRequestMap) {
+          for (PaymentRequestData basePaymentRequestData : paymentRequestMap.values()) {
+            if (basePaymentRequestData.getPaidAmountCoin().compareTo(basePaymentRequestData.getAmountCoin()) < 0) {
+              paymentDataList.add(basePaymentRequestData);
+
+              // Payment requests are few and edited in place so refresh them on every snapshot
+              String paymentKey = paymentKey(basePaymentRequestData);
+              paymentRequestKeys.add(paymentKey);
+              paymentContentIndex.put(
+                paymentKey,
+                basePaymentRequestData.getDescription(),
+                basePaymentRequestData.getNote(),
+                basePaymentRequestData.getLabel()
+              );
+            }
+          }
+        }
+
+        // Drop payment requests that are now fully funded or deleted
+        for (String paymentKey : Sets.difference(indexedPaymentRequestKeys, paymentRequestKeys)) {
+          paymentContentIndex.remove(paymentKey);
+        }
+        indexedPaymentRequestKeys.clear();
+        indexedPaymentRequestKeys.addAll(paymentRequestKeys);
+
+        Map<String, PaymentData> paymentDataMap = new HashMap<>(paymentDataList.size() * 2);
+        for (PaymentData paymentData : paymentDataList) {
+          paymentDataMap.put(paymentKey(paymentData), paymentData);
+        }
+
+        // Publish an immutable sorted snapshot so readers do not need to copy it
+        lastSeenPaymentDataList = Ordering.from(new PaymentComparator()).immutableSortedCopy(paymentDataList);
+        lastSeenPaymentDataMap = paymentDataMap;
       }
+
+      return lastSeenPaymentDataList;
+    }
+  }
+
+  /**
+   * <p>Add or replace the adapted transaction in the payment index and its content index</p>
+   *
+   * @param transactionData The adapted transaction
+   */
+  private void putTransactionData(TransactionData transactionData) {
+
+    String transactionHashAsString = transactionData.getTransactionId();
+    transactionDataMap.put(transactionHashAsString, transactionData);
+
+    // The raw transaction is not indexed so that it remains lazily evaluated
+    paymentContentIndex.put(
+      transactionHashAsString,
+      transactionData.getDescription(),
+      transactionData.getNote(),
+      Joiner.on(" ").join(transactionData.getOutputAddresses()),
+      transactionHashAsString
+    );
+  }
+
+  /**
+   * @param paymentData The payment data
+   *
+   * @return The key for the payment data in the content index (transaction hash or payment request address)
+   */
+  private static String paymentKey(PaymentData paymentData) {
+
+    if (paymentData instanceof PaymentRequestData) {
+      return paymentRequestKey(((PaymentRequestData) paymentData).getAddress().toString());
+    }
+
+    return ((TransactionData) paymentData).getTransactionId();
+  }
+
+  /**
+   * @param address The payment request address
+   *
+   * @return The key for the payment request in the content index
+   */
+  private static String paymentRequestKey(String address) {
+    return "request:" + address;
+  }
+
+  /**
+   * <p>Flag a transaction as changed so that it is adapted again on the next call to <code>getPaymentDataList()</code></p>
+   *
+   * @param transactionHashAsString The transaction hash
+   */
+  public void markTransactionAsChanged(String transactionHashAsString) {
+
+    if (transactionHashAsString != null) {
+      changedTransactionHashes.add(transactionHashAsString);
     }
-    // Union the transactionData set and paymentData set
-    lastSeenPaymentDataList = Lists.newArrayList(Sets.union(transactionDataSet, paymentRequestsNotFullyFunded));
+  }
 
-    //log.debug("lastSeenPaymentDataList:\n" + lastSeenPaymentDataList.toString());
-    return lastSeenPaymentDataList;
+  /**
+   * <p>Flag all transactions as changed (e.g. after a reorganisation) so that the payment index is rebuilt</p>
+   */
+  public void markAllTransactionsAsChanged() {
+
+    rebuildRequired = true;
   }
 
   /**
@@ -267,52 +477,36 @@ public class WalletService extends AbstractService {
   }
 
   /**
+   * <p>The raw transaction is not matched (only its transaction ID and output addresses) so that it remains lazily
+   * evaluated</p>
+   *
    * @param query The text fragment to match (case-insensitive, anywhere in the name)
    *
    * @return A filtered set of Payments for the given query
    */
   public List<PaymentData> filterPaymentsByContent(String query) {
 
-    String lowerQuery = query.toLowerCase();
-
-    List<PaymentData> filteredPayments = Lists.newArrayList();
+    Preconditions.checkNotNull(query, "'query' must be present");
 
-    for (PaymentData paymentData : lastSeenPaymentDataList) {
+    Map<String, PaymentData> paymentDataMap = lastSeenPaymentDataMap;
 
-      boolean isDescriptionMatched = paymentData.getDescription().toLowerCase().contains(lowerQuery);
-      boolean isNoteMatched = paymentData.getNote().toLowerCase().contains(lowerQuery);
-
-      boolean isQrCodeLabelMatched = false;
-      boolean isPaymentAddressMatched = false;
-      boolean isOutputAddressMatched = false;
-      boolean isRawTransactionMatched = false;
-
-      if (paymentData instanceof PaymentRequestData) {
-
-        PaymentRequestData paymentRequestData = (PaymentRequestData) paymentData;
-        isQrCodeLabelMatched = paymentRequestData.getLabel().toLowerCase().contains(lowerQuery);
-
-        // Exact match only
-        isPaymentAddressMatched = paymentRequestData.getAddress().toString().equals(query);
-
-      } else if (paymentData instanceof TransactionData) {
-
-        TransactionData transactionData = (TransactionData) paymentData;
-        isOutputAddressMatched = Joiner.on(" ").join(transactionData.getOutputAddresses()).toLowerCase().contains(lowerQuery);
-        isRawTransactionMatched = transactionData.getRawTransaction().toLowerCase().contains(lowerQuery);
+    Set<PaymentData> matchedPayments = Sets.newLinkedHashSet();
 
+    // The index covers description, note, QR code label, output addresses and transaction ID
+    for (String paymentKey : paymentContentIndex.search(query)) {
+      PaymentData paymentData = paymentDataMap.get(paymentKey);
+      if (paymentData != null) {
+        matchedPayments.add(paymentData);
       }
-      if (isDescriptionMatched
-        || isNoteMatched
-        || isQrCodeLabelMatched
-        || isPaymentAddressMatched
-        || isOutputAddressMatched
-        || isRawTransactionMatched
-        ) {
-        filteredPayments.add(paymentData);
-      }
     }
 
+    // Payment addresses are an exact match only
+    PaymentData paymentRequestData = paymentDataMap.get(paymentRequestKey(query));
+    if (paymentRequestData != null) {
+      matchedPayments.add(paymentRequestData);
+    }
+
+    List<PaymentData> filteredPayments = Lists.newArrayList(matchedPayments);
     Collections.sort(filteredPayments, new PaymentComparator());
 
     return filteredPayments;
@@ -328,7 +522,7 @@ public class WalletService extends AbstractService {
    *
    * @return TransactionData the transaction data
    */
-  public TransactionData adaptTransaction(Wallet wallet, Transaction transaction) {
+  public TransactionData adaptTransaction(Wallet wallet, final Transaction transaction) {
 
     // Tx id
     String transactionHashAsString = transaction.getHashAsString();
@@ -375,16 +569,28 @@ public class WalletService extends AbstractService {
     // Also works out outputAddresses
 
     // Include the raw serialized form of the transaction for lowest level viewing
-    String rawTransaction = transaction.toString() + "\n" + Utils.HEX.encode(transaction.bitcoinSerialize()) + "\n";
+    // This is expensive so it is deferred until the transaction details or a raw search require it
+    final Supplier<byte[]> serializedTransaction = Suppliers.memoize(
+      new Supplier<byte[]>() {
+        @Override
+        public byte[] get() {
+          return transaction.bitcoinSerialize();
+        }
+      });
 
-    int size = -1;
-    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
-    try {
-      transaction.bitcoinSerialize(byteOutputStream);
-      size = byteOutputStream.size();
-    } catch (IOException e) {
-      log.error("Failed to serialize transaction", e);
-    }
+    Supplier<String> rawTransaction = new Supplier<String>() {
+      @Override
+      public String get() {
+        return transaction.toString() + "\n" + Utils.HEX.encode(serializedTransaction.get()) + "\n";
+      }
+    };
+
+    Supplier<Integer> size = new Supplier<Integer>() {
+      @Override
+      public Integer get() {
+        return serializedTransaction.get().length;
+      }
+    };
 
     List<Address> outputAddresses = calculateOutputAddresses(transaction);
 
@@ -610,7 +816,9 @@ public class WalletService extends AbstractService {
     // Double check we are not overwriting an extant transactionInfo
     if (transactionInfoMap.get(transactionHashAsString) == null) {
       // Expected
-      transactionInfoMap.putIfAbsent(transactionHashAsString, newTransactionInfo);
+      if (transactionInfoMap.putIfAbsent(transactionHashAsString, newTransactionInfo) == null) {
+        journal(PaymentsJournal.Record.upsert(newTransactionInfo));
+      }
     }
 
     return amountFiat;
@@ -684,30 +892,42 @@ public class WalletService extends AbstractService {
 
       log.debug("Reading payments from\n'{}'", backingStoreFile.getAbsolutePath());
 
-      ByteArrayInputStream decryptedInputStream = EncryptedFileReaderWriter.readAndDecrypt(
-        backingStoreFile,
-        WalletManager.INSTANCE.getCurrentWalletSummary().get().getWalletPassword().getPassword(),
-        WalletManager.scryptSalt(),
-        WalletManager.aesInitialisationVector());
-      Payments payments = protobufSerializer.readPayments(decryptedInputStream);
-
-      // For quick access payment requests and transaction infos are stored in maps
-      Collection<PaymentRequestData> paymentRequestDatas = payments.getPaymentRequestDatas();
-      if (paymentRequestDatas != null) {
-        paymentRequestMap.clear();
-        for (PaymentRequestData paymentRequestData : paymentRequestDatas) {
-          paymentRequestMap.put(paymentRequestData.getAddress(), paymentRequestData);
+      CharSequence password = WalletManager.INSTANCE.getCurrentWalletSummary().get().getWalletPassword().getPassword();
+
+      if (backingStoreFile.exists()) {
+        ByteArrayInputStream decryptedInputStream = EncryptedFileReaderWriter.readAndDecrypt(
+          backingStoreFile,
+          password,
+          WalletManager.scryptSalt(),
+          WalletManager.aesInitialisationVector());
+        Payments payments = protobufSerializer.readPayments(decryptedInputStream);
+
+        // For quick access payment requests and transaction infos are stored in maps
+        Collection<PaymentRequestData> paymentRequestDatas = payments.getPaymentRequestDatas();
+        if (paymentRequestDatas != null) {
+          paymentRequestMap.clear();
+          for (PaymentRequestData paymentRequestData : paymentRequestDatas) {
+            paymentRequestMap.put(paymentRequestData.getAddress(), paymentRequestData);
+          }
         }
-      }
 
-      Collection<TransactionInfo> transactionInfos = payments.getTransactionInfos();
-      if (transactionInfos != null) {
-        transactionInfoMap.clear();
-        for (TransactionInfo transactionInfo : transactionInfos) {
-          transactionInfoMap.put(transactionInfo.getHash(), transactionInfo);
+        Collection<TransactionInfo> transactionInfos = payments.getTransactionInfos();
+        if (transactionInfos != null) {
+          transactionInfoMap.clear();
+          for (TransactionInfo transactionInfo : transactionInfos) {
+            transactionInfoMap.put(transactionInfo.getHash(), transactionInfo);
+          }
         }
       }
 
+      // Apply the changes made since the snapshot was written
+      synchronized (journalLock) {
+        paymentsJournal.replay(transactionInfoMap, paymentRequestMap, EncryptedFileReaderWriter.deriveKey(password, WalletManager.scryptSalt()));
+      }
+
+      // Everything in the payment index may now be out of date
+      markAllTransactionsAsChanged();
+
     } catch (EncryptedFileReaderWriterException e) {
       ExceptionHandler.handleThrowable(new PaymentsLoadException("Could not load payments db '" + backingStoreFile.getAbsolutePath() + "'. Error was '" + e.getMessage() + "'."));
     }
@@ -722,30 +942,98 @@ public class WalletService extends AbstractService {
     Preconditions.checkNotNull(backingStoreFile, "'backingStoreFile' must be present. Initialise WalletService.");
     Preconditions.checkState(WalletManager.INSTANCE.getCurrentWalletSummary().isPresent(), "Current wallet summary must be present");
 
-    try {
+    synchronized (journalLock) {
+      try {
+
+        log.debug("Writing payments to\n'{}'", backingStoreFile.getAbsolutePath());
+        log.trace("Writing TransactionInfoMap: {}", transactionInfoMap);
+
+        // The snapshot supersedes any changes not yet journalled
+        synchronized (pendingJournalRecords) {
+          pendingJournalRecords.clear();
+        }
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(1024);
+        Payments payments = new Payments();
+        payments.setTransactionInfos(transactionInfoMap.values());
+        payments.setPaymentRequestDatas(paymentRequestMap.values());
+        protobufSerializer.writePayments(payments, byteArrayOutputStream);
+        EncryptedFileReaderWriter.encryptAndWrite(
+          byteArrayOutputStream.toByteArray(),
+          WalletManager.INSTANCE.getCurrentWalletSummary().get().getWalletPassword().getPassword(),
+          backingStoreFile
+        );
 
-      log.debug("Writing payments to\n'{}'", backingStoreFile.getAbsolutePath());
-      log.trace("Writing TransactionInfoMap: {}", transactionInfoMap);
-
-      ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(1024);
-      Payments payments = new Payments();
-      payments.setTransactionInfos(transactionInfoMap.values());
-      payments.setPaymentRequestDatas(paymentRequestMap.values());
-      protobufSerializer.writePayments(payments, byteArrayOutputStream);
-      EncryptedFileReaderWriter.encryptAndWrite(
-        byteArrayOutputStream.toByteArray(),
-        WalletManager.INSTANCE.getCurrentWalletSummary().get().getWalletPassword().getPassword(),
-        backingStoreFile
-      );
-
-      log.debug("Writing payments completed");
-
-    } catch (Exception e) {
-      log.error("Could not write to payments db\n'{}'", backingStoreFile.getAbsolutePath(), e);
-      throw new PaymentsSaveException("Could not write payments db '" + backingStoreFile.getAbsolutePath() + "'. Error was '" + e.getMessage() + "'.", e);
+        // Only discard the journal once the snapshot is safely in place (see PaymentsJournal for a crash before this)
+        if (paymentsJournal != null) {
+          paymentsJournal.reset();
+        }
+
+        log.debug("Writing payments completed");
+
+      } catch (Exception e) {
+        log.error("Could not write to payments db\n'{}'", backingStoreFile.getAbsolutePath(), e);
+        throw new PaymentsSaveException("Could not write payments db '" + backingStoreFile.getAbsolutePath() + "'. Error was '" + e.getMessage() + "'.", e);
+      }
     }
   }
 
+  /**
+   * <p>Append the changes made since the last write to the journal, compacting it into the backing store when it grows too long</p>
+   * <p>Falls back to a full write if there is no backing store yet (new wallet)</p>
+   */
+  public void writePaymentsJournal() throws PaymentsSaveException {
+
+    Preconditions.checkNotNull(backingStoreFile, "'backingStoreFile' must be present. Initialise WalletService.");
+    Preconditions.checkState(WalletManager.INSTANCE.getCurrentWalletSummary().isPresent(), "Current wallet summary must be present");
+
+    synchronized (journalLock) {
+
+      if (!backingStoreFile.exists() || paymentsJournal.getRecordCount() >= JOURNAL_COMPACTION_THRESHOLD) {
+        log.debug("Compacting payments journal ({} records)", paymentsJournal.getRecordCount());
+        writePayments();
+        return;
+      }
+
+      List<PaymentsJournal.Record> records;
+      synchronized (pendingJournalRecords) {
+        records = Lists.newArrayList(pendingJournalRecords.values());
+        pendingJournalRecords.clear();
+      }
+
+      try {
+        paymentsJournal.append(
+          records,
+          EncryptedFileReaderWriter.deriveKey(
+            WalletManager.INSTANCE.getCurrentWalletSummary().get().getWalletPassword().getPassword(),
+            WalletManager.scryptSalt()
+          ));
+      } catch (Exception e) {
+        log.error("Could not append to payments journal\n'{}'", paymentsJournal.getJournalFile().getAbsolutePath(), e);
+        // A full write leaves the payments consistent whatever state the journal is in
+        writePayments();
+      }
+    }
+  }
+
+  /**
+   * <p>Journal the changes to the payments data after a short delay, coalescing with other requested writes</p>
+   * <p>Any failure is reported through the ExceptionHandler</p>
+   */
+  public void scheduleWritePayments() {
+
+    Preconditions.checkNotNull(backingStoreFile, "'backingStoreFile' must be present. Initialise WalletService.");
+
+    CoreServices.getPersistenceScheduler().requestWrite(
+      backingStoreFile.getAbsolutePath(),
+      new Runnable() {
+        @Override
+        public void run() {
+          writePaymentsJournal();
+        }
+      });
+  }
+
   public WalletId getWalletId() {
     return walletId;
   }
@@ -753,11 +1041,28 @@ public class WalletService extends AbstractService {
   public void addPaymentRequest(PaymentRequestData paymentRequestData) {
 
     paymentRequestMap.put(paymentRequestData.getAddress(), paymentRequestData);
+    snapshotStale = true;
+    journal(PaymentsJournal.Record.upsert(paymentRequestData));
 
   }
 
   public void addTransactionInfo(TransactionInfo transactionInfo) {
     transactionInfoMap.put(transactionInfo.getHash(), transactionInfo);
+    markTransactionAsChanged(transactionInfo.getHash());
+    journal(PaymentsJournal.Record.upsert(transactionInfo));
+  }
+
+  /**
+   * @param record The change to include in the next journal write
+   */
+  private void journal(PaymentsJournal.Record record) {
+
+    synchronized (pendingJournalRecords) {
+      // Keep the changes in order with the latest change to an item last
+      pendingJournalRecords.remove(record.getKey());
+      pendingJournalRecords.put(record.getKey(), record);
+    }
+
   }
 
   public TransactionInfo getTransactionInfoByHash(String transactionHashAsString) {
@@ -830,7 +1135,9 @@ public class WalletService extends AbstractService {
 
     undoDeletePaymentRequestStack.push(paymentRequestData);
     paymentRequestMap.remove(paymentRequestData.getAddress());
-    writePayments();
+    snapshotStale = true;
+    journal(PaymentsJournal.Record.delete(paymentRequestData));
+    scheduleWritePayments();
   }
 
   /**
@@ -841,7 +1148,7 @@ public class WalletService extends AbstractService {
     if (!undoDeletePaymentRequestStack.isEmpty()) {
       PaymentRequestData deletedPaymentRequestData = undoDeletePaymentRequestStack.pop();
       addPaymentRequest(deletedPaymentRequestData);
-      writePayments();
+      scheduleWritePayments();
     }
   }
 
@@ -862,8 +1169,8 @@ public class WalletService extends AbstractService {
     CSVEntryConverter<TransactionData> transactionHeaderConverter,
     CSVEntryConverter<TransactionData> transactionConverter
   ) {
-    // Refresh all payments
-    List<PaymentData> paymentDataList = getPaymentDataList();
+    // Refresh all payments (the export sorts in place so requires a mutable copy)
+    List<PaymentData> paymentDataList = Lists.newArrayList(getPaymentDataList());
     ExportManager.export(
       paymentDataList,
       getPaymentRequests(),
@@ -968,6 +1275,9 @@ public class WalletService extends AbstractService {
         walletSummary.setEncryptedBackupKey(encryptedNewBackupAESKey);
         walletSummary.setEncryptedPassword(encryptedPaddedNewPassword);
 
+        // Discard the AES key derived from the old credentials
+        EncryptedFileReaderWriter.clearKeyCache();
+
         // Save the wallet summary file
         WalletManager.updateWalletSummary(WalletManager.INSTANCE.getCurrentWalletSummaryFile(applicationDataDirectory).get(), walletSummary);
 
@@ -1037,6 +1347,9 @@ public class WalletService extends AbstractService {
       // Use the atomic putIfAbsent to ensure we don't overwrite
       if (transactionInfoMap.putIfAbsent(transactionSeenEvent.getTransactionId(), transactionInfo) == null) {
         log.debug("Created TransactionInfo: {}", transactionInfo);
+        markTransactionAsChanged(transactionSeenEvent.getTransactionId());
+        // Written with the next journal write or on shutdown
+        journal(PaymentsJournal.Record.upsert(transactionInfo));
       } else {
         log.debug("Not adding transactionInfo - another process has already added transactionInfo: {}", transactionInfo);
       }
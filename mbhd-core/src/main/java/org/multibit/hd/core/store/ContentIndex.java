@@ -0,0 +1,311 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Index to provide the following to the contact, history and wallet services:</p>
+ * <ul>
+ * <li>Case insensitive substring (and therefore prefix) search over the text content of in-memory records</li>
+ * <li>Incremental maintenance as records are added, updated and removed</li>
+ * </ul>
+ * <p>Content is indexed by trigrams. A query of three or more characters is answered by intersecting the
+ * posting lists of its trigrams and confirming each candidate, so only records that share every trigram
+ * of the query are examined. Shorter queries fall back to a scan of the pre-lowercased content.</p>
+ *
+ * @param <K> The record key type (must provide value based equals and hashCode)
+ *
+ * @since 0.0.5
+ */
+public class ContentIndex<K> {
+
+  /**
+   * The length of the n-grams used in the posting lists
+   */
+  private static final int GRAM_LENGTH = 3;
+
+  /**
+   * Separates fields so that a query cannot match across them
+   */
+  private static final char FIELD_SEPARATOR = '\n';
+
+  /**
+   * Below this number of removed records the index is not compacted
+   */
+  private static final int MINIMUM_COMPACTION_SIZE = 1024;
+
+  /**
+   * The record keys by document ID (null if removed)
+   */
+  private final List<K> keys = Lists.newArrayList();
+
+  /**
+   * The lowercased record content by document ID (null if removed)
+   */
+  private final List<String> contents = Lists.newArrayList();
+
+  /**
+   * The current document ID of each record
+   */
+  private final Map<K, Integer> documentIds = Maps.newHashMap();
+
+  /**
+   * The ascending document IDs containing each trigram
+   */
+  private final Map<String, Postings> postingsMap = Maps.newHashMap();
+
+  /**
+   * The number of document IDs that have been removed since the last compaction
+   */
+  private int removedCount = 0;
+
+  /**
+   * <p>Add or replace the content for a record</p>
+   *
+   * @param key    The record key
+   * @param fields The searchable fields (null fields are ignored)
+   */
+  public synchronized void put(K key, String... fields) {
+
+    Preconditions.checkNotNull(key, "'key' must be present");
+
+    String content = toContent(fields);
+
+    Integer documentId = documentIds.get(key);
+    if (documentId != null) {
+      if (content.equals(contents.get(documentId))) {
+        // Nothing to do
+        return;
+      }
+      removeDocument(documentId);
+    }
+
+    addDocument(key, content);
+
+    compactIfRequired();
+  }
+
+  /**
+   * @param key The record key to remove (ignored if not present)
+   */
+  public synchronized void remove(K key) {
+
+    Integer documentId = documentIds.remove(key);
+    if (documentId != null) {
+      removeDocument(documentId);
+      compactIfRequired();
+    }
+  }
+
+  /**
+   * <p>Remove all records</p>
+   */
+  public synchronized void clear() {
+
+    keys.clear();
+    contents.clear();
+    documentIds.clear();
+    postingsMap.clear();
+    removedCount = 0;
+  }
+
+  /**
+   * @return The number of records in the index
+   */
+  public synchronized int size() {
+    return documentIds.size();
+  }
+
+  /**
+   * @param query The text fragment to match (case-insensitive, anywhere in any field)
+   *
+   * @return The keys of the matching records in the order they were indexed
+   */
+  public synchronized List<K> search(String query) {
+
+    Preconditions.checkNotNull(query, "'query' must be present");
+
+    String lowerQuery = query.toLowerCase();
+
+    List<K> matches = Lists.newArrayList();
+
+    Set<String> queryGrams = toGrams(lowerQuery);
+
+    if (queryGrams.isEmpty()) {
+
+      // Too short for the posting lists so scan the prepared content
+      for (int documentId = 0; documentId < contents.size(); documentId++) {
+        String content = contents.get(documentId);
+        if (content != null && content.contains(lowerQuery)) {
+          matches.add(keys.get(documentId));
+        }
+      }
+
+      return matches;
+    }
+
+    // Gather the posting lists for every trigram in the query
+    List<Postings> queryPostings = Lists.newArrayList();
+    for (String gram : queryGrams) {
+      Postings postings = postingsMap.get(gram);
+      if (postings == null) {
+        // No record contains this trigram
+        return matches;
+      }
+      queryPostings.add(postings);
+    }
+
+    // Drive the intersection from the shortest posting list
+    Collections.sort(queryPostings, new Comparator<Postings>() {
+      @Override
+      public int compare(Postings o1, Postings o2) {
+        return Integer.compare(o1.size, o2.size);
+      }
+    });
+
+    Postings shortest = queryPostings.get(0);
+    for (int i = 0; i < shortest.size; i++) {
+
+      int documentId = shortest.documentIds[i];
+      String content = contents.get(documentId);
+      if (content == null) {
+        // Removed
+        continue;
+      }
+
+      boolean candidate = true;
+      for (int j = 1; j < queryPostings.size() && candidate; j++) {
+        candidate = queryPostings.get(j).contains(documentId);
+      }
+
+      // Confirm the candidate since trigrams may appear in a different order
+      if (candidate && content.contains(lowerQuery)) {
+        matches.add(keys.get(documentId));
+      }
+    }
+
+    return matches;
+  }
+
+  private void addDocument(K key, String content) {
+
+    int documentId = keys.size();
+
+    keys.add(key);
+    contents.add(content);
+    documentIds.put(key, documentId);
+
+    for (String gram : toGrams(content)) {
+      Postings postings = postingsMap.get(gram);
+      if (postings == null) {
+        postings = new Postings();
+        postingsMap.put(gram, postings);
+      }
+      postings.add(documentId);
+    }
+  }
+
+  /**
+   * <p>Tombstone the document - the posting lists are cleaned up during compaction</p>
+   */
+  private void removeDocument(int documentId) {
+
+    keys.set(documentId, null);
+    contents.set(documentId, null);
+    removedCount++;
+  }
+
+  /**
+   * <p>Rebuild the posting lists once removed documents dominate the index</p>
+   */
+  private void compactIfRequired() {
+
+    if (removedCount < MINIMUM_COMPACTION_SIZE || removedCount < documentIds.size()) {
+      return;
+    }
+
+    List<K> liveKeys = Lists.newArrayListWithCapacity(documentIds.size());
+    List<String> liveContents = Lists.newArrayListWithCapacity(documentIds.size());
+    for (int documentId = 0; documentId < keys.size(); documentId++) {
+      if (keys.get(documentId) != null) {
+        liveKeys.add(keys.get(documentId));
+        liveContents.add(contents.get(documentId));
+      }
+    }
+
+    clear();
+
+    for (int i = 0; i < liveKeys.size(); i++) {
+      addDocument(liveKeys.get(i), liveContents.get(i));
+    }
+  }
+
+  /**
+   * @param fields The fields
+   *
+   * @return The lowercased content with fields separated
+   */
+  private static String toContent(String... fields) {
+
+    StringBuilder content = new StringBuilder();
+    for (String field : fields) {
+      if (field != null && !field.isEmpty()) {
+        if (content.length() > 0) {
+          content.append(FIELD_SEPARATOR);
+        }
+        content.append(field.toLowerCase());
+      }
+    }
+
+    return content.toString();
+  }
+
+  /**
+   * @param text The lowercased text
+   *
+   * @return The distinct trigrams in the text that do not span a field separator
+   */
+  private static Set<String> toGrams(String text) {
+
+    Set<String> grams = Sets.newHashSet();
+    for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+      String gram = text.substring(i, i + GRAM_LENGTH);
+      if (gram.indexOf(FIELD_SEPARATOR) == -1) {
+        grams.add(gram);
+      }
+    }
+
+    return grams;
+  }
+
+  /**
+   * <p>Growable array of ascending document IDs</p>
+   */
+  private static class Postings {
+
+    private int[] documentIds = new int[4];
+
+    private int size = 0;
+
+    private void add(int documentId) {
+
+      if (size == documentIds.length) {
+        documentIds = Arrays.copyOf(documentIds, size * 2);
+      }
+      documentIds[size++] = documentId;
+    }
+
+    private boolean contains(int documentId) {
+      return Arrays.binarySearch(documentIds, 0, size, documentId) >= 0;
+    }
+  }
+}
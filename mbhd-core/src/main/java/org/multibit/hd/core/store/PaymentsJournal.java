@@ -0,0 +1,490 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import org.bitcoinj.core.Address;
+import org.multibit.hd.brit.crypto.AESUtils;
+import org.multibit.hd.core.dto.PaymentRequestData;
+import org.multibit.hd.core.exceptions.PaymentsLoadException;
+import org.multibit.hd.core.utils.Addresses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Append-only journal to provide the following to the WalletService:</p>
+ * <ul>
+ * <li>Persistence of single transaction info and payment request changes without rewriting the payments snapshot</li>
+ * <li>Replay of the changes on top of the snapshot when the payments are loaded</li>
+ * <li>Recovery from a torn final record (e.g. a crash part way through an append)</li>
+ * </ul>
+ * <p>The journal starts with a header identifying the snapshot it applies to:</p>
+ * <pre>
+ * [int magic][32 byte SHA-256 of the snapshot file]
+ * </pre>
+ * <p>Each record is then framed as:</p>
+ * <pre>
+ * [int length][int CRC32 of body][body: 16 byte random IV + AES-CBC(op byte + payload)]
+ * </pre>
+ * <p>The payload of an upsert is a single item <code>Payments</code> protobuf so the journal shares the snapshot format.
+ * The payload of a payment request deletion is its address.</p>
+ * <p>The journal is compacted by writing a full snapshot and then calling {@link #reset()}. The snapshot may hold
+ * changes that were never journalled so a journal left behind by a crash between the two steps must not be replayed.
+ * Its header no longer matches the new snapshot so it is discarded on replay. If the new snapshot is identical to the
+ * old one the files on disk are exactly as they were before the write so replaying the journal gives the last state
+ * that was made durable.</p>
+ *
+ * @since 0.0.5
+ */
+public class PaymentsJournal {
+
+  private static final Logger log = LoggerFactory.getLogger(PaymentsJournal.class);
+
+  private static final byte UPSERT_TRANSACTION_INFO = 1;
+
+  private static final byte UPSERT_PAYMENT_REQUEST = 2;
+
+  private static final byte DELETE_PAYMENT_REQUEST = 3;
+
+  /**
+   * Identifies the journal format ("MBPJ")
+   */
+  private static final int MAGIC = 0x4d42504a;
+
+  /**
+   * The length of the SHA-256 fingerprint of the snapshot
+   */
+  private static final int FINGERPRINT_LENGTH = 32;
+
+  /**
+   * The magic and snapshot fingerprint at the start of the journal
+   */
+  private static final int JOURNAL_HEADER_LENGTH = 4 + FINGERPRINT_LENGTH;
+
+  /**
+   * The length and CRC32 preceding each record body
+   */
+  private static final int HEADER_LENGTH = 8;
+
+  /**
+   * The largest record body accepted on replay (anything larger is treated as corruption)
+   */
+  private static final int MAXIMUM_RECORD_LENGTH = 1024 * 1024;
+
+  private final File journalFile;
+
+  private final File snapshotFile;
+
+  private final PaymentsProtobufSerializer protobufSerializer;
+
+  private final SecureRandom secureRandom = new SecureRandom();
+
+  /**
+   * The number of records in the journal (used to decide when to compact)
+   */
+  private int recordCount = 0;
+
+  /**
+   * True if the journal file starts with a header for the current snapshot
+   */
+  private boolean headerWritten = false;
+
+  /**
+   * @param journalFile        The journal file (need not exist)
+   * @param snapshotFile       The snapshot file the journal applies to (need not exist)
+   * @param protobufSerializer The serializer for the record payloads
+   */
+  public PaymentsJournal(File journalFile, File snapshotFile, PaymentsProtobufSerializer protobufSerializer) {
+
+    Preconditions.checkNotNull(journalFile, "'journalFile' must be present");
+    Preconditions.checkNotNull(snapshotFile, "'snapshotFile' must be present");
+    Preconditions.checkNotNull(protobufSerializer, "'protobufSerializer' must be present");
+
+    this.journalFile = journalFile;
+    this.snapshotFile = snapshotFile;
+    this.protobufSerializer = protobufSerializer;
+
+  }
+
+  /**
+   * <p>Append the records to the journal and force them to disk</p>
+   *
+   * @param records The records to append in order
+   * @param aesKey  The AES key to encrypt each record with
+   *
+   * @throws IOException If the journal cannot be written
+   */
+  public synchronized void append(Collection<Record> records, KeyParameter aesKey) throws IOException {
+
+    Preconditions.checkNotNull(records, "'records' must be present");
+    Preconditions.checkNotNull(aesKey, "'aesKey' must be present");
+
+    if (records.isEmpty()) {
+      return;
+    }
+
+    // Frame all the records first so that they reach the file in a single write
+    ByteArrayOutputStream framedRecords = new ByteArrayOutputStream(256 * records.size());
+    DataOutputStream dataOutputStream = new DataOutputStream(framedRecords);
+
+    if (!headerWritten) {
+      // Any content is left over from a journal that could not be reset and must not be appended to
+      if (journalFile.length() > 0) {
+        truncateForAppend();
+      }
+      dataOutputStream.writeInt(MAGIC);
+      dataOutputStream.write(snapshotFingerprint());
+    }
+
+    for (Record record : records) {
+
+      byte[] initialisationVector = new byte[AESUtils.BLOCK_LENGTH];
+      secureRandom.nextBytes(initialisationVector);
+
+      byte[] encryptedBytes = AESUtils.encrypt(record.toBytes(protobufSerializer), aesKey, initialisationVector);
+
+      byte[] body = new byte[initialisationVector.length + encryptedBytes.length];
+      System.arraycopy(initialisationVector, 0, body, 0, initialisationVector.length);
+      System.arraycopy(encryptedBytes, 0, body, initialisationVector.length, encryptedBytes.length);
+
+      dataOutputStream.writeInt(body.length);
+      dataOutputStream.writeInt(crc(body, 0, body.length));
+      dataOutputStream.write(body);
+    }
+    dataOutputStream.flush();
+
+    try (FileOutputStream outputStream = new FileOutputStream(journalFile, true)) {
+      outputStream.write(framedRecords.toByteArray());
+      outputStream.getFD().sync();
+    }
+
+    headerWritten = true;
+    recordCount += records.size();
+
+    log.trace("Appended {} record(s) to the payments journal, now {}", records.size(), recordCount);
+
+  }
+
+  /**
+   * <p>Apply the journal on top of the payments already loaded from the snapshot</p>
+   * <p>A journal written against a different snapshot is discarded. A torn or corrupt record ends the replay and
+   * the journal is truncated to the last good record.</p>
+   *
+   * @param transactionInfoMap The transaction infos keyed by hash
+   * @param paymentRequestMap  The payment requests keyed by address
+   * @param aesKey             The AES key the records were encrypted with
+   *
+   * @return The number of records applied
+   *
+   * @throws PaymentsLoadException If the journal cannot be read or a complete record cannot be decrypted
+   */
+  public synchronized int replay(
+    Map<String, TransactionInfo> transactionInfoMap,
+    Map<Address, PaymentRequestData> paymentRequestMap,
+    KeyParameter aesKey
+  ) throws PaymentsLoadException {
+
+    Preconditions.checkNotNull(transactionInfoMap, "'transactionInfoMap' must be present");
+    Preconditions.checkNotNull(paymentRequestMap, "'paymentRequestMap' must be present");
+    Preconditions.checkNotNull(aesKey, "'aesKey' must be present");
+
+    recordCount = 0;
+    headerWritten = false;
+
+    if (!journalFile.exists()) {
+      return 0;
+    }
+
+    byte[] journalBytes;
+    byte[] snapshotFingerprint;
+    try {
+      journalBytes = Files.readAllBytes(journalFile.toPath());
+      snapshotFingerprint = snapshotFingerprint();
+    } catch (IOException e) {
+      throw new PaymentsLoadException("Could not read payments journal", e);
+    }
+
+    if (journalBytes.length == 0) {
+      return 0;
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(journalBytes);
+    if (journalBytes.length < JOURNAL_HEADER_LENGTH || buffer.getInt() != MAGIC) {
+      log.warn("Payments journal has an unreadable header. Discarding it.");
+      truncate(0);
+      return 0;
+    }
+    byte[] journalFingerprint = new byte[FINGERPRINT_LENGTH];
+    buffer.get(journalFingerprint);
+    if (!Arrays.equals(journalFingerprint, snapshotFingerprint)) {
+      // Left behind by a crash after the snapshot that superseded it was written
+      log.info("Payments journal does not apply to the current payments snapshot. Discarding it.");
+      truncate(0);
+      return 0;
+    }
+    headerWritten = true;
+
+    int position = buffer.position();
+    while (buffer.remaining() >= HEADER_LENGTH) {
+
+      int length = buffer.getInt();
+      int crc = buffer.getInt();
+
+      if (length <= AESUtils.BLOCK_LENGTH || length > MAXIMUM_RECORD_LENGTH || length > buffer.remaining()) {
+        // Torn append or a damaged length
+        break;
+      }
+
+      int bodyOffset = buffer.position();
+      if (crc(journalBytes, bodyOffset, length) != crc) {
+        break;
+      }
+
+      byte[] initialisationVector = Arrays.copyOfRange(journalBytes, bodyOffset, bodyOffset + AESUtils.BLOCK_LENGTH);
+      byte[] encryptedBytes = Arrays.copyOfRange(journalBytes, bodyOffset + AESUtils.BLOCK_LENGTH, bodyOffset + length);
+
+      try {
+        byte[] plainBytes = AESUtils.decrypt(encryptedBytes, aesKey, initialisationVector);
+        apply(plainBytes, transactionInfoMap, paymentRequestMap);
+      } catch (RuntimeException e) {
+        // The record is intact so the key must be wrong - do not truncate
+        throw new PaymentsLoadException("Could not decrypt payments journal record", e);
+      }
+
+      buffer.position(bodyOffset + length);
+      position = buffer.position();
+      recordCount++;
+    }
+
+    if (position < journalBytes.length) {
+      log.warn("Payments journal has {} trailing byte(s) that do not form a complete record. Truncating.", journalBytes.length - position);
+      truncate(position);
+    }
+
+    log.debug("Replayed {} payments journal record(s)", recordCount);
+
+    return recordCount;
+  }
+
+  /**
+   * <p>Discard the journal once its contents are held in a snapshot</p>
+   * <p>The next append starts a journal against the snapshot as it is then.</p>
+   */
+  public synchronized void reset() {
+
+    if (journalFile.exists() && !journalFile.delete()) {
+      // Fall back to truncation so the stale records are not replayed twice on top of a newer snapshot
+      try {
+        truncate(0);
+      } catch (PaymentsLoadException e) {
+        log.error("Could not reset payments journal '{}'", journalFile.getAbsolutePath(), e);
+      }
+    }
+
+    headerWritten = false;
+    recordCount = 0;
+
+  }
+
+  /**
+   * @return The number of records in the journal since the last snapshot
+   */
+  public synchronized int getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * @return The journal file
+   */
+  public File getJournalFile() {
+    return journalFile;
+  }
+
+  private void apply(byte[] plainBytes, Map<String, TransactionInfo> transactionInfoMap, Map<Address, PaymentRequestData> paymentRequestMap) throws PaymentsLoadException {
+
+    if (plainBytes.length == 0) {
+      throw new PaymentsLoadException("Empty payments journal record");
+    }
+
+    byte op = plainBytes[0];
+    byte[] payload = Arrays.copyOfRange(plainBytes, 1, plainBytes.length);
+
+    switch (op) {
+      case UPSERT_TRANSACTION_INFO:
+        for (TransactionInfo transactionInfo : protobufSerializer.readPayments(new ByteArrayInputStream(payload)).getTransactionInfos()) {
+          transactionInfoMap.put(transactionInfo.getHash(), transactionInfo);
+        }
+        break;
+      case UPSERT_PAYMENT_REQUEST:
+        for (PaymentRequestData paymentRequestData : protobufSerializer.readPayments(new ByteArrayInputStream(payload)).getPaymentRequestDatas()) {
+          if (paymentRequestData.getAddress() != null) {
+            paymentRequestMap.put(paymentRequestData.getAddress(), paymentRequestData);
+          }
+        }
+        break;
+      case DELETE_PAYMENT_REQUEST:
+        Optional<Address> address = Addresses.parse(new String(payload, Charsets.UTF_8));
+        if (address.isPresent()) {
+          paymentRequestMap.remove(address.get());
+        }
+        break;
+      default:
+        throw new PaymentsLoadException("Unknown payments journal operation: " + op);
+    }
+
+  }
+
+  /**
+   * @return The SHA-256 of the snapshot file (of no bytes if there is no snapshot)
+   *
+   * @throws IOException If the snapshot cannot be read
+   */
+  private byte[] snapshotFingerprint() throws IOException {
+
+    byte[] snapshotBytes = snapshotFile.exists() ? Files.readAllBytes(snapshotFile.toPath()) : new byte[0];
+
+    return Hashing.sha256().hashBytes(snapshotBytes).asBytes();
+  }
+
+  private void truncateForAppend() throws IOException {
+
+    try {
+      truncate(0);
+    } catch (PaymentsLoadException e) {
+      throw new IOException("Could not discard stale payments journal", e);
+    }
+
+  }
+
+  private void truncate(int length) throws PaymentsLoadException {
+
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw")) {
+      randomAccessFile.setLength(length);
+      randomAccessFile.getFD().sync();
+    } catch (IOException e) {
+      throw new PaymentsLoadException("Could not truncate payments journal", e);
+    }
+
+  }
+
+  private static int crc(byte[] bytes, int offset, int length) {
+
+    CRC32 crc32 = new CRC32();
+    crc32.update(bytes, offset, length);
+
+    return (int) crc32.getValue();
+  }
+
+  /**
+   * <p>A single change to the payments</p>
+   * <p>The item is serialized when the record is appended so that in-place edits made before then are included.</p>
+   */
+  public static class Record {
+
+    private final byte op;
+
+    private final TransactionInfo transactionInfo;
+
+    private final PaymentRequestData paymentRequestData;
+
+    private Record(byte op, TransactionInfo transactionInfo, PaymentRequestData paymentRequestData) {
+      this.op = op;
+      this.transactionInfo = transactionInfo;
+      this.paymentRequestData = paymentRequestData;
+    }
+
+    /**
+     * @param transactionInfo The transaction info that was added or changed
+     *
+     * @return The record
+     */
+    public static Record upsert(TransactionInfo transactionInfo) {
+
+      Preconditions.checkNotNull(transactionInfo, "'transactionInfo' must be present");
+      Preconditions.checkNotNull(transactionInfo.getHash(), "'hash' must be present");
+
+      return new Record(UPSERT_TRANSACTION_INFO, transactionInfo, null);
+    }
+
+    /**
+     * @param paymentRequestData The payment request that was added or changed
+     *
+     * @return The record
+     */
+    public static Record upsert(PaymentRequestData paymentRequestData) {
+
+      Preconditions.checkNotNull(paymentRequestData, "'paymentRequestData' must be present");
+      Preconditions.checkNotNull(paymentRequestData.getAddress(), "'address' must be present");
+
+      return new Record(UPSERT_PAYMENT_REQUEST, null, paymentRequestData);
+    }
+
+    /**
+     * @param paymentRequestData The payment request that was deleted
+     *
+     * @return The record
+     */
+    public static Record delete(PaymentRequestData paymentRequestData) {
+
+      Preconditions.checkNotNull(paymentRequestData, "'paymentRequestData' must be present");
+      Preconditions.checkNotNull(paymentRequestData.getAddress(), "'address' must be present");
+
+      return new Record(DELETE_PAYMENT_REQUEST, null, paymentRequestData);
+    }
+
+    /**
+     * @return The key identifying the item so that later records for the same item can supersede earlier ones
+     */
+    public String getKey() {
+
+      if (transactionInfo != null) {
+        return "transaction:" + transactionInfo.getHash();
+      }
+
+      return "request:" + paymentRequestData.getAddress().toString();
+    }
+
+    private byte[] toBytes(PaymentsProtobufSerializer protobufSerializer) throws IOException {
+
+      ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(256);
+      byteArrayOutputStream.write(op);
+
+      switch (op) {
+        case UPSERT_TRANSACTION_INFO: {
+          Payments payments = new Payments();
+          payments.setTransactionInfos(Lists.newArrayList(transactionInfo));
+          protobufSerializer.writePayments(payments, byteArrayOutputStream);
+          break;
+        }
+        case UPSERT_PAYMENT_REQUEST: {
+          Payments payments = new Payments();
+          payments.setPaymentRequestDatas(Lists.newArrayList(paymentRequestData));
+          protobufSerializer.writePayments(payments, byteArrayOutputStream);
+          break;
+        }
+        default:
+          byteArrayOutputStream.write(paymentRequestData.getAddress().toString().getBytes(Charsets.UTF_8));
+      }
+
+      return byteArrayOutputStream.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.multibit.hd.core.concurrent.ExecutorPool;
+import org.multibit.hd.core.concurrent.ExecutorRegistry;
+import org.multibit.hd.core.config.Configurations;
+import org.multibit.hd.core.config.WalletConfiguration;
+import org.multibit.hd.core.exceptions.ExceptionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Scheduler to provide the following to the payments, contacts and history stores:</p>
+ * <ul>
+ * <li>Write-behind of a complete store after a short window so that a burst of edits causes a single rewrite</li>
+ * <li>Synchronous flush of pending writes on shutdown and wallet switch</li>
+ * <li>Metrics for writes requested, coalesced and performed</li>
+ * </ul>
+ * <p>Each store is identified by a key (normally the backing store file path). A write requested while another
+ * write for the same store is pending replaces it and is counted as coalesced.</p>
+ * <p>The window is timed by the shared scheduler and the write itself runs on the background pool.</p>
+ *
+ * @since 0.0.5
+ */
+public class PersistenceScheduler {
+
+  private static final Logger log = LoggerFactory.getLogger(PersistenceScheduler.class);
+
+  /**
+   * The pending writers, indexed by store key (guarded by itself)
+   */
+  private final Map<String, Runnable> pendingWrites = Maps.newLinkedHashMap();
+
+  /**
+   * Ensures that only one store write runs at a time
+   */
+  private final Object writeLock = new Object();
+
+  private final AtomicLong writesRequested = new AtomicLong();
+
+  private final AtomicLong writesCoalesced = new AtomicLong();
+
+  private final AtomicLong writesPerformed = new AtomicLong();
+
+  /**
+   * The window override (negative to use the configuration)
+   */
+  private volatile long writeWindowMillis = -1;
+
+  /**
+   * <p>Request a write of the store after the write window (coalesced with any pending write for the same store)</p>
+   *
+   * @param storeKey The key identifying the store (e.g. the backing store file path)
+   * @param writer   The writer that serialises the complete store
+   */
+  public void requestWrite(final String storeKey, Runnable writer) {
+
+    Preconditions.checkNotNull(storeKey, "'storeKey' must be present");
+    Preconditions.checkNotNull(writer, "'writer' must be present");
+
+    writesRequested.incrementAndGet();
+
+    synchronized (pendingWrites) {
+      if (pendingWrites.put(storeKey, writer) != null) {
+        // The pending write will pick up this change
+        writesCoalesced.incrementAndGet();
+        return;
+      }
+    }
+
+    final Runnable delayedWrite = new Runnable() {
+      @Override
+      public void run() {
+        flush(storeKey);
+      }
+    };
+
+    ExecutorRegistry.getOrCreateScheduler().schedule(
+      new Runnable() {
+        @Override
+        public void run() {
+          ExecutorRegistry.getOrCreateExecutor(ExecutorPool.BACKGROUND).submit(delayedWrite);
+        }
+      }, getWriteWindowMillis(), TimeUnit.MILLISECONDS);
+
+  }
+
+  /**
+   * <p>Perform any pending write for the store immediately on the calling thread</p>
+   *
+   * @param storeKey The key identifying the store
+   */
+  public void flush(String storeKey) {
+
+    Runnable writer;
+    synchronized (pendingWrites) {
+      writer = pendingWrites.remove(storeKey);
+    }
+
+    if (writer != null) {
+      write(storeKey, writer);
+    }
+
+  }
+
+  /**
+   * <p>Perform all pending writes immediately on the calling thread (shutdown and wallet switch)</p>
+   */
+  public void flush() {
+
+    List<Map.Entry<String, Runnable>> writes;
+    synchronized (pendingWrites) {
+      writes = Lists.newArrayList(pendingWrites.entrySet());
+      pendingWrites.clear();
+    }
+
+    if (!writes.isEmpty()) {
+      log.debug("Flushing {} pending store write(s)", writes.size());
+    }
+
+    for (Map.Entry<String, Runnable> write : writes) {
+      write(write.getKey(), write.getValue());
+    }
+
+    log.debug("Store writes requested: {}, coalesced: {}, performed: {}", getWritesRequested(), getWritesCoalesced(), getWritesPerformed());
+
+  }
+
+  /**
+   * @param storeKey The key identifying the store
+   *
+   * @return True if a write is pending for the store
+   */
+  public boolean isWritePending(String storeKey) {
+
+    synchronized (pendingWrites) {
+      return pendingWrites.containsKey(storeKey);
+    }
+
+  }
+
+  /**
+   * @return The number of writes requested since start up
+   */
+  public long getWritesRequested() {
+    return writesRequested.get();
+  }
+
+  /**
+   * @return The number of requested writes that were absorbed by an already pending write
+   */
+  public long getWritesCoalesced() {
+    return writesCoalesced.get();
+  }
+
+  /**
+   * @return The number of store writes actually performed
+   */
+  public long getWritesPerformed() {
+    return writesPerformed.get();
+  }
+
+  /**
+   * @return The write window in milliseconds
+   */
+  public long getWriteWindowMillis() {
+
+    if (writeWindowMillis >= 0) {
+      return writeWindowMillis;
+    }
+
+    if (Configurations.currentConfiguration != null) {
+      return Configurations.currentConfiguration.getWallet().getPersistenceWriteWindowMillis();
+    }
+
+    return WalletConfiguration.DEFAULT_PERSISTENCE_WRITE_WINDOW_MILLIS;
+  }
+
+  /**
+   * <p>Reduced visibility for testing</p>
+   *
+   * @param writeWindowMillis The write window in milliseconds overriding the configuration (negative to use the configuration)
+   */
+  void setWriteWindowMillis(long writeWindowMillis) {
+    this.writeWindowMillis = writeWindowMillis;
+  }
+
+  private void write(String storeKey, Runnable writer) {
+
+    synchronized (writeLock) {
+      try {
+        writer.run();
+        writesPerformed.incrementAndGet();
+      } catch (RuntimeException e) {
+        log.error("Failed to write store '{}'", storeKey, e);
+        ExceptionHandler.handleThrowable(e);
+      }
+    }
+
+  }
+
+}
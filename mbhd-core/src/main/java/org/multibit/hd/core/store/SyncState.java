@@ -0,0 +1,163 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.io.Files;
+import org.multibit.hd.core.files.SecureFiles;
+import org.multibit.hd.core.managers.InstallationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <p>Value object to provide the following to the wallet sync decision:</p>
+ * <ul>
+ * <li>The chain head of the block store without opening it</li>
+ * <li>Persistence as a small text file alongside the block store</li>
+ * </ul>
+ *
+ * <p>A record is only known to match the block store if it was written as the store closed. While the store is
+ * open the record may lag behind it so anything else must be confirmed against the store itself.</p>
+ *
+ * @since 0.0.5
+ */
+public class SyncState {
+
+  private static final Logger log = LoggerFactory.getLogger(SyncState.class);
+
+  /**
+   * The format version written at the start of the record
+   */
+  public static final String VERSION = "1";
+
+  private static final char SEPARATOR = ' ';
+
+  private final int chainHeadHeight;
+  private final String chainHeadHash;
+  private final long chainHeadTimeSeconds;
+  private final boolean closed;
+
+  /**
+   * @param chainHeadHeight      The height of the chain head
+   * @param chainHeadHash        The hash of the chain head
+   * @param chainHeadTimeSeconds The time of the chain head block in seconds since the epoch
+   * @param closed               True if the block store has been closed at this chain head
+   */
+  public SyncState(int chainHeadHeight, String chainHeadHash, long chainHeadTimeSeconds, boolean closed) {
+
+    Preconditions.checkNotNull(chainHeadHash, "'chainHeadHash' must be present");
+
+    this.chainHeadHeight = chainHeadHeight;
+    this.chainHeadHash = chainHeadHash;
+    this.chainHeadTimeSeconds = chainHeadTimeSeconds;
+    this.closed = closed;
+  }
+
+  /**
+   * @param blockStoreFile The block store file
+   *
+   * @return The sync state file for the block store (in the same directory)
+   */
+  public static File getSyncStateFile(File blockStoreFile) {
+    return new File(blockStoreFile.getParentFile(), InstallationManager.MBHD_PREFIX + InstallationManager.SYNC_STATE_SUFFIX);
+  }
+
+  /**
+   * @param syncStateFile The sync state file
+   *
+   * @return The sync state if the file is present and readable
+   */
+  public static Optional<SyncState> read(File syncStateFile) {
+
+    if (!syncStateFile.exists()) {
+      return Optional.absent();
+    }
+
+    try {
+      String record = Files.toString(syncStateFile, Charsets.UTF_8).trim();
+
+      List<String> tokens = Splitter.on(SEPARATOR).splitToList(record);
+      if (tokens.size() != 5 || !VERSION.equals(tokens.get(0))) {
+        log.warn("Unknown sync state format '{}'", record);
+        return Optional.absent();
+      }
+
+      return Optional.of(
+        new SyncState(
+          Integer.parseInt(tokens.get(1)),
+          tokens.get(2),
+          Long.parseLong(tokens.get(3)),
+          "1".equals(tokens.get(4))
+        ));
+
+    } catch (IOException | NumberFormatException e) {
+      log.warn("Could not read sync state", e);
+      return Optional.absent();
+    }
+
+  }
+
+  /**
+   * <p>Replace the sync state file with this record</p>
+   *
+   * @param syncStateFile The sync state file
+   *
+   * @throws IOException If the file could not be written
+   */
+  public void write(File syncStateFile) throws IOException {
+
+    String record = VERSION + SEPARATOR
+      + chainHeadHeight + SEPARATOR
+      + chainHeadHash + SEPARATOR
+      + chainHeadTimeSeconds + SEPARATOR
+      + (closed ? '1' : '0');
+
+    File tempFile = new File(syncStateFile.getParentFile(), syncStateFile.getName() + ".tmp");
+    SecureFiles.writeFile(new ByteArrayInputStream(record.getBytes(Charsets.UTF_8)), tempFile, syncStateFile);
+
+  }
+
+  /**
+   * @return The height of the chain head
+   */
+  public int getChainHeadHeight() {
+    return chainHeadHeight;
+  }
+
+  /**
+   * @return The hash of the chain head
+   */
+  public String getChainHeadHash() {
+    return chainHeadHash;
+  }
+
+  /**
+   * @return The time of the chain head block in seconds since the epoch
+   */
+  public long getChainHeadTimeSeconds() {
+    return chainHeadTimeSeconds;
+  }
+
+  /**
+   * @return True if the block store was closed at this chain head (so the record matches the store)
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public String toString() {
+    return "SyncState{" +
+      "chainHeadHeight=" + chainHeadHeight +
+      ", chainHeadHash='" + chainHeadHash + '\'' +
+      ", chainHeadTimeSeconds=" + chainHeadTimeSeconds +
+      ", closed=" + closed +
+      '}';
+  }
+}
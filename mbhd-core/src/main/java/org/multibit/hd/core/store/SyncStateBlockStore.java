@@ -0,0 +1,135 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Preconditions;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <p>Block store to provide the following to BitcoinNetworkService:</p>
+ * <ul>
+ * <li>A sync state record kept up to date with the chain head of the underlying block store</li>
+ * </ul>
+ *
+ * <p>The record is written on each chain head update (at most once per second during a download) and
+ * marked as closed when the store is closed. If the record cannot be written it is deleted so that a
+ * stale record is never mistaken for the current one.</p>
+ *
+ * @since 0.0.5
+ */
+public class SyncStateBlockStore implements BlockStore {
+
+  private static final Logger log = LoggerFactory.getLogger(SyncStateBlockStore.class);
+
+  /**
+   * The shortest interval between writes of an open record
+   */
+  private static final long WRITE_INTERVAL_MILLIS = 1_000;
+
+  private final BlockStore blockStore;
+
+  private final File syncStateFile;
+
+  /**
+   * The time of the last write (guarded by this)
+   */
+  private long lastWriteMillis = 0;
+
+  /**
+   * @param blockStore    The underlying block store
+   * @param syncStateFile The file to hold the sync state record
+   */
+  public SyncStateBlockStore(BlockStore blockStore, File syncStateFile) {
+
+    Preconditions.checkNotNull(blockStore, "'blockStore' must be present");
+    Preconditions.checkNotNull(syncStateFile, "'syncStateFile' must be present");
+
+    this.blockStore = blockStore;
+    this.syncStateFile = syncStateFile;
+  }
+
+  @Override
+  public void put(StoredBlock block) throws BlockStoreException {
+    blockStore.put(block);
+  }
+
+  @Override
+  public StoredBlock get(Sha256Hash hash) throws BlockStoreException {
+    return blockStore.get(hash);
+  }
+
+  @Override
+  public StoredBlock getChainHead() throws BlockStoreException {
+    return blockStore.getChainHead();
+  }
+
+  @Override
+  public void setChainHead(StoredBlock chainHead) throws BlockStoreException {
+
+    blockStore.setChainHead(chainHead);
+
+    synchronized (this) {
+      long nowMillis = System.currentTimeMillis();
+      // Always write the first update so the record is never left marked as closed while the store changes
+      if (lastWriteMillis == 0 || nowMillis - lastWriteMillis >= WRITE_INTERVAL_MILLIS) {
+        writeSyncState(chainHead, false);
+        lastWriteMillis = nowMillis;
+      }
+    }
+
+  }
+
+  @Override
+  public void close() throws BlockStoreException {
+
+    synchronized (this) {
+      StoredBlock chainHead = blockStore.getChainHead();
+      if (chainHead != null) {
+        writeSyncState(chainHead, true);
+      }
+    }
+
+    blockStore.close();
+
+  }
+
+  @Override
+  public NetworkParameters getParams() {
+    return blockStore.getParams();
+  }
+
+  private void writeSyncState(StoredBlock chainHead, boolean closed) {
+
+    SyncState syncState = new SyncState(
+      chainHead.getHeight(),
+      chainHead.getHeader().getHashAsString(),
+      chainHead.getHeader().getTimeSeconds(),
+      closed
+    );
+
+    try {
+      syncState.write(syncStateFile);
+      log.trace("Wrote {}", syncState);
+    } catch (IOException e) {
+      log.warn("Could not write sync state. Removing it.", e);
+      if (syncStateFile.exists() && !syncStateFile.delete()) {
+        log.error("Could not remove sync state file '{}'", syncStateFile.getAbsolutePath());
+      }
+    }
+
+  }
+
+  @Override
+  public String toString() {
+    return "SyncStateBlockStore{" +
+      "blockStore=" + blockStore +
+      '}';
+  }
+}
@@ -9,7 +9,8 @@ import org.joda.time.ReadableInstant;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
-import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.concurrent.ExecutorPool;
+import org.multibit.hd.core.concurrent.ExecutorRegistry;
 import org.multibit.hd.core.sntp.NtpMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,7 +39,7 @@ public class Dates {
   /**
    * Provides asynchronous NTP lookup
    */
-  private static final ListeningExecutorService systemTimeDriftExecutorService = SafeExecutors.newSingleThreadExecutor("system-time-drift");
+  private static final ListeningExecutorService systemTimeDriftExecutorService = ExecutorRegistry.getOrCreateExecutor(ExecutorPool.BACKGROUND);
 
   /**
    * Utilities have private constructor
@@ -0,0 +1,135 @@
+package org.multibit.hd.core.utils;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.googlecode.jcsv.CSVStrategy;
+import com.googlecode.jcsv.reader.CSVReader;
+import com.googlecode.jcsv.reader.internal.CSVReaderBuilder;
+import com.googlecode.jcsv.reader.internal.DefaultCSVEntryParser;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.AddressFormatException;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.multibit.hd.core.dto.Contact;
+import org.multibit.hd.core.dto.Recipient;
+import org.multibit.hd.core.dto.RecipientPayment;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Utility to provide the following to batched sends:</p>
+ * <ul>
+ * <li>Import of a payout batch from CSV</li>
+ * </ul>
+ *
+ * <p>Each row is <code>address,amount[,note]</code> with the amount in BTC (e.g. "0.015"). An optional header
+ * row starting with "address" is ignored. Recipients are linked to any contact with the same address.</p>
+ *
+ * @since 0.0.5
+ */
+public class PayoutBatches {
+
+  /**
+   * The largest batch accepted (keeps the transaction well inside the standard size limit)
+   */
+  public static final int MAXIMUM_BATCH_SIZE = 1_000;
+
+  private static final String HEADER_MARKER = "address";
+
+  /**
+   * Utilities have a private constructor
+   */
+  private PayoutBatches() {
+  }
+
+  /**
+   * @param reader            The CSV source (not closed)
+   * @param networkParameters The network parameters for the addresses
+   * @param contacts          The contacts to link to the recipients
+   *
+   * @return The recipient payments in file order
+   *
+   * @throws IOException              If the CSV cannot be read
+   * @throws IllegalArgumentException If a row is not a valid payment (the message identifies the row)
+   */
+  public static List<RecipientPayment> parse(Reader reader, NetworkParameters networkParameters, Collection<Contact> contacts) throws IOException {
+
+    Preconditions.checkNotNull(reader, "'reader' must be present");
+    Preconditions.checkNotNull(networkParameters, "'networkParameters' must be present");
+    Preconditions.checkNotNull(contacts, "'contacts' must be present");
+
+    // Index the contacts once rather than searching them for every row
+    Map<Address, Contact> contactsByAddress = Maps.newHashMap();
+    for (Contact contact : contacts) {
+      if (contact.getBitcoinAddress().isPresent()) {
+        contactsByAddress.put(contact.getBitcoinAddress().get(), contact);
+      }
+    }
+
+    CSVReader<String[]> csvReader = new CSVReaderBuilder<String[]>(reader)
+      .strategy(CSVStrategy.UK_DEFAULT)
+      .entryParser(new DefaultCSVEntryParser())
+      .build();
+
+    List<RecipientPayment> recipientPayments = Lists.newArrayList();
+
+    int row = 0;
+    for (String[] fields : csvReader.readAll()) {
+      row++;
+
+      if (fields.length == 0 || (fields.length == 1 && Strings.isNullOrEmpty(fields[0].trim()))) {
+        continue;
+      }
+
+      if (row == 1 && HEADER_MARKER.equalsIgnoreCase(fields[0].trim())) {
+        continue;
+      }
+
+      if (fields.length < 2) {
+        throw new IllegalArgumentException("Row " + row + ": expected 'address,amount[,note]'");
+      }
+
+      Address address;
+      try {
+        address = new Address(networkParameters, fields[0].trim());
+      } catch (AddressFormatException e) {
+        throw new IllegalArgumentException("Row " + row + ": invalid address '" + fields[0].trim() + "'", e);
+      }
+
+      Coin amount;
+      try {
+        amount = Coin.parseCoin(fields[1].trim());
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Row " + row + ": invalid amount '" + fields[1].trim() + "'", e);
+      }
+      if (amount.compareTo(Transaction.MIN_NONDUST_OUTPUT) < 0) {
+        throw new IllegalArgumentException("Row " + row + ": amount " + amount.toPlainString() + " is below the dust level");
+      }
+
+      Optional<String> note = Optional.absent();
+      if (fields.length > 2 && !Strings.isNullOrEmpty(fields[2].trim())) {
+        note = Optional.of(fields[2].trim());
+      }
+
+      Recipient recipient = new Recipient(address);
+      recipient.setContact(contactsByAddress.get(address));
+
+      recipientPayments.add(new RecipientPayment(recipient, amount, note));
+
+      if (recipientPayments.size() > MAXIMUM_BATCH_SIZE) {
+        throw new IllegalArgumentException("Row " + row + ": a batch is limited to " + MAXIMUM_BATCH_SIZE + " recipients");
+      }
+    }
+
+    return recipientPayments;
+  }
+
+}
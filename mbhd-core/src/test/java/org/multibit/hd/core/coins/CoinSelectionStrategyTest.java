@@ -0,0 +1,166 @@
+package org.multibit.hd.core.coins;
+
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.wallet.CoinSelection;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CoinSelectionStrategyTest {
+
+  private static final NetworkParameters MAINNET = MainNetParams.get();
+
+  private static final Coin FEE_PER_KB = Coin.valueOf(10_000);
+
+  private int lockTime = 0;
+
+  private UtxoIndex utxoIndex;
+
+  @Before
+  public void setUp() throws Exception {
+
+    utxoIndex = new UtxoIndex();
+
+  }
+
+  @Test
+  public void testLargestFirst() throws Exception {
+
+    TransactionOutput five = newConfirmedOutput(Coin.MILLICOIN.multiply(5));
+    TransactionOutput three = newConfirmedOutput(Coin.MILLICOIN.multiply(3));
+    TransactionOutput one = newConfirmedOutput(Coin.MILLICOIN);
+
+    CoinSelection selection = select(CoinSelectionStrategy.LARGEST_FIRST, Coin.MILLICOIN.multiply(6), one, five, three);
+
+    assertThat(selection.gathered).containsOnly(five, three);
+    assertThat(selection.valueGathered).isEqualTo(Coin.MILLICOIN.multiply(8));
+
+  }
+
+  @Test
+  public void testUnconfirmedOutputsFromOthersAreNotSelected() throws Exception {
+
+    TransactionOutput confirmed = newConfirmedOutput(Coin.MILLICOIN);
+    TransactionOutput unconfirmed = newOutput(Coin.MILLICOIN.multiply(5));
+    unconfirmed.getParentTransaction().getConfidence().setConfidenceType(TransactionConfidence.ConfidenceType.PENDING);
+    unconfirmed.getParentTransaction().getConfidence().setSource(TransactionConfidence.Source.NETWORK);
+
+    CoinSelection selection = select(CoinSelectionStrategy.LARGEST_FIRST, Coin.MILLICOIN, confirmed, unconfirmed);
+
+    assertThat(selection.gathered).containsOnly(confirmed);
+
+  }
+
+  @Test
+  public void testBranchAndBoundFindsExactMatch() throws Exception {
+
+    TransactionOutput five = newConfirmedOutput(Coin.MILLICOIN.multiply(5));
+    TransactionOutput three = newConfirmedOutput(Coin.MILLICOIN.multiply(3));
+    TransactionOutput two = newConfirmedOutput(Coin.MILLICOIN.multiply(2));
+    TransactionOutput one = newConfirmedOutput(Coin.MILLICOIN);
+
+    // Largest first would spend the 5 and need change
+    CoinSelection selection = select(CoinSelectionStrategy.BRANCH_AND_BOUND, Coin.MILLICOIN.multiply(4), five, three, two, one);
+
+    assertThat(selection.valueGathered).isEqualTo(Coin.MILLICOIN.multiply(4));
+    assertThat(selection.gathered).containsOnly(three, one);
+
+  }
+
+  @Test
+  public void testBranchAndBoundAcceptsExcessBelowDust() throws Exception {
+
+    TransactionOutput large = newConfirmedOutput(Coin.MILLICOIN.multiply(5));
+    TransactionOutput nearMatch = newConfirmedOutput(Coin.MILLICOIN.add(Coin.valueOf(100)));
+
+    CoinSelection selection = select(CoinSelectionStrategy.BRANCH_AND_BOUND, Coin.MILLICOIN, large, nearMatch);
+
+    assertThat(selection.gathered).containsOnly(nearMatch);
+
+  }
+
+  @Test
+  public void testBranchAndBoundFallsBackToLargestFirst() throws Exception {
+
+    TransactionOutput five = newConfirmedOutput(Coin.MILLICOIN.multiply(5));
+    TransactionOutput three = newConfirmedOutput(Coin.MILLICOIN.multiply(3));
+
+    CoinSelection selection = select(CoinSelectionStrategy.BRANCH_AND_BOUND, Coin.MILLICOIN.multiply(4), five, three);
+
+    assertThat(selection.gathered).containsOnly(five);
+
+  }
+
+  @Test
+  public void testConsolidateSweepsWorthwhileSmallOutputs() throws Exception {
+
+    TransactionOutput five = newConfirmedOutput(Coin.MILLICOIN.multiply(5));
+    TransactionOutput small1 = newConfirmedOutput(Coin.valueOf(20_000));
+    TransactionOutput small2 = newConfirmedOutput(Coin.valueOf(30_000));
+    // Worth less than the fee to spend it at 10,000 satoshis per kB
+    TransactionOutput uneconomic = newConfirmedOutput(Coin.valueOf(1_000));
+    // Spendable change that has not yet confirmed
+    TransactionOutput unconfirmed = newOutput(Coin.valueOf(40_000));
+    unconfirmed.getParentTransaction().getConfidence().setConfidenceType(TransactionConfidence.ConfidenceType.PENDING);
+    unconfirmed.getParentTransaction().getConfidence().setSource(TransactionConfidence.Source.SELF);
+    unconfirmed.getParentTransaction().getConfidence().markBroadcastBy(new PeerAddress(InetAddress.getLoopbackAddress(), 8333));
+    unconfirmed.getParentTransaction().getConfidence().markBroadcastBy(new PeerAddress(InetAddress.getLoopbackAddress(), 8334));
+
+    CoinSelection selection = select(CoinSelectionStrategy.CONSOLIDATE, Coin.MILLICOIN.multiply(4), five, small1, small2, uneconomic, unconfirmed);
+
+    assertThat(selection.gathered).containsOnly(five, small1, small2);
+
+  }
+
+  @Test
+  public void testEmptyWalletSelectsEverythingSelectable() throws Exception {
+
+    TransactionOutput five = newConfirmedOutput(Coin.MILLICOIN.multiply(5));
+    TransactionOutput three = newConfirmedOutput(Coin.MILLICOIN.multiply(3));
+    TransactionOutput one = newConfirmedOutput(Coin.MILLICOIN);
+
+    for (CoinSelectionStrategy strategy : CoinSelectionStrategy.values()) {
+      CoinSelection selection = select(strategy, NetworkParameters.MAX_MONEY, five, three, one);
+      assertThat(selection.valueGathered).as(strategy.name()).isEqualTo(Coin.MILLICOIN.multiply(9));
+    }
+
+  }
+
+  private CoinSelection select(CoinSelectionStrategy strategy, Coin target, TransactionOutput... outputs) {
+
+    List<TransactionOutput> candidates = Lists.newArrayList(outputs);
+
+    return utxoIndex.newCoinSelector(strategy, FEE_PER_KB).select(target, candidates);
+  }
+
+  private TransactionOutput newConfirmedOutput(Coin value) {
+
+    TransactionOutput output = newOutput(value);
+    output.getParentTransaction().getConfidence().setAppearedAtChainHeight(100);
+    output.getParentTransaction().getConfidence().setDepthInBlocks(6);
+
+    return output;
+  }
+
+  private TransactionOutput newOutput(Coin value) {
+
+    Transaction tx = new Transaction(MAINNET);
+    // Give each transaction a distinct hash
+    tx.setLockTime(lockTime++);
+
+    return tx.addOutput(value, new ECKey().toAddress(MAINNET));
+  }
+
+}
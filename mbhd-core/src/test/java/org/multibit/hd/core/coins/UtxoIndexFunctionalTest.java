@@ -0,0 +1,112 @@
+package org.multibit.hd.core.coins;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.wallet.CoinSelection;
+import org.bitcoinj.wallet.CoinSelector;
+import org.bitcoinj.wallet.DefaultCoinSelector;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * <p>Benchmark of coin selection over a wallet with 100,000 unspent outputs:</p>
+ * <ul>
+ * <li>The Bitcoinj default selector (sorts every candidate on each call)</li>
+ * <li>Each strategy selecting from the UTXO index</li>
+ * </ul>
+ *
+ * <p>Each amount edit in the send wizard results in a selection so the index must answer in well under a millisecond.</p>
+ */
+public class UtxoIndexFunctionalTest {
+
+  private static final Logger log = LoggerFactory.getLogger(UtxoIndexFunctionalTest.class);
+
+  private static final NetworkParameters MAINNET = MainNetParams.get();
+
+  private static final int UTXO_COUNT = 100_000;
+
+  private static final int DEFAULT_SELECTOR_SELECTIONS = 20;
+
+  private static final int INDEX_SELECTIONS = 2_000;
+
+  private static final Coin FEE_PER_KB = Coin.valueOf(10_000);
+
+  @Test
+  public void testSelectionLatency() throws Exception {
+
+    Random random = new Random(42);
+
+    // Outputs between 0.0001 and 0.01 BTC
+    Address address = new ECKey().toAddress(MAINNET);
+    List<TransactionOutput> candidates = Lists.newArrayListWithCapacity(UTXO_COUNT);
+    for (int i = 0; i < UTXO_COUNT; i++) {
+      Transaction tx = new Transaction(MAINNET);
+      tx.setLockTime(i);
+      TransactionOutput output = tx.addOutput(Coin.valueOf(10_000 + random.nextInt(990_000)), address);
+      tx.getConfidence().setAppearedAtChainHeight(100);
+      tx.getConfidence().setDepthInBlocks(1 + random.nextInt(1_000));
+      candidates.add(output);
+    }
+
+    // Amounts typed into the send wizard (up to 0.5 BTC)
+    long[] targets = new long[INDEX_SELECTIONS];
+    for (int i = 0; i < targets.length; i++) {
+      targets[i] = 100_000 + random.nextInt(50_000_000);
+    }
+
+    // Previous behaviour
+    CoinSelector defaultCoinSelector = new DefaultCoinSelector();
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    for (int i = 0; i < DEFAULT_SELECTOR_SELECTIONS; i++) {
+      defaultCoinSelector.select(Coin.valueOf(targets[i]), Lists.newArrayList(candidates));
+    }
+    double defaultMicros = (double) stopwatch.elapsed(TimeUnit.MICROSECONDS) / DEFAULT_SELECTOR_SELECTIONS;
+    log.info("Default selector: {} us per selection", String.format("%.1f", defaultMicros));
+
+    UtxoIndex utxoIndex = new UtxoIndex();
+    stopwatch = Stopwatch.createStarted();
+    utxoIndex.rebuild(candidates);
+    log.info("Index rebuild: {} ms for {} outputs", stopwatch.elapsed(TimeUnit.MILLISECONDS), UTXO_COUNT);
+
+    for (CoinSelectionStrategy strategy : CoinSelectionStrategy.values()) {
+
+      CoinSelector coinSelector = utxoIndex.newCoinSelector(strategy, FEE_PER_KB);
+
+      // Warm up
+      for (int i = 0; i < 100; i++) {
+        coinSelector.select(Coin.valueOf(targets[i]), candidates);
+      }
+
+      // The search in branch and bound is bounded rather than proportional to the amount so use fewer runs
+      int selections = strategy == CoinSelectionStrategy.BRANCH_AND_BOUND ? DEFAULT_SELECTOR_SELECTIONS : INDEX_SELECTIONS;
+
+      stopwatch = Stopwatch.createStarted();
+      for (int i = 0; i < selections; i++) {
+        CoinSelection selection = coinSelector.select(Coin.valueOf(targets[i]), candidates);
+        assertThat(selection.valueGathered.getValue()).isGreaterThanOrEqualTo(targets[i]);
+      }
+      double indexMicros = (double) stopwatch.elapsed(TimeUnit.MICROSECONDS) / selections;
+      log.info("{}: {} us per selection", strategy, String.format("%.1f", indexMicros));
+
+      if (strategy == CoinSelectionStrategy.LARGEST_FIRST) {
+        assertThat(indexMicros).isLessThan(1_000.0);
+      }
+    }
+
+  }
+
+}
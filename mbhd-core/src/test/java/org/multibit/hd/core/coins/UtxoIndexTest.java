@@ -0,0 +1,177 @@
+package org.multibit.hd.core.coins;
+
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Wallet;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.wallet.CoinSelection;
+import org.bitcoinj.wallet.CoinSelector;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class UtxoIndexTest {
+
+  private static final NetworkParameters MAINNET = MainNetParams.get();
+
+  private static final Coin FEE_PER_KB = Coin.valueOf(10_000);
+
+  private int lockTime = 0;
+
+  private Wallet wallet;
+
+  private UtxoIndex testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    wallet = new Wallet(MAINNET);
+
+    testObject = new UtxoIndex();
+
+  }
+
+  @Test
+  public void testRebuild() throws Exception {
+
+    assertThat(testObject.isStale()).isTrue();
+
+    testObject.rebuild(Lists.newArrayList(newReceivedOutput(Coin.MILLICOIN), newReceivedOutput(Coin.MILLICOIN.multiply(2))));
+
+    assertThat(testObject.isStale()).isFalse();
+    assertThat(testObject.size()).isEqualTo(2);
+    assertThat(testObject.getTotal()).isEqualTo(Coin.MILLICOIN.multiply(3));
+
+  }
+
+  @Test
+  public void testUpdateFromReceiveAndSpend() throws Exception {
+
+    TransactionOutput first = newReceivedOutput(Coin.MILLICOIN);
+    testObject.rebuild(Lists.newArrayList(first));
+
+    // Receive
+    TransactionOutput second = newReceivedOutput(Coin.MILLICOIN.multiply(2));
+    testObject.update(wallet, second.getParentTransaction());
+
+    assertThat(testObject.size()).isEqualTo(2);
+    assertThat(testObject.getTotal()).isEqualTo(Coin.MILLICOIN.multiply(3));
+
+    // Spend the first output to someone else
+    Transaction spend = newTransaction();
+    TransactionInput input = spend.addInput(first);
+    first.markAsSpent(input);
+    spend.addOutput(Coin.MILLICOIN.divide(2), new ECKey().toAddress(MAINNET));
+    testObject.update(wallet, spend);
+
+    assertThat(testObject.size()).isEqualTo(1);
+    assertThat(testObject.getTotal()).isEqualTo(Coin.MILLICOIN.multiply(2));
+
+    // Repeated events do not double count
+    testObject.update(wallet, second.getParentTransaction());
+    assertThat(testObject.size()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testUpdateIgnoredWhileStale() throws Exception {
+
+    testObject.update(wallet, newReceivedOutput(Coin.MILLICOIN).getParentTransaction());
+
+    assertThat(testObject.size()).isEqualTo(0);
+    assertThat(testObject.isStale()).isTrue();
+
+  }
+
+  @Test
+  public void testSelectorRebuildsWhenOutOfStep() throws Exception {
+
+    TransactionOutput first = newReceivedOutput(Coin.MILLICOIN);
+    TransactionOutput second = newReceivedOutput(Coin.MILLICOIN.multiply(2));
+    testObject.rebuild(Lists.newArrayList(first));
+
+    CoinSelector coinSelector = testObject.newCoinSelector(CoinSelectionStrategy.LARGEST_FIRST, FEE_PER_KB);
+
+    // The wallet knows of an output that was not reported
+    CoinSelection selection = coinSelector.select(Coin.MILLICOIN.multiply(3), Lists.newArrayList(first, second));
+
+    assertThat(testObject.size()).isEqualTo(2);
+    assertThat(selection.valueGathered).isEqualTo(Coin.MILLICOIN.multiply(3));
+
+    // Reorganisation
+    testObject.markStale();
+    selection = coinSelector.select(Coin.MILLICOIN, Lists.newArrayList(first));
+
+    assertThat(testObject.isStale()).isFalse();
+    assertThat(testObject.size()).isEqualTo(1);
+    assertThat(selection.gathered).containsOnly(first);
+
+  }
+
+  @Test
+  public void testSelectorNeverOffersSpentOutput() throws Exception {
+
+    TransactionOutput spent = newReceivedOutput(Coin.MILLICOIN.multiply(5));
+    TransactionOutput unspent = newReceivedOutput(Coin.MILLICOIN);
+    testObject.rebuild(Lists.newArrayList(spent, unspent));
+
+    // Spent before the wallet event has been delivered
+    Transaction spend = newTransaction();
+    spent.markAsSpent(spend.addInput(spent));
+    TransactionOutput received = newReceivedOutput(Coin.MILLICOIN.multiply(2));
+
+    // Same number of candidates so only the check on the selected outputs detects the change
+    List<TransactionOutput> candidates = Lists.newArrayList(unspent, received);
+    CoinSelection selection = testObject.newCoinSelector(CoinSelectionStrategy.LARGEST_FIRST, FEE_PER_KB).select(Coin.MILLICOIN, candidates);
+
+    assertThat(selection.gathered).containsOnly(received);
+
+  }
+
+  @Test
+  public void testSelectorNeverOffersOutputMissingFromCandidates() throws Exception {
+
+    TransactionOutput missing = newReceivedOutput(Coin.MILLICOIN.multiply(5));
+    TransactionOutput common = newReceivedOutput(Coin.MILLICOIN);
+    testObject.rebuild(Lists.newArrayList(missing, common));
+
+    // The wallet no longer offers an output that is still unspent (e.g. dropped after a reorganisation)
+    TransactionOutput received = newReceivedOutput(Coin.MILLICOIN.multiply(2));
+
+    // Same number of candidates but different members
+    List<TransactionOutput> candidates = Lists.newArrayList(common, received);
+    CoinSelection selection = testObject.newCoinSelector(CoinSelectionStrategy.LARGEST_FIRST, FEE_PER_KB).select(Coin.MILLICOIN, candidates);
+
+    assertThat(selection.gathered).containsOnly(received);
+    assertThat(testObject.getTotal()).isEqualTo(Coin.MILLICOIN.multiply(3));
+
+  }
+
+  private TransactionOutput newReceivedOutput(Coin value) {
+
+    Transaction tx = newTransaction();
+    TransactionOutput output = tx.addOutput(value, wallet.freshReceiveKey().toAddress(MAINNET));
+    tx.getConfidence().setAppearedAtChainHeight(100);
+    tx.getConfidence().setDepthInBlocks(1);
+
+    return output;
+  }
+
+  private Transaction newTransaction() {
+
+    Transaction tx = new Transaction(MAINNET);
+    // Give each transaction a distinct hash
+    tx.setLockTime(lockTime++);
+
+    return tx;
+  }
+
+}
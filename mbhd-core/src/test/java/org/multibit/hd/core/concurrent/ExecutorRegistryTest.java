@@ -0,0 +1,206 @@
+package org.multibit.hd.core.concurrent;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.swing.SwingUtilities;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class ExecutorRegistryTest {
+
+  private static final AtomicInteger poolCounter = new AtomicInteger();
+
+  private final CountDownLatch blockingLatch = new CountDownLatch(1);
+
+  @After
+  public void tearDown() throws Exception {
+
+    // Release any blocked pool threads
+    blockingLatch.countDown();
+
+  }
+
+  @Test
+  public void testSameNameSharesPool() throws Exception {
+
+    String poolName = newPoolName();
+
+    ListeningExecutorService first = ExecutorRegistry.getOrCreateExecutor(poolName, 1, 1, RejectionPolicy.ABORT);
+    ListeningExecutorService second = ExecutorRegistry.getOrCreateExecutor(poolName, 2, 2, RejectionPolicy.CALLER_RUNS);
+
+    assertThat(second).isSameAs(first);
+    assertThat(ExecutorRegistry.getMetrics(poolName).get().getQueueCapacity()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testAbortWhenQueueFull() throws Exception {
+
+    String poolName = newPoolName();
+    ListeningExecutorService testObject = ExecutorRegistry.getOrCreateExecutor(poolName, 1, 1, RejectionPolicy.ABORT);
+
+    ListenableFuture<Integer> running = testObject.submit(newBlockingTask());
+    awaitActive(poolName);
+    ListenableFuture<Integer> queued = testObject.submit(newBlockingTask());
+
+    try {
+      testObject.submit(newBlockingTask());
+      fail("Expected the full queue to reject the task");
+    } catch (RejectedExecutionException e) {
+      // Expected
+    }
+
+    ExecutorMetrics metrics = ExecutorRegistry.getMetrics(poolName).get();
+    assertThat(metrics.getActiveCount()).isEqualTo(1);
+    assertThat(metrics.getQueuedCount()).isEqualTo(1);
+    assertThat(metrics.getRejectedCount()).isEqualTo(1);
+
+    blockingLatch.countDown();
+    assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+    assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testCallerRunsWhenQueueFull() throws Exception {
+
+    String poolName = newPoolName();
+    ListeningExecutorService testObject = ExecutorRegistry.getOrCreateExecutor(poolName, 1, 1, RejectionPolicy.CALLER_RUNS);
+
+    testObject.submit(newBlockingTask());
+    awaitActive(poolName);
+    testObject.submit(newBlockingTask());
+
+    // Back pressure means the submitting thread does the work
+    ListenableFuture<String> overflow = testObject.submit(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return Thread.currentThread().getName();
+      }
+    });
+
+    assertThat(overflow.isDone()).isTrue();
+    assertThat(overflow.get()).isEqualTo(Thread.currentThread().getName());
+    assertThat(ExecutorRegistry.getMetrics(poolName).get().getRejectedCount()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testCallerRunsOffEdtWhenQueueFull() throws Exception {
+
+    String poolName = newPoolName();
+    final ListeningExecutorService testObject = ExecutorRegistry.getOrCreateExecutor(poolName, 1, 1, RejectionPolicy.CALLER_RUNS_OFF_EDT);
+
+    testObject.submit(newBlockingTask());
+    awaitActive(poolName);
+    testObject.submit(newBlockingTask());
+
+    final Callable<String> threadName = new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return Thread.currentThread().getName();
+      }
+    };
+
+    // Back pressure applies to other threads
+    ListenableFuture<String> overflow = testObject.submit(threadName);
+    assertThat(overflow.isDone()).isTrue();
+    assertThat(overflow.get()).isEqualTo(Thread.currentThread().getName());
+
+    // The EDT hands its overflow to another thread
+    final AtomicReference<ListenableFuture<String>> edtOverflow = new AtomicReference<>();
+    SwingUtilities.invokeAndWait(new Runnable() {
+      @Override
+      public void run() {
+        edtOverflow.set(testObject.submit(threadName));
+      }
+    });
+    assertThat(edtOverflow.get().get(5, TimeUnit.SECONDS)).isEqualTo("safe-bounded-" + poolName + "-overflow-0");
+
+    assertThat(ExecutorRegistry.getMetrics(poolName).get().getRejectedCount()).isEqualTo(2);
+
+  }
+
+  @Test
+  public void testDiscardOldestCancelsQueuedTask() throws Exception {
+
+    String poolName = newPoolName();
+    ListeningExecutorService testObject = ExecutorRegistry.getOrCreateExecutor(poolName, 1, 1, RejectionPolicy.DISCARD_OLDEST);
+
+    testObject.submit(newBlockingTask());
+    awaitActive(poolName);
+    ListenableFuture<Integer> oldest = testObject.submit(newBlockingTask());
+    ListenableFuture<Integer> newest = testObject.submit(newBlockingTask());
+
+    // The discarded task completes rather than leaving a caller waiting forever
+    assertThat(oldest.isCancelled()).isTrue();
+
+    blockingLatch.countDown();
+    assertThat(newest.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testCompletedAndMaxLatency() throws Exception {
+
+    String poolName = newPoolName();
+    ListeningExecutorService testObject = ExecutorRegistry.getOrCreateExecutor(poolName, 2, 10, RejectionPolicy.ABORT);
+
+    for (int i = 0; i < 4; i++) {
+      testObject.submit(new Runnable() {
+        @Override
+        public void run() {
+          Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+        }
+      }).get(5, TimeUnit.SECONDS);
+    }
+
+    // The completed count is updated after the future completes
+    ExecutorMetrics metrics = ExecutorRegistry.getMetrics(poolName).get();
+    for (int i = 0; i < 50 && metrics.getCompletedCount() < 4; i++) {
+      Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+      metrics = ExecutorRegistry.getMetrics(poolName).get();
+    }
+
+    assertThat(metrics.getCompletedCount()).isEqualTo(4);
+    assertThat(metrics.getMaxLatencyMillis()).isGreaterThanOrEqualTo(50);
+    assertThat(metrics.getQueuedCount()).isEqualTo(0);
+    assertThat(metrics.getRejectedCount()).isEqualTo(0);
+
+  }
+
+  private String newPoolName() {
+    return "test-" + poolCounter.incrementAndGet();
+  }
+
+  private Callable<Integer> newBlockingTask() {
+
+    return new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        blockingLatch.await(5, TimeUnit.SECONDS);
+        return 1;
+      }
+    };
+  }
+
+  private void awaitActive(String poolName) {
+
+    for (int i = 0; i < 100 && ExecutorRegistry.getMetrics(poolName).get().getActiveCount() == 0; i++) {
+      Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+    }
+
+  }
+
+}
@@ -0,0 +1,147 @@
+package org.multibit.hd.core.crypto;
+
+import com.google.common.io.ByteStreams;
+import org.bitcoinj.core.Utils;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.brit.crypto.AESUtils;
+import org.multibit.hd.core.files.SecureFiles;
+import org.multibit.hd.core.managers.WalletManager;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class AESStreamsTest {
+
+  private static final int[] SIZES = new int[]{0, 1, 15, 16, 17, AESStreams.BUFFER_SIZE - 1, AESStreams.BUFFER_SIZE, AESStreams.BUFFER_SIZE + 1, 3 * AESStreams.BUFFER_SIZE + 7};
+
+  private final SecureRandom secureRandom = new SecureRandom();
+
+  private KeyParameter aesKey;
+
+  @Before
+  public void setUp() throws Exception {
+
+    byte[] keyBytes = new byte[AESUtils.KEY_LENGTH];
+    secureRandom.nextBytes(keyBytes);
+    aesKey = new KeyParameter(keyBytes);
+
+  }
+
+  @Test
+  public void testEncryptMatchesAESUtils() throws Exception {
+
+    for (int size : SIZES) {
+
+      byte[] plainBytes = randomBytes(size);
+
+      ByteArrayOutputStream encryptedOutputStream = new ByteArrayOutputStream();
+      MessageDigest digest = AESStreams.newDigest();
+      long written = AESStreams.encrypt(new ByteArrayInputStream(plainBytes), encryptedOutputStream, aesKey, WalletManager.aesInitialisationVector(), digest);
+
+      byte[] expected = AESUtils.encrypt(plainBytes, aesKey, WalletManager.aesInitialisationVector());
+
+      assertThat(written).isEqualTo(expected.length);
+      assertThat(Utils.HEX.encode(encryptedOutputStream.toByteArray())).isEqualTo(Utils.HEX.encode(expected));
+      assertThat(digest.digest()).isEqualTo(AESStreams.newDigest().digest(plainBytes));
+
+    }
+
+  }
+
+  @Test
+  public void testEncryptingOutputStreamMatchesAESUtils() throws Exception {
+
+    for (int size : SIZES) {
+
+      byte[] plainBytes = randomBytes(size);
+
+      ByteArrayOutputStream encryptedOutputStream = new ByteArrayOutputStream();
+      try (OutputStream outputStream = AESStreams.newEncryptingOutputStream(encryptedOutputStream, aesKey, WalletManager.aesInitialisationVector())) {
+        // Write in uneven pieces to exercise the partial blocks
+        int offset = 0;
+        while (offset < plainBytes.length) {
+          int length = Math.min(1000, plainBytes.length - offset);
+          outputStream.write(plainBytes, offset, length);
+          offset += length;
+        }
+      }
+
+      byte[] expected = AESUtils.encrypt(plainBytes, aesKey, WalletManager.aesInitialisationVector());
+
+      assertThat(Utils.HEX.encode(encryptedOutputStream.toByteArray())).isEqualTo(Utils.HEX.encode(expected));
+
+    }
+
+  }
+
+  @Test
+  public void testDecryptingInputStreamMatchesAESUtils() throws Exception {
+
+    for (int size : SIZES) {
+
+      byte[] plainBytes = randomBytes(size);
+      byte[] encryptedBytes = AESUtils.encrypt(plainBytes, aesKey, WalletManager.aesInitialisationVector());
+
+      try (InputStream decryptedInputStream = AESStreams.newDecryptingInputStream(new ByteArrayInputStream(encryptedBytes), aesKey, WalletManager.aesInitialisationVector())) {
+        assertThat(ByteStreams.toByteArray(decryptedInputStream)).isEqualTo(plainBytes);
+      }
+
+    }
+
+  }
+
+  @Test
+  public void testDigestDecrypted() throws Exception {
+
+    byte[] plainBytes = randomBytes(2 * AESStreams.BUFFER_SIZE + 3);
+
+    File encryptedFile = new File(SecureFiles.createTemporaryDirectory(), "test.aes");
+    try (OutputStream outputStream = new FileOutputStream(encryptedFile)) {
+      outputStream.write(AESUtils.encrypt(plainBytes, aesKey, WalletManager.aesInitialisationVector()));
+    }
+
+    byte[] digest = AESStreams.digestDecrypted(encryptedFile, aesKey, WalletManager.aesInitialisationVector());
+
+    assertThat(digest).isEqualTo(AESStreams.newDigest().digest(plainBytes));
+
+  }
+
+  @Test
+  public void testDecryptTruncatedFails() throws Exception {
+
+    byte[] encryptedBytes = AESUtils.encrypt(randomBytes(1000), aesKey, WalletManager.aesInitialisationVector());
+
+    // Lose the final byte (as would a partially written file)
+    byte[] truncatedBytes = Arrays.copyOf(encryptedBytes, encryptedBytes.length - 1);
+
+    try (InputStream decryptedInputStream = AESStreams.newDecryptingInputStream(new ByteArrayInputStream(truncatedBytes), aesKey, WalletManager.aesInitialisationVector())) {
+      ByteStreams.toByteArray(decryptedInputStream);
+      fail("Expected an IOException for the incomplete final block");
+    } catch (IOException e) {
+      // Expected
+    }
+
+  }
+
+  private byte[] randomBytes(int size) {
+
+    byte[] bytes = new byte[size];
+    secureRandom.nextBytes(bytes);
+    return bytes;
+
+  }
+
+}
@@ -26,6 +26,7 @@ import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.files.SecureFiles;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
+import org.spongycastle.crypto.params.KeyParameter;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -64,6 +65,8 @@ public class EncryptedFileReaderWriterTest {
 
     InstallationManager.unrestricted = false;
 
+    EncryptedFileReaderWriter.clearKeyCache();
+
   }
 
   @Test
@@ -97,4 +100,30 @@ public class EncryptedFileReaderWriterTest {
     decryptedInputStream.close();
   }
 
+  @Test
+  public void testDeriveKeyIsCachedUntilCleared() throws Exception {
+
+    KeyParameter keyParameter1 = EncryptedFileReaderWriter.deriveKey(PASSWORD1, WalletManager.scryptSalt());
+
+    // Same session reuses the derived key (as a copy)
+    KeyParameter cachedKeyParameter = EncryptedFileReaderWriter.deriveKey(new StringBuilder(PASSWORD1), WalletManager.scryptSalt());
+    assertThat(cachedKeyParameter).isNotSameAs(keyParameter1);
+    assertThat(Utils.HEX.encode(cachedKeyParameter.getKey())).isEqualTo(Utils.HEX.encode(keyParameter1.getKey()));
+
+    // A different password derives a different key
+    KeyParameter keyParameter2 = EncryptedFileReaderWriter.deriveKey("anotherTestPassword", WalletManager.scryptSalt());
+    assertThat(Utils.HEX.encode(keyParameter2.getKey())).isNotEqualTo(Utils.HEX.encode(keyParameter1.getKey()));
+
+    // Clearing the cache wipes the cached key but not the copies held by callers
+    String keyHex1 = Utils.HEX.encode(keyParameter1.getKey());
+    EncryptedFileReaderWriter.clearKeyCache();
+    assertThat(Utils.HEX.encode(keyParameter1.getKey())).isEqualTo(keyHex1);
+
+    // A fresh derivation gives the same key
+    KeyParameter keyParameter3 = EncryptedFileReaderWriter.deriveKey(PASSWORD1, WalletManager.scryptSalt());
+    assertThat(keyParameter3).isNotSameAs(keyParameter1);
+    assertThat(Utils.HEX.encode(keyParameter3.getKey())).isEqualTo(Utils.HEX.encode(keyParameter1.getKey()));
+
+  }
+
 }
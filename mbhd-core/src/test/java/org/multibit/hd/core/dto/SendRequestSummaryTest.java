@@ -0,0 +1,101 @@
+package org.multibit.hd.core.dto;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+import org.multibit.hd.brit.dto.FeeState;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class SendRequestSummaryTest {
+
+  private static final NetworkParameters MAINNET = MainNetParams.get();
+
+  private final Address address1 = new ECKey().toAddress(MAINNET);
+  private final Address address2 = new ECKey().toAddress(MAINNET);
+  private final Address address3 = new ECKey().toAddress(MAINNET);
+  private final Address changeAddress = new ECKey().toAddress(MAINNET);
+
+  @Test
+  public void testSingleRecipient() throws Exception {
+
+    SendRequestSummary testObject = new SendRequestSummary(
+      address1,
+      Coin.parseCoin("0.1"),
+      Optional.<FiatPayment>absent(),
+      changeAddress,
+      Coin.valueOf(1000),
+      null,
+      Optional.<FeeState>absent(),
+      false
+    );
+    testObject.setNotes(Optional.of("Lunch"));
+
+    assertThat(testObject.isBatch()).isFalse();
+    assertThat(testObject.getRecipientPayments()).hasSize(1);
+    assertThat(testObject.getDestinationAddress()).isEqualTo(address1);
+    assertThat(testObject.getAmount()).isEqualTo(Coin.parseCoin("0.1"));
+    assertThat(testObject.getNotes().get()).isEqualTo("Lunch");
+
+  }
+
+  @Test
+  public void testBatch() throws Exception {
+
+    Contact contact = new Contact(UUID.randomUUID(), "Bob");
+    Recipient recipient2 = new Recipient(address2);
+    recipient2.setContact(contact);
+
+    List<RecipientPayment> recipientPayments = Lists.newArrayList(
+      new RecipientPayment(new Recipient(address1), Coin.parseCoin("0.1"), Optional.of("Invoice 17")),
+      new RecipientPayment(recipient2, Coin.parseCoin("0.2"), Optional.<String>absent()),
+      new RecipientPayment(new Recipient(address3), Coin.parseCoin("0.3"), Optional.<String>absent())
+    );
+
+    SendRequestSummary testObject = newBatch(recipientPayments, false);
+    testObject.setNotes(Optional.of("March payouts"));
+
+    assertThat(testObject.isBatch()).isTrue();
+    assertThat(testObject.getDestinationAddress()).isEqualTo(address1);
+    assertThat(testObject.getAmount()).isEqualTo(Coin.parseCoin("0.6"));
+
+    // Outputs without a note or contact are not described
+    assertThat(testObject.getNotes().get()).isEqualTo(
+      "March payouts\n" +
+        address1 + " 0.1: Invoice 17\n" +
+        "Bob 0.2"
+    );
+
+    try {
+      newBatch(recipientPayments, true);
+      fail("Expected an empty wallet batch to be rejected");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+
+  }
+
+  private SendRequestSummary newBatch(List<RecipientPayment> recipientPayments, boolean emptyWallet) {
+
+    return new SendRequestSummary(
+      recipientPayments,
+      Optional.<FiatPayment>absent(),
+      changeAddress,
+      Coin.valueOf(1000),
+      null,
+      Optional.<FeeState>absent(),
+      emptyWallet
+    );
+
+  }
+
+}
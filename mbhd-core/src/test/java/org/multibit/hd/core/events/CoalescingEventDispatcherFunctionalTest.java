@@ -0,0 +1,96 @@
+package org.multibit.hd.core.events;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import org.junit.Test;
+import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.dto.BitcoinNetworkSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * <p>Benchmark of Bitcoin network events posted from a peer thread directly to the event bus against
+ * the coalescing dispatcher used by CoreEvents</p>
+ */
+public class CoalescingEventDispatcherFunctionalTest {
+
+  private static final Logger log = LoggerFactory.getLogger(CoalescingEventDispatcherFunctionalTest.class);
+
+  private static final int EVENTS = 20_000;
+
+  /**
+   * The cost of a subscriber updating its view of the network
+   */
+  private static final long SUBSCRIBER_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+  private final AtomicLong handledCount = new AtomicLong();
+
+  @Test
+  public void testPeerThreadBlocking() throws Exception {
+
+    EventBus eventBus = new EventBus();
+    eventBus.register(this);
+
+    // Current behaviour: synchronous post on the peer thread
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    for (int i = 0; i < EVENTS; i++) {
+      eventBus.post(newProgressEvent(i));
+    }
+    long directBlockingMicros = stopwatch.elapsed(TimeUnit.MICROSECONDS);
+    long directHandled = handledCount.getAndSet(0);
+
+    ListeningScheduledExecutorService scheduler = SafeExecutors.newSingleThreadScheduledExecutor("benchmark-dispatch");
+    CoalescingEventDispatcher testObject = new CoalescingEventDispatcher(eventBus, 50, scheduler);
+
+    stopwatch = Stopwatch.createStarted();
+    for (int i = 0; i < EVENTS; i++) {
+      testObject.post(newProgressEvent(i), "progress");
+    }
+    long dispatcherBlockingMicros = stopwatch.elapsed(TimeUnit.MICROSECONDS);
+
+    // Allow the final frame to be delivered
+    Thread.sleep(200);
+    long dispatcherHandled = handledCount.get();
+
+    scheduler.shutdownNow();
+
+    log.info("Event bus: {} events in {}us on the peer thread ({} events/s), {} handled",
+      EVENTS, directBlockingMicros, perSecond(directBlockingMicros), directHandled);
+    log.info("Coalescing dispatcher: {} events in {}us on the peer thread ({} events/s), {} handled",
+      EVENTS, dispatcherBlockingMicros, perSecond(dispatcherBlockingMicros), dispatcherHandled);
+
+    assertThat(directHandled).isEqualTo(EVENTS);
+    assertThat(dispatcherHandled).isGreaterThan(0).isLessThan(EVENTS);
+
+    // The peer thread no longer pays for the subscribers
+    assertThat(dispatcherBlockingMicros).isLessThan(directBlockingMicros / 4);
+
+  }
+
+  @Subscribe
+  public void onBitcoinNetworkChangedEvent(BitcoinNetworkChangedEvent event) {
+
+    long end = System.nanoTime() + SUBSCRIBER_NANOS;
+    while (System.nanoTime() < end) {
+      // Simulate the work of a subscriber
+    }
+    handledCount.incrementAndGet();
+
+  }
+
+  private BitcoinNetworkChangedEvent newProgressEvent(int i) {
+    return new BitcoinNetworkChangedEvent(BitcoinNetworkSummary.newChainDownloadProgress(i % 100, EVENTS - i));
+  }
+
+  private static long perSecond(long micros) {
+    return micros == 0 ? EVENTS : EVENTS * 1_000_000L / micros;
+  }
+
+}
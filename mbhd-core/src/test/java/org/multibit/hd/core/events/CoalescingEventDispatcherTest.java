@@ -0,0 +1,152 @@
+package org.multibit.hd.core.events;
+
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.dto.BitcoinNetworkSummary;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CoalescingEventDispatcherTest {
+
+  private static final String PROGRESS = "progress";
+  private static final String PEER_COUNT = "peer-count";
+
+  private ListeningScheduledExecutorService scheduler;
+
+  private CoalescingEventDispatcher testObject;
+
+  private final List<CoreEvent> delivered = Collections.synchronizedList(Lists.<CoreEvent>newArrayList());
+
+  private final List<Thread> deliveryThreads = Collections.synchronizedList(Lists.<Thread>newArrayList());
+
+  private volatile CountDownLatch deliveryLatch;
+
+  @Before
+  public void setUp() throws Exception {
+
+    scheduler = SafeExecutors.newSingleThreadScheduledExecutor("test-dispatch");
+
+    EventBus eventBus = new EventBus();
+    eventBus.register(this);
+
+    testObject = new CoalescingEventDispatcher(eventBus, 50, scheduler);
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    scheduler.shutdownNow();
+
+  }
+
+  @Test
+  public void testLastValueWins() throws Exception {
+
+    deliveryLatch = new CountDownLatch(2);
+
+    for (int percent = 1; percent <= 100; percent++) {
+      testObject.post(newProgressEvent(percent), PROGRESS);
+    }
+    testObject.post(newPeerCountEvent(4), PEER_COUNT);
+    testObject.post(newPeerCountEvent(5), PEER_COUNT);
+
+    assertThat(deliveryLatch.await(5, TimeUnit.SECONDS)).isTrue();
+    awaitQuiet();
+
+    assertThat(delivered).hasSize(2);
+    assertThat(((BitcoinNetworkChangedEvent) delivered.get(0)).getSummary().getPercent()).isEqualTo(100);
+    assertThat(((BitcoinNetworkChangedEvent) delivered.get(1)).getSummary().getMessageData().get()[0]).isEqualTo(5);
+
+    assertThat(testObject.getPostedCount()).isEqualTo(102);
+    assertThat(testObject.getDeliveredCount()).isEqualTo(2);
+
+  }
+
+  @Test
+  public void testBatchFollowsMostRecentPost() throws Exception {
+
+    deliveryLatch = new CountDownLatch(2);
+
+    testObject.post(newProgressEvent(50), PROGRESS);
+    testObject.post(newPeerCountEvent(4), PEER_COUNT);
+    testObject.post(newProgressEvent(60), PROGRESS);
+
+    assertThat(deliveryLatch.await(5, TimeUnit.SECONDS)).isTrue();
+
+    // The progress was posted last so it is delivered last
+    assertThat(((BitcoinNetworkChangedEvent) delivered.get(0)).getSummary().getMessageData().get()[0]).isEqualTo(4);
+    assertThat(((BitcoinNetworkChangedEvent) delivered.get(1)).getSummary().getPercent()).isEqualTo(60);
+
+  }
+
+  @Test
+  public void testUncoalescedEventsAreAllDeliveredOffThePostingThread() throws Exception {
+
+    deliveryLatch = new CountDownLatch(3);
+
+    testObject.post(newProgressEvent(1));
+    testObject.post(newProgressEvent(2));
+    testObject.post(newProgressEvent(3));
+
+    assertThat(deliveryLatch.await(5, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(delivered).hasSize(3);
+    for (int i = 0; i < 3; i++) {
+      assertThat(((BitcoinNetworkChangedEvent) delivered.get(i)).getSummary().getPercent()).isEqualTo(i + 1);
+      assertThat(deliveryThreads.get(i)).isNotSameAs(Thread.currentThread());
+    }
+
+  }
+
+  @Test
+  public void testLaterPostsStartNewFrame() throws Exception {
+
+    deliveryLatch = new CountDownLatch(1);
+    testObject.post(newProgressEvent(10), PROGRESS);
+    assertThat(deliveryLatch.await(5, TimeUnit.SECONDS)).isTrue();
+
+    deliveryLatch = new CountDownLatch(1);
+    testObject.post(newProgressEvent(20), PROGRESS);
+    assertThat(deliveryLatch.await(5, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(delivered).hasSize(2);
+
+  }
+
+  @Subscribe
+  public void onBitcoinNetworkChangedEvent(BitcoinNetworkChangedEvent event) {
+
+    delivered.add(event);
+    deliveryThreads.add(Thread.currentThread());
+    deliveryLatch.countDown();
+
+  }
+
+  private BitcoinNetworkChangedEvent newProgressEvent(int percent) {
+    return new BitcoinNetworkChangedEvent(BitcoinNetworkSummary.newChainDownloadProgress(percent, 100 - percent));
+  }
+
+  private BitcoinNetworkChangedEvent newPeerCountEvent(int peerCount) {
+    return new BitcoinNetworkChangedEvent(BitcoinNetworkSummary.newNetworkPeerCount(peerCount));
+  }
+
+  /**
+   * <p>Allow time for any unexpected extra deliveries</p>
+   */
+  private void awaitQuiet() throws InterruptedException {
+    Thread.sleep(150);
+  }
+
+}
@@ -0,0 +1,108 @@
+package org.multibit.hd.core.files;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * <p>Benchmark of the block overwrite secure delete against the byte at a time mapped overwrite it replaces</p>
+ */
+public class SecureFilesFunctionalTest {
+
+  private static final Logger log = LoggerFactory.getLogger(SecureFilesFunctionalTest.class);
+
+  private static final int[] SIZES_MB = new int[]{1, 8, 32};
+
+  private static final int CONCURRENT_FILES = 8;
+
+  private final SecureRandom secureRandom = new SecureRandom();
+
+  @Test
+  public void testSecureDeleteThroughput() throws Exception {
+
+    File temporaryDirectory = SecureFiles.createTemporaryDirectory();
+
+    for (int sizeMB : SIZES_MB) {
+
+      File file = createFile(temporaryDirectory, "mapped-" + sizeMB + ".wallet", sizeMB);
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      byteAtATimeMappedOverwrite(file);
+      long mappedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+      file = createFile(temporaryDirectory, "block-" + sizeMB + ".wallet", sizeMB);
+      stopwatch = Stopwatch.createStarted();
+      SecureFiles.secureDelete(file);
+      long blockMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+      assertThat(file.exists()).isFalse();
+
+      log.info("Size: {}MB Mapped byte at a time: {}ms ({} MB/s) Block: {}ms ({} MB/s)",
+        sizeMB, mappedMillis, throughput(sizeMB, mappedMillis), blockMillis, throughput(sizeMB, blockMillis));
+    }
+
+    // Concurrent deletes of different files
+    List<File> files = Lists.newArrayList();
+    for (int i = 0; i < CONCURRENT_FILES; i++) {
+      files.add(createFile(temporaryDirectory, "concurrent-" + i + ".wallet", 8));
+    }
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    SecureFiles.secureDeleteAsync(files).get(5, TimeUnit.MINUTES);
+    long concurrentMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    log.info("Concurrent: {} x 8MB in {}ms ({} MB/s)", CONCURRENT_FILES, concurrentMillis, throughput(CONCURRENT_FILES * 8, concurrentMillis));
+
+  }
+
+  /**
+   * <p>The previous implementation of the overwrite</p>
+   */
+  private void byteAtATimeMappedOverwrite(File file) throws IOException {
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+      byte[] data = new byte[1];
+      while (buffer.hasRemaining()) {
+        secureRandom.nextBytes(data);
+        buffer.put(data[0]);
+      }
+      buffer.force();
+    }
+
+  }
+
+  private File createFile(File directory, String name, int sizeMB) throws IOException {
+
+    File file = new File(directory, name);
+
+    byte[] block = new byte[1024 * 1024];
+    secureRandom.nextBytes(block);
+    try (OutputStream outputStream = new FileOutputStream(file)) {
+      for (int i = 0; i < sizeMB; i++) {
+        outputStream.write(block);
+      }
+    }
+
+    return file;
+  }
+
+  private long throughput(int sizeMB, long millis) {
+    return millis == 0 ? sizeMB * 1000L : sizeMB * 1000L / millis;
+  }
+
+}
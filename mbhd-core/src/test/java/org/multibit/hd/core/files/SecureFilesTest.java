@@ -1,13 +1,118 @@
 package org.multibit.hd.core.files;
 
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
 
 public class SecureFilesTest {
 
-  // TODO (GR) Verify operation
-  public void testSecureDelete() {
+  private File temporaryDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+
+    temporaryDirectory = SecureFiles.createTemporaryDirectory();
+
+  }
+
+  @Test
+  public void testSecureDelete() throws Exception {
+
+    File file = createFile("secure-delete.txt", 3 * SecureFiles.OVERWRITE_BLOCK_SIZE + 17);
+
+    SecureFiles.secureDelete(file);
+
+    assertThat(file.exists()).isFalse();
+
+    // Deleting a missing file is not an error
+    SecureFiles.secureDelete(file);
+
+  }
+
+  @Test
+  public void testOverwrite() throws Exception {
+
+    int length = SecureFiles.OVERWRITE_BLOCK_SIZE + 100;
+    File file = createFile("overwrite.txt", length);
+    byte[] original = Files.readAllBytes(file.toPath());
+
+    SecureFiles.overwrite(file, false);
+
+    byte[] overwritten = Files.readAllBytes(file.toPath());
+    assertThat(overwritten.length).isEqualTo(length);
+    assertThat(Arrays.equals(overwritten, original)).isFalse();
+
+    // The pattern is repeated throughout including the partial final block
+    for (int i = 0; i < length; i++) {
+      assertThat(overwritten[i]).isEqualTo(SecureFiles.NONSENSE_BYTES[i % SecureFiles.NONSENSE_BYTES.length]);
+    }
+
+    SecureFiles.overwrite(file, true);
+    assertThat(file.length()).isEqualTo(length);
+    assertThat(Arrays.equals(Files.readAllBytes(file.toPath()), overwritten)).isFalse();
+
+  }
+
+  @Test
+  public void testSecureDeleteAsync() throws Exception {
+
+    List<File> files = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      files.add(createFile("async-" + i + ".txt", 100_000 * (i + 1)));
+    }
+
+    List<Boolean> results = SecureFiles.secureDeleteAsync(files).get(30, TimeUnit.SECONDS);
+
+    assertThat(results).containsOnly(true);
+    for (File file : files) {
+      assertThat(file.exists()).isFalse();
+    }
+
+  }
+
+  @Test
+  public void testShutdownCompletesPendingDeletes() throws Exception {
+
+    List<File> files = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      files.add(createFile("shutdown-" + i + ".txt", 100_000 * (i + 1)));
+    }
+
+    SecureFiles.secureDeleteAsync(files);
+    SecureFiles.shutdownSecureDeleteExecutor();
+
+    for (File file : files) {
+      assertThat(file.exists()).isFalse();
+    }
+
+    // A new executor is created after a shutdown
+    File file = createFile("after-shutdown.txt", 100);
+    assertThat(SecureFiles.secureDeleteAsync(file).get(30, TimeUnit.SECONDS)).isTrue();
+
+  }
+
+  private File createFile(String name, int length) throws IOException {
 
+    File file = new File(temporaryDirectory, name);
 
+    byte[] content = new byte[length];
+    Arrays.fill(content, (byte) 'A');
+    try (OutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(content);
+    }
 
+    return file;
   }
 
 }
@@ -0,0 +1,198 @@
+package org.multibit.hd.core.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * <p>Benchmark of the ring buffer appender against the unbounded queue appender it replaces with
+ * several threads logging at DEBUG as happens during a synchronization</p>
+ */
+public class AsyncAppenderFunctionalTest {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncAppenderFunctionalTest.class);
+
+  private static final int PRODUCERS = 4;
+
+  private static final int EVENTS_PER_PRODUCER = 250_000;
+
+  private static final int QUEUE_CAPACITY = 8192;
+
+  private final LoggerContext loggerContext = new LoggerContext();
+
+  private final ch.qos.logback.classic.Logger logger = loggerContext.getLogger(AsyncAppenderFunctionalTest.class);
+
+  @Test
+  public void testThroughput() throws Exception {
+
+    // Warm up both paths
+    runUnboundedQueue(new CountingAppender());
+    runRingBuffer(new CountingAppender(), Level.DEBUG);
+
+    CountingAppender unboundedDelegate = new CountingAppender();
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    long unboundedPeak = runUnboundedQueue(unboundedDelegate);
+    long unboundedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    CountingAppender ringDelegate = new CountingAppender();
+    stopwatch = Stopwatch.createStarted();
+    AsyncAppender ringAppender = runRingBuffer(ringDelegate, Level.DEBUG);
+    long ringMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    // INFO is never dropped so the producers wait for the dispatcher
+    CountingAppender losslessDelegate = new CountingAppender();
+    stopwatch = Stopwatch.createStarted();
+    AsyncAppender losslessAppender = runRingBuffer(losslessDelegate, Level.INFO);
+    long losslessMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    long total = PRODUCERS * EVENTS_PER_PRODUCER;
+    log.info("Unbounded queue: {} events in {}ms ({} events/s) with a peak of {} queued",
+      total, unboundedMillis, total * 1000 / Math.max(1, unboundedMillis), unboundedPeak);
+    log.info("Ring buffer: {} events in {}ms ({} events/s), {} logged, {} dropped",
+      total, ringMillis, total * 1000 / Math.max(1, ringMillis), ringDelegate.count.get(), ringAppender.getDroppedCount());
+    log.info("Ring buffer (INFO): {} events in {}ms ({} events/s), {} logged",
+      total, losslessMillis, total * 1000 / Math.max(1, losslessMillis), losslessDelegate.count.get());
+
+    assertThat(unboundedDelegate.count.get()).isEqualTo(total);
+
+    // Every event is either logged or counted as dropped and nothing is left behind after stop
+    assertThat(ringDelegate.count.get() + ringAppender.getDroppedCount()).isEqualTo(total);
+    assertThat(ringAppender.getAppendedCount()).isEqualTo(ringDelegate.count.get());
+    assertThat(ringAppender.getPendingCount()).isEqualTo(0);
+
+    assertThat(losslessDelegate.count.get()).isEqualTo(total);
+    assertThat(losslessAppender.getDroppedCount()).isEqualTo(0);
+
+  }
+
+  /**
+   * @return The peak number of queued events
+   */
+  private long runUnboundedQueue(final CountingAppender delegate) throws Exception {
+
+    final BlockingQueue<ILoggingEvent> queue = Queues.newLinkedBlockingQueue();
+    final AtomicLong peak = new AtomicLong();
+
+    // The dispatcher of the replaced appender
+    Thread dispatcher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        List<ILoggingEvent> batch = Lists.newArrayListWithCapacity(1000);
+        long remaining = PRODUCERS * EVENTS_PER_PRODUCER;
+        try {
+          while (remaining > 0) {
+            peak.set(Math.max(peak.get(), queue.size()));
+            batch.add(queue.take());
+            queue.drainTo(batch, 999);
+            for (ILoggingEvent event : batch) {
+              delegate.doAppend(event);
+            }
+            remaining -= batch.size();
+            batch.clear();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    dispatcher.start();
+
+    produce(Level.DEBUG, new EventSink() {
+      @Override
+      public void append(ILoggingEvent event) {
+        event.prepareForDeferredProcessing();
+        queue.add(event);
+      }
+    });
+
+    dispatcher.join();
+
+    return peak.get();
+  }
+
+  private AsyncAppender runRingBuffer(CountingAppender delegate, Level level) throws Exception {
+
+    final AsyncAppender appender = AsyncAppender.wrap(delegate, AsyncAppenderTest.newAsyncConfiguration(QUEUE_CAPACITY));
+
+    produce(level, new EventSink() {
+      @Override
+      public void append(ILoggingEvent event) {
+        appender.doAppend(event);
+      }
+    });
+
+    appender.stop();
+
+    return appender;
+  }
+
+  private void produce(final Level level, final EventSink eventSink) throws InterruptedException {
+
+    final CountDownLatch startLatch = new CountDownLatch(1);
+
+    List<Thread> producers = Lists.newArrayList();
+    for (int p = 0; p < PRODUCERS; p++) {
+      Thread producer = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            startLatch.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+            eventSink.append(new LoggingEvent(AsyncAppenderFunctionalTest.class.getName(), logger, level, "Block {} of {}", null, new Object[]{i, EVENTS_PER_PRODUCER}));
+          }
+        }
+      });
+      producer.start();
+      producers.add(producer);
+    }
+
+    startLatch.countDown();
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+  }
+
+  private interface EventSink {
+    void append(ILoggingEvent event);
+  }
+
+  /**
+   * <p>Appender with the cost of formatting the message</p>
+   */
+  private class CountingAppender extends AppenderBase<ILoggingEvent> {
+
+    private final AtomicLong count = new AtomicLong();
+
+    private CountingAppender() {
+      setContext(loggerContext);
+      start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent eventObject) {
+      eventObject.getFormattedMessage();
+      count.incrementAndGet();
+    }
+  }
+
+}
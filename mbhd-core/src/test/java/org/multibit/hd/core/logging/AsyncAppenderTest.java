@@ -0,0 +1,229 @@
+package org.multibit.hd.core.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.config.LoggingConfiguration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class AsyncAppenderTest {
+
+  private LoggerContext loggerContext;
+
+  private ch.qos.logback.classic.Logger logger;
+
+  private RecordingAppender delegate;
+
+  @Before
+  public void setUp() throws Exception {
+
+    loggerContext = new LoggerContext();
+    logger = loggerContext.getLogger(AsyncAppenderTest.class);
+
+    delegate = new RecordingAppender();
+    delegate.setContext(loggerContext);
+    delegate.start();
+
+  }
+
+  @Test
+  public void testDrainOnStop() throws Exception {
+
+    AsyncAppender testObject = AsyncAppender.wrap(delegate, newAsyncConfiguration(16_384));
+
+    for (int i = 0; i < 5_000; i++) {
+      testObject.doAppend(newEvent(Level.DEBUG, "Event " + i));
+    }
+
+    testObject.stop();
+
+    assertThat(delegate.events).hasSize(5_000);
+    assertThat(delegate.events.get(4_999).getFormattedMessage()).isEqualTo("Event 4999");
+    assertThat(testObject.getAppendedCount()).isEqualTo(5_000);
+    assertThat(testObject.getDroppedCount()).isEqualTo(0);
+
+  }
+
+  @Test
+  public void testDropsDebugAndKeepsWarnWhenFull() throws Exception {
+
+    final AsyncAppender testObject = AsyncAppender.wrap(delegate, newAsyncConfiguration(8));
+
+    // Hold the dispatcher in the delegate so nothing leaves the buffer
+    delegate.blockingLatch = new CountDownLatch(1);
+    testObject.doAppend(newEvent(Level.INFO, "Blocking"));
+    assertThat(delegate.blockedLatch.await(5, TimeUnit.SECONDS)).isTrue();
+
+    for (int i = 0; i < 8; i++) {
+      testObject.doAppend(newEvent(Level.DEBUG, "Buffered " + i));
+    }
+    for (int i = 0; i < 5; i++) {
+      testObject.doAppend(newEvent(Level.DEBUG, "Dropped " + i));
+    }
+
+    assertThat(testObject.getDroppedCount()).isEqualTo(5);
+
+    // A warning waits for space rather than be lost
+    final CountDownLatch warnLatch = new CountDownLatch(1);
+    Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        testObject.doAppend(newEvent(Level.WARN, "Warning"));
+        warnLatch.countDown();
+      }
+    });
+    producer.start();
+
+    assertThat(warnLatch.await(200, TimeUnit.MILLISECONDS)).isFalse();
+
+    delegate.blockingLatch.countDown();
+    assertThat(warnLatch.await(5, TimeUnit.SECONDS)).isTrue();
+
+    testObject.stop();
+
+    assertThat(delegate.events).hasSize(10);
+    assertThat(delegate.events.get(9).getFormattedMessage()).isEqualTo("Warning");
+    assertThat(testObject.getAppendedCount()).isEqualTo(10);
+    assertThat(testObject.getDroppedCount()).isEqualTo(5);
+
+  }
+
+  @Test
+  public void testWarnDroppedAfterBlockingTime() throws Exception {
+
+    LoggingConfiguration.AsyncConfiguration async = newAsyncConfiguration(8);
+    async.setMaxBlockingTimeMillis(100);
+    AsyncAppender testObject = AsyncAppender.wrap(delegate, async);
+
+    delegate.blockingLatch = new CountDownLatch(1);
+    testObject.doAppend(newEvent(Level.INFO, "Blocking"));
+    assertThat(delegate.blockedLatch.await(5, TimeUnit.SECONDS)).isTrue();
+
+    for (int i = 0; i < 8; i++) {
+      testObject.doAppend(newEvent(Level.DEBUG, "Buffered " + i));
+    }
+
+    // The warning gives up rather than wait for the dispatcher indefinitely
+    long started = System.currentTimeMillis();
+    testObject.doAppend(newEvent(Level.WARN, "Warning"));
+    assertThat(System.currentTimeMillis() - started).isLessThan(2_000);
+    assertThat(testObject.getDroppedCount()).isEqualTo(1);
+
+    delegate.blockingLatch.countDown();
+    testObject.stop();
+
+    assertThat(delegate.events).hasSize(9);
+
+  }
+
+  @Test
+  public void testDispatcherNeverWaits() throws Exception {
+
+    final AsyncAppender[] testObject = new AsyncAppender[1];
+
+    // A delegate that fills the buffer and then logs a warning from the dispatcher thread
+    final CountDownLatch warnLatch = new CountDownLatch(1);
+    AppenderBase<ILoggingEvent> loggingDelegate = new AppenderBase<ILoggingEvent>() {
+      @Override
+      protected void append(ILoggingEvent eventObject) {
+        if ("Blocking".equals(eventObject.getFormattedMessage())) {
+          for (int i = 0; i < 8; i++) {
+            testObject[0].doAppend(newEvent(Level.DEBUG, "Buffered " + i));
+          }
+          testObject[0].doAppend(newEvent(Level.WARN, "Warning"));
+          warnLatch.countDown();
+        }
+      }
+    };
+    loggingDelegate.setContext(loggerContext);
+    loggingDelegate.start();
+
+    testObject[0] = AsyncAppender.wrap(loggingDelegate, newAsyncConfiguration(8));
+    testObject[0].doAppend(newEvent(Level.INFO, "Blocking"));
+
+    // The blocking time is 5 seconds so only an immediate drop meets this
+    assertThat(warnLatch.await(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(testObject[0].getDroppedCount()).isEqualTo(1);
+
+    testObject[0].stop();
+
+  }
+
+  @Test
+  public void testMessageFormattedOnCallingThread() throws Exception {
+
+    AsyncAppender testObject = AsyncAppender.wrap(delegate, newAsyncConfiguration(16));
+
+    StringBuilder argument = new StringBuilder("before");
+    testObject.doAppend(new LoggingEvent(AsyncAppenderTest.class.getName(), logger, Level.INFO, "Value {}", null, new Object[]{argument}));
+    argument.replace(0, argument.length(), "after");
+
+    testObject.stop();
+
+    assertThat(delegate.events.get(0).getFormattedMessage()).isEqualTo("Value before");
+
+  }
+
+  @Test
+  public void testThreadNameCapturedOnCallingThread() throws Exception {
+
+    AsyncAppender testObject = AsyncAppender.wrap(delegate, newAsyncConfiguration(16));
+
+    testObject.doAppend(newEvent(Level.INFO, "Thread"));
+    testObject.stop();
+
+    assertThat(delegate.events.get(0).getThreadName()).isEqualTo(Thread.currentThread().getName());
+
+  }
+
+  private ILoggingEvent newEvent(Level level, String message) {
+    return new LoggingEvent(AsyncAppenderTest.class.getName(), logger, level, message, null, null);
+  }
+
+  static LoggingConfiguration.AsyncConfiguration newAsyncConfiguration(int queueCapacity) {
+
+    LoggingConfiguration.AsyncConfiguration async = new LoggingConfiguration.AsyncConfiguration();
+    async.setQueueCapacity(queueCapacity);
+    async.setMaxFlushTimeMillis(5_000);
+    async.setMaxBlockingTimeMillis(5_000);
+
+    return async;
+  }
+
+  /**
+   * <p>Appender to record the delivered events and optionally block the dispatcher</p>
+   */
+  private static class RecordingAppender extends AppenderBase<ILoggingEvent> {
+
+    private final List<ILoggingEvent> events = Collections.synchronizedList(Lists.<ILoggingEvent>newArrayList());
+
+    private final CountDownLatch blockedLatch = new CountDownLatch(1);
+
+    private volatile CountDownLatch blockingLatch = new CountDownLatch(0);
+
+    @Override
+    protected void append(ILoggingEvent eventObject) {
+
+      events.add(eventObject);
+      blockedLatch.countDown();
+
+      try {
+        blockingLatch.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,91 @@
+package org.multibit.hd.core.logging;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MpscRingBufferTest {
+
+  @Test
+  public void testCapacityIsBounded() throws Exception {
+
+    MpscRingBuffer<Integer> testObject = new MpscRingBuffer<>(5);
+
+    assertThat(testObject.capacity()).isEqualTo(8);
+
+    for (int i = 0; i < 8; i++) {
+      assertThat(testObject.offer(i)).isTrue();
+    }
+    assertThat(testObject.offer(8)).isFalse();
+
+    assertThat(testObject.poll()).isEqualTo(0);
+    assertThat(testObject.offer(8)).isTrue();
+
+    List<Integer> drained = Lists.newArrayList();
+    assertThat(testObject.drainTo(drained, 100)).isEqualTo(8);
+    assertThat(drained.get(7)).isEqualTo(8);
+    assertThat(testObject.isEmpty()).isTrue();
+    assertThat(testObject.poll()).isNull();
+
+  }
+
+  @Test
+  public void testManyProducersSingleConsumer() throws Exception {
+
+    final int producerCount = 4;
+    final int perProducer = 100_000;
+
+    final MpscRingBuffer<long[]> testObject = new MpscRingBuffer<>(1024);
+    final CountDownLatch startLatch = new CountDownLatch(1);
+
+    List<Thread> producers = Lists.newArrayList();
+    for (int p = 0; p < producerCount; p++) {
+      final int producer = p;
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            startLatch.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (long i = 0; i < perProducer; i++) {
+            long[] element = new long[]{producer, i};
+            while (!testObject.offer(element)) {
+              Thread.yield();
+            }
+          }
+        }
+      });
+      thread.start();
+      producers.add(thread);
+    }
+
+    startLatch.countDown();
+
+    // Each producer's elements must arrive complete and in order
+    long[] expected = new long[producerCount];
+    int received = 0;
+    while (received < producerCount * perProducer) {
+      long[] element = testObject.poll();
+      if (element == null) {
+        Thread.yield();
+        continue;
+      }
+      assertThat(element[1]).isEqualTo(expected[(int) element[0]]);
+      expected[(int) element[0]]++;
+      received++;
+    }
+
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    assertThat(testObject.isEmpty()).isTrue();
+
+  }
+
+}
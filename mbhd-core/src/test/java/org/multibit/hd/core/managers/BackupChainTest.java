@@ -0,0 +1,260 @@
+package org.multibit.hd.core.managers;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.crypto.AESStreams;
+import org.multibit.hd.core.files.SecureFiles;
+import org.multibit.hd.core.files.ZipFiles;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class BackupChainTest {
+
+  private static final String WALLET = WalletManager.MBHD_WALLET_NAME + WalletManager.MBHD_AES_SUFFIX;
+  private static final String PAYMENTS = "payments" + File.separator + "payments.aes";
+  private static final String CONTACTS = "contacts" + File.separator + "contacts.aes";
+  private static final String HISTORY = "history" + File.separator + "history.aes";
+
+  private final SecureRandom secureRandom = new SecureRandom();
+
+  private File walletDirectory;
+
+  private File backupDirectory;
+
+  private KeyParameter backupAESKey;
+
+  private BackupManifest backupManifest;
+
+  private List<File> backups;
+
+  @Before
+  public void setUp() throws Exception {
+
+    walletDirectory = SecureFiles.createTemporaryDirectory();
+    backupDirectory = SecureFiles.verifyOrCreateDirectory(walletDirectory, BackupManager.LOCAL_ZIP_BACKUP_DIRECTORY_NAME);
+
+    writeFile(WALLET, 100_000);
+    writeFile(PAYMENTS, 400_000);
+    writeFile(CONTACTS, 200_000);
+    writeFile(HISTORY, 50_000);
+
+    byte[] keyBytes = new byte[32];
+    secureRandom.nextBytes(keyBytes);
+    backupAESKey = new KeyParameter(keyBytes);
+
+    backupManifest = new BackupManifest(walletDirectory);
+
+    backups = Lists.newArrayList();
+
+  }
+
+  @Test
+  public void testRestoreAnyPointInChain() throws Exception {
+
+    File backup0 = backup("00");
+    Map<String, String> state0 = snapshot(walletDirectory);
+
+    writeFile(WALLET, 100_000);
+    File backup1 = backup("01");
+    Map<String, String> state1 = snapshot(walletDirectory);
+
+    // A deleted file must not come back from an earlier backup in the chain
+    assertThat(new File(walletDirectory, HISTORY).delete()).isTrue();
+    writeFile("rolling-backup" + File.separator + "mbhd-20150101000000.wallet.aes", 1_000);
+    File backup2 = backup("02");
+    Map<String, String> state2 = snapshot(walletDirectory);
+
+    assertThat(BackupChain.readManifest(backup0, backupAESKey).get().isFull()).isTrue();
+    assertThat(BackupChain.readManifest(backup1, backupAESKey).get().getBase().get()).isEqualTo(backup0.getName());
+    assertThat(BackupChain.readManifest(backup2, backupAESKey).get().getBase().get()).isEqualTo(backup1.getName());
+
+    assertThat(restore(backup0)).isEqualTo(state0);
+    assertThat(restore(backup1)).isEqualTo(state1);
+    assertThat(restore(backup2)).isEqualTo(state2);
+
+  }
+
+  @Test
+  public void testDeltaIsSmaller() throws Exception {
+
+    File fullBackup = backup("00");
+
+    // Only the wallet changes between backups
+    writeFile(WALLET, 100_000);
+    File deltaBackup = backup("01");
+
+    // The random content does not compress so the full backup is roughly the size of the wallet directory
+    assertThat(fullBackup.length()).isGreaterThan(750_000);
+    assertThat(deltaBackup.length()).isLessThan(fullBackup.length() / 5);
+
+  }
+
+  @Test
+  public void testMergeOnThinning() throws Exception {
+
+    File backup0 = backup("00");
+    writeFile(WALLET, 100_000);
+    File backup1 = backup("01");
+    writeFile(CONTACTS, 200_000);
+    File backup2 = backup("02");
+    Map<String, String> state2 = snapshot(walletDirectory);
+
+    // Remove a delta from the middle of the chain
+    BackupChain.mergeIntoDependent(backup1, backups, backupAESKey);
+    assertThat(backup1.delete()).isTrue();
+    backups.remove(backup1);
+
+    assertThat(BackupChain.readManifest(backup2, backupAESKey).get().getBase().get()).isEqualTo(backup0.getName());
+    assertThat(restore(backup2)).isEqualTo(state2);
+
+    // Remove the full backup so the delta becomes the new full backup
+    BackupChain.mergeIntoDependent(backup0, backups, backupAESKey);
+    assertThat(backup0.delete()).isTrue();
+    backups.remove(backup0);
+
+    assertThat(BackupChain.readManifest(backup2, backupAESKey).get().isFull()).isTrue();
+    assertThat(restore(backup2)).isEqualTo(state2);
+
+  }
+
+  @Test
+  public void testFullBackupAfterMaximumDeltas() throws Exception {
+
+    backup("00");
+    for (int i = 1; i <= BackupChain.MAXIMUM_DELTAS + 1; i++) {
+      writeFile(WALLET, 1_000);
+      File backup = backup(String.format("%02d", i));
+      assertThat(BackupChain.readManifest(backup, backupAESKey).get().getDepth()).isEqualTo(i % (BackupChain.MAXIMUM_DELTAS + 1));
+    }
+
+  }
+
+  @Test
+  public void testIncompleteChain() throws Exception {
+
+    File backup0 = backup("00");
+    writeFile(WALLET, 100_000);
+    File backup1 = backup("01");
+
+    assertThat(backup0.delete()).isTrue();
+
+    try {
+      restore(backup1);
+      fail("Expected an IOException for the missing base");
+    } catch (IOException e) {
+      // Expected
+    }
+
+  }
+
+  @Test
+  public void testLoneDelta() throws Exception {
+
+    File backup0 = backup("00");
+    writeFile(WALLET, 100_000);
+    File backup1 = backup("01");
+    Map<String, String> state1 = snapshot(walletDirectory);
+
+    // A delta copied out of the local backup directory on its own
+    File copyDirectory = SecureFiles.createTemporaryDirectory();
+    File loneDelta = new File(copyDirectory, backup1.getName());
+    Files.copy(backup1.toPath(), loneDelta.toPath());
+
+    try {
+      restore(loneDelta);
+      fail("Expected an IOException for the missing base");
+    } catch (IOException e) {
+      // The message tells the user which backup to copy alongside
+      assertThat(e.getMessage()).contains(backup0.getName());
+    }
+
+    Files.copy(backup0.toPath(), new File(copyDirectory, backup0.getName()).toPath());
+    assertThat(restore(loneDelta)).isEqualTo(state1);
+
+  }
+
+  @Test
+  public void testFileChangedDuringBackup() throws Exception {
+
+    backup("00");
+
+    // The wallet is autosaved after its digest is taken for the manifest
+    backupManifest = new BackupManifest(walletDirectory) {
+      @Override
+      public synchronized Map<String, String> digestFiles(Collection<String> relativePaths) throws IOException {
+        Map<String, String> digests = super.digestFiles(relativePaths);
+        writeFile(WALLET, 100_000);
+        return digests;
+      }
+    };
+    writeFile(WALLET, 100_000);
+    File backup1 = backup("01");
+    Map<String, String> state1 = snapshot(walletDirectory);
+
+    assertThat(restore(backup1)).isEqualTo(state1);
+
+    // The stable copies are removed
+    assertThat(backupDirectory.list()).hasSize(2);
+
+  }
+
+  private File backup(String suffix) throws IOException {
+
+    File backupFile = new File(backupDirectory, "mbhd-test-" + suffix + BackupManager.ENCRYPTED_BACKUP_FILE_EXTENSION);
+    BackupChain.write(walletDirectory, backups, backupFile, backupAESKey, backupManifest);
+    backups.add(backupFile);
+
+    return backupFile;
+  }
+
+  private Map<String, String> restore(File backupFile) throws IOException {
+
+    File restoreDirectory = SecureFiles.createTemporaryDirectory();
+    BackupChain.restore(backupFile, restoreDirectory, backupAESKey);
+
+    return snapshot(restoreDirectory);
+  }
+
+  /**
+   * @return The digest of each file that a zip backup would hold
+   */
+  private Map<String, String> snapshot(File directory) throws IOException {
+
+    Map<String, String> snapshot = Maps.newTreeMap();
+    for (String entryName : ZipFiles.listFolder(directory.getAbsolutePath(), false)) {
+      byte[] content = Files.readAllBytes(new File(directory, entryName).toPath());
+      snapshot.put(entryName, BaseEncoding.base16().encode(AESStreams.newDigest().digest(content)));
+    }
+
+    return snapshot;
+  }
+
+  private void writeFile(String relativePath, int length) throws IOException {
+
+    File file = new File(walletDirectory, relativePath);
+    SecureFiles.verifyOrCreateDirectory(file.getParentFile());
+
+    byte[] content = new byte[length];
+    secureRandom.nextBytes(content);
+    try (OutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(content);
+    }
+
+  }
+
+}
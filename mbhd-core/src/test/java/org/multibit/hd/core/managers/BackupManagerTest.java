@@ -15,8 +15,10 @@
  */
 package org.multibit.hd.core.managers;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.util.concurrent.Uninterruptibles;
+import org.bitcoinj.core.ECKey;
 import org.bitcoinj.core.Wallet;
 import org.junit.After;
 import org.junit.Before;
@@ -35,6 +37,7 @@ import org.multibit.hd.core.utils.Dates;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -130,6 +133,14 @@ public class BackupManagerTest {
     assertThat(cloudBackups).isNotNull();
     assertThat(cloudBackups.size()).isEqualTo(2);
 
+    // A cloud backup is always full so each one can be restored on its own
+    for (BackupSummary cloudBackup : cloudBackups) {
+      File loneCloudBackupFile = new File(SecureFiles.createTemporaryDirectory(), cloudBackup.getFile().getName());
+      Files.copy(cloudBackup.getFile().toPath(), loneCloudBackupFile.toPath());
+      assertThat(BackupManager.INSTANCE.loadZipBackup(loneCloudBackupFile, Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1)))
+        .isEqualTo(walletSummary.getWalletId());
+    }
+
     // Load in the wallet backup and compare the wallets
     WalletId recreatedWalletId= BackupManager.INSTANCE.loadZipBackup(localBackupFile, Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1));
     assertThat(walletSummary.getWalletId()).isEqualTo(recreatedWalletId);
@@ -145,4 +156,55 @@ public class BackupManagerTest {
     Wallet wallet = BackupManager.INSTANCE.loadRollingBackup(walletSummary.getWalletId(), password);
     assertThat(wallet).isNotNull();
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testRollingBackupCopiesUnchangedAutoSavedWallet() throws IOException {
+
+    File applicationDirectory = InstallationManager.getOrCreateApplicationDataDirectory();
+    BackupManager.INSTANCE.initialise(applicationDirectory, Optional.<File>absent());
+
+    SeedPhraseGenerator seedGenerator = new Bip39SeedPhraseGenerator();
+    byte[] seed = seedGenerator.convertToSeed(Bip39SeedPhraseGenerator.split(WalletIdTest.SEED_PHRASE_1));
+    String password = "credentials";
+
+    WalletSummary walletSummary = WalletManager
+      .INSTANCE
+      .getOrCreateMBHDSoftWalletSummaryFromSeed(
+        applicationDirectory,
+        seed,
+        Dates.nowInSeconds(),
+        password,
+        "Example",
+        "Example",
+        true);
+
+    Optional<String> walletFingerprint = WalletManager.INSTANCE.getWalletFingerprint(walletSummary.getWallet());
+    assertThat(walletFingerprint.isPresent()).isTrue();
+
+    // Distinct content shows whether the autosaved file was copied or the wallet was saved again
+    File walletDirectory = WalletManager.getOrCreateWalletDirectory(applicationDirectory, WalletManager.createWalletRoot(walletSummary.getWalletId()));
+    File autoSavedWalletFile = new File(walletDirectory, "autosaved.wallet.aes");
+    byte[] autoSavedContent = "autosaved".getBytes(Charsets.UTF_8);
+    Files.write(autoSavedWalletFile.toPath(), autoSavedContent);
+
+    BackupManager.INSTANCE.rememberAutoSavedWallet(walletSummary.getWalletId(), autoSavedWalletFile, walletFingerprint.get(), password);
+
+    File copiedRollingBackup = BackupManager.INSTANCE.createRollingBackup(walletSummary, password);
+    assertThat(Files.readAllBytes(copiedRollingBackup.toPath())).isEqualTo(autoSavedContent);
+
+    // A save started since the autosave (e.g. after a wallet extension was updated) means it must be saved again
+    WalletManager.INSTANCE.getWalletFingerprintForSave(walletSummary.getWallet());
+    Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
+
+    File savedRollingBackup = BackupManager.INSTANCE.createRollingBackup(walletSummary, password);
+    assertThat(savedRollingBackup).isNotEqualTo(copiedRollingBackup);
+    assertThat(Files.readAllBytes(savedRollingBackup.toPath())).isNotEqualTo(autoSavedContent);
+
+    // Changes are counted as they are made rather than when the wallet events are delivered
+    Wallet wallet = walletSummary.getWallet();
+    String fingerprintBeforeChange = WalletManager.INSTANCE.getWalletFingerprint(wallet).get();
+    wallet.addWatchedAddress(new ECKey().toAddress(wallet.getParams()));
+    assertThat(WalletManager.INSTANCE.getWalletFingerprint(wallet).get()).isNotEqualTo(fingerprintBeforeChange);
+
+  }
+}
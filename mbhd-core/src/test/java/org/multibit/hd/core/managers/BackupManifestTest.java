@@ -0,0 +1,88 @@
+package org.multibit.hd.core.managers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.dto.BackupType;
+import org.multibit.hd.core.files.SecureFiles;
+import org.multibit.hd.core.services.ContactService;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BackupManifestTest {
+
+  private File walletDirectory;
+
+  private BackupManifest testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    walletDirectory = SecureFiles.createTemporaryDirectory();
+    SecureFiles.verifyOrCreateDirectory(walletDirectory, ContactService.CONTACTS_DIRECTORY_NAME);
+
+    writeFile(WalletManager.MBHD_WALLET_NAME + WalletManager.MBHD_AES_SUFFIX, "wallet");
+    writeFile(ContactService.CONTACTS_DIRECTORY_NAME + File.separator + ContactService.CONTACTS_DATABASE_NAME, "contacts");
+
+    testObject = new BackupManifest(walletDirectory);
+
+  }
+
+  @Test
+  public void testUnchangedContentIsBackedUp() throws Exception {
+
+    String digest = testObject.digest(BackupType.LOCAL_ZIP);
+    assertThat(testObject.isBackedUp(BackupType.LOCAL_ZIP, digest)).isFalse();
+
+    testObject.recordBackup(BackupType.LOCAL_ZIP, digest);
+
+    assertThat(testObject.isBackedUp(BackupType.LOCAL_ZIP, testObject.digest(BackupType.LOCAL_ZIP))).isTrue();
+
+    // Each backup type is tracked separately
+    assertThat(testObject.isBackedUp(BackupType.CLOUD_ZIP, testObject.digest(BackupType.CLOUD_ZIP))).isFalse();
+
+  }
+
+  @Test
+  public void testChangedContentIsDetected() throws Exception {
+
+    String digest = testObject.digest(BackupType.LOCAL_ZIP);
+    testObject.recordBackup(BackupType.LOCAL_ZIP, digest);
+
+    // Same length and (most likely) the same modification time so only the content differs
+    writeFile(ContactService.CONTACTS_DIRECTORY_NAME + File.separator + ContactService.CONTACTS_DATABASE_NAME, "CONTACTS");
+
+    assertThat(testObject.isBackedUp(BackupType.LOCAL_ZIP, testObject.digest(BackupType.LOCAL_ZIP))).isFalse();
+
+  }
+
+  @Test
+  public void testRollingBackupOnlyTracksWallet() throws Exception {
+
+    String rollingDigest = testObject.digest(BackupType.ROLLING);
+    String zipDigest = testObject.digest(BackupType.LOCAL_ZIP);
+
+    writeFile(ContactService.CONTACTS_DIRECTORY_NAME + File.separator + ContactService.CONTACTS_DATABASE_NAME, "changed contacts");
+
+    assertThat(testObject.digest(BackupType.ROLLING)).isEqualTo(rollingDigest);
+    assertThat(testObject.digest(BackupType.LOCAL_ZIP)).isNotEqualTo(zipDigest);
+
+    // A new or deleted file is a change
+    new File(walletDirectory, WalletManager.MBHD_WALLET_NAME + WalletManager.MBHD_AES_SUFFIX).delete();
+    assertThat(testObject.digest(BackupType.ROLLING)).isNotEqualTo(rollingDigest);
+
+  }
+
+  private void writeFile(String relativePath, String content) throws IOException {
+
+    try (OutputStream outputStream = new FileOutputStream(new File(walletDirectory, relativePath))) {
+      outputStream.write(content.getBytes("UTF-8"));
+    }
+
+  }
+
+}
@@ -0,0 +1,129 @@
+package org.multibit.hd.core.managers;
+
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.dto.WalletId;
+import org.multibit.hd.core.dto.WalletSummary;
+import org.multibit.hd.core.files.SecureFiles;
+
+import java.io.File;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class WalletSummaryCatalogueTest {
+
+  private final static String WALLET_DIRECTORY_1 = "mbhd-11111111-22222222-33333333-44444444-55555555";
+  private final static String WALLET_DIRECTORY_2 = "mbhd-66666666-77777777-88888888-99999999-aaaaaaaa";
+
+  private final static String EXPECTED_WALLET_ID_1 = "11111111-22222222-33333333-44444444-55555555";
+  private final static String EXPECTED_WALLET_ID_2 = "66666666-77777777-88888888-99999999-aaaaaaaa";
+
+  private WalletSummaryCatalogue testObject;
+
+  private List<File> walletDirectories;
+
+  @Before
+  public void setUp() throws Exception {
+
+    File temporaryDirectory = SecureFiles.createTemporaryDirectory();
+
+    File walletDirectory1 = SecureFiles.verifyOrCreateDirectory(temporaryDirectory, WALLET_DIRECTORY_1);
+    File walletDirectory2 = SecureFiles.verifyOrCreateDirectory(temporaryDirectory, WALLET_DIRECTORY_2);
+
+    writeSummary(walletDirectory1, EXPECTED_WALLET_ID_1, "Wallet 1");
+    writeSummary(walletDirectory2, EXPECTED_WALLET_ID_2, "Wallet 2");
+
+    walletDirectories = Lists.newArrayList(walletDirectory1, walletDirectory2);
+
+    testObject = new WalletSummaryCatalogue();
+
+  }
+
+  @Test
+  public void testSummariesAreCachedInOrder() throws Exception {
+
+    List<WalletSummary> walletSummaries = testObject.getWalletSummaries(walletDirectories);
+
+    assertThat(walletSummaries.size()).isEqualTo(2);
+    assertThat(walletSummaries.get(0).getWalletId().toFormattedString()).isEqualTo(EXPECTED_WALLET_ID_1);
+    assertThat(walletSummaries.get(0).getName()).isEqualTo("Wallet 1");
+    assertThat(walletSummaries.get(1).getWalletId().toFormattedString()).isEqualTo(EXPECTED_WALLET_ID_2);
+    assertThat(walletSummaries.get(1).getName()).isEqualTo("Wallet 2");
+    assertThat(testObject.size()).isEqualTo(2);
+
+    // Changes made by a caller must not leak into the cache
+    walletSummaries.get(0).setName("Changed by caller");
+
+    List<WalletSummary> cachedWalletSummaries = testObject.getWalletSummaries(walletDirectories);
+    assertThat(cachedWalletSummaries.get(0).getName()).isEqualTo("Wallet 1");
+
+  }
+
+  @Test
+  public void testUpdatedSummaryIsReloaded() throws Exception {
+
+    testObject.getWalletSummaries(walletDirectories);
+
+    // A change of name and notes also changes the file length so the stale entry is detected without the watcher
+    writeSummary(walletDirectories.get(1), EXPECTED_WALLET_ID_2, "Renamed wallet 2");
+
+    List<WalletSummary> walletSummaries = testObject.getWalletSummaries(walletDirectories);
+    assertThat(walletSummaries.get(1).getName()).isEqualTo("Renamed wallet 2");
+
+    testObject.invalidateAll();
+    assertThat(testObject.size()).isEqualTo(0);
+
+  }
+
+  @Test
+  public void testRemovedDirectoryIsForgotten() throws Exception {
+
+    testObject.getWalletSummaries(walletDirectories);
+    assertThat(testObject.watchedSize()).isEqualTo(2);
+
+    File removedWalletDirectory = walletDirectories.remove(1);
+    for (File file : removedWalletDirectory.listFiles()) {
+      assertThat(file.delete()).isTrue();
+    }
+    assertThat(removedWalletDirectory.delete()).isTrue();
+
+    List<WalletSummary> walletSummaries = testObject.getWalletSummaries(walletDirectories);
+    assertThat(walletSummaries.size()).isEqualTo(1);
+    assertThat(testObject.size()).isEqualTo(1);
+    assertThat(testObject.watchedSize()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testShutdownReleasesWatcher() throws Exception {
+
+    testObject.getWalletSummaries(walletDirectories);
+
+    testObject.shutdownNow();
+    assertThat(testObject.size()).isEqualTo(0);
+    assertThat(testObject.watchedSize()).isEqualTo(0);
+
+    // The catalogue starts again on next use
+    List<WalletSummary> walletSummaries = testObject.getWalletSummaries(walletDirectories);
+    assertThat(walletSummaries.get(1).getName()).isEqualTo("Wallet 2");
+    assertThat(testObject.size()).isEqualTo(2);
+    assertThat(testObject.watchedSize()).isEqualTo(2);
+
+    testObject.shutdownNow();
+
+  }
+
+  private void writeSummary(File walletDirectory, String walletId, String name) {
+
+    WalletSummary walletSummary = new WalletSummary();
+    walletSummary.setWalletId(new WalletId(walletId));
+    walletSummary.setName(name);
+    walletSummary.setNotes("Notes for " + name);
+
+    WalletManager.updateWalletSummary(WalletManager.getOrCreateWalletSummaryFile(walletDirectory), walletSummary);
+
+  }
+
+}
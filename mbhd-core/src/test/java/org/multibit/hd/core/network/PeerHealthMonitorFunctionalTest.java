@@ -0,0 +1,142 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * <p>Benchmark of the pre-broadcast peer check against simulated slow and dead peers:</p>
+ * <ul>
+ * <li>Sequential pings with a timeout per peer (previous behaviour)</li>
+ * <li>Concurrent probe returning on the first response</li>
+ * <li>Recent liveness from background pings (no probe)</li>
+ * </ul>
+ *
+ * <p>Timings are scaled down by a factor of 10 from the network service (4s becomes 400ms).</p>
+ */
+public class PeerHealthMonitorFunctionalTest {
+
+  private static final Logger log = LoggerFactory.getLogger(PeerHealthMonitorFunctionalTest.class);
+
+  private static final long TIMEOUT_MILLIS = 400;
+
+  /**
+   * The simulated round trip times in connection order (-1 never responds)
+   */
+  private static final long[] PEER_RTT_MILLIS = {-1, -1, -1, 300, 250, 20};
+
+  private ListeningScheduledExecutorService scheduler;
+
+  @Before
+  public void setUp() throws Exception {
+
+    scheduler = SafeExecutors.newScheduledThreadPool(2, "benchmark-peers");
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    scheduler.shutdownNow();
+
+  }
+
+  @Test
+  public void testPreBroadcastLatency() throws Exception {
+
+    // Previous behaviour
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    boolean sequentialResult = false;
+    for (ListenableFuture<Long> ping : startPings().values()) {
+      try {
+        ping.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        sequentialResult = true;
+        break;
+      } catch (TimeoutException e) {
+        // Try the next peer
+      }
+    }
+    long sequentialMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    PeerHealthMonitor testObject = new PeerHealthMonitor(TimeUnit.MINUTES.toMillis(1));
+
+    stopwatch = Stopwatch.createStarted();
+    boolean probeResult = testObject.probe(startPings(), TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    long probeMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    // Allow the slower peers to complete as the background refresh would
+    Thread.sleep(TIMEOUT_MILLIS);
+
+    stopwatch = Stopwatch.createStarted();
+    boolean livenessResult = testObject.isRecentlyLive(peerIds());
+    long livenessMicros = stopwatch.elapsed(TimeUnit.MICROSECONDS);
+
+    log.info("Sequential pings: {}ms", sequentialMillis);
+    log.info("Concurrent probe: {}ms", probeMillis);
+    log.info("Recent liveness: {}us", livenessMicros);
+    for (PeerHealthMonitor.PeerHealth peerHealth : testObject.getPeerHealth()) {
+      log.info("{}", peerHealth);
+    }
+
+    assertThat(sequentialResult).isTrue();
+    assertThat(probeResult).isTrue();
+    assertThat(livenessResult).isTrue();
+
+    // The dead peers no longer hold up the broadcast
+    assertThat(sequentialMillis).isGreaterThanOrEqualTo(3 * TIMEOUT_MILLIS);
+    assertThat(probeMillis).isLessThan(TIMEOUT_MILLIS / 2);
+
+  }
+
+  /**
+   * @return Simulated pings in peer connection order
+   */
+  private Map<String, ListenableFuture<Long>> startPings() {
+
+    Map<String, ListenableFuture<Long>> pings = Maps.newLinkedHashMap();
+
+    for (int i = 0; i < PEER_RTT_MILLIS.length; i++) {
+      final long rttMillis = PEER_RTT_MILLIS[i];
+      final SettableFuture<Long> ping = SettableFuture.create();
+      if (rttMillis >= 0) {
+        scheduler.schedule(
+          new Runnable() {
+            @Override
+            public void run() {
+              ping.set(rttMillis);
+            }
+          }, rttMillis, TimeUnit.MILLISECONDS);
+      }
+      pings.put("peer-" + i, ping);
+    }
+
+    return pings;
+  }
+
+  private List<String> peerIds() {
+
+    List<String> peerIds = Lists.newArrayList();
+    for (int i = 0; i < PEER_RTT_MILLIS.length; i++) {
+      peerIds.add("peer-" + i);
+    }
+
+    return peerIds;
+  }
+
+}
@@ -0,0 +1,145 @@
+package org.multibit.hd.core.network;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PeerHealthMonitorTest {
+
+  private PeerHealthMonitor testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    testObject = new PeerHealthMonitor(TimeUnit.MINUTES.toMillis(1));
+
+  }
+
+  @Test
+  public void testProbeReturnsOnFirstSuccess() throws Exception {
+
+    SettableFuture<Long> dead = SettableFuture.create();
+    SettableFuture<Long> live = SettableFuture.create();
+    live.set(25L);
+
+    Map<String, ListenableFuture<Long>> pings = ImmutableMap.<String, ListenableFuture<Long>>of("dead", dead, "live", live);
+
+    long start = System.currentTimeMillis();
+    assertThat(testObject.probe(pings, 5, TimeUnit.SECONDS)).isTrue();
+    assertThat(System.currentTimeMillis() - start).isLessThan(1_000L);
+
+    assertThat(testObject.getPeerHealth("live").get().getLastRttMillis()).isEqualTo(25L);
+
+    // The outcome of the slower ping is still recorded
+    dead.setException(new IllegalStateException("Peer disconnected"));
+    assertThat(testObject.getPeerHealth("dead").get().getConsecutiveFailures()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testProbeFailsWhenAllPeersFail() throws Exception {
+
+    SettableFuture<Long> first = SettableFuture.create();
+    SettableFuture<Long> second = SettableFuture.create();
+    first.setException(new IllegalStateException("Peer disconnected"));
+    second.setException(new IllegalStateException("Peer disconnected"));
+
+    Map<String, ListenableFuture<Long>> pings = ImmutableMap.<String, ListenableFuture<Long>>of("first", first, "second", second);
+
+    long start = System.currentTimeMillis();
+    assertThat(testObject.probe(pings, 5, TimeUnit.SECONDS)).isFalse();
+
+    // No need to wait for the timeout once every peer has failed
+    assertThat(System.currentTimeMillis() - start).isLessThan(1_000L);
+
+  }
+
+  @Test
+  public void testProbeTimesOut() throws Exception {
+
+    Map<String, ListenableFuture<Long>> pings = ImmutableMap.<String, ListenableFuture<Long>>of("silent", SettableFuture.<Long>create());
+
+    assertThat(testObject.probe(pings, 50, TimeUnit.MILLISECONDS)).isFalse();
+    assertThat(testObject.probe(Collections.<String, ListenableFuture<Long>>emptyMap(), 50, TimeUnit.MILLISECONDS)).isFalse();
+
+    // The silent peer is recorded as failed
+    assertThat(testObject.getPeerHealth("silent").get().getConsecutiveFailures()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testPendingPingsExpire() throws Exception {
+
+    testObject.track("peer", immediatePing(100L));
+    SettableFuture<Long> silent = SettableFuture.create();
+    testObject.track("peer", silent);
+
+    // Not yet overdue
+    testObject.expirePendingPings(1, TimeUnit.MINUTES);
+    assertThat(testObject.isRecentlyLive(Lists.newArrayList("peer"))).isTrue();
+
+    Thread.sleep(5);
+    testObject.expirePendingPings(1, TimeUnit.MILLISECONDS);
+    assertThat(testObject.getPeerHealth("peer").get().getConsecutiveFailures()).isEqualTo(1);
+    assertThat(testObject.isRecentlyLive(Lists.newArrayList("peer"))).isFalse();
+
+    // A late outcome is ignored
+    silent.set(100L);
+    assertThat(testObject.getPeerHealth("peer").get().getConsecutiveFailures()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testLiveness() throws Exception {
+
+    assertThat(testObject.isRecentlyLive(Lists.newArrayList("peer"))).isFalse();
+
+    testObject.track("peer", immediatePing(100L));
+    assertThat(testObject.isRecentlyLive(Lists.newArrayList("peer"))).isTrue();
+    assertThat(testObject.isRecentlyLive(Lists.newArrayList("other"))).isFalse();
+
+    // A failure after the success means the peer may have gone away
+    SettableFuture<Long> failed = SettableFuture.create();
+    failed.setException(new IllegalStateException("Peer disconnected"));
+    testObject.track("peer", failed);
+    assertThat(testObject.isRecentlyLive(Lists.newArrayList("peer"))).isFalse();
+
+    // Without a liveness window the probe is always required
+    PeerHealthMonitor noWindow = new PeerHealthMonitor(0);
+    noWindow.track("peer", immediatePing(100L));
+    Thread.sleep(5);
+    assertThat(noWindow.isRecentlyLive(Lists.newArrayList("peer"))).isFalse();
+
+  }
+
+  @Test
+  public void testRollingRoundTripTime() throws Exception {
+
+    testObject.track("peer", immediatePing(100L));
+    testObject.track("peer", immediatePing(200L));
+
+    PeerHealthMonitor.PeerHealth peerHealth = testObject.getPeerHealth("peer").get();
+    assertThat(peerHealth.getLastRttMillis()).isEqualTo(200L);
+    assertThat(peerHealth.getAverageRttMillis()).isEqualTo(125L);
+
+    testObject.retainAll(Lists.newArrayList("other"));
+    assertThat(testObject.getPeerHealth()).isEmpty();
+
+  }
+
+  private ListenableFuture<Long> immediatePing(long rttMillis) {
+    SettableFuture<Long> ping = SettableFuture.create();
+    ping.set(rttMillis);
+    return ping;
+  }
+
+}
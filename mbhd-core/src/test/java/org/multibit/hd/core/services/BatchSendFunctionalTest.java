@@ -0,0 +1,133 @@
+package org.multibit.hd.core.services;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.*;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.testing.FakeTxBuilder;
+import org.junit.Test;
+import org.multibit.hd.brit.dto.FeeState;
+import org.multibit.hd.core.dto.FiatPayment;
+import org.multibit.hd.core.dto.Recipient;
+import org.multibit.hd.core.dto.RecipientPayment;
+import org.multibit.hd.core.dto.SendRequestSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * <p>Throughput of paying many payees with individual sends against a single batched send:</p>
+ * <ul>
+ * <li>Transactions created, signed and committed</li>
+ * <li>Total transaction size and mining fees</li>
+ * <li>Elapsed time</li>
+ * </ul>
+ */
+public class BatchSendFunctionalTest {
+
+  private static final Logger log = LoggerFactory.getLogger(BatchSendFunctionalTest.class);
+
+  private static final NetworkParameters MAINNET = MainNetParams.get();
+
+  private static final int PAYEES = 200;
+
+  private static final Coin PAYOUT = Coin.parseCoin("0.001");
+
+  @Test
+  public void testBatchThroughput() throws Exception {
+
+    List<RecipientPayment> recipientPayments = Lists.newArrayList();
+    for (int i = 0; i < PAYEES; i++) {
+      recipientPayments.add(new RecipientPayment(new Recipient(new ECKey().toAddress(MAINNET)), PAYOUT, Optional.of("Payout " + i)));
+    }
+
+    // Individual sends
+    Wallet singleWallet = newFundedWallet();
+    Coin singleBalance = singleWallet.getBalance(Wallet.BalanceType.ESTIMATED);
+    long singleBytes = 0;
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    for (RecipientPayment recipientPayment : recipientPayments) {
+      singleBytes += send(singleWallet, newSummary(Lists.newArrayList(recipientPayment), singleWallet)).bitcoinSerialize().length;
+    }
+    long singleMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    Coin singleFees = singleBalance.subtract(singleWallet.getBalance(Wallet.BalanceType.ESTIMATED)).subtract(PAYOUT.multiply(PAYEES));
+
+    // One batched send
+    Wallet batchWallet = newFundedWallet();
+    Coin batchBalance = batchWallet.getBalance(Wallet.BalanceType.ESTIMATED);
+
+    stopwatch = Stopwatch.createStarted();
+    Transaction batchTx = send(batchWallet, newSummary(recipientPayments, batchWallet));
+    long batchBytes = batchTx.bitcoinSerialize().length;
+    long batchMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    Coin batchFees = batchBalance.subtract(batchWallet.getBalance(Wallet.BalanceType.ESTIMATED)).subtract(PAYOUT.multiply(PAYEES));
+
+    log.info("Individual sends: {} transactions, {} bytes, {} mining fees, {}ms", PAYEES, singleBytes, singleFees.toFriendlyString(), singleMillis);
+    log.info("Batched send: 1 transaction, {} bytes, {} mining fees, {}ms", batchBytes, batchFees.toFriendlyString(), batchMillis);
+
+    // Every payee is paid by the single transaction
+    assertThat(batchTx.getOutputs().size()).isGreaterThanOrEqualTo(PAYEES);
+
+    assertThat(batchBytes).isLessThan(singleBytes / 2);
+    assertThat(batchFees.isLessThan(singleFees.divide(10))).isTrue();
+
+  }
+
+  /**
+   * @return The committed transaction
+   */
+  private Transaction send(Wallet wallet, SendRequestSummary sendRequestSummary) throws Exception {
+
+    Wallet.SendRequest sendRequest = Wallet.SendRequest.forTx(BitcoinNetworkService.newRecipientTransaction(sendRequestSummary));
+    sendRequest.fee = Coin.ZERO;
+    sendRequest.feePerKb = sendRequestSummary.getFeePerKB();
+    sendRequest.changeAddress = sendRequestSummary.getChangeAddress();
+
+    // Complete and sign
+    wallet.completeTx(sendRequest);
+
+    // Allow the change to be spent by the next send
+    sendRequest.tx.getConfidence().markBroadcastBy(new PeerAddress(InetAddress.getByAddress(new byte[]{1, 2, 3, 4})));
+    sendRequest.tx.getConfidence().markBroadcastBy(new PeerAddress(InetAddress.getByAddress(new byte[]{10, 2, 3, 4})));
+    wallet.commitTx(sendRequest.tx);
+
+    return sendRequest.tx;
+  }
+
+  private SendRequestSummary newSummary(List<RecipientPayment> recipientPayments, Wallet wallet) {
+
+    return new SendRequestSummary(
+      recipientPayments,
+      Optional.<FiatPayment>absent(),
+      wallet.freshReceiveAddress(),
+      BitcoinNetworkService.DEFAULT_FEE_PER_KB,
+      null,
+      Optional.<FeeState>absent(),
+      false
+    );
+
+  }
+
+  private Wallet newFundedWallet() throws Exception {
+
+    Wallet wallet = new Wallet(MAINNET);
+
+    Transaction tx = FakeTxBuilder.createFakeTx(MAINNET, Coin.COIN, wallet.freshReceiveAddress());
+
+    // Mark it as coming from self so that it can be spent when pending
+    tx.getConfidence().setSource(TransactionConfidence.Source.SELF);
+    tx.getConfidence().markBroadcastBy(new PeerAddress(InetAddress.getByAddress(new byte[]{1, 2, 3, 4})));
+    tx.getConfidence().markBroadcastBy(new PeerAddress(InetAddress.getByAddress(new byte[]{10, 2, 3, 4})));
+    wallet.receivePending(tx, null);
+
+    return wallet;
+  }
+
+}
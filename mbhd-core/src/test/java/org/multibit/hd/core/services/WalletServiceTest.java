@@ -8,6 +8,7 @@ import org.bitcoinj.wallet.DeterministicSeed;
 import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +44,8 @@ public class WalletServiceTest {
 
   private WalletSummary walletSummary;
 
+  private File temporaryDirectory;
+
   public static final String PASSWORD = "1throckSplockChockAdock";
 
   public static final String CHANGED_PASSWORD1 = "2orinocoFlow";
@@ -62,7 +65,7 @@ public class WalletServiceTest {
     networkParameters = BitcoinNetwork.current().get();
 
     // Create a random temporary directory where the wallet directory will be written
-    File temporaryDirectory = SecureFiles.createTemporaryDirectory();
+    temporaryDirectory = SecureFiles.createTemporaryDirectory();
 
     // Create a wallet from a seed
     SeedPhraseGenerator seedGenerator = new Bip39SeedPhraseGenerator();
@@ -128,6 +131,77 @@ public class WalletServiceTest {
     checkPaymentRequest(paymentRequestData1, newPaymentRequestDatas.iterator().next());
   }
 
+  @Test
+  public void testPaymentDataListIsIncrementalSnapshot() throws Exception {
+
+    // An empty wallet gives an empty snapshot
+    List<PaymentData> firstSnapshot = walletService.getPaymentDataList();
+    assertThat(firstSnapshot).isEmpty();
+
+    // Nothing has changed so the same snapshot is returned without copying
+    assertThat(walletService.getPaymentDataList()).isSameAs(firstSnapshot);
+
+    // Add an unfunded payment request
+    PaymentRequestData paymentRequestData1 = new PaymentRequestData();
+    paymentRequestData1.setAddress(Addresses.parse("1AhN6rPdrMuKBGFDKR1k9A8SCLYaNgXhty").get());
+    paymentRequestData1.setAmountCoin(Coin.valueOf(245));
+    paymentRequestData1.setDate(new DateTime());
+    paymentRequestData1.setLabel("label1");
+    paymentRequestData1.setNote("note1");
+
+    walletService.addPaymentRequest(paymentRequestData1);
+
+    // The snapshot is refreshed to include it
+    List<PaymentData> secondSnapshot = walletService.getPaymentDataList();
+    assertThat(secondSnapshot).isNotSameAs(firstSnapshot);
+    assertThat(secondSnapshot.size()).isEqualTo(1);
+    assertThat(secondSnapshot.get(0)).isSameAs(paymentRequestData1);
+
+    // Marking an unknown transaction as changed does not disturb the snapshot contents
+    walletService.markTransactionAsChanged("0000000000000000000000000000000000000000000000000000000000000000");
+    assertThat(walletService.getPaymentDataList().size()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testJournalLeftBehindBySnapshotIsNotReplayed() throws Exception {
+
+    PaymentRequestData paymentRequestData1 = new PaymentRequestData();
+    paymentRequestData1.setAddress(Addresses.parse("1AhN6rPdrMuKBGFDKR1k9A8SCLYaNgXhty").get());
+    paymentRequestData1.setAmountCoin(Coin.valueOf(245));
+    paymentRequestData1.setDate(new DateTime());
+    paymentRequestData1.setLabel("label1");
+    paymentRequestData1.setNote("note1");
+
+    walletService.addPaymentRequest(paymentRequestData1);
+    walletService.writePayments();
+
+    // Journal a deletion
+    walletService.deletePaymentRequest(paymentRequestData1);
+    walletService.writePaymentsJournal();
+
+    File journalFile = new File(
+      WalletManager.getOrCreateWalletDirectory(temporaryDirectory, WalletManager.createWalletRoot(walletId)),
+      WalletService.PAYMENTS_DIRECTORY_NAME + File.separator + WalletService.PAYMENTS_JOURNAL_NAME
+    );
+    byte[] journalBytes = Files.toByteArray(journalFile);
+
+    // Add the request back (not journalled) and write a snapshot
+    paymentRequestData1.setLabel("label2");
+    walletService.addPaymentRequest(paymentRequestData1);
+    walletService.writePayments();
+
+    // Simulate a crash before the journal was reset
+    Files.write(journalBytes, journalFile);
+
+    walletService.readPayments();
+
+    Collection<PaymentRequestData> paymentRequestDatas = walletService.getPaymentRequests();
+    assertThat(paymentRequestDatas.size()).isEqualTo(1);
+    assertThat(paymentRequestDatas.iterator().next().getLabel()).isEqualTo("label2");
+
+  }
+
   private void checkPaymentRequest(PaymentRequestData paymentRequestData, PaymentRequestData other) {
     assertThat(other.getAddress()).isEqualTo(paymentRequestData.getAddress());
     assertThat(other.getLabel()).isEqualTo(paymentRequestData.getLabel());
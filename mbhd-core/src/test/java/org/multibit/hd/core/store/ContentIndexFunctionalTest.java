@@ -0,0 +1,105 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * <p>Benchmark of the content index against the linear scan it replaces</p>
+ */
+public class ContentIndexFunctionalTest {
+
+  private static final Logger log = LoggerFactory.getLogger(ContentIndexFunctionalTest.class);
+
+  private static final String[] WORDS = new String[]{
+    "alice", "bob", "charles", "derek", "capital", "coffee", "rent", "invoice", "refund", "lunch",
+    "payment", "donation", "hardware", "subscription", "transfer", "savings", "holiday", "books"
+  };
+
+  private static final String[] QUERIES = new String[]{"capital", "lunch refund", "ice", "zzz", "b"};
+
+  @Test
+  public void testSearch_10k() throws Exception {
+    benchmark(10_000);
+  }
+
+  @Test
+  public void testSearch_100k() throws Exception {
+    benchmark(100_000);
+  }
+
+  @Test
+  public void testSearch_1M() throws Exception {
+    benchmark(1_000_000);
+  }
+
+  private void benchmark(int recordCount) {
+
+    Random random = new Random(recordCount);
+
+    List<String[]> records = Lists.newArrayListWithCapacity(recordCount);
+    for (int i = 0; i < recordCount; i++) {
+      records.add(new String[]{
+        randomText(random, 3) + " " + i,
+        randomText(random, 8),
+        Long.toHexString(random.nextLong())
+      });
+    }
+
+    ContentIndex<Integer> testObject = new ContentIndex<>();
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    for (int i = 0; i < recordCount; i++) {
+      testObject.put(i, records.get(i));
+    }
+    log.info("Indexed {} records in {}ms", recordCount, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+
+    for (String query : QUERIES) {
+
+      // Linear scan as previously performed by the services
+      stopwatch = Stopwatch.createStarted();
+      String lowerQuery = query.toLowerCase();
+      int scanCount = 0;
+      for (String[] record : records) {
+        for (String field : record) {
+          if (field.toLowerCase().contains(lowerQuery)) {
+            scanCount++;
+            break;
+          }
+        }
+      }
+      long scanMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+      stopwatch = Stopwatch.createStarted();
+      int indexCount = testObject.search(query).size();
+      long indexMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+      log.info("Records: {} Query: '{}' Matches: {} Scan: {}ms Index: {}ms", recordCount, query, indexCount, scanMillis, indexMillis);
+
+      assertThat(indexCount).isEqualTo(scanCount);
+    }
+
+  }
+
+  private String randomText(Random random, int wordCount) {
+
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < wordCount; i++) {
+      if (i > 0) {
+        builder.append(' ');
+      }
+      builder.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,106 @@
+package org.multibit.hd.core.store;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ContentIndexTest {
+
+  private ContentIndex<String> testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    testObject = new ContentIndex<>();
+
+    testObject.put("alice", "Alice Capital", "g.rowe@froot.co.uk", "VIP");
+    testObject.put("bob", "Bob Capital", "bob.capital@example.org", null);
+    testObject.put("charles", "Charles", null, "Met at the conference");
+
+  }
+
+  @Test
+  public void testSearch() throws Exception {
+
+    assertThat(testObject.size()).isEqualTo(3);
+
+    // Case insensitive substring
+    assertThat(testObject.search("CAPITAL")).containsOnly("alice", "bob");
+    assertThat(testObject.search("pital")).containsOnly("alice", "bob");
+    assertThat(testObject.search("conference")).containsOnly("charles");
+
+    // Trigrams present but in the wrong order
+    assertThat(testObject.search("latipac")).isEmpty();
+
+    // Unknown trigram
+    assertThat(testObject.search("xyz")).isEmpty();
+
+  }
+
+  @Test
+  public void testSearch_ShortAndEmptyQuery() throws Exception {
+
+    assertThat(testObject.search("")).containsOnly("alice", "bob", "charles");
+    assertThat(testObject.search("b")).containsOnly("bob");
+    assertThat(testObject.search("vi")).containsOnly("alice");
+
+  }
+
+  @Test
+  public void testSearch_NoMatchAcrossFields() throws Exception {
+
+    // "VIP" and "Capital" are separate fields
+    assertThat(testObject.search("uk vip")).isEmpty();
+    assertThat(testObject.search("alice capital")).containsOnly("alice");
+
+  }
+
+  @Test
+  public void testPutReplacesContent() throws Exception {
+
+    testObject.put("bob", "Robert Capital", null, null);
+
+    assertThat(testObject.size()).isEqualTo(3);
+    assertThat(testObject.search("bob")).isEmpty();
+    assertThat(testObject.search("robert")).containsOnly("bob");
+    assertThat(testObject.search("capital")).containsOnly("alice", "bob");
+
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+
+    testObject.remove("alice");
+    testObject.remove("unknown");
+
+    assertThat(testObject.size()).isEqualTo(2);
+    assertThat(testObject.search("capital")).containsOnly("bob");
+    assertThat(testObject.search("")).containsOnly("bob", "charles");
+
+    testObject.clear();
+
+    assertThat(testObject.size()).isEqualTo(0);
+    assertThat(testObject.search("")).isEmpty();
+
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+
+    // Enough replacements to trigger several compactions
+    for (int i = 0; i < 5000; i++) {
+      testObject.put("bob", "Bob " + i);
+    }
+
+    List<String> matches = testObject.search("bob 4999");
+    assertThat(matches).containsOnly("bob");
+    assertThat(testObject.search("bob 4998")).isEmpty();
+    assertThat(testObject.search("capital")).containsOnly("alice");
+    assertThat(testObject.size()).isEqualTo(3);
+
+  }
+
+}
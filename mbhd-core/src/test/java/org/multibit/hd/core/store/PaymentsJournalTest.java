@@ -0,0 +1,273 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.brit.crypto.AESUtils;
+import org.multibit.hd.core.dto.FiatPayment;
+import org.multibit.hd.core.dto.PaymentRequestData;
+import org.multibit.hd.core.exceptions.PaymentsLoadException;
+import org.multibit.hd.core.files.SecureFiles;
+import org.multibit.hd.core.services.WalletService;
+import org.multibit.hd.core.utils.Addresses;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.security.SecureRandom;
+import java.util.Currency;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PaymentsJournalTest {
+
+  private static final String ADDRESS_1 = "1AhN6rPdrMuKBGFDKR1k9A8SCLYaNgXhty";
+
+  private static final String ADDRESS_2 = "16R2kAxaUNM4xj6ykKbxEugpJdYyJzTP13";
+
+  private File journalFile;
+
+  private File snapshotFile;
+
+  private KeyParameter aesKey;
+
+  private PaymentsJournal testObject;
+
+  private Map<String, TransactionInfo> transactionInfoMap;
+
+  private Map<Address, PaymentRequestData> paymentRequestMap;
+
+  @Before
+  public void setUp() throws Exception {
+
+    File temporaryDirectory = SecureFiles.createTemporaryDirectory();
+    journalFile = new File(temporaryDirectory.getAbsolutePath() + File.separator + WalletService.PAYMENTS_JOURNAL_NAME);
+    snapshotFile = new File(temporaryDirectory.getAbsolutePath() + File.separator + WalletService.PAYMENTS_DATABASE_NAME);
+
+    byte[] keyBytes = new byte[AESUtils.KEY_LENGTH];
+    new SecureRandom().nextBytes(keyBytes);
+    aesKey = new KeyParameter(keyBytes);
+
+    testObject = new PaymentsJournal(journalFile, snapshotFile, new PaymentsProtobufSerializer());
+
+    transactionInfoMap = Maps.newHashMap();
+    paymentRequestMap = Maps.newHashMap();
+
+  }
+
+  @Test
+  public void testAppendAndReplay() throws Exception {
+
+    TransactionInfo transactionInfo = newTransactionInfo("010203", "note1");
+    PaymentRequestData paymentRequestData1 = newPaymentRequestData(ADDRESS_1, "label1");
+    PaymentRequestData paymentRequestData2 = newPaymentRequestData(ADDRESS_2, "label2");
+
+    testObject.append(Lists.newArrayList(
+      PaymentsJournal.Record.upsert(transactionInfo),
+      PaymentsJournal.Record.upsert(paymentRequestData1)
+    ), aesKey);
+    testObject.append(Lists.newArrayList(PaymentsJournal.Record.upsert(paymentRequestData2)), aesKey);
+
+    // Later records supersede earlier ones
+    transactionInfo.setNote("note2");
+    testObject.append(Lists.newArrayList(
+      PaymentsJournal.Record.upsert(transactionInfo),
+      PaymentsJournal.Record.delete(paymentRequestData1)
+    ), aesKey);
+
+    assertThat(testObject.getRecordCount()).isEqualTo(5);
+
+    assertThat(newJournal().replay(transactionInfoMap, paymentRequestMap, aesKey)).isEqualTo(5);
+
+    assertThat(transactionInfoMap.size()).isEqualTo(1);
+    assertThat(transactionInfoMap.get("010203").getNote()).isEqualTo("note2");
+    assertThat(transactionInfoMap.get("010203").getMinerFee()).isEqualTo(Optional.of(Coin.valueOf(100)));
+
+    assertThat(paymentRequestMap.size()).isEqualTo(1);
+    PaymentRequestData replayedPaymentRequestData = paymentRequestMap.get(Addresses.parse(ADDRESS_2).get());
+    assertThat(replayedPaymentRequestData.getLabel()).isEqualTo("label2");
+    assertThat(replayedPaymentRequestData.getAmountCoin()).isEqualTo(paymentRequestData2.getAmountCoin());
+    assertThat(replayedPaymentRequestData.getDate()).isEqualTo(paymentRequestData2.getDate());
+
+  }
+
+  @Test
+  public void testReplayOnTopOfSnapshot() throws Exception {
+
+    // Simulate the maps as loaded from an existing payments database (migration leaves no journal)
+    TransactionInfo snapshotTransactionInfo = newTransactionInfo("0a0b0c", "snapshot");
+    transactionInfoMap.put(snapshotTransactionInfo.getHash(), snapshotTransactionInfo);
+    PaymentRequestData snapshotPaymentRequestData = newPaymentRequestData(ADDRESS_1, "snapshot");
+    paymentRequestMap.put(snapshotPaymentRequestData.getAddress(), snapshotPaymentRequestData);
+
+    assertThat(testObject.replay(transactionInfoMap, paymentRequestMap, aesKey)).isEqualTo(0);
+    assertThat(transactionInfoMap.size()).isEqualTo(1);
+    assertThat(paymentRequestMap.size()).isEqualTo(1);
+
+    testObject.append(Lists.newArrayList(
+      PaymentsJournal.Record.upsert(newTransactionInfo("0a0b0c", "journal")),
+      PaymentsJournal.Record.upsert(newTransactionInfo("0d0e0f", "journal"))
+    ), aesKey);
+
+    newJournal().replay(transactionInfoMap, paymentRequestMap, aesKey);
+
+    assertThat(transactionInfoMap.size()).isEqualTo(2);
+    assertThat(transactionInfoMap.get("0a0b0c").getNote()).isEqualTo("journal");
+    assertThat(paymentRequestMap.get(Addresses.parse(ADDRESS_1).get()).getLabel()).isEqualTo("snapshot");
+
+  }
+
+  @Test
+  public void testTornFinalRecordIsTruncated() throws Exception {
+
+    testObject.append(Lists.newArrayList(PaymentsJournal.Record.upsert(newTransactionInfo("010203", "note1"))), aesKey);
+    long goodLength = journalFile.length();
+    testObject.append(Lists.newArrayList(PaymentsJournal.Record.upsert(newTransactionInfo("040506", "note2"))), aesKey);
+
+    // Simulate a crash part way through the second append
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw")) {
+      randomAccessFile.setLength(journalFile.length() - 5);
+    }
+
+    assertThat(newJournal().replay(transactionInfoMap, paymentRequestMap, aesKey)).isEqualTo(1);
+    assertThat(transactionInfoMap.keySet()).containsOnly("010203");
+    assertThat(journalFile.length()).isEqualTo(goodLength);
+
+    // Appending after recovery produces a readable journal
+    PaymentsJournal recoveredJournal = newJournal();
+    recoveredJournal.replay(Maps.<String, TransactionInfo>newHashMap(), Maps.<Address, PaymentRequestData>newHashMap(), aesKey);
+    recoveredJournal.append(Lists.newArrayList(PaymentsJournal.Record.upsert(newTransactionInfo("070809", "note3"))), aesKey);
+
+    transactionInfoMap.clear();
+    assertThat(newJournal().replay(transactionInfoMap, paymentRequestMap, aesKey)).isEqualTo(2);
+    assertThat(transactionInfoMap.keySet()).containsOnly("010203", "070809");
+
+  }
+
+  @Test
+  public void testCorruptRecordEndsReplay() throws Exception {
+
+    testObject.append(Lists.newArrayList(PaymentsJournal.Record.upsert(newTransactionInfo("010203", "note1"))), aesKey);
+    long goodLength = journalFile.length();
+    testObject.append(Lists.newArrayList(PaymentsJournal.Record.upsert(newTransactionInfo("040506", "note2"))), aesKey);
+
+    // Flip a bit in the body of the second record
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw")) {
+      long position = goodLength + 20;
+      randomAccessFile.seek(position);
+      int value = randomAccessFile.read();
+      randomAccessFile.seek(position);
+      randomAccessFile.write(value ^ 0x01);
+    }
+
+    assertThat(newJournal().replay(transactionInfoMap, paymentRequestMap, aesKey)).isEqualTo(1);
+    assertThat(transactionInfoMap.keySet()).containsOnly("010203");
+    assertThat(journalFile.length()).isEqualTo(goodLength);
+
+  }
+
+  @Test
+  public void testWrongKeyDoesNotTruncate() throws Exception {
+
+    testObject.append(Lists.newArrayList(PaymentsJournal.Record.upsert(newTransactionInfo("010203", "note1"))), aesKey);
+    long length = journalFile.length();
+
+    byte[] otherKeyBytes = new byte[AESUtils.KEY_LENGTH];
+    new SecureRandom().nextBytes(otherKeyBytes);
+
+    try {
+      newJournal().replay(transactionInfoMap, paymentRequestMap, new KeyParameter(otherKeyBytes));
+    } catch (PaymentsLoadException e) {
+      // Expected (the padding is occasionally valid with the wrong key so the failure may come later or not at all)
+    }
+
+    // The intact record must survive for a later replay with the correct key
+    assertThat(transactionInfoMap.containsKey("010203")).isFalse();
+    assertThat(journalFile.length()).isEqualTo(length);
+
+  }
+
+  @Test
+  public void testJournalForEarlierSnapshotIsDiscarded() throws Exception {
+
+    Files.write(new byte[]{1, 2, 3}, snapshotFile);
+
+    PaymentsJournal journal = newJournal();
+    journal.replay(transactionInfoMap, paymentRequestMap, aesKey);
+    journal.append(Lists.newArrayList(PaymentsJournal.Record.upsert(newTransactionInfo("010203", "note1"))), aesKey);
+
+    // Simulate a crash after a new snapshot has been written but before the journal is reset
+    Files.write(new byte[]{4, 5, 6}, snapshotFile);
+
+    assertThat(newJournal().replay(transactionInfoMap, paymentRequestMap, aesKey)).isEqualTo(0);
+    assertThat(transactionInfoMap).isEmpty();
+    assertThat(journalFile.length()).isEqualTo(0);
+
+    // The next append starts a journal against the new snapshot
+    journal = newJournal();
+    journal.replay(transactionInfoMap, paymentRequestMap, aesKey);
+    journal.append(Lists.newArrayList(PaymentsJournal.Record.upsert(newTransactionInfo("040506", "note2"))), aesKey);
+
+    assertThat(newJournal().replay(transactionInfoMap, paymentRequestMap, aesKey)).isEqualTo(1);
+    assertThat(transactionInfoMap.keySet()).containsOnly("040506");
+
+  }
+
+  @Test
+  public void testReset() throws Exception {
+
+    testObject.append(Lists.newArrayList(PaymentsJournal.Record.upsert(newTransactionInfo("010203", "note1"))), aesKey);
+    assertThat(journalFile.exists()).isTrue();
+
+    // Compaction has written a snapshot
+    testObject.reset();
+
+    assertThat(journalFile.exists()).isFalse();
+    assertThat(testObject.getRecordCount()).isEqualTo(0);
+    assertThat(newJournal().replay(transactionInfoMap, paymentRequestMap, aesKey)).isEqualTo(0);
+
+  }
+
+  private PaymentsJournal newJournal() {
+    return new PaymentsJournal(journalFile, snapshotFile, new PaymentsProtobufSerializer());
+  }
+
+  private TransactionInfo newTransactionInfo(String hash, String note) {
+
+    TransactionInfo transactionInfo = new TransactionInfo();
+    transactionInfo.setHash(hash);
+    transactionInfo.setNote(note);
+    transactionInfo.setMinerFee(Optional.of(Coin.valueOf(100)));
+    transactionInfo.setClientFee(Optional.<Coin>absent());
+
+    return transactionInfo;
+  }
+
+  private PaymentRequestData newPaymentRequestData(String address, String label) {
+
+    PaymentRequestData paymentRequestData = new PaymentRequestData();
+    paymentRequestData.setAddress(Addresses.parse(address).get());
+    paymentRequestData.setAmountCoin(Coin.valueOf(245));
+    paymentRequestData.setDate(new DateTime());
+    paymentRequestData.setLabel(label);
+    paymentRequestData.setNote("note");
+
+    FiatPayment fiatPayment = new FiatPayment();
+    fiatPayment.setAmount(Optional.of(new BigDecimal("12345.6")));
+    fiatPayment.setCurrency(Optional.of(Currency.getInstance("USD")));
+    fiatPayment.setRate(Optional.of("10.0"));
+    fiatPayment.setExchangeName(Optional.of("Bitstamp"));
+    paymentRequestData.setAmountFiat(fiatPayment);
+
+    return paymentRequestData;
+  }
+
+}
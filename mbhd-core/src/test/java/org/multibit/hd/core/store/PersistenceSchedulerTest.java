@@ -0,0 +1,98 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PersistenceSchedulerTest {
+
+  private PersistenceScheduler testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    testObject = new PersistenceScheduler();
+
+  }
+
+  @Test
+  public void testBurstIsCoalesced() throws Exception {
+
+    testObject.setWriteWindowMillis(100);
+
+    final AtomicInteger writeCount = new AtomicInteger();
+    final CountDownLatch written = new CountDownLatch(1);
+    Runnable writer = new Runnable() {
+      @Override
+      public void run() {
+        writeCount.incrementAndGet();
+        written.countDown();
+      }
+    };
+
+    for (int i = 0; i < 10; i++) {
+      testObject.requestWrite("payments", writer);
+    }
+
+    assertThat(testObject.isWritePending("payments")).isTrue();
+    assertThat(written.await(5, TimeUnit.SECONDS)).isTrue();
+
+    // Allow any (incorrect) additional writes to occur
+    Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+
+    assertThat(writeCount.get()).isEqualTo(1);
+    assertThat(testObject.isWritePending("payments")).isFalse();
+    assertThat(testObject.getWritesRequested()).isEqualTo(10);
+    assertThat(testObject.getWritesCoalesced()).isEqualTo(9);
+    assertThat(testObject.getWritesPerformed()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testFlushWritesImmediately() throws Exception {
+
+    // Long enough that only the flush can perform the write
+    testObject.setWriteWindowMillis(TimeUnit.HOURS.toMillis(1));
+
+    final AtomicInteger contactsWriteCount = new AtomicInteger();
+    final AtomicInteger historyWriteCount = new AtomicInteger();
+
+    testObject.requestWrite("contacts", new Runnable() {
+      @Override
+      public void run() {
+        contactsWriteCount.incrementAndGet();
+      }
+    });
+    testObject.requestWrite("history", new Runnable() {
+      @Override
+      public void run() {
+        historyWriteCount.incrementAndGet();
+      }
+    });
+
+    // Flush a single store
+    testObject.flush("contacts");
+
+    assertThat(contactsWriteCount.get()).isEqualTo(1);
+    assertThat(historyWriteCount.get()).isEqualTo(0);
+
+    // Flush everything (shutdown or switch)
+    testObject.flush();
+
+    assertThat(contactsWriteCount.get()).isEqualTo(1);
+    assertThat(historyWriteCount.get()).isEqualTo(1);
+    assertThat(testObject.getWritesPerformed()).isEqualTo(2);
+
+    // Nothing left to flush
+    testObject.flush();
+    assertThat(testObject.getWritesPerformed()).isEqualTo(2);
+
+  }
+
+}
@@ -0,0 +1,103 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.io.Files;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.store.MemoryBlockStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.files.SecureFiles;
+import org.multibit.hd.core.managers.BlockStoreManager;
+import org.multibit.hd.core.managers.InstallationManager;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SyncStateBlockStoreTest {
+
+  private static final NetworkParameters MAINNET = MainNetParams.get();
+
+  private File blockStoreFile;
+
+  private File syncStateFile;
+
+  private SyncStateBlockStore testObject;
+
+  @Before
+  public void setUp() throws Exception {
+
+    File temporaryDirectory = SecureFiles.createTemporaryDirectory();
+    blockStoreFile = new File(temporaryDirectory, InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX);
+    syncStateFile = SyncState.getSyncStateFile(blockStoreFile);
+
+    testObject = new SyncStateBlockStore(new MemoryBlockStore(MAINNET), syncStateFile);
+
+  }
+
+  @Test
+  public void testRecordFollowsChainHead() throws Exception {
+
+    StoredBlock genesis = testObject.getChainHead();
+    Block block = genesis.getHeader().createNextBlock(new ECKey().toAddress(MAINNET));
+    StoredBlock chainHead = genesis.build(block);
+    testObject.put(chainHead);
+
+    testObject.setChainHead(chainHead);
+
+    // Open records may lag the store so are not used for the sync decision
+    SyncState syncState = SyncState.read(syncStateFile).get();
+    assertThat(syncState.getChainHeadHeight()).isEqualTo(1);
+    assertThat(syncState.getChainHeadHash()).isEqualTo(block.getHashAsString());
+    assertThat(syncState.getChainHeadTimeSeconds()).isEqualTo(block.getTimeSeconds());
+    assertThat(syncState.isClosed()).isFalse();
+
+    testObject.close();
+
+    syncState = SyncState.read(syncStateFile).get();
+    assertThat(syncState.getChainHeadHeight()).isEqualTo(1);
+    assertThat(syncState.isClosed()).isTrue();
+
+  }
+
+  @Test
+  public void testReadClosedSyncState() throws Exception {
+
+    testObject.close();
+
+    // No block store so the record cannot describe it
+    assertThat(BlockStoreManager.readClosedSyncState(blockStoreFile).isPresent()).isFalse();
+
+    Files.write(new byte[1024], blockStoreFile);
+    Optional<SyncState> syncState = BlockStoreManager.readClosedSyncState(blockStoreFile);
+    assertThat(syncState.isPresent()).isTrue();
+    assertThat(syncState.get().getChainHeadHeight()).isEqualTo(0);
+
+    // An open record is ignored
+    new SyncState(10, "abc", 1L, false).write(syncStateFile);
+    assertThat(BlockStoreManager.readClosedSyncState(blockStoreFile).isPresent()).isFalse();
+
+  }
+
+  @Test
+  public void testUnreadableRecordIsIgnored() throws Exception {
+
+    assertThat(SyncState.read(syncStateFile).isPresent()).isFalse();
+
+    Files.write("2 10 abc 1 1", syncStateFile, Charsets.UTF_8);
+    assertThat(SyncState.read(syncStateFile).isPresent()).isFalse();
+
+    Files.write("1 ten abc 1 1", syncStateFile, Charsets.UTF_8);
+    assertThat(SyncState.read(syncStateFile).isPresent()).isFalse();
+
+    Files.write("1 10 abc 1 1", syncStateFile, Charsets.UTF_8);
+    assertThat(SyncState.read(syncStateFile).get().getChainHeadHeight()).isEqualTo(10);
+
+  }
+
+}
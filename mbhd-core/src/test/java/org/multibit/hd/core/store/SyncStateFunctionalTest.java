@@ -0,0 +1,72 @@
+package org.multibit.hd.core.store;
+
+import com.google.common.base.Stopwatch;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.store.BlockStore;
+import org.junit.Test;
+import org.multibit.hd.core.files.SecureFiles;
+import org.multibit.hd.core.managers.BlockStoreManager;
+import org.multibit.hd.core.managers.InstallationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * <p>Benchmark of reading the block store chain height for the wallet sync decision:</p>
+ * <ul>
+ * <li>Opening, reading and closing the SPV block store (previous behaviour)</li>
+ * <li>Reading the sync state record written when the store was closed</li>
+ * </ul>
+ */
+public class SyncStateFunctionalTest {
+
+  private static final Logger log = LoggerFactory.getLogger(SyncStateFunctionalTest.class);
+
+  private static final NetworkParameters MAINNET = MainNetParams.get();
+
+  private static final int ITERATIONS = 20;
+
+  @Test
+  public void testChainHeightLatency() throws Exception {
+
+    File temporaryDirectory = SecureFiles.createTemporaryDirectory();
+    File blockStoreFile = new File(temporaryDirectory, InstallationManager.MBHD_PREFIX + InstallationManager.SPV_BLOCKCHAIN_SUFFIX);
+    // No checkpoints so the store is only opened
+    File checkpointsFile = new File(temporaryDirectory, InstallationManager.MBHD_PREFIX + InstallationManager.CHECKPOINTS_SUFFIX);
+
+    BlockStoreManager blockStoreManager = new BlockStoreManager(MAINNET);
+
+    // Create the store (this writes the first record as it closes)
+    blockStoreManager.createOrOpenBlockStore(blockStoreFile, checkpointsFile, null, false).close();
+    log.info("Block store is {} bytes", blockStoreFile.length());
+
+    // Previous behaviour
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    int openedHeight = -1;
+    for (int i = 0; i < ITERATIONS; i++) {
+      BlockStore blockStore = blockStoreManager.createOrOpenBlockStore(blockStoreFile, checkpointsFile, null, false);
+      openedHeight = blockStore.getChainHead().getHeight();
+      blockStore.close();
+    }
+    double openMicros = (double) stopwatch.elapsed(TimeUnit.MICROSECONDS) / ITERATIONS;
+
+    stopwatch = Stopwatch.createStarted();
+    int recordedHeight = -1;
+    for (int i = 0; i < ITERATIONS; i++) {
+      recordedHeight = BlockStoreManager.readClosedSyncState(blockStoreFile).get().getChainHeadHeight();
+    }
+    double recordMicros = (double) stopwatch.elapsed(TimeUnit.MICROSECONDS) / ITERATIONS;
+
+    log.info("Open block store: {} us, sync state record: {} us", String.format("%.1f", openMicros), String.format("%.1f", recordMicros));
+
+    assertThat(recordedHeight).isEqualTo(openedHeight);
+    assertThat(recordMicros).isLessThan(openMicros);
+
+  }
+
+}
@@ -0,0 +1,74 @@
+package org.multibit.hd.core.utils;
+
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+import org.multibit.hd.core.dto.Contact;
+import org.multibit.hd.core.dto.RecipientPayment;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class PayoutBatchesTest {
+
+  private static final NetworkParameters MAINNET = MainNetParams.get();
+
+  private final Address address1 = new ECKey().toAddress(MAINNET);
+  private final Address address2 = new ECKey().toAddress(MAINNET);
+
+  @Test
+  public void testParse() throws Exception {
+
+    Contact contact = new Contact(UUID.randomUUID(), "Alice");
+    contact.setBitcoinAddress(address2);
+
+    String csv = "address,amount,note\n" +
+      address1 + ",0.015,\"March payout, part 1\"\n" +
+      "\n" +
+      address2 + ",0.5\n";
+
+    List<RecipientPayment> recipientPayments = PayoutBatches.parse(new StringReader(csv), MAINNET, Lists.newArrayList(contact));
+
+    assertThat(recipientPayments).hasSize(2);
+
+    assertThat(recipientPayments.get(0).getRecipient().getBitcoinAddress()).isEqualTo(address1);
+    assertThat(recipientPayments.get(0).getAmount()).isEqualTo(Coin.parseCoin("0.015"));
+    assertThat(recipientPayments.get(0).getNote().get()).isEqualTo("March payout, part 1");
+    assertThat(recipientPayments.get(0).getRecipient().getContact().isPresent()).isFalse();
+
+    assertThat(recipientPayments.get(1).getNote().isPresent()).isFalse();
+    assertThat(recipientPayments.get(1).getRecipient().getContact().get().getName()).isEqualTo("Alice");
+
+  }
+
+  @Test
+  public void testParseRejectsInvalidRows() throws Exception {
+
+    assertRejected(address1 + ",abc\n", "Row 1: invalid amount");
+    assertRejected(address1 + ",0.01\nnot-an-address,0.01\n", "Row 2: invalid address");
+    assertRejected(address1 + ",0.00000001\n", "Row 1: amount");
+    assertRejected(address1 + "\n", "Row 1: expected");
+
+  }
+
+  private void assertRejected(String csv, String expectedMessage) throws Exception {
+
+    try {
+      PayoutBatches.parse(new StringReader(csv), MAINNET, Collections.<Contact>emptyList());
+      fail("Expected the batch to be rejected");
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).startsWith(expectedMessage);
+    }
+
+  }
+
+}
@@ -7,13 +7,14 @@ import com.google.common.util.concurrent.*;
 import org.bitcoinj.uri.BitcoinURI;
 import org.bitcoinj.uri.BitcoinURIParseException;
 import org.joda.time.DateTime;
+import org.multibit.hd.core.concurrent.ExecutorPool;
+import org.multibit.hd.core.concurrent.ExecutorRegistry;
 import org.multibit.hd.core.concurrent.SafeExecutors;
 import org.multibit.hd.core.config.BitcoinConfiguration;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.dto.*;
 import org.multibit.hd.core.events.*;
 import org.multibit.hd.core.exceptions.ExceptionHandler;
-import org.multibit.hd.core.exceptions.PaymentsSaveException;
 import org.multibit.hd.core.exchanges.ExchangeKey;
 import org.multibit.hd.core.managers.BackupManager;
 import org.multibit.hd.core.managers.InstallationManager;
@@ -34,6 +35,7 @@ import org.multibit.hd.ui.events.view.ComponentChangedEvent;
 import org.multibit.hd.ui.events.view.SwitchWalletEvent;
 import org.multibit.hd.ui.events.view.ViewEvents;
 import org.multibit.hd.ui.events.view.WizardHideEvent;
+import org.multibit.hd.ui.languages.Formats;
 import org.multibit.hd.ui.languages.Languages;
 import org.multibit.hd.ui.languages.MessageKey;
 import org.multibit.hd.ui.models.AlertModel;
@@ -96,11 +98,8 @@ public class MainController extends AbstractController implements
 
   private final ListeningExecutorService handoverExecutorService = SafeExecutors.newSingleThreadExecutor("wizard-handover");
 
-  // Keep a thread pool for transaction status checking
-  private static final ListeningExecutorService transactionCheckingExecutorService = SafeExecutors.newFixedThreadPool(10, "transaction-checking");
-
   // Provide a separate executor service for wallet operations
-  private static final ListeningExecutorService walletExecutorService = SafeExecutors.newFixedThreadPool(10, "wallet-services");
+  private static final ListeningExecutorService walletExecutorService = ExecutorRegistry.getOrCreateExecutor(ExecutorPool.BACKGROUND);
 
   private static final int NUMBER_OF_SECONDS_TO_WAIT_BEFORE_TRANSACTION_CHECKING = 10;
 
@@ -281,6 +280,9 @@ public class MainController extends AbstractController implements
 
     Preconditions.checkNotNull(event, "'event' must be present");
 
+    // Release any cached formats for the previous configuration
+    Formats.invalidateFormatCaches();
+
     if (mainView.isShowExitingWelcomeWizard()) {
 
       // Restarting the main view from a language change
@@ -850,11 +852,7 @@ public class MainController extends AbstractController implements
     WalletService walletService = CoreServices.getCurrentWalletService().get();
     walletService.addTransactionInfo(transactionInfo);
     log.debug("Added transactionInfo {} to walletService {}", transactionInfo, walletService);
-    try {
-      walletService.writePayments();
-    } catch (PaymentsSaveException pse) {
-      ExceptionHandler.handleThrowable(pse);
-    }
+    walletService.scheduleWritePayments();
   }
 
   /**
@@ -1467,42 +1465,48 @@ public class MainController extends AbstractController implements
    */
   private void initiateDelayedTransactionStatusCheck(final TransactionCreationEvent transactionCreationEvent) {
 
-    transactionCheckingExecutorService.submit(
-      new Runnable() {
+    final Runnable statusCheck = new Runnable() {
 
-        @Override
-        public void run() {
-          log.debug("Performing delayed status check on transaction '" + transactionCreationEvent.getTransactionId() + "'");
-          // Wait for a while to let the Bitcoin network respond to the tx being sent
-          Uninterruptibles.sleepUninterruptibly(NUMBER_OF_SECONDS_TO_WAIT_BEFORE_TRANSACTION_CHECKING, TimeUnit.SECONDS);
-
-          // See if the transaction has a RAGStatus if red.
-          // This could be the tx has not been transmitted ok or is only seen by zero or one peers.
-          // In this case the user will not have access to the tx change and notify them with a warning alert
-          WalletService currentWalletService = CoreServices.getCurrentWalletService().get();
-          if (currentWalletService != null) {
-            java.util.List<PaymentData> paymentDataList = currentWalletService.getPaymentDataList();
-            if (paymentDataList != null) {
-              for (PaymentData paymentData : paymentDataList) {
-                PaymentStatus status = paymentData.getStatus();
-                if (status.getStatus().equals(RAGStatus.RED)) {
-                  JButton button = Buttons.newAlertPanelButton(getShowHelpAction(), MessageKey.DETAILS, MessageKey.DETAILS_TOOLTIP, AwesomeIcon.QUESTION);
-
-                  // The transaction has not been sent correctly, or change is not spendable, throw a warning alert
-                  final AlertModel alertModel = Models.newAlertModel(Languages.safeText(MessageKey.SPENDABLE_BALANCE_IS_LOWER), RAGStatus.AMBER, button);
-                  SwingUtilities.invokeLater(
-                    new Runnable() {
-                      @Override
-                      public void run() {
-                        ViewEvents.fireAlertAddedEvent(alertModel);
-                      }
-                    });
-                }
+      @Override
+      public void run() {
+        log.debug("Performing delayed status check on transaction '" + transactionCreationEvent.getTransactionId() + "'");
+
+        // See if the transaction has a RAGStatus if red.
+        // This could be the tx has not been transmitted ok or is only seen by zero or one peers.
+        // In this case the user will not have access to the tx change and notify them with a warning alert
+        WalletService currentWalletService = CoreServices.getCurrentWalletService().get();
+        if (currentWalletService != null) {
+          java.util.List<PaymentData> paymentDataList = currentWalletService.getPaymentDataList();
+          if (paymentDataList != null) {
+            for (PaymentData paymentData : paymentDataList) {
+              PaymentStatus status = paymentData.getStatus();
+              if (status.getStatus().equals(RAGStatus.RED)) {
+                JButton button = Buttons.newAlertPanelButton(getShowHelpAction(), MessageKey.DETAILS, MessageKey.DETAILS_TOOLTIP, AwesomeIcon.QUESTION);
+
+                // The transaction has not been sent correctly, or change is not spendable, throw a warning alert
+                final AlertModel alertModel = Models.newAlertModel(Languages.safeText(MessageKey.SPENDABLE_BALANCE_IS_LOWER), RAGStatus.AMBER, button);
+                SwingUtilities.invokeLater(
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      ViewEvents.fireAlertAddedEvent(alertModel);
+                    }
+                  });
               }
             }
           }
         }
-      });
+      }
+    };
+
+    // Wait for a while to let the Bitcoin network respond to the tx being sent (the check runs on the wallet pool)
+    ExecutorRegistry.getOrCreateScheduler().schedule(
+      new Runnable() {
+        @Override
+        public void run() {
+          walletExecutorService.submit(statusCheck);
+        }
+      }, NUMBER_OF_SECONDS_TO_WAIT_BEFORE_TRANSACTION_CHECKING, TimeUnit.SECONDS);
 
   }
 
@@ -4,7 +4,8 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
 import com.google.common.eventbus.EventBus;
 import com.google.common.util.concurrent.ListeningExecutorService;
-import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.concurrent.ExecutorPool;
+import org.multibit.hd.core.concurrent.ExecutorRegistry;
 import org.multibit.hd.core.exceptions.ExceptionHandler;
 import org.multibit.hd.core.services.CoreServices;
 import org.multibit.hd.ui.languages.Languages;
@@ -29,7 +30,7 @@ public class ControllerEvents {
   private static final Logger log = LoggerFactory.getLogger(ControllerEvents.class);
 
   // Provide a ControllerEvent thread pool to ensure non-AWT events are isolated from the EDT
-  private static ListeningExecutorService eventExecutor = SafeExecutors.newFixedThreadPool(10, "controller-events");
+  private static ListeningExecutorService eventExecutor = ExecutorRegistry.getOrCreateExecutor(ExecutorPool.CONTROLLER_EVENTS);
 
   /**
    * Use Guava to handle subscribers to events
@@ -0,0 +1,442 @@
+package org.multibit.hd.ui.gravatar;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Cache to provide the following to Gravatars:</p>
+ * <ul>
+ * <li>Gravatar images held on disk across restarts, keyed by email hash</li>
+ * <li>Revalidation of images older than the time to live using ETag and If-Modified-Since</li>
+ * <li>A single download for each email hash however many requests are waiting for it</li>
+ * </ul>
+ * <p>The least recently used images are removed once the maximum number of entries is exceeded. The order of use is
+ * held in memory (seeded once from the file modification times) so the directory is only touched to remove an image.
+ * If the Gravatar service cannot be reached an expired image is used rather than none.</p>
+ *
+ * @since 0.0.5
+ */
+public class GravatarCache {
+
+  private static final Logger log = LoggerFactory.getLogger(GravatarCache.class);
+
+  /**
+   * The name of the cache directory under the application data directory
+   */
+  public static final String CACHE_DIRECTORY_NAME = "gravatars";
+
+  /**
+   * How long an image is used before it is revalidated
+   */
+  public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+  /**
+   * The maximum number of images held on disk
+   */
+  public static final int DEFAULT_MAXIMUM_ENTRIES = 5000;
+
+  private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+  private static final int READ_TIMEOUT_MILLIS = 10000;
+
+  private static final String IMAGE_SUFFIX = ".img";
+  private static final String METADATA_SUFFIX = ".properties";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  private static final String ETAG_PROPERTY = "etag";
+  private static final String LAST_MODIFIED_PROPERTY = "last-modified";
+  private static final String VALIDATED_PROPERTY = "validated";
+
+  private final File cacheDirectory;
+
+  private final String baseUrl;
+
+  private final String parameters;
+
+  private final long timeToLiveMillis;
+
+  private final int maximumEntries;
+
+  private final ListeningExecutorService executorService;
+
+  /**
+   * The downloads in progress, indexed by email hash
+   */
+  private final ConcurrentMap<String, ListenableFuture<Optional<BufferedImage>>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * The email hashes of the images on disk, least recently used first (guarded by itself)
+   */
+  private final LinkedHashMap<String, Boolean> usageIndex = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * True once the usage index has been read from disk (guarded by the usage index)
+   */
+  private boolean usageIndexSeeded = false;
+
+  /**
+   * @param cacheDirectory   The directory holding the cached images (created if necessary)
+   * @param baseUrl          The base URL of the Gravatar service (the email hash is appended)
+   * @param parameters       The query parameters (size, rating etc)
+   * @param timeToLiveMillis How long an image is used before it is revalidated
+   * @param maximumEntries   The maximum number of images held on disk
+   * @param executorService  The executor service to perform the downloads
+   */
+  public GravatarCache(
+    File cacheDirectory,
+    String baseUrl,
+    String parameters,
+    long timeToLiveMillis,
+    int maximumEntries,
+    ListeningExecutorService executorService
+  ) {
+
+    Preconditions.checkNotNull(cacheDirectory, "'cacheDirectory' must be present");
+    Preconditions.checkNotNull(baseUrl, "'baseUrl' must be present");
+    Preconditions.checkNotNull(parameters, "'parameters' must be present");
+    Preconditions.checkArgument(maximumEntries > 0, "'maximumEntries' must be positive");
+    Preconditions.checkNotNull(executorService, "'executorService' must be present");
+
+    this.cacheDirectory = cacheDirectory;
+    this.baseUrl = baseUrl;
+    this.parameters = parameters;
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.maximumEntries = maximumEntries;
+    this.executorService = executorService;
+
+    if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+      log.warn("Could not create Gravatar cache directory '{}'", cacheDirectory.getAbsolutePath());
+    }
+  }
+
+  /**
+   * <p>Non-blocking call to retrieve the image for an email hash</p>
+   * <p>Requests for a hash that is already being retrieved share the same future</p>
+   *
+   * @param emailHash The lowercase hex MD5 hash of the cleaned email address
+   *
+   * @return A listenable future containing the image, failing with an IOException if there is no cached image
+   * and the download failed
+   */
+  public ListenableFuture<Optional<BufferedImage>> retrieve(final String emailHash) {
+
+    Preconditions.checkNotNull(emailHash, "'emailHash' must be present");
+    Preconditions.checkArgument(emailHash.matches("[0-9a-f]+"), "'emailHash' must be lowercase hex");
+
+    // A completed retrieval may not have been removed yet
+    ListenableFuture<Optional<BufferedImage>> existing = inFlight.get(emailHash);
+    if (existing != null && !existing.isDone()) {
+      return existing;
+    }
+
+    final ListenableFuture<Optional<BufferedImage>> future;
+    synchronized (inFlight) {
+
+      existing = inFlight.get(emailHash);
+      if (existing != null && !existing.isDone()) {
+        return existing;
+      }
+
+      future = executorService.submit(new Callable<Optional<BufferedImage>>() {
+        @Override
+        public Optional<BufferedImage> call() throws Exception {
+          return load(emailHash);
+        }
+      });
+      inFlight.put(emailHash, future);
+    }
+
+    // Later requests start a fresh retrieval (which will normally be satisfied from disk)
+    Futures.addCallback(future, new FutureCallback<Optional<BufferedImage>>() {
+      @Override
+      public void onSuccess(Optional<BufferedImage> result) {
+        inFlight.remove(emailHash, future);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        inFlight.remove(emailHash, future);
+      }
+    });
+
+    return future;
+  }
+
+  /**
+   * <p>Blocking load of the image from disk, revalidating or downloading it as required</p>
+   *
+   * @param emailHash The email hash
+   *
+   * @return The image
+   *
+   * @throws IOException If there is no cached image and the download failed
+   */
+  Optional<BufferedImage> load(String emailHash) throws IOException {
+
+    File imageFile = new File(cacheDirectory, emailHash + IMAGE_SUFFIX);
+    File metadataFile = new File(cacheDirectory, emailHash + METADATA_SUFFIX);
+
+    Optional<byte[]> cachedBytes = Optional.absent();
+    Properties metadata = new Properties();
+    if (imageFile.isFile() && metadataFile.isFile()) {
+      try (InputStream inputStream = new FileInputStream(metadataFile)) {
+        metadata.load(inputStream);
+        cachedBytes = Optional.of(Files.readAllBytes(imageFile.toPath()));
+      } catch (IOException | IllegalArgumentException e) {
+        log.warn("Discarding unreadable cached Gravatar '{}'", emailHash);
+        metadata.clear();
+      }
+    }
+
+    long now = System.currentTimeMillis();
+
+    if (cachedBytes.isPresent()) {
+
+      // Mark as recently used (on disk so that the order survives a restart)
+      markUsed(emailHash);
+      if (!imageFile.setLastModified(now)) {
+        log.debug("Could not mark cached Gravatar '{}' as used", emailHash);
+      }
+
+      long validated = parseLong(metadata.getProperty(VALIDATED_PROPERTY));
+      if (now - validated < timeToLiveMillis) {
+        log.trace("Using cached Gravatar '{}'", emailHash);
+        return Optional.of(decode(cachedBytes.get()));
+      }
+    }
+
+    try {
+      return download(emailHash, cachedBytes, metadata, now);
+    } catch (IOException e) {
+      if (cachedBytes.isPresent()) {
+        // An expired image is better than the "no network" image
+        log.debug("Using expired Gravatar '{}' after revalidation failed: {}", emailHash, e.getMessage());
+        return Optional.of(decode(cachedBytes.get()));
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return The number of images held on disk
+   */
+  int size() {
+
+    synchronized (usageIndex) {
+      seedUsageIndex();
+      return usageIndex.size();
+    }
+  }
+
+  private Optional<BufferedImage> download(String emailHash, Optional<byte[]> cachedBytes, Properties metadata, long now) throws IOException {
+
+    URL url = new URL(baseUrl + emailHash + ".jpg" + parameters);
+    log.debug("Gravatar lookup: '{}'", url);
+
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    try {
+      connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+      connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+      connection.setUseCaches(false);
+
+      if (cachedBytes.isPresent()) {
+        String etag = metadata.getProperty(ETAG_PROPERTY);
+        if (etag != null) {
+          connection.setRequestProperty("If-None-Match", etag);
+        }
+        String lastModified = metadata.getProperty(LAST_MODIFIED_PROPERTY);
+        if (lastModified != null) {
+          connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+      }
+
+      int responseCode = connection.getResponseCode();
+
+      if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedBytes.isPresent()) {
+        log.trace("Gravatar '{}' not modified", emailHash);
+        metadata.setProperty(VALIDATED_PROPERTY, String.valueOf(now));
+        writeMetadata(emailHash, metadata);
+        return Optional.of(decode(cachedBytes.get()));
+      }
+
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Unexpected Gravatar response code " + responseCode);
+      }
+
+      final byte[] bytes;
+      try (InputStream inputStream = connection.getInputStream()) {
+        bytes = ByteStreams.toByteArray(inputStream);
+      }
+
+      // Only store what can be shown
+      BufferedImage image = decode(bytes);
+
+      Properties newMetadata = new Properties();
+      newMetadata.setProperty(VALIDATED_PROPERTY, String.valueOf(now));
+      if (connection.getHeaderField("ETag") != null) {
+        newMetadata.setProperty(ETAG_PROPERTY, connection.getHeaderField("ETag"));
+      }
+      if (connection.getHeaderField("Last-Modified") != null) {
+        newMetadata.setProperty(LAST_MODIFIED_PROPERTY, connection.getHeaderField("Last-Modified"));
+      }
+
+      store(emailHash, bytes, newMetadata);
+
+      return Optional.of(image);
+
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private void store(String emailHash, byte[] bytes, Properties metadata) {
+
+    try {
+      File imageFile = new File(cacheDirectory, emailHash + IMAGE_SUFFIX);
+      File temporaryFile = new File(cacheDirectory, emailHash + IMAGE_SUFFIX + TEMPORARY_SUFFIX);
+      Files.write(temporaryFile.toPath(), bytes);
+      Files.move(temporaryFile.toPath(), imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+      writeMetadata(emailHash, metadata);
+    } catch (IOException e) {
+      // The image is still shown, it just has to be downloaded again
+      log.warn("Could not cache Gravatar '{}': {}", emailHash, e.getMessage());
+      return;
+    }
+
+    markUsed(emailHash);
+    thin();
+  }
+
+  private void writeMetadata(String emailHash, Properties metadata) throws IOException {
+
+    File metadataFile = new File(cacheDirectory, emailHash + METADATA_SUFFIX);
+    File temporaryFile = new File(cacheDirectory, emailHash + METADATA_SUFFIX + TEMPORARY_SUFFIX);
+    try (OutputStream outputStream = new FileOutputStream(temporaryFile)) {
+      metadata.store(outputStream, null);
+    }
+    Files.move(temporaryFile.toPath(), metadataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * <p>Remove the least recently used images beyond the maximum number of entries</p>
+   */
+  private void thin() {
+
+    synchronized (usageIndex) {
+
+      Iterator<String> emailHashes = usageIndex.keySet().iterator();
+      while (usageIndex.size() > maximumEntries && emailHashes.hasNext()) {
+        String emailHash = emailHashes.next();
+        emailHashes.remove();
+        log.trace("Removing least recently used Gravatar '{}'", emailHash);
+        if (!new File(cacheDirectory, emailHash + IMAGE_SUFFIX).delete() || !new File(cacheDirectory, emailHash + METADATA_SUFFIX).delete()) {
+          log.debug("Could not remove cached Gravatar '{}'", emailHash);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param emailHash The email hash of an image on disk that has just been used
+   */
+  private void markUsed(String emailHash) {
+
+    synchronized (usageIndex) {
+      seedUsageIndex();
+      usageIndex.put(emailHash, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * <p>Read the images on disk into the usage index in order of last use (once only, the caller holds the lock)</p>
+   */
+  private void seedUsageIndex() {
+
+    if (usageIndexSeeded) {
+      return;
+    }
+    usageIndexSeeded = true;
+
+    File[] imageFiles = listImageFiles();
+
+    // Sort by last use (oldest first) taking a snapshot of the times so the order is stable
+    final long[] lastUsed = new long[imageFiles.length];
+    Integer[] order = new Integer[imageFiles.length];
+    for (int i = 0; i < imageFiles.length; i++) {
+      lastUsed[i] = imageFiles[i].lastModified();
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Long.compare(lastUsed[o1], lastUsed[o2]);
+      }
+    });
+
+    for (Integer index : order) {
+      String name = imageFiles[index].getName();
+      usageIndex.put(name.substring(0, name.length() - IMAGE_SUFFIX.length()), Boolean.TRUE);
+    }
+
+    log.debug("Found {} cached Gravatars", usageIndex.size());
+  }
+
+  private File[] listImageFiles() {
+
+    File[] imageFiles = cacheDirectory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(IMAGE_SUFFIX);
+      }
+    });
+
+    return imageFiles == null ? new File[0] : imageFiles;
+  }
+
+  private static BufferedImage decode(byte[] bytes) throws IOException {
+
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+    if (image == null) {
+      throw new IOException("Gravatar is not a readable image");
+    }
+
+    return image;
+  }
+
+  private static long parseLong(String value) {
+
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+}
@@ -3,15 +3,19 @@ package org.multibit.hd.ui.gravatar;
 import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import org.joda.time.DateTime;
-import org.multibit.hd.core.concurrent.SafeExecutors;
+import org.multibit.hd.core.concurrent.ExecutorPool;
+import org.multibit.hd.core.concurrent.ExecutorRegistry;
 import org.multibit.hd.core.dto.RAGStatus;
+import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.utils.Dates;
 import org.multibit.hd.ui.MultiBitUI;
 import org.multibit.hd.ui.events.controller.ControllerEvents;
@@ -21,19 +25,16 @@ import org.multibit.hd.ui.models.Models;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.concurrent.Callable;
+import java.io.File;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>Utility to provide the following to application:</p>
  * <ul>
  * <li>Retrieving images from the Gravatar web service</li>
+ * <li>Caching images in memory and on disk (see GravatarCache)</li>
  * </ul>
  *
  * @since 0.0.1
@@ -56,21 +57,16 @@ public class Gravatars {
   private static AtomicReference<Optional<DateTime>> lastFailedDownload = new AtomicReference<>(Optional.<DateTime>absent());
 
   // Keep an image thread pool
-  private static final ListeningExecutorService gravatarExecutorService = SafeExecutors.newFixedThreadPool(10, "gravatar");
+  private static final ListeningExecutorService gravatarExecutorService = ExecutorRegistry.getOrCreateExecutor(ExecutorPool.GRAVATAR);
 
-  // Maintain an image cache
-  private static LoadingCache<String, Optional<BufferedImage>> cache = CacheBuilder
+  // Maintain an in-memory image cache (backed by the disk cache), indexed by email hash
+  private static final Cache<String, BufferedImage> cache = CacheBuilder
     .newBuilder()
     .maximumSize(1000)
-    .build(new CacheLoader<String, Optional<BufferedImage>>() {
-      @Override
-      public Optional<BufferedImage> load(String cleanEmailAddress) throws Exception {
+    .build();
 
-        // Get the image synchronously (the overall cache call is wrapped in an executor)
-        return loadBufferedImage(cleanEmailAddress);
-
-      }
-    });
+  // The disk cache is created on first use since it requires the application data directory
+  private static GravatarCache diskCache;
 
   /**
    * Utilities have private constructors
@@ -80,6 +76,7 @@ public class Gravatars {
 
   /**
    * <p>Non-blocking call to retrieve a gravatar and provide notification on success or failure</p>
+   * <p>Images are held on disk across restarts so only new or expired images require the network</p>
    *
    * @param emailAddress The email address
    *
@@ -91,61 +88,86 @@ public class Gravatars {
 
     final String cleanEmailAddress = emailAddress.toLowerCase().trim();
 
-    return gravatarExecutorService.submit(new Callable<Optional<BufferedImage>>() {
+    // Require a hex MD5 hash of email address (lowercase) no whitespace
+    final String emailHash = Hashing
+      .md5()
+      .hashString(cleanEmailAddress, Charsets.UTF_8)
+      .toString();
+
+    BufferedImage image = cache.getIfPresent(emailHash);
+    if (image != null) {
+      return Futures.immediateFuture(Optional.of(image));
+    }
+
+    ListenableFuture<Optional<BufferedImage>> future = getOrCreateDiskCache().retrieve(emailHash);
+
+    Futures.addCallback(future, new FutureCallback<Optional<BufferedImage>>() {
+      @Override
+      public void onSuccess(Optional<BufferedImage> result) {
+        if (result.isPresent()) {
+          cache.put(emailHash, result.get());
+        }
+      }
 
       @Override
-      public Optional<BufferedImage> call() throws Exception {
-        return cache.get(cleanEmailAddress);
+      public void onFailure(Throwable t) {
+        // Handled by the fallback
       }
     });
 
-  }
+    return Futures.withFallback(future, new FutureFallback<Optional<BufferedImage>>() {
+      @Override
+      public ListenableFuture<Optional<BufferedImage>> create(Throwable t) throws Exception {
 
-  /**
-   * @param emailAddress The cleaned email address to use as an MD5 lookup
-   *
-   * @return The buffered image if present
-   */
-  private static Optional<BufferedImage> loadBufferedImage(String emailAddress) {
+        if (t instanceof CancellationException) {
+          // The request gave way to newer ones in a full queue so the user need not know
+          return Futures.immediateFuture(Optional.<BufferedImage>absent());
+        }
 
-    log.debug("Loading image from external resource");
+        // This may happen if no network is available
+        log.warn("Gravatar download failed " + t.getMessage());
+        alertDownloadFailure();
 
-    // Require a hex MD5 hash of email address (lowercase) no whitespace
-    final String emailHash = Hashing
-      .md5()
-      .hashString(emailAddress, Charsets.UTF_8)
-      .toString();
+        return Futures.immediateFuture(Optional.<BufferedImage>absent());
+      }
+    });
+
+  }
 
-    // Create the URL
-    final URL url;
-    try {
-      url = new URL(GRAVATAR_URL + emailHash + ".jpg" + PARAMETERS);
-      log.debug("Gravatar lookup: '{}'", url.toString());
-    } catch (MalformedURLException e) {
-      // This should never happen
-      log.error("Gravatar URL malformed", e);
-      return Optional.absent();
+  /**
+   * @return The disk cache under the application data directory
+   */
+  private static synchronized GravatarCache getOrCreateDiskCache() {
+
+    if (diskCache == null) {
+      File cacheDirectory = new File(InstallationManager.getOrCreateApplicationDataDirectory(), GravatarCache.CACHE_DIRECTORY_NAME);
+      diskCache = new GravatarCache(
+        cacheDirectory,
+        GRAVATAR_URL,
+        PARAMETERS,
+        GravatarCache.DEFAULT_TIME_TO_LIVE_MILLIS,
+        GravatarCache.DEFAULT_MAXIMUM_ENTRIES,
+        gravatarExecutorService
+      );
     }
 
-    try (InputStream stream = url.openStream()) {
-      return Optional.of(ImageIO.read(stream));
-    } catch (IOException e) {
-      // This may happen if no network is available
-      log.warn("Gravatar download failed" + e.getMessage());
-
-      // Avoid flooding the user with failure alerts
-      DateTime now = Dates.nowUtc();
-      if (lastFailedDownload.get().isPresent()) {
-        DateTime lastFailure = lastFailedDownload.get().get();
-        if (lastFailure.plusMinutes(1).isBefore(now)) {
-          // It's been a while since we had a failure so OK to notify the user again
-          ControllerEvents.fireAddAlertEvent(Models.newAlertModel(Languages.safeText(MessageKey.NETWORK_CONFIGURATION_ERROR), RAGStatus.AMBER));
-        }
-      }
-      lastFailedDownload.set(Optional.of(now));
+    return diskCache;
+  }
 
-      return Optional.absent();
+  /**
+   * <p>Alert the user to a failed download without flooding them with alerts</p>
+   */
+  private static void alertDownloadFailure() {
+
+    DateTime now = Dates.nowUtc();
+    if (lastFailedDownload.get().isPresent()) {
+      DateTime lastFailure = lastFailedDownload.get().get();
+      if (lastFailure.plusMinutes(1).isBefore(now)) {
+        // It's been a while since we had a failure so OK to notify the user again
+        ControllerEvents.fireAddAlertEvent(Models.newAlertModel(Languages.safeText(MessageKey.NETWORK_CONFIGURATION_ERROR), RAGStatus.AMBER));
+      }
     }
+    lastFailedDownload.set(Optional.of(now));
   }
 
-}
\ No newline at end of file
+}
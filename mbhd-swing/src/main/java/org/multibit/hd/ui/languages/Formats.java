@@ -4,6 +4,7 @@ import com.google.common.base.Strings;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.uri.BitcoinURI;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
@@ -18,6 +19,8 @@ import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p>Utility to provide the following to controllers:</p>
@@ -36,6 +39,27 @@ public class Formats {
    */
   public static final int EXCHANGE_RATE_DECIMAL_PLACES_OFFSET = 2;
 
+  /**
+   * The Bitcoin decimal formats, indexed by the settings they were configured from
+   * A DecimalFormat is expensive to create (locale lookups) so one is kept per setting combination
+   */
+  private static final ConcurrentMap<FormatKey, DecimalFormat> bitcoinFormats = new ConcurrentHashMap<>();
+
+  /**
+   * The local currency decimal formats, indexed by the settings they were configured from
+   */
+  private static final ConcurrentMap<FormatKey, DecimalFormat> localFormats = new ConcurrentHashMap<>();
+
+  /**
+   * <p>Discard the cached decimal formats (called on a configuration change to release those no longer in use)</p>
+   */
+  public static void invalidateFormatCaches() {
+
+    bitcoinFormats.clear();
+    localFormats.clear();
+
+  }
+
   /**
    * <p>Provide a split representation for the Bitcoin balance display.</p>
    * <p>For example, 12345.6789 becomes "12,345.67", "89" </p>
@@ -80,12 +104,15 @@ public class Formats {
 
     Locale currentLocale = languageConfiguration.getLocale();
     BitcoinSymbol bitcoinSymbol = BitcoinSymbol.of(bitcoinConfiguration.getBitcoinSymbol());
+    char decimalSeparator = bitcoinConfiguration.getDecimalSeparator().charAt(0);
 
-    DecimalFormatSymbols dfs = configureDecimalFormatSymbols(bitcoinConfiguration, currentLocale);
-    DecimalFormat localFormat = configureBitcoinDecimalFormat(dfs, bitcoinSymbol, showNegative);
+    DecimalFormat localFormat = getOrCreateBitcoinDecimalFormat(bitcoinConfiguration, currentLocale, bitcoinSymbol, showNegative);
 
-    // Apply formatting to the symbolic amount
-    String formattedAmount = localFormat.format(Coins.toSymbolicAmount(coin, bitcoinSymbol));
+    // Apply formatting to the symbolic amount (formats are shared so not thread safe)
+    final String formattedAmount;
+    synchronized (localFormat) {
+      formattedAmount = localFormat.format(Coins.toSymbolicAmount(coin, bitcoinSymbol));
+    }
 
     // The Satoshi symbol does not have decimals
     if (BitcoinSymbol.SATOSHI.equals(bitcoinSymbol)) {
@@ -99,16 +126,17 @@ public class Formats {
 
     // All other representations require a decimal
 
-    int decimalIndex = formattedAmount.lastIndexOf(dfs.getDecimalSeparator());
+    String decimalAmount = formattedAmount;
+    int decimalIndex = decimalAmount.lastIndexOf(decimalSeparator);
 
     if (decimalIndex == -1) {
-      formattedAmount += dfs.getDecimalSeparator() + "00";
-      decimalIndex = formattedAmount.lastIndexOf(dfs.getDecimalSeparator());
+      decimalAmount += decimalSeparator + "00";
+      decimalIndex = decimalAmount.lastIndexOf(decimalSeparator);
     }
 
     return new String[]{
-      formattedAmount.substring(0, decimalIndex + 3), // 12,345.67 (significant figures)
-      formattedAmount.substring(decimalIndex + 3) // 89 (lesser figures truncated )
+      decimalAmount.substring(0, decimalIndex + 3), // 12,345.67 (significant figures)
+      decimalAmount.substring(decimalIndex + 3) // 89 (lesser figures truncated )
     };
 
   }
@@ -160,10 +188,12 @@ public class Formats {
       return "";
     }
 
-    DecimalFormatSymbols dfs = configureDecimalFormatSymbols(bitcoinConfiguration, locale);
-    DecimalFormat localFormat = configureLocalDecimalFormat(dfs, bitcoinConfiguration, showNegative);
+    DecimalFormat localFormat = getOrCreateLocalDecimalFormat(bitcoinConfiguration, locale, showNegative);
 
-    return localFormat.format(amount);
+    // Formats are shared so not thread safe
+    synchronized (localFormat) {
+      return localFormat.format(amount);
+    }
 
   }
 
@@ -203,6 +233,64 @@ public class Formats {
     return localFormat.format(correctedExchangeRateBigDecimal);
   }
 
+  /**
+   * @param bitcoinConfiguration The Bitcoin configuration providing the separators
+   * @param locale               The locale
+   * @param bitcoinSymbol        The Bitcoin symbol
+   * @param showNegative         True if the negative prefix is allowed
+   *
+   * @return A shared decimal format suitable for Bitcoin balance representation (synchronize on it to use it)
+   */
+  private static DecimalFormat getOrCreateBitcoinDecimalFormat(
+    BitcoinConfiguration bitcoinConfiguration,
+    Locale locale,
+    BitcoinSymbol bitcoinSymbol,
+    boolean showNegative
+  ) {
+
+    FormatKey key = new FormatKey(locale, bitcoinConfiguration, bitcoinSymbol.decimalPlaces(), showNegative);
+
+    DecimalFormat format = bitcoinFormats.get(key);
+    if (format == null) {
+      DecimalFormatSymbols dfs = configureDecimalFormatSymbols(bitcoinConfiguration, locale);
+      format = configureBitcoinDecimalFormat(dfs, bitcoinSymbol, showNegative);
+      DecimalFormat existing = bitcoinFormats.putIfAbsent(key, format);
+      if (existing != null) {
+        format = existing;
+      }
+    }
+
+    return format;
+  }
+
+  /**
+   * @param bitcoinConfiguration The Bitcoin configuration providing the separators and local decimal places
+   * @param locale               The locale
+   * @param showNegative         True if the negative prefix is allowed
+   *
+   * @return A shared decimal format suitable for local currency representation (synchronize on it to use it)
+   */
+  private static DecimalFormat getOrCreateLocalDecimalFormat(
+    BitcoinConfiguration bitcoinConfiguration,
+    Locale locale,
+    boolean showNegative
+  ) {
+
+    FormatKey key = new FormatKey(locale, bitcoinConfiguration, bitcoinConfiguration.getLocalDecimalPlaces(), showNegative);
+
+    DecimalFormat format = localFormats.get(key);
+    if (format == null) {
+      DecimalFormatSymbols dfs = configureDecimalFormatSymbols(bitcoinConfiguration, locale);
+      format = configureLocalDecimalFormat(dfs, bitcoinConfiguration, showNegative);
+      DecimalFormat existing = localFormats.putIfAbsent(key, format);
+      if (existing != null) {
+        format = existing;
+      }
+    }
+
+    return format;
+  }
+
   /**
    * @param dfs The decimal format symbols
    *
@@ -360,4 +448,45 @@ public class Formats {
 
   }
 
+  /**
+   * <p>The settings that a cached decimal format was configured from</p>
+   */
+  private static final class FormatKey {
+
+    private final Locale locale;
+    private final char decimalSeparator;
+    private final char groupingSeparator;
+    private final int decimalPlaces;
+    private final boolean showNegative;
+
+    private FormatKey(Locale locale, BitcoinConfiguration bitcoinConfiguration, int decimalPlaces, boolean showNegative) {
+      this.locale = locale;
+      this.decimalSeparator = bitcoinConfiguration.getDecimalSeparator().charAt(0);
+      this.groupingSeparator = bitcoinConfiguration.getGroupingSeparator().charAt(0);
+      this.decimalPlaces = decimalPlaces;
+      this.showNegative = showNegative;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof FormatKey)) {
+        return false;
+      }
+      FormatKey other = (FormatKey) o;
+      return decimalSeparator == other.decimalSeparator
+        && groupingSeparator == other.groupingSeparator
+        && decimalPlaces == other.decimalPlaces
+        && showNegative == other.showNegative
+        && Objects.equal(locale, other.locale);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(locale, decimalSeparator, groupingSeparator, decimalPlaces, showNegative);
+    }
+  }
+
 }
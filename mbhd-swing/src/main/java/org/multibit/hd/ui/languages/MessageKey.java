@@ -661,6 +661,7 @@ public enum MessageKey {
   SELECT_BACKUP_NOTE_1("select_backup_note_1"),
   SELECT_BACKUP_NOTE_1_TOOLTIP("select_backup_note_1_tooltip"),
   SELECT_BACKUP_NOTE_2("select_backup_note_2"),
+  SELECT_BACKUP_NOTE_3("select_backup_note_3"),
 
   PREPARATION_NOTE_1("preparation_note_1"),
   PREPARATION_NOTE_2("preparation_note_2"),
@@ -1,5 +1,6 @@
 package org.multibit.hd.ui.utils;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
@@ -10,6 +11,10 @@ import com.google.zxing.qrcode.encoder.Encoder;
 import com.google.zxing.qrcode.encoder.QRCode;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
 /**
@@ -25,8 +30,30 @@ public class QRCodes {
 
   private static final int QUIET_ZONE_SIZE = 4;
 
+  /**
+   * The RGB bits of a TYPE_INT_RGB pixel
+   */
+  private static final int RGB_MASK = 0xffffff;
+
+  /**
+   * The number of QR code images to keep (a live preview only revisits recent contents)
+   */
+  private static final int MAXIMUM_CACHED_IMAGES = 16;
+
+  /**
+   * The recently generated QR code images in least recently used order
+   * Access must be synchronized on the map
+   */
+  private static final Map<CacheKey, BufferedImage> imageCache = new LinkedHashMap<CacheKey, BufferedImage>(MAXIMUM_CACHED_IMAGES, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<CacheKey, BufferedImage> eldest) {
+      return size() > MAXIMUM_CACHED_IMAGES;
+    }
+  };
+
   /**
    * <p>Generate a QR code encoding the given contents</p>
+   * <p>Recently generated images are cached so the returned image is shared and must not be modified</p>
    *
    * @param contents    The text to be encoded into the QR code (e.g. a canonical Bitcoin URI)
    * @param scaleFactor The scaling factor providing number of pixels per QR element
@@ -35,6 +62,36 @@ public class QRCodes {
    */
   public static Optional<BufferedImage> generateQRCode(String contents, int scaleFactor) {
 
+    CacheKey key = new CacheKey(contents, scaleFactor);
+
+    synchronized (imageCache) {
+      BufferedImage cachedImage = imageCache.get(key);
+      if (cachedImage != null) {
+        return Optional.of(cachedImage);
+      }
+    }
+
+    Optional<BufferedImage> image = renderQRCode(contents, scaleFactor);
+
+    if (image.isPresent()) {
+      synchronized (imageCache) {
+        imageCache.put(key, image.get());
+      }
+    }
+
+    return image;
+  }
+
+  /**
+   * <p>Generate a QR code encoding the given contents without reference to the cache</p>
+   *
+   * @param contents    The text to be encoded into the QR code (e.g. a canonical Bitcoin URI)
+   * @param scaleFactor The scaling factor providing number of pixels per QR element
+   *
+   * @return A buffered image containing a QR code
+   */
+  static Optional<BufferedImage> renderQRCode(String contents, int scaleFactor) {
+
     // Build the input matrix
     final ByteMatrix matrix;
     try {
@@ -57,15 +114,24 @@ public class QRCodes {
     // Create buffered image for drawing
     BufferedImage image = new BufferedImage(swatchWidth, swatchHeight, BufferedImage.TYPE_INT_RGB);
 
-    // Iterate through the matrix and draw the pixels to the image
+    // Write directly into the raster (one int per pixel) rather than a pixel at a time through setRGB
+    int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    byte[][] matrixArray = matrix.getArray();
+    int[] row = new int[swatchWidth];
+
     for (int y = 0; y < matrixHeight; y++) {
+
+      // Build a scaled row (the greyscale value is masked to RGB as setRGB would)
+      byte[] matrixRow = matrixArray[y];
+      int offset = 0;
       for (int x = 0; x < matrixWidth; x++) {
-        byte imageValue = matrix.get(x, y);
-        for (int scaleX = 0; scaleX < scaleFactor; scaleX++) {
-          for (int scaleY = 0; scaleY < scaleFactor; scaleY++) {
-            image.setRGB(x * scaleFactor + scaleX, y * scaleFactor + scaleY, imageValue);
-          }
-        }
+        Arrays.fill(row, offset, offset + scaleFactor, matrixRow[x] & RGB_MASK);
+        offset += scaleFactor;
+      }
+
+      // Copy the row into each of the scaled image rows
+      for (int scaleY = 0; scaleY < scaleFactor; scaleY++) {
+        System.arraycopy(row, 0, pixels, (y * scaleFactor + scaleY) * swatchWidth, swatchWidth);
       }
     }
 
@@ -80,7 +146,7 @@ public class QRCodes {
    *
    * @return A QR Code as a ByteMatrix 2D array of greyscale values
    */
-  private static ByteMatrix encode(String contents, QRCode code) throws WriterException {
+  static ByteMatrix encode(String contents, QRCode code) throws WriterException {
 
     Preconditions.checkState(!Strings.isNullOrEmpty(contents), "'contents' must be present");
 
@@ -163,4 +229,35 @@ public class QRCodes {
       row[x] = value;
     }
   }
+
+  /**
+   * <p>The parameters that determine a QR code image</p>
+   */
+  private static final class CacheKey {
+
+    private final String contents;
+    private final int scaleFactor;
+
+    private CacheKey(String contents, int scaleFactor) {
+      this.contents = contents;
+      this.scaleFactor = scaleFactor;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey other = (CacheKey) o;
+      return scaleFactor == other.scaleFactor && Objects.equal(contents, other.contents);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(contents, scaleFactor);
+    }
+  }
 }
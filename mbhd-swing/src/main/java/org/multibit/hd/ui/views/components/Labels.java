@@ -1369,7 +1369,8 @@ public class Labels {
 
     return newNoteLabel(new MessageKey[]{
       MessageKey.SELECT_BACKUP_NOTE_1,
-      MessageKey.SELECT_BACKUP_NOTE_2
+      MessageKey.SELECT_BACKUP_NOTE_2,
+      MessageKey.SELECT_BACKUP_NOTE_3
     }, new Object[][]{});
 
   }
@@ -7,6 +7,7 @@ import org.multibit.hd.core.config.LanguageConfiguration;
 import org.multibit.hd.ui.MultiBitUI;
 import org.multibit.hd.ui.languages.Formats;
 import org.multibit.hd.ui.views.components.Labels;
+import org.multibit.hd.ui.views.components.tables.PaymentTableModel;
 import org.multibit.hd.ui.views.themes.Themes;
 
 import javax.swing.*;
@@ -26,25 +27,34 @@ public class AmountBTCTableCellRenderer extends DefaultTableCellRenderer {
 
   public AmountBTCTableCellRenderer() {
     label = Labels.newBlankLabel();
-  }
 
-  public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row,
-                                                 int column) {
+    // Configure the presentation once rather than on every paint
     label.setHorizontalAlignment(SwingConstants.TRAILING);
     label.setOpaque(true);
     label.setBorder(new EmptyBorder(new Insets(0, TrailingJustifiedDateTableCellRenderer.TABLE_BORDER, 1, TrailingJustifiedDateTableCellRenderer.TABLE_BORDER)));
     label.setFont(label.getFont().deriveFont(MultiBitUI.TABLE_TEXT_FONT_SIZE));
+  }
+
+  public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row,
+                                                 int column) {
 
     if (value instanceof Coin) {
 
       // Do the Bitcoin processing
 
       Coin valueCoin = (Coin) value;
-      LanguageConfiguration languageConfiguration = Configurations.currentConfiguration.getLanguage();
-      BitcoinConfiguration bitcoinConfiguration = Configurations.currentConfiguration.getBitcoin();
 
-      String[] balanceArray = Formats.formatCoinAsSymbolic(valueCoin, languageConfiguration, bitcoinConfiguration, true);
-      String balanceString = balanceArray[0] + balanceArray[1];
+      final String balanceString;
+      if (table.getModel() instanceof PaymentTableModel) {
+        // Use the amount formatted when the row was set
+        balanceString = ((PaymentTableModel) table.getModel()).getFormattedAmountBTC(table.convertRowIndexToModel(row));
+      } else {
+        LanguageConfiguration languageConfiguration = Configurations.currentConfiguration.getLanguage();
+        BitcoinConfiguration bitcoinConfiguration = Configurations.currentConfiguration.getBitcoin();
+
+        String[] balanceArray = Formats.formatCoinAsSymbolic(valueCoin, languageConfiguration, bitcoinConfiguration, true);
+        balanceString = balanceArray[0] + balanceArray[1];
+      }
 
       label.setText(balanceString + TrailingJustifiedDateTableCellRenderer.SPACER);
 
@@ -7,6 +7,7 @@ import org.multibit.hd.core.dto.FiatPayment;
 import org.multibit.hd.ui.MultiBitUI;
 import org.multibit.hd.ui.languages.Formats;
 import org.multibit.hd.ui.views.components.Labels;
+import org.multibit.hd.ui.views.components.tables.PaymentTableModel;
 import org.multibit.hd.ui.views.themes.Themes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,14 +32,16 @@ public class AmountFiatTableCellRenderer extends DefaultTableCellRenderer {
 
   public AmountFiatTableCellRenderer() {
     label = Labels.newBlankLabel();
-  }
 
-  public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row,
-                                                 int column) {
+    // Configure the presentation once rather than on every paint
     label.setHorizontalAlignment(SwingConstants.TRAILING);
     label.setOpaque(true);
     label.setBorder(new EmptyBorder(new Insets(0, TrailingJustifiedDateTableCellRenderer.TABLE_BORDER, 1, TrailingJustifiedDateTableCellRenderer.TABLE_BORDER)));
     label.setFont(label.getFont().deriveFont(MultiBitUI.TABLE_TEXT_FONT_SIZE));
+  }
+
+  public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row,
+                                                 int column) {
 
     if (value instanceof FiatPayment) {
 
@@ -47,16 +50,22 @@ public class AmountFiatTableCellRenderer extends DefaultTableCellRenderer {
       if (!(fiatPayment.getAmount() == null) && fiatPayment.getAmount().isPresent() && fiatPayment.getCurrency().isPresent()) {
         BigDecimal amount = fiatPayment.getAmount().get();
         try {
-          LanguageConfiguration languageConfiguration = Configurations.currentConfiguration.getLanguage();
-          BitcoinConfiguration bitcoinConfiguration = Configurations.currentConfiguration.getBitcoin();
+          String balance;
+          if (table.getModel() instanceof PaymentTableModel) {
+            // Use the amount formatted when the row was set
+            balance = ((PaymentTableModel) table.getModel()).getFormattedAmountFiat(table.convertRowIndexToModel(row));
+          } else {
+            LanguageConfiguration languageConfiguration = Configurations.currentConfiguration.getLanguage();
+            BitcoinConfiguration bitcoinConfiguration = Configurations.currentConfiguration.getBitcoin();
 
-          String balance = Formats.formatLocalAmount(amount, languageConfiguration.getLocale(), bitcoinConfiguration, true);
-          if (!bitcoinConfiguration.getLocalCurrencyCode().equals(fiatPayment.getCurrency().get().getCurrencyCode())) {
-            // Fiat payment is in a different currency to the main UI
-            if (bitcoinConfiguration.isCurrencySymbolLeading()) {
-              balance = fiatPayment.getCurrency().get().getSymbol() + "\u00a0" + balance;
-            } else {
-              balance = balance + "\u00a0" + fiatPayment.getCurrency().get().getSymbol();
+            balance = Formats.formatLocalAmount(amount, languageConfiguration.getLocale(), bitcoinConfiguration, true);
+            if (!bitcoinConfiguration.getLocalCurrencyCode().equals(fiatPayment.getCurrency().get().getCurrencyCode())) {
+              // Fiat payment is in a different currency to the main UI
+              if (bitcoinConfiguration.isCurrencySymbolLeading()) {
+                balance = fiatPayment.getCurrency().get().getSymbol() + "\u00a0" + balance;
+              } else {
+                balance = balance + "\u00a0" + fiatPayment.getCurrency().get().getSymbol();
+              }
             }
           }
 
@@ -32,8 +32,11 @@ public class ImageIconTableCellRenderer extends DefaultTableCellRenderer {
       setBackground(table.getBackground());
     }
 
-    if (value != null && value instanceof ImageIcon) {
+    // Clear any icon from a previous row (images load lazily so may not be present yet)
+    if (value instanceof ImageIcon) {
       label.setIcon((ImageIcon)value);
+    } else {
+      label.setIcon(null);
     }
 
     setBorder(noFocusBorder);
@@ -27,6 +27,7 @@ import java.util.List;
  * <p>TableModel to provide the following to contact JTable:</p>
  * <ul>
  * <li>Adapts a list of contacts into a table model</li>
+ * <li>Loads the contact Gravatars as their rows are painted</li>
  * </ul>
  *
  * @since 0.0.1
@@ -57,6 +58,12 @@ public class ContactTableModel extends AbstractTableModel {
   };
 
   private Object[][] data;
+
+  /**
+   * True if the Gravatar for the row has been requested (indexed as data)
+   */
+  private boolean[] gravatarRequested = new boolean[0];
+
   private List<Contact> contacts = Lists.newArrayList();
 
   public ContactTableModel(List<Contact> contacts) {
@@ -81,6 +88,13 @@ public class ContactTableModel extends AbstractTableModel {
   }
 
   public Object getValueAt(int row, int col) {
+
+    // Only rows that are painted are asked for their Gravatar so load it on demand
+    if (col == GRAVATAR_COLUMN_INDEX && !gravatarRequested[row]) {
+      gravatarRequested[row] = true;
+      retrieveGravatar(row);
+    }
+
     return data[row][col];
   }
 
@@ -207,6 +221,9 @@ public class ContactTableModel extends AbstractTableModel {
       data = new Object[contacts.size()][COLUMN_COUNT];
     }
 
+    // Gravatars are loaded as their rows are painted
+    gravatarRequested = new boolean[contacts.size()];
+
     int row = 0;
     for (Contact contact : contacts) {
 
@@ -219,60 +236,84 @@ public class ContactTableModel extends AbstractTableModel {
       rowData[ADDRESS_COLUMN_INDEX] = contact.getBitcoinAddress().isPresent() ? contact.getBitcoinAddress().get().toString() : "";
       rowData[TAG_COLUMN_INDEX] = Joiner.on(" ").join(contact.getTags());
 
-      // Ensure we download the contact image asynchronously
-      final ListenableFuture<Optional<BufferedImage>> imageFuture = Gravatars.retrieveGravatar(contact.getEmail().or("nobody@example.org"));
-      Futures.addCallback(imageFuture, new FutureCallback<Optional<BufferedImage>>() {
+      data[row] = rowData;
+
+      row++;
+
+    }
 
-        public void onSuccess(final Optional<BufferedImage> image) {
+    // Update the table data now
+    if (fireTableDataChanged) {
+      fireTableDataChanged();
+    }
 
-          SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-              if (image.isPresent()) {
 
-                final ImageIcon gravatar = ImageDecorator.toImageIcon(
-                  ImageDecorator.applyRoundedCorners(image.get(), MultiBitUI.IMAGE_CORNER_RADIUS)
-                );
-                rowData[GRAVATAR_COLUMN_INDEX] = gravatar;
-              } else {
-                // Update the UI to use the "no network" icon
-                rowData[GRAVATAR_COLUMN_INDEX] = Images.newNoNetworkContactImageIcon();
-              }
+  }
 
-              // Ensure all listeners update to the new situation
-              fireTableDataChanged();
-            }
-          });
-        }
+  /**
+   * <p>Download the contact image asynchronously and update the row when it arrives</p>
+   * <p>Must be called on the EDT</p>
+   *
+   * @param row The model row
+   */
+  private void retrieveGravatar(final int row) {
+
+    final Object[] rowData = data[row];
+    Contact contact = contacts.get(row);
+
+    final ListenableFuture<Optional<BufferedImage>> imageFuture = Gravatars.retrieveGravatar(contact.getEmail().or("nobody@example.org"));
+    Futures.addCallback(imageFuture, new FutureCallback<Optional<BufferedImage>>() {
 
-        public void onFailure(Throwable thrown) {
+      public void onSuccess(final Optional<BufferedImage> image) {
 
-          SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
+        SwingUtilities.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            if (image.isPresent()) {
 
+              final ImageIcon gravatar = ImageDecorator.toImageIcon(
+                ImageDecorator.applyRoundedCorners(image.get(), MultiBitUI.IMAGE_CORNER_RADIUS)
+              );
+              rowData[GRAVATAR_COLUMN_INDEX] = gravatar;
+            } else {
               // Update the UI to use the "no network" icon
               rowData[GRAVATAR_COLUMN_INDEX] = Images.newNoNetworkContactImageIcon();
-
-              // Ensure all listeners update to the new situation
-              fireTableDataChanged();
             }
-          });
-        }
-      });
 
-      data[row] = rowData;
+            fireGravatarUpdated(row, rowData);
+          }
+        });
+      }
 
-      row++;
+      public void onFailure(Throwable thrown) {
 
-    }
+        SwingUtilities.invokeLater(new Runnable() {
+          @Override
+          public void run() {
 
-    // Update the table data now
-    if (fireTableDataChanged) {
-      fireTableDataChanged();
-    }
+            // Update the UI to use the "no network" icon
+            rowData[GRAVATAR_COLUMN_INDEX] = Images.newNoNetworkContactImageIcon();
+
+            fireGravatarUpdated(row, rowData);
+          }
+        });
+      }
+    });
+
+  }
 
+  /**
+   * <p>Repaint only the Gravatar cell (if the row has not been replaced in the meantime)</p>
+   *
+   * @param row     The model row
+   * @param rowData The row data that was updated
+   */
+  private void fireGravatarUpdated(int row, Object[] rowData) {
+
+    if (row < data.length && data[row] == rowData) {
+      fireTableCellUpdated(row, GRAVATAR_COLUMN_INDEX);
+    }
 
   }
 
-}
\ No newline at end of file
+}
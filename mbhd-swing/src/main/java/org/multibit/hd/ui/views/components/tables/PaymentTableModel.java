@@ -1,22 +1,30 @@
 package org.multibit.hd.ui.views.components.tables;
 
+import com.google.common.collect.Lists;
+import org.bitcoinj.core.Coin;
 import org.joda.time.DateTime;
+import org.multibit.hd.core.config.BitcoinConfiguration;
 import org.multibit.hd.core.config.Configurations;
 import org.multibit.hd.core.dto.FiatPayment;
 import org.multibit.hd.core.dto.PaymentData;
+import org.multibit.hd.core.dto.PaymentRequestData;
 import org.multibit.hd.core.dto.RAGStatus;
+import org.multibit.hd.core.dto.TransactionData;
+import org.multibit.hd.ui.languages.Formats;
 import org.multibit.hd.ui.languages.Languages;
 import org.multibit.hd.ui.languages.MessageKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * <p>TableModel to provide the following to contact JTable:</p>
  * <ul>
  * <li>Adapts a list of payments into a table model</li>
+ * <li>Patches in changes to the payments as fine grained row events to keep selection stable</li>
  * </ul>
  *
  * @since 0.0.1
@@ -31,6 +39,16 @@ public class PaymentTableModel extends AbstractTableModel {
   public static final int AMOUNT_BTC_COLUMN_INDEX = 4;
   public static final int AMOUNT_FIAT_COLUMN_INDEX = 5;
 
+  /**
+   * The formatted Bitcoin amount is held after the visible columns so it is computed once per row rather than on paint
+   */
+  private static final int FORMATTED_AMOUNT_BTC_INDEX = 6;
+
+  /**
+   * The formatted fiat amount is held alongside the formatted Bitcoin amount for the same reason
+   */
+  private static final int FORMATTED_AMOUNT_FIAT_INDEX = 7;
+
   private static final Logger log = LoggerFactory.getLogger(PaymentTableModel.class);
 
   private String[] columnNames = {
@@ -42,9 +60,9 @@ public class PaymentTableModel extends AbstractTableModel {
           Languages.safeText(MessageKey.LOCAL_AMOUNT) + " " + Configurations.currentConfiguration.getBitcoin().getLocalCurrencySymbol()
   };
 
-  private Object[][] data;
+  private List<Object[]> data = Lists.newArrayList();
 
-  private List<PaymentData> paymentData;
+  private List<PaymentData> paymentData = Lists.newArrayList();
 
   public PaymentTableModel(List<PaymentData> paymentData) {
     setPaymentData(paymentData, false);
@@ -57,29 +75,195 @@ public class PaymentTableModel extends AbstractTableModel {
    */
   public void setPaymentData(List<PaymentData> paymentData, boolean fireTableDataChanged) {
 
-    this.paymentData = paymentData;
+    this.paymentData = Lists.newArrayList(paymentData);
 
-    data = new Object[paymentData.size()][];
-
-    int row = 0;
+    data = Lists.newArrayListWithCapacity(paymentData.size());
     for (PaymentData payment : paymentData) {
+      data.add(newRowData(payment));
+    }
 
-      Object[] rowData = new Object[]{
-              payment.getDate(),
-              payment.getStatus(),
-              payment.getType(),
-              payment.getDescription(),
-              payment.getAmountCoin(),
-              payment.getAmountFiat()
-      };
+    if (fireTableDataChanged) {
+      fireTableDataChanged();
+    }
+  }
 
-      data[row] = rowData;
+  /**
+   * <p>Patch the table to show the new payment data, firing only the row events that describe the difference.</p>
+   * <p>Rows are matched by transaction ID or payment request address over the unchanged leading and trailing
+   * runs so that typical changes (a new payment at the top, a status update in place) avoid a full table refresh
+   * and the current selection is preserved.</p>
+   * <p>Must be called on the EDT</p>
+   *
+   * @param newPaymentData The payment data to show in the table (typically a filtered, sorted snapshot)
+   */
+  public void patchPaymentData(List<PaymentData> newPaymentData) {
 
-      row++;
+    int oldSize = paymentData.size();
+    int newSize = newPaymentData.size();
+
+    // Find the leading run of rows representing the same payments
+    int prefix = 0;
+    while (prefix < oldSize && prefix < newSize
+      && rowKey(paymentData.get(prefix)).equals(rowKey(newPaymentData.get(prefix)))) {
+      prefix++;
     }
-    if (fireTableDataChanged) {
-      fireTableDataChanged();
+
+    // Find the trailing run of rows representing the same payments
+    int suffix = 0;
+    while (suffix < oldSize - prefix && suffix < newSize - prefix
+      && rowKey(paymentData.get(oldSize - 1 - suffix)).equals(rowKey(newPaymentData.get(newSize - 1 - suffix)))) {
+      suffix++;
+    }
+
+    // Update the matched rows in place
+    patchMatchedRows(newPaymentData, 0, 0, prefix);
+    patchMatchedRows(newPaymentData, oldSize - suffix, newSize - suffix, suffix);
+
+    // Remove the old rows in between
+    int oldMiddle = oldSize - prefix - suffix;
+    if (oldMiddle > 0) {
+      paymentData.subList(prefix, prefix + oldMiddle).clear();
+      data.subList(prefix, prefix + oldMiddle).clear();
+      fireTableRowsDeleted(prefix, prefix + oldMiddle - 1);
+    }
+
+    // Insert the new rows in between
+    int newMiddle = newSize - prefix - suffix;
+    if (newMiddle > 0) {
+      List<PaymentData> insertedPayments = newPaymentData.subList(prefix, prefix + newMiddle);
+      List<Object[]> insertedRows = Lists.newArrayListWithCapacity(newMiddle);
+      for (PaymentData payment : insertedPayments) {
+        insertedRows.add(newRowData(payment));
+      }
+      paymentData.addAll(prefix, insertedPayments);
+      data.addAll(prefix, insertedRows);
+      fireTableRowsInserted(prefix, prefix + newMiddle - 1);
+    }
+  }
+
+  /**
+   * Replace rows that represent the same payments, firing an update for each contiguous run of changed rows
+   *
+   * @param newPaymentData The new payment data
+   * @param oldStart       The first row in the current table
+   * @param newStart       The first row in the new payment data
+   * @param count          The number of matched rows
+   */
+  private void patchMatchedRows(List<PaymentData> newPaymentData, int oldStart, int newStart, int count) {
+
+    int firstChangedRow = -1;
+    for (int i = 0; i < count; i++) {
+
+      int row = oldStart + i;
+      PaymentData payment = newPaymentData.get(newStart + i);
+      Object[] rowData = newRowData(payment);
+
+      paymentData.set(row, payment);
+      boolean changed = !Arrays.equals(data.get(row), rowData);
+      data.set(row, rowData);
+
+      if (changed && firstChangedRow == -1) {
+        firstChangedRow = row;
+      } else if (!changed && firstChangedRow != -1) {
+        fireTableRowsUpdated(firstChangedRow, row - 1);
+        firstChangedRow = -1;
+      }
+    }
+    if (firstChangedRow != -1) {
+      fireTableRowsUpdated(firstChangedRow, oldStart + count - 1);
+    }
+  }
+
+  /**
+   * @param payment The payment
+   *
+   * @return The row data for the payment
+   */
+  private Object[] newRowData(PaymentData payment) {
+
+    return new Object[]{
+      payment.getDate(),
+      payment.getStatus(),
+      payment.getType(),
+      payment.getDescription(),
+      payment.getAmountCoin(),
+      payment.getAmountFiat(),
+      formatAmountBTC(payment.getAmountCoin()),
+      formatAmountFiat(payment.getAmountFiat())
+    };
+  }
+
+  /**
+   * @param amountCoin The amount in coins (may be null)
+   *
+   * @return The amount formatted for the Bitcoin amount column, or empty
+   */
+  private static String formatAmountBTC(Coin amountCoin) {
+
+    if (amountCoin == null) {
+      return "";
     }
+
+    String[] balanceArray = Formats.formatCoinAsSymbolic(
+      amountCoin,
+      Configurations.currentConfiguration.getLanguage(),
+      Configurations.currentConfiguration.getBitcoin(),
+      true
+    );
+
+    return balanceArray[0] + balanceArray[1];
+  }
+
+  /**
+   * @param amountFiat The fiat payment (may be null)
+   *
+   * @return The amount formatted for the fiat amount column, or empty if there is no fiat amount
+   */
+  private static String formatAmountFiat(FiatPayment amountFiat) {
+
+    if (amountFiat == null || amountFiat.getAmount() == null || !amountFiat.getAmount().isPresent() || !amountFiat.getCurrency().isPresent()) {
+      return "";
+    }
+
+    BitcoinConfiguration bitcoinConfiguration = Configurations.currentConfiguration.getBitcoin();
+
+    try {
+      String balance = Formats.formatLocalAmount(
+        amountFiat.getAmount().get(),
+        Configurations.currentConfiguration.getLanguage().getLocale(),
+        bitcoinConfiguration,
+        true
+      );
+      if (!bitcoinConfiguration.getLocalCurrencyCode().equals(amountFiat.getCurrency().get().getCurrencyCode())) {
+        // Fiat payment is in a different currency to the main UI
+        if (bitcoinConfiguration.isCurrencySymbolLeading()) {
+          balance = amountFiat.getCurrency().get().getSymbol() + "\u00a0" + balance;
+        } else {
+          balance = balance + "\u00a0" + amountFiat.getCurrency().get().getSymbol();
+        }
+      }
+      return balance;
+    } catch (NumberFormatException nfe) {
+      // The fiat amount could not be understood as a number so show nothing
+      log.error(nfe.getClass().getCanonicalName() + " " + nfe.getMessage());
+      return "";
+    }
+  }
+
+  /**
+   * @param payment The payment
+   *
+   * @return A key identifying the payment across refreshes
+   */
+  private static Object rowKey(PaymentData payment) {
+
+    if (payment instanceof TransactionData) {
+      return ((TransactionData) payment).getTransactionId();
+    }
+    if (payment instanceof PaymentRequestData) {
+      return String.valueOf(((PaymentRequestData) payment).getAddress());
+    }
+    return payment;
   }
 
   public int getColumnCount() {
@@ -87,7 +271,7 @@ public class PaymentTableModel extends AbstractTableModel {
   }
 
   public int getRowCount() {
-    return data.length;
+    return data.size();
   }
 
   public String getColumnName(int col) {
@@ -95,15 +279,43 @@ public class PaymentTableModel extends AbstractTableModel {
   }
 
   public Object getValueAt(int row, int col) {
-    if (data.length == 0) {
+    if (data.isEmpty()) {
       return "";
     }
     try {
-      return data[row][col];
-    } catch (NullPointerException npe) {
-      log.error("NullPointerException reading row = " + row + ", column = " + col);
+      return data.get(row)[col];
+    } catch (NullPointerException | IndexOutOfBoundsException e) {
+      log.error("Problem reading row = " + row + ", column = " + col);
+      return "";
+    }
+  }
+
+  /**
+   * @param row The row in the model (not the view)
+   *
+   * @return The Bitcoin amount formatted when the row was last set
+   */
+  public String getFormattedAmountBTC(int row) {
+
+    if (row < 0 || row >= data.size()) {
       return "";
     }
+
+    return (String) data.get(row)[FORMATTED_AMOUNT_BTC_INDEX];
+  }
+
+  /**
+   * @param row The row in the model (not the view)
+   *
+   * @return The fiat amount formatted when the row was last set
+   */
+  public String getFormattedAmountFiat(int row) {
+
+    if (row < 0 || row >= data.size()) {
+      return "";
+    }
+
+    return (String) data.get(row)[FORMATTED_AMOUNT_FIAT_INDEX];
   }
 
   /**
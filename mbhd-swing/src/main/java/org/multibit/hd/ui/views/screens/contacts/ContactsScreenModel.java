@@ -64,7 +64,7 @@ public class ContactsScreenModel extends AbstractScreenModel {
 
     contactService.removeAll(selectedContacts);
 
-    contactService.writeContacts();
+    contactService.scheduleWriteContacts();
 
   }
 
@@ -77,7 +77,7 @@ public class ContactsScreenModel extends AbstractScreenModel {
       Collection<Contact> contacts = undoStack.pop();
 
       contactService.addAll(contacts);
-      contactService.writeContacts();
+      contactService.scheduleWriteContacts();
 
     }
 
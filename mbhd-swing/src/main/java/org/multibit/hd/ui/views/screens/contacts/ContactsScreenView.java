@@ -165,7 +165,7 @@ public class ContactsScreenView extends AbstractScreenView<ContactsScreenModel>
     List<Contact> contacts = ((EditContactWizardModel) event.getWizardModel()).getContacts();
 
     getScreenModel().getContactService().updateContacts(contacts);
-    getScreenModel().getContactService().writeContacts();
+    getScreenModel().getContactService().scheduleWriteContacts();
 
     // Repopulate the table accordingly
     contactsTableModel.setContacts(getScreenModel().getContacts(), true);
@@ -153,7 +153,7 @@ public class HistoryScreenView extends AbstractScreenView<HistoryScreenModel> im
     List<HistoryEntry> historyEntries = ((EditHistoryWizardModel) event.getWizardModel()).getHistoryEntries();
 
     getScreenModel().getHistoryService().updateHistory(historyEntries);
-    getScreenModel().getHistoryService().writeHistory();
+    getScreenModel().getHistoryService().scheduleWriteHistory();
 
     update();
 
@@ -1,7 +1,10 @@
 package org.multibit.hd.ui.views.screens.payments;
 
+import com.google.common.base.Optional;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import net.miginfocom.swing.MigLayout;
+import org.multibit.hd.core.concurrent.SafeExecutors;
 import org.multibit.hd.core.dto.PaymentData;
 import org.multibit.hd.core.dto.PaymentRequestData;
 import org.multibit.hd.core.dto.TransactionData;
@@ -41,6 +44,8 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>View to provide the following to application:</p>
@@ -62,6 +67,31 @@ public class PaymentsScreenView extends AbstractScreenView<PaymentsScreenModel>
   // View components
   private ModelAndView<EnterSearchModel, EnterSearchView> enterSearchMaV;
 
+  /**
+   * The longest time the table is left unchanged while superseded refresh requests are skipped
+   */
+  private static final long MAXIMUM_REFRESH_INTERVAL_MILLIS = 1_000;
+
+  /**
+   * Builds and filters the payment snapshot away from the EDT (shared so that rebuilding the view leaves no thread behind)
+   */
+  private static final ListeningExecutorService refreshPaymentsExecutorService = SafeExecutors.newSingleThreadExecutor("refresh-payments");
+
+  /**
+   * Identifies the most recent refresh request so that superseded requests can be skipped
+   */
+  private final AtomicLong refreshSequence = new AtomicLong();
+
+  /**
+   * The time the table was last patched (written on the EDT)
+   */
+  private volatile long lastRefreshMillis = System.currentTimeMillis();
+
+  /**
+   * True if a refresh of the wallet payment data has been requested but not yet performed
+   */
+  private final AtomicBoolean paymentDataRefreshRequested = new AtomicBoolean();
+
   /**
    * @param panelModel The model backing this panel view
    * @param screen     The screen to filter events from components
@@ -186,42 +216,77 @@ public class PaymentsScreenView extends AbstractScreenView<PaymentsScreenModel>
 
   }
 
+  /**
+   * <p>Refresh the payments table</p>
+   * <p>The payment snapshot and filtering are computed on a worker thread and only the resulting row changes
+   * are posted to the EDT. Bursts of requests (e.g. during synchronization) are coalesced but the table is still
+   * patched at least once per <code>MAXIMUM_REFRESH_INTERVAL_MILLIS</code> while they continue.</p>
+   *
+   * @param refreshData True if the wallet payment data should be refreshed, false to just apply the search query
+   */
   private void update(final boolean refreshData) {
 
     if (paymentsTable != null) {
 
-      SwingUtilities.invokeLater(new Runnable() {
-        @Override
-        public void run() {
-
-          try {
-            // Remember the selected row
-            int selectedTableRow = paymentsTable.getSelectedRow();
+      if (refreshData) {
+        paymentDataRefreshRequested.set(true);
+      }
+      final long sequence = refreshSequence.incrementAndGet();
 
-            WalletService walletService = CoreServices.getCurrentWalletService().get();
+      refreshPaymentsExecutorService.submit(
+        new Runnable() {
+          @Override
+          public void run() {
 
-            // Refresh the wallet payment list if asked
-            if (refreshData) {
-              walletService.getPaymentDataList();
+            // Skip if a more recent refresh has been queued
+            if (sequence != refreshSequence.get() && !isRefreshOverdue()) {
+              return;
             }
-            // Check the search MaV model for a query and apply it
-            List<PaymentData> filteredPaymentDataList = walletService.filterPaymentsByContent(enterSearchMaV.getModel().getValue());
 
-            ((PaymentTableModel) paymentsTable.getModel()).setPaymentData(filteredPaymentDataList, true);
+            Optional<WalletService> walletService = CoreServices.getCurrentWalletService();
+            if (!walletService.isPresent()) {
+              // No wallet is open - nothing to do
+              return;
+            }
 
-            // Reselect the selected row if possible
-            if (selectedTableRow != -1 && selectedTableRow < paymentsTable.getModel().getRowCount()) {
-              paymentsTable.changeSelection(selectedTableRow, 0, false, false);
+            try {
+              // Refresh the wallet payment list if asked
+              if (paymentDataRefreshRequested.getAndSet(false)) {
+                walletService.get().getPaymentDataList();
+              }
+
+              // Check the search MaV model for a query and apply it
+              final List<PaymentData> filteredPaymentDataList = walletService.get().filterPaymentsByContent(enterSearchMaV.getModel().getValue());
+
+              SwingUtilities.invokeLater(
+                new Runnable() {
+                  @Override
+                  public void run() {
+
+                    // Ignore stale results unless a more recent one may be some time coming
+                    if (sequence == refreshSequence.get() || isRefreshOverdue()) {
+                      ((PaymentTableModel) paymentsTable.getModel()).patchPaymentData(filteredPaymentDataList);
+                      lastRefreshMillis = System.currentTimeMillis();
+                    }
+                  }
+                });
+
+            } catch (IllegalStateException ise) {
+              // No wallet is open - nothing to do
             }
-          } catch (IllegalStateException ise) {
-            // No wallet is open - nothing to do
           }
-        }
-      });
+        });
     }
 
   }
 
+  /**
+   * @return True if the table has not been patched for longer than the maximum refresh interval
+   */
+  private boolean isRefreshOverdue() {
+    return System.currentTimeMillis() - lastRefreshMillis >= MAXIMUM_REFRESH_INTERVAL_MILLIS;
+  }
+
   /**
    * @return The show transaction details action
    */
@@ -10,8 +10,6 @@ import org.multibit.hd.core.dto.FiatPayment;
 import org.multibit.hd.core.dto.PaymentRequestData;
 import org.multibit.hd.core.dto.WalletSummary;
 import org.multibit.hd.core.events.ExchangeRateChangedEvent;
-import org.multibit.hd.core.exceptions.ExceptionHandler;
-import org.multibit.hd.core.exceptions.PaymentsSaveException;
 import org.multibit.hd.core.exchanges.ExchangeKey;
 import org.multibit.hd.core.managers.InstallationManager;
 import org.multibit.hd.core.managers.WalletManager;
@@ -223,12 +221,9 @@ public class RequestBitcoinEnterDetailsPanelView extends AbstractWizardPanelView
     paymentRequestData.setAmountFiat(fiatPayment);
 
     walletService.addPaymentRequest(paymentRequestData);
-    try {
-      log.debug("Saving payment information");
-      walletService.writePayments();
-    } catch (PaymentsSaveException pse) {
-      ExceptionHandler.handleThrowable(pse);
-    }
+
+    log.debug("Saving payment information");
+    walletService.scheduleWritePayments();
 
 
     // Ensure the views that display payments update through a "wallet detail changed" event
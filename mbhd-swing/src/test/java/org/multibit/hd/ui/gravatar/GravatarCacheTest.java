@@ -0,0 +1,228 @@
+package org.multibit.hd.ui.gravatar;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.hd.core.files.SecureFiles;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class GravatarCacheTest {
+
+  private static final String HASH_1 = "00000000000000000000000000000001";
+  private static final String HASH_2 = "00000000000000000000000000000002";
+  private static final String HASH_3 = "00000000000000000000000000000003";
+
+  private static final String ETAG = "\"gravatar-etag\"";
+
+  private HttpServer server;
+
+  private String baseUrl;
+
+  private File cacheDirectory;
+
+  private ListeningExecutorService executorService;
+
+  private byte[] imageBytes;
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private final AtomicReference<String> lastIfNoneMatch = new AtomicReference<>();
+
+  private volatile CountDownLatch responseLatch = new CountDownLatch(0);
+
+  @Before
+  public void setUp() throws Exception {
+
+    BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", outputStream);
+    imageBytes = outputStream.toByteArray();
+
+    // A local stub of the Gravatar service supporting conditional requests
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/avatar/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+
+        requests.incrementAndGet();
+        lastIfNoneMatch.set(exchange.getRequestHeaders().getFirst("If-None-Match"));
+
+        try {
+          responseLatch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+
+        if (ETAG.equals(lastIfNoneMatch.get())) {
+          exchange.sendResponseHeaders(304, -1);
+        } else {
+          exchange.getResponseHeaders().add("ETag", ETAG);
+          exchange.sendResponseHeaders(200, imageBytes.length);
+          try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(imageBytes);
+          }
+        }
+        exchange.close();
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+
+    baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/avatar/";
+
+    cacheDirectory = SecureFiles.createTemporaryDirectory();
+
+    executorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(10));
+
+  }
+
+  @After
+  public void tearDown() throws Exception {
+
+    server.stop(0);
+    executorService.shutdownNow();
+
+  }
+
+  @Test
+  public void testDiskCacheSurvivesRestart() throws Exception {
+
+    assertThat(newCache(TimeUnit.DAYS.toMillis(1), 10).retrieve(HASH_1).get().isPresent()).isTrue();
+    assertThat(requests.get()).isEqualTo(1);
+
+    // A new cache (as after a restart) uses the image on disk within the time to live
+    GravatarCache restarted = newCache(TimeUnit.DAYS.toMillis(1), 10);
+    assertThat(restarted.retrieve(HASH_1).get().isPresent()).isTrue();
+    assertThat(requests.get()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testConditionalRevalidation() throws Exception {
+
+    // No time to live so every retrieval is revalidated
+    GravatarCache testObject = newCache(0, 10);
+
+    assertThat(testObject.retrieve(HASH_1).get().isPresent()).isTrue();
+    assertThat(lastIfNoneMatch.get()).isNull();
+
+    assertThat(testObject.retrieve(HASH_1).get().isPresent()).isTrue();
+    assertThat(requests.get()).isEqualTo(2);
+    assertThat(lastIfNoneMatch.get()).isEqualTo(ETAG);
+
+  }
+
+  @Test
+  public void testExpiredImageUsedWhenOffline() throws Exception {
+
+    GravatarCache testObject = newCache(0, 10);
+    assertThat(testObject.retrieve(HASH_1).get().isPresent()).isTrue();
+
+    server.stop(0);
+
+    assertThat(testObject.retrieve(HASH_1).get().isPresent()).isTrue();
+
+    // Nothing to fall back on
+    try {
+      testObject.retrieve(HASH_2).get();
+      fail("Expected the download to fail");
+    } catch (Exception e) {
+      assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+
+  }
+
+  @Test
+  public void testConcurrentRequestsAreCoalesced() throws Exception {
+
+    GravatarCache testObject = newCache(TimeUnit.DAYS.toMillis(1), 10);
+
+    // Hold the response until all the requests have been made
+    responseLatch = new CountDownLatch(1);
+
+    List<ListenableFuture<Optional<BufferedImage>>> futures = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      futures.add(testObject.retrieve(HASH_1));
+    }
+
+    responseLatch.countDown();
+
+    for (ListenableFuture<Optional<BufferedImage>> future : futures) {
+      assertThat(future.get(5, TimeUnit.SECONDS).isPresent()).isTrue();
+    }
+    assertThat(requests.get()).isEqualTo(1);
+
+  }
+
+  @Test
+  public void testLeastRecentlyUsedAreRemoved() throws Exception {
+
+    GravatarCache testObject = newCache(TimeUnit.DAYS.toMillis(1), 2);
+
+    testObject.retrieve(HASH_1).get();
+    testObject.retrieve(HASH_2).get();
+
+    // Use the first image again so the second is the oldest
+    testObject.retrieve(HASH_1).get();
+
+    testObject.retrieve(HASH_3).get();
+
+    assertThat(testObject.size()).isEqualTo(2);
+    assertThat(new File(cacheDirectory, HASH_1 + ".img").exists()).isTrue();
+    assertThat(new File(cacheDirectory, HASH_2 + ".img").exists()).isFalse();
+    assertThat(new File(cacheDirectory, HASH_3 + ".img").exists()).isTrue();
+
+  }
+
+  @Test
+  public void testLeastRecentlyUsedSurviveRestart() throws Exception {
+
+    GravatarCache testObject = newCache(TimeUnit.DAYS.toMillis(1), 2);
+
+    testObject.retrieve(HASH_1).get();
+    testObject.retrieve(HASH_2).get();
+
+    // Make the first image the oldest on disk
+    assertThat(new File(cacheDirectory, HASH_1 + ".img").setLastModified(System.currentTimeMillis() - 60000)).isTrue();
+
+    // A new cache reads the order of use from disk
+    testObject = newCache(TimeUnit.DAYS.toMillis(1), 2);
+    assertThat(testObject.size()).isEqualTo(2);
+
+    testObject.retrieve(HASH_3).get();
+
+    assertThat(testObject.size()).isEqualTo(2);
+    assertThat(new File(cacheDirectory, HASH_1 + ".img").exists()).isFalse();
+    assertThat(new File(cacheDirectory, HASH_2 + ".img").exists()).isTrue();
+
+  }
+
+  private GravatarCache newCache(long timeToLiveMillis, int maximumEntries) {
+    return new GravatarCache(cacheDirectory, baseUrl, "?s=40", timeToLiveMillis, maximumEntries, executorService);
+  }
+
+}
@@ -222,6 +222,34 @@ public class FormatsTest {
     assertThat(balance[1]).isEqualTo("");
   }
 
+  @Test
+  public void testFormatCoinAsSymbolic_CachedFormatFollowsConfiguration() throws Exception {
+
+    bitcoinConfiguration.setBitcoinSymbol(BitcoinSymbol.BTC.name());
+
+    String[] balance = Formats.formatCoinAsSymbolic(Coin.parseCoin(testAmounts[0]), languageConfiguration, bitcoinConfiguration);
+    assertThat(balance[0]).isEqualTo("20,999,999.12");
+
+    // A change of separators must not reuse the cached format
+    bitcoinConfiguration.setDecimalSeparator(",");
+    bitcoinConfiguration.setGroupingSeparator(".");
+
+    balance = Formats.formatCoinAsSymbolic(Coin.parseCoin(testAmounts[0]), languageConfiguration, bitcoinConfiguration);
+    assertThat(balance[0]).isEqualTo("20.999.999,12");
+    assertThat(balance[1]).isEqualTo("345678");
+
+    // Negative amounts use a separate format
+    balance = Formats.formatCoinAsSymbolic(Coin.parseCoin(testAmounts[1]).negate(), languageConfiguration, bitcoinConfiguration, false);
+    assertThat(balance[0]).isEqualTo("1,00");
+
+    // Invalidation only discards the cache
+    Formats.invalidateFormatCaches();
+
+    balance = Formats.formatCoinAsSymbolic(Coin.parseCoin(testAmounts[1]).negate(), languageConfiguration, bitcoinConfiguration, true);
+    assertThat(balance[0]).isEqualTo("-1,00");
+
+  }
+
   @Test
   public void testFormatAlertMessage_MultiBit_B() throws Exception {
 
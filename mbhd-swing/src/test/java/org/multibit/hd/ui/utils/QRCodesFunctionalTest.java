@@ -0,0 +1,72 @@
+package org.multibit.hd.ui.utils;
+
+import com.google.common.base.Stopwatch;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.QRCode;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * <p>Benchmark of the QR code rendering used by the live preview against the pixel at a time rendering it replaces</p>
+ */
+public class QRCodesFunctionalTest {
+
+  private static final Logger log = LoggerFactory.getLogger(QRCodesFunctionalTest.class);
+
+  private static final int WARM_UP = 200;
+
+  private static final int ITERATIONS = 1000;
+
+  private static final int SCALE_FACTOR = 3;
+
+  @Test
+  public void testLivePreviewUpdate() throws Exception {
+
+    ByteMatrix matrix = QRCodes.encode(QRCodesTest.BITCOIN_URI, new QRCode());
+
+    // Warm up both paths
+    for (int i = 0; i < WARM_UP; i++) {
+      QRCodesTest.pixelAtATime(matrix, SCALE_FACTOR);
+      QRCodes.renderQRCode(QRCodesTest.BITCOIN_URI + i, SCALE_FACTOR);
+    }
+
+    // The image conversion alone (the QR encoding is common to both)
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    for (int i = 0; i < ITERATIONS; i++) {
+      QRCodesTest.pixelAtATime(matrix, SCALE_FACTOR);
+    }
+    double pixelMicros = micros(stopwatch);
+
+    // A new amount or label on each update (encoding and rendering)
+    stopwatch = Stopwatch.createStarted();
+    for (int i = 0; i < ITERATIONS; i++) {
+      QRCodes.generateQRCode(QRCodesTest.BITCOIN_URI + "&amount=" + i, SCALE_FACTOR);
+    }
+    double renderMicros = micros(stopwatch);
+
+    // Returning to a recent amount or label
+    stopwatch = Stopwatch.createStarted();
+    for (int i = 0; i < ITERATIONS; i++) {
+      QRCodes.generateQRCode(QRCodesTest.BITCOIN_URI + "&amount=" + (ITERATIONS - 1), SCALE_FACTOR);
+    }
+    double cachedMicros = micros(stopwatch);
+
+    log.info("Per update: pixel at a time image conversion {}us, encode and raster render {}us, cached {}us",
+      pixelMicros, renderMicros, cachedMicros);
+
+    // A live preview must keep up with typing
+    assertThat(renderMicros).isLessThan(1000);
+    assertThat(cachedMicros).isLessThan(renderMicros);
+
+  }
+
+  private static double micros(Stopwatch stopwatch) {
+    return (double) stopwatch.elapsed(TimeUnit.MICROSECONDS) / ITERATIONS;
+  }
+
+}
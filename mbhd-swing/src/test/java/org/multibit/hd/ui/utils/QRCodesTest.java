@@ -0,0 +1,70 @@
+package org.multibit.hd.ui.utils;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.QRCode;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class QRCodesTest {
+
+  static final String BITCOIN_URI = "bitcoin:1AhN6rPdrMuKBGFDKR1k9A8SCLYaNgXhty?amount=0.01&label=Please%20donate";
+
+  @Test
+  public void testRasterMatchesPixelAtATime() throws Exception {
+
+    // The expected images come from the matrix independently of the raster rendering
+    ByteMatrix matrix = QRCodes.encode(BITCOIN_URI, new QRCode());
+
+    for (int scaleFactor = 1; scaleFactor <= 4; scaleFactor++) {
+
+      BufferedImage expected = pixelAtATime(matrix, scaleFactor);
+      BufferedImage actual = QRCodes.renderQRCode(BITCOIN_URI, scaleFactor).get();
+
+      assertThat(actual.getWidth()).isEqualTo(expected.getWidth());
+      assertThat(actual.getHeight()).isEqualTo(expected.getHeight());
+
+      for (int y = 0; y < expected.getHeight(); y++) {
+        for (int x = 0; x < expected.getWidth(); x++) {
+          assertThat(actual.getRGB(x, y)).isEqualTo(expected.getRGB(x, y));
+        }
+      }
+    }
+
+  }
+
+  @Test
+  public void testImageCache() throws Exception {
+
+    BufferedImage image = QRCodes.generateQRCode(BITCOIN_URI, 3).get();
+
+    assertThat(QRCodes.generateQRCode(BITCOIN_URI, 3).get()).isSameAs(image);
+    assertThat(QRCodes.generateQRCode(BITCOIN_URI, 2).get()).isNotSameAs(image);
+    assertThat(QRCodes.generateQRCode(BITCOIN_URI + "1", 3).get()).isNotSameAs(image);
+
+  }
+
+  /**
+   * <p>The previous implementation of the image generation from the byte matrix</p>
+   */
+  static BufferedImage pixelAtATime(ByteMatrix matrix, int scaleFactor) {
+
+    BufferedImage image = new BufferedImage(matrix.getWidth() * scaleFactor, matrix.getHeight() * scaleFactor, BufferedImage.TYPE_INT_RGB);
+
+    for (int y = 0; y < matrix.getHeight(); y++) {
+      for (int x = 0; x < matrix.getWidth(); x++) {
+        byte imageValue = matrix.get(x, y);
+        for (int scaleX = 0; scaleX < scaleFactor; scaleX++) {
+          for (int scaleY = 0; scaleY < scaleFactor; scaleY++) {
+            image.setRGB(x * scaleFactor + scaleX, y * scaleFactor + scaleY, imageValue);
+          }
+        }
+      }
+    }
+
+    return image;
+  }
+
+}